@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.feed.jmx.batch;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+
+import org.apache.brooklyn.api.sensor.AttributeSensor;
+import org.apache.brooklyn.core.sensor.Sensors;
+import org.apache.brooklyn.feed.jmx.JmxHelper;
+import org.apache.brooklyn.util.core.flags.TypeCoercions;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Maps;
+
+/**
+ * Reads MBean attributes for a {@link org.apache.brooklyn.feed.function.FunctionFeed} in bulk, with one
+ * {@link MBeanServerConnection#getAttributes(ObjectName, String[])} request per MBean per poll, rather than
+ * the request per attribute made by a {@link org.apache.brooklyn.feed.jmx.JmxFeed}.
+ * <p>
+ * Use the same {@link #attributes(ObjectName, String...) callable} for every sensor read from an MBean (the
+ * feed then calls it once per period) and {@link #attribute(String, Class)} to extract each value. The poller
+ * uses the entity's {@link JmxHelper}, so it should be the same helper given to any other JMX feeds of the
+ * entity (such as the MXBean feed from {@code JavaAppUtils.getMxBeanSensorsBuilder}) so they all share one
+ * connection; the helper is owned, and terminated, by the entity.
+ */
+public class BatchedJmxAttributePoller {
+
+    public static final AttributeSensor<Integer> JMX_ROUND_TRIPS_PER_MINUTE = Sensors.newIntegerSensor(
+            "jmx.roundTrips.perMinute", "Number of JMX requests made to read attributes in the last minute");
+
+    private static final long MINUTE_MILLIS = 60*1000;
+
+    private final JmxHelper helper;
+    private final Deque<Long> roundTripTimes = new ArrayDeque<Long>();
+
+    public BatchedJmxAttributePoller(JmxHelper helper) {
+        this.helper = checkNotNull(helper, "helper");
+    }
+
+    /**
+     * Returns a callable reading the given attributes of the MBean in one request, as a map from attribute
+     * name to value; attributes the MBean does not have are absent from the map.
+     * <p>
+     * The name may be a pattern, in which case the first matching MBean is read (as for a {@code JmxFeed}).
+     */
+    public Callable<Map<String, Object>> attributes(final ObjectName objectName, final String... attributeNames) {
+        checkNotNull(objectName, "objectName");
+        checkArgument(attributeNames.length > 0, "no attributes for %s", objectName);
+        return new Callable<Map<String, Object>>() {
+            private ObjectName resolved;
+
+            @Override
+            public synchronized Map<String, Object> call() throws Exception {
+                if (!helper.isConnected()) helper.connect();
+                MBeanServerConnection connection = helper.getConnection();
+                if (resolved == null) {
+                    resolved = resolve(connection, objectName);
+                    if (resolved == null) return Collections.emptyMap();
+                }
+                AttributeList values;
+                try {
+                    values = connection.getAttributes(resolved, attributeNames);
+                } catch (InstanceNotFoundException e) {
+                    // resolve the pattern again next time, e.g. if the connector was re-registered
+                    if (objectName.isPattern()) resolved = null;
+                    throw e;
+                } finally {
+                    recordRoundTrip();
+                }
+                Map<String, Object> result = Maps.newLinkedHashMap();
+                for (Attribute value : values.asList()) {
+                    result.put(value.getName(), value.getValue());
+                }
+                return result;
+            }
+
+            @Override
+            public String toString() {
+                return "jmx-attributes["+objectName+"]";
+            }
+        };
+    }
+
+    private ObjectName resolve(MBeanServerConnection connection, ObjectName objectName) throws Exception {
+        if (!objectName.isPattern()) return objectName;
+        Set<ObjectName> matches;
+        try {
+            matches = connection.queryNames(objectName, null);
+        } finally {
+            recordRoundTrip();
+        }
+        return matches.isEmpty() ? null : matches.iterator().next();
+    }
+
+    /**
+     * Extracts an attribute from the result of an {@link #attributes(ObjectName, String...)} callable,
+     * coerced to the given type; fails if the attribute was not returned, so the poll's exception handler
+     * applies as it would for a {@code JmxFeed}.
+     */
+    public static <T> Function<Map<String, Object>, T> attribute(final String name, final Class<T> type) {
+        return new Function<Map<String, Object>, T>() {
+            @Override
+            public T apply(Map<String, Object> input) {
+                if (input == null || !input.containsKey(name)) {
+                    throw new IllegalStateException("Attribute "+name+" not available");
+                }
+                return TypeCoercions.coerce(input.get(name), type);
+            }
+        };
+    }
+
+    /** A callable for the {@link #JMX_ROUND_TRIPS_PER_MINUTE} sensor. */
+    public Callable<Integer> roundTripsPerMinute() {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return getRoundTripsPerMinute();
+            }
+        };
+    }
+
+    public synchronized int getRoundTripsPerMinute() {
+        pruneRoundTrips(System.currentTimeMillis());
+        return roundTripTimes.size();
+    }
+
+    private synchronized void recordRoundTrip() {
+        long now = System.currentTimeMillis();
+        roundTripTimes.addLast(now);
+        pruneRoundTrips(now);
+    }
+
+    private void pruneRoundTrips(long now) {
+        while (!roundTripTimes.isEmpty() && roundTripTimes.peekFirst() < now - MINUTE_MILLIS) {
+            roundTripTimes.removeFirst();
+        }
+    }
+}
@@ -18,6 +18,8 @@
  */
 package org.apache.brooklyn.entity.messaging.kafka;
 
+import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
 import javax.management.ObjectName;
@@ -25,9 +27,10 @@ import javax.management.ObjectName;
 import org.apache.brooklyn.entity.messaging.MessageBroker;
 import org.apache.brooklyn.entity.software.base.SoftwareProcessImpl;
 import org.apache.brooklyn.entity.zookeeper.ZooKeeperNode;
-import org.apache.brooklyn.feed.jmx.JmxAttributePollConfig;
-import org.apache.brooklyn.feed.jmx.JmxFeed;
+import org.apache.brooklyn.feed.function.FunctionFeed;
+import org.apache.brooklyn.feed.function.FunctionPollConfig;
 import org.apache.brooklyn.feed.jmx.JmxHelper;
+import org.apache.brooklyn.feed.jmx.batch.BatchedJmxAttributePoller;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,7 +46,8 @@ public class KafkaBrokerImpl extends SoftwareProcessImpl implements MessageBroke
     private static final Logger log = LoggerFactory.getLogger(KafkaBrokerImpl.class);
     private static final ObjectName SOCKET_SERVER_STATS_MBEAN = JmxHelper.createObjectName("kafka:type=kafka.SocketServerStats");
 
-    private volatile JmxFeed jmxFeed;
+    private volatile FunctionFeed jmxFeed;
+    private JmxHelper jmxHelper;
 
     public KafkaBrokerImpl() {
         super();
@@ -74,13 +78,8 @@ public class KafkaBrokerImpl extends SoftwareProcessImpl implements MessageBroke
         super.waitForServiceUp(duration, units);
 
         if (((KafkaBrokerDriver)getDriver()).isJmxEnabled()) {
-            // Wait for the MBean to exist
-            JmxHelper helper = new JmxHelper(this);
-            try {
-                helper.assertMBeanExistsEventually(SOCKET_SERVER_STATS_MBEAN, units.toMillis(duration));
-            } finally {
-                helper.terminate();
-            }
+            // Wait for the MBean to exist, on the connection the sensors then use
+            getJmxHelper().assertMBeanExistsEventually(SOCKET_SERVER_STATS_MBEAN, units.toMillis(duration));
         }
     }
 
@@ -90,49 +89,57 @@ public class KafkaBrokerImpl extends SoftwareProcessImpl implements MessageBroke
         boolean retrieveUsageMetrics = getConfig(RETRIEVE_USAGE_METRICS);
         
         if (((KafkaBrokerDriver)getDriver()).isJmxEnabled()) {
-            jmxFeed = JmxFeed.builder()
+            // one request per period for all of the socket server stats
+            BatchedJmxAttributePoller poller = new BatchedJmxAttributePoller(getJmxHelper());
+            Callable<Map<String, Object>> socketServerStats = poller.attributes(SOCKET_SERVER_STATS_MBEAN,
+                    "NumFetchRequests", "TotalFetchRequestMs", "MaxFetchRequestMs", "NumProduceRequests",
+                    "TotalProduceRequestMs", "MaxProduceRequestMs", "TotalBytesRead", "TotalBytesWritten");
+
+            jmxFeed = FunctionFeed.builder()
                 .entity(this)
                 .period(500, TimeUnit.MILLISECONDS)
-                .pollAttribute(new JmxAttributePollConfig<Long>(FETCH_REQUEST_COUNT)
-                        .objectName(SOCKET_SERVER_STATS_MBEAN)
-                        .attributeName("NumFetchRequests")
+                .poll(new FunctionPollConfig<Map<String, Object>, Long>(FETCH_REQUEST_COUNT)
+                        .callable(socketServerStats)
+                        .onSuccess(BatchedJmxAttributePoller.attribute("NumFetchRequests", Long.class))
                         .onException(Functions.constant(-1l))
                         .enabled(retrieveUsageMetrics))
-                .pollAttribute(new JmxAttributePollConfig<Long>(TOTAL_FETCH_TIME)
-                        .objectName(SOCKET_SERVER_STATS_MBEAN)
-                        .attributeName("TotalFetchRequestMs")
+                .poll(new FunctionPollConfig<Map<String, Object>, Long>(TOTAL_FETCH_TIME)
+                        .callable(socketServerStats)
+                        .onSuccess(BatchedJmxAttributePoller.attribute("TotalFetchRequestMs", Long.class))
                         .onException(Functions.constant(-1l))
                         .enabled(retrieveUsageMetrics))
-                .pollAttribute(new JmxAttributePollConfig<Double>(MAX_FETCH_TIME)
-                        .objectName(SOCKET_SERVER_STATS_MBEAN)
-                        .attributeName("MaxFetchRequestMs")
+                .poll(new FunctionPollConfig<Map<String, Object>, Double>(MAX_FETCH_TIME)
+                        .callable(socketServerStats)
+                        .onSuccess(BatchedJmxAttributePoller.attribute("MaxFetchRequestMs", Double.class))
                         .onException(Functions.constant(-1.0d))
                         .enabled(retrieveUsageMetrics))
-                .pollAttribute(new JmxAttributePollConfig<Long>(PRODUCE_REQUEST_COUNT)
-                        .objectName(SOCKET_SERVER_STATS_MBEAN)
-                        .attributeName("NumProduceRequests")
+                .poll(new FunctionPollConfig<Map<String, Object>, Long>(PRODUCE_REQUEST_COUNT)
+                        .callable(socketServerStats)
+                        .onSuccess(BatchedJmxAttributePoller.attribute("NumProduceRequests", Long.class))
                         .onException(Functions.constant(-1l))
                         .enabled(retrieveUsageMetrics))
-                .pollAttribute(new JmxAttributePollConfig<Long>(TOTAL_PRODUCE_TIME)
-                        .objectName(SOCKET_SERVER_STATS_MBEAN)
-                        .attributeName("TotalProduceRequestMs")
+                .poll(new FunctionPollConfig<Map<String, Object>, Long>(TOTAL_PRODUCE_TIME)
+                        .callable(socketServerStats)
+                        .onSuccess(BatchedJmxAttributePoller.attribute("TotalProduceRequestMs", Long.class))
                         .onException(Functions.constant(-1l))
                         .enabled(retrieveUsageMetrics))
-                .pollAttribute(new JmxAttributePollConfig<Double>(MAX_PRODUCE_TIME)
-                        .objectName(SOCKET_SERVER_STATS_MBEAN)
-                        .attributeName("MaxProduceRequestMs")
+                .poll(new FunctionPollConfig<Map<String, Object>, Double>(MAX_PRODUCE_TIME)
+                        .callable(socketServerStats)
+                        .onSuccess(BatchedJmxAttributePoller.attribute("MaxProduceRequestMs", Double.class))
                         .onException(Functions.constant(-1.0d))
                         .enabled(retrieveUsageMetrics))
-                .pollAttribute(new JmxAttributePollConfig<Long>(BYTES_RECEIVED)
-                        .objectName(SOCKET_SERVER_STATS_MBEAN)
-                        .attributeName("TotalBytesRead")
+                .poll(new FunctionPollConfig<Map<String, Object>, Long>(BYTES_RECEIVED)
+                        .callable(socketServerStats)
+                        .onSuccess(BatchedJmxAttributePoller.attribute("TotalBytesRead", Long.class))
                         .onException(Functions.constant(-1l))
                         .enabled(retrieveUsageMetrics))
-                .pollAttribute(new JmxAttributePollConfig<Long>(BYTES_SENT)
-                        .objectName(SOCKET_SERVER_STATS_MBEAN)
-                        .attributeName("TotalBytesWritten")
+                .poll(new FunctionPollConfig<Map<String, Object>, Long>(BYTES_SENT)
+                        .callable(socketServerStats)
+                        .onSuccess(BatchedJmxAttributePoller.attribute("TotalBytesWritten", Long.class))
                         .onException(Functions.constant(-1l))
                         .enabled(retrieveUsageMetrics))
+                .poll(new FunctionPollConfig<Integer, Integer>(BatchedJmxAttributePoller.JMX_ROUND_TRIPS_PER_MINUTE)
+                        .callable(poller.roundTripsPerMinute()))
                 .build();
         }
 
@@ -144,6 +151,16 @@ public class KafkaBrokerImpl extends SoftwareProcessImpl implements MessageBroke
         super.disconnectSensors();
         disconnectServiceUpIsRunning();
         if (jmxFeed != null) jmxFeed.stop();
+        synchronized (this) {
+            if (jmxHelper != null) jmxHelper.terminate();
+            jmxHelper = null;
+        }
+    }
+
+    /** The JMX connection shared by the MBean checks and feeds of this broker. */
+    protected synchronized JmxHelper getJmxHelper() {
+        if (jmxHelper == null) jmxHelper = new JmxHelper(this);
+        return jmxHelper;
     }
 
     @Override
@@ -19,15 +19,18 @@
 package org.apache.brooklyn.entity.zookeeper;
 
 import com.google.common.base.MoreObjects.ToStringHelper;
+import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
 import javax.management.ObjectName;
 
 import org.apache.brooklyn.entity.java.JavaSoftwareProcessDriver;
 import org.apache.brooklyn.entity.software.base.SoftwareProcessImpl;
-import org.apache.brooklyn.feed.jmx.JmxAttributePollConfig;
-import org.apache.brooklyn.feed.jmx.JmxFeed;
+import org.apache.brooklyn.feed.function.FunctionFeed;
+import org.apache.brooklyn.feed.function.FunctionPollConfig;
 import org.apache.brooklyn.feed.jmx.JmxHelper;
+import org.apache.brooklyn.feed.jmx.batch.BatchedJmxAttributePoller;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,7 +45,8 @@ public abstract class AbstractZooKeeperImpl extends SoftwareProcessImpl implemen
     private static final Logger log = LoggerFactory.getLogger(AbstractZooKeeperImpl.class);
     private static final ObjectName ZOOKEEPER_MBEAN = JmxHelper.createObjectName("org.apache.ZooKeeperService:name0=StandaloneServer_port-1");
 
-    private volatile JmxFeed jmxFeed;
+    private volatile FunctionFeed jmxFeed;
+    private JmxHelper jmxHelper;
 
     public AbstractZooKeeperImpl() {
     }
@@ -58,13 +62,8 @@ public abstract class AbstractZooKeeperImpl extends SoftwareProcessImpl implemen
         super.waitForServiceUp(duration, units);
 
         if (((JavaSoftwareProcessDriver)getDriver()).isJmxEnabled()) {
-            // Wait for the MBean to exist
-            JmxHelper helper = new JmxHelper(this);
-            try {
-                helper.assertMBeanExistsEventually(ZOOKEEPER_MBEAN, units.toMillis(duration));
-            } finally {
-                helper.terminate();
-            }
+            // Wait for the MBean to exist, on the connection the sensors then use
+            getJmxHelper().assertMBeanExistsEventually(ZOOKEEPER_MBEAN, units.toMillis(duration));
         }
     }
 
@@ -73,21 +72,28 @@ public abstract class AbstractZooKeeperImpl extends SoftwareProcessImpl implemen
         connectServiceUpIsRunning();
 
         if (((JavaSoftwareProcessDriver)getDriver()).isJmxEnabled()) {
-            jmxFeed = JmxFeed.builder()
+            // one request per period for all of the server stats
+            BatchedJmxAttributePoller poller = new BatchedJmxAttributePoller(getJmxHelper());
+            Callable<Map<String, Object>> serverStats = poller.attributes(ZOOKEEPER_MBEAN,
+                    "OutstandingRequests", "PacketsReceived", "PacketsSent");
+
+            jmxFeed = FunctionFeed.builder()
                 .entity(this)
                 .period(500, TimeUnit.MILLISECONDS)
-                .pollAttribute(new JmxAttributePollConfig<Long>(OUTSTANDING_REQUESTS)
-                        .objectName(ZOOKEEPER_MBEAN)
-                        .attributeName("OutstandingRequests")
+                .poll(new FunctionPollConfig<Map<String, Object>, Long>(OUTSTANDING_REQUESTS)
+                        .callable(serverStats)
+                        .onSuccess(BatchedJmxAttributePoller.attribute("OutstandingRequests", Long.class))
                         .onFailureOrException(Functions.constant(-1l)))
-                .pollAttribute(new JmxAttributePollConfig<Long>(PACKETS_RECEIVED)
-                        .objectName(ZOOKEEPER_MBEAN)
-                        .attributeName("PacketsReceived")
+                .poll(new FunctionPollConfig<Map<String, Object>, Long>(PACKETS_RECEIVED)
+                        .callable(serverStats)
+                        .onSuccess(BatchedJmxAttributePoller.attribute("PacketsReceived", Long.class))
                         .onFailureOrException(Functions.constant(-1l)))
-                .pollAttribute(new JmxAttributePollConfig<Long>(PACKETS_SENT)
-                        .objectName(ZOOKEEPER_MBEAN)
-                        .attributeName("PacketsSent")
+                .poll(new FunctionPollConfig<Map<String, Object>, Long>(PACKETS_SENT)
+                        .callable(serverStats)
+                        .onSuccess(BatchedJmxAttributePoller.attribute("PacketsSent", Long.class))
                         .onFailureOrException(Functions.constant(-1l)))
+                .poll(new FunctionPollConfig<Integer, Integer>(BatchedJmxAttributePoller.JMX_ROUND_TRIPS_PER_MINUTE)
+                        .callable(poller.roundTripsPerMinute()))
                 .build();
         }
     }
@@ -95,10 +101,20 @@ public abstract class AbstractZooKeeperImpl extends SoftwareProcessImpl implemen
     @Override
     public void disconnectSensors() {
         if (jmxFeed != null) jmxFeed.stop();
+        synchronized (this) {
+            if (jmxHelper != null) jmxHelper.terminate();
+            jmxHelper = null;
+        }
         disconnectServiceUpIsRunning();
         super.disconnectSensors();
     }
 
+    /** The JMX connection shared by the MBean checks and feeds of this node. */
+    protected synchronized JmxHelper getJmxHelper() {
+        if (jmxHelper == null) jmxHelper = new JmxHelper(this);
+        return jmxHelper;
+    }
+
     @Override
     protected ToStringHelper toStringHelper() {
         return super.toStringHelper()
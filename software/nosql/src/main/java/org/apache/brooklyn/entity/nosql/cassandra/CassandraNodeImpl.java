@@ -50,10 +50,10 @@ import org.apache.brooklyn.entity.java.UsesJmx;
 import org.apache.brooklyn.entity.software.base.SoftwareProcessImpl;
 import org.apache.brooklyn.feed.function.FunctionFeed;
 import org.apache.brooklyn.feed.function.FunctionPollConfig;
-import org.apache.brooklyn.feed.jmx.JmxAttributePollConfig;
 import org.apache.brooklyn.feed.jmx.JmxFeed;
 import org.apache.brooklyn.feed.jmx.JmxHelper;
 import org.apache.brooklyn.feed.jmx.JmxOperationPollConfig;
+import org.apache.brooklyn.feed.jmx.batch.BatchedJmxAttributePoller;
 import org.apache.brooklyn.policy.enricher.RollingTimeWindowMeanEnricher;
 import org.apache.brooklyn.policy.enricher.TimeWeightedDeltaEnricher;
 import org.apache.brooklyn.util.collections.MutableSet;
@@ -383,6 +383,7 @@ public class CassandraNodeImpl extends SoftwareProcessImpl implements CassandraN
     }
 
     private volatile JmxFeed jmxFeed;
+    private volatile FunctionFeed jmxAttributeFeed;
     private volatile FunctionFeed functionFeed;
     private JmxFeed jmxMxBeanFeed;
     private JmxHelper jmxHelper;
@@ -404,20 +405,28 @@ public class CassandraNodeImpl extends SoftwareProcessImpl implements CassandraN
         boolean retrieveUsageMetrics = getConfig(RETRIEVE_USAGE_METRICS);
         
         if (getDriver().isJmxEnabled()) {
-            jmxFeed = JmxFeed.builder()
+            // attributes are read with one request per MBean per period, and all feeds share the one connection
+            BatchedJmxAttributePoller poller = new BatchedJmxAttributePoller(jmxHelper);
+            Callable<Map<String, Object>> storageService = poller.attributes(storageServiceMBean,
+                    "Initialized", "TokenToEndpointMap", "LiveNodes");
+            Callable<Map<String, Object>> readStage = poller.attributes(readStageMBean,
+                    "ActiveCount", "PendingTasks", "CompletedTasks");
+            Callable<Map<String, Object>> mutationStage = poller.attributes(mutationStageMBean,
+                    "ActiveCount", "PendingTasks", "CompletedTasks");
+
+            jmxAttributeFeed = FunctionFeed.builder()
                     .entity(this)
                     .period(3000, TimeUnit.MILLISECONDS)
-                    .helper(jmxHelper)
-                    .pollAttribute(new JmxAttributePollConfig<Boolean>(SERVICE_UP_JMX)
-                            .objectName(storageServiceMBean)
-                            .attributeName("Initialized")
-                            .onSuccess(Functions.forPredicate(Predicates.notNull()))
+                    .poll(new FunctionPollConfig<Map<String, Object>, Boolean>(SERVICE_UP_JMX)
+                            .callable(storageService)
+                            .onSuccess(Functionals.chain(BatchedJmxAttributePoller.attribute("Initialized", Object.class),
+                                    Functions.forPredicate(Predicates.notNull())))
                             .onException(Functions.constant(false))
                             .suppressDuplicates(true))
-                    .pollAttribute(new JmxAttributePollConfig<Set<BigInteger>>(TOKENS)
-                            .objectName(storageServiceMBean)
-                            .attributeName("TokenToEndpointMap")
-                            .onSuccess(new Function<Object, Set<BigInteger>>() {
+                    .poll(new FunctionPollConfig<Map<String, Object>, Set<BigInteger>>(TOKENS)
+                            .callable(storageService)
+                            .onSuccess(Functionals.chain(BatchedJmxAttributePoller.attribute("TokenToEndpointMap", Object.class),
+                                    new Function<Object, Set<BigInteger>>() {
                                 @Override
                                 public Set<BigInteger> apply(@Nullable Object arg) {
                                     Map input = (Map)arg;
@@ -430,80 +439,88 @@ public class CassandraNodeImpl extends SoftwareProcessImpl implements CassandraN
                                         result.add(new BigInteger(token));
                                     }
                                     return result;
-                                }})
+                                }}))
                             .onException(Functions.<Set<BigInteger>>constant(null))
                             .suppressDuplicates(true))
-                    .pollOperation(new JmxOperationPollConfig<String>(DATACENTER_NAME)
-                            .period(60, TimeUnit.SECONDS)
-                            .objectName(snitchMBean)
-                            .operationName("getDatacenter")
-                            .operationParams(ImmutableList.of(getBroadcastAddress()))
-                            .onException(Functions.<String>constant(null))
-                            .suppressDuplicates(true))
-                    .pollOperation(new JmxOperationPollConfig<String>(RACK_NAME)
-                            .period(60, TimeUnit.SECONDS)
-                            .objectName(snitchMBean)
-                            .operationName("getRack")
-                            .operationParams(ImmutableList.of(getBroadcastAddress()))
-                            .onException(Functions.<String>constant(null))
-                            .suppressDuplicates(true))
-                    .pollAttribute(new JmxAttributePollConfig<Integer>(PEERS)
-                            .objectName(storageServiceMBean)
-                            .attributeName("TokenToEndpointMap")
-                            .onSuccess(new Function<Object, Integer>() {
+                    .poll(new FunctionPollConfig<Map<String, Object>, Integer>(PEERS)
+                            .callable(storageService)
+                            .onSuccess(Functionals.chain(BatchedJmxAttributePoller.attribute("TokenToEndpointMap", Object.class),
+                                    new Function<Object, Integer>() {
                                 @Override
                                 public Integer apply(@Nullable Object arg) {
                                     Map input = (Map)arg;
                                     if (input == null || input.isEmpty()) return 0;
                                     return input.size();
                                 }
-                            })
+                            }))
                             .onException(Functions.constant(-1)))
-                    .pollAttribute(new JmxAttributePollConfig<Integer>(LIVE_NODE_COUNT)
-                            .objectName(storageServiceMBean)
-                            .attributeName("LiveNodes")
-                            .onSuccess(new Function<Object, Integer>() {
+                    .poll(new FunctionPollConfig<Map<String, Object>, Integer>(LIVE_NODE_COUNT)
+                            .callable(storageService)
+                            .onSuccess(Functionals.chain(BatchedJmxAttributePoller.attribute("LiveNodes", Object.class),
+                                    new Function<Object, Integer>() {
                                 @Override
                                 public Integer apply(@Nullable Object arg) {
                                     List input = (List)arg;
                                     if (input == null || input.isEmpty()) return 0;
                                     return input.size();
                                 }
-                            })
+                            }))
                             .onException(Functions.constant(-1)))
-                    .pollAttribute(new JmxAttributePollConfig<Integer>(READ_ACTIVE)
-                            .objectName(readStageMBean)
-                            .attributeName("ActiveCount")
+                    .poll(new FunctionPollConfig<Map<String, Object>, Integer>(READ_ACTIVE)
+                            .callable(readStage)
+                            .onSuccess(BatchedJmxAttributePoller.attribute("ActiveCount", Integer.class))
                             .onException(Functions.constant((Integer)null))
                             .enabled(retrieveUsageMetrics))
-                    .pollAttribute(new JmxAttributePollConfig<Long>(READ_PENDING)
-                            .objectName(readStageMBean)
-                            .attributeName("PendingTasks")
+                    .poll(new FunctionPollConfig<Map<String, Object>, Long>(READ_PENDING)
+                            .callable(readStage)
+                            .onSuccess(BatchedJmxAttributePoller.attribute("PendingTasks", Long.class))
                             .onException(Functions.constant((Long)null))
                             .enabled(retrieveUsageMetrics))
-                    .pollAttribute(new JmxAttributePollConfig<Long>(READ_COMPLETED)
-                            .objectName(readStageMBean)
-                            .attributeName("CompletedTasks")
+                    .poll(new FunctionPollConfig<Map<String, Object>, Long>(READ_COMPLETED)
+                            .callable(readStage)
+                            .onSuccess(BatchedJmxAttributePoller.attribute("CompletedTasks", Long.class))
                             .onException(Functions.constant((Long)null))
                             .enabled(retrieveUsageMetrics))
-                    .pollAttribute(new JmxAttributePollConfig<Integer>(WRITE_ACTIVE)
-                            .objectName(mutationStageMBean)
-                            .attributeName("ActiveCount")
+                    .poll(new FunctionPollConfig<Map<String, Object>, Integer>(WRITE_ACTIVE)
+                            .callable(mutationStage)
+                            .onSuccess(BatchedJmxAttributePoller.attribute("ActiveCount", Integer.class))
                             .onException(Functions.constant((Integer)null))
                             .enabled(retrieveUsageMetrics))
-                    .pollAttribute(new JmxAttributePollConfig<Long>(WRITE_PENDING)
-                            .objectName(mutationStageMBean)
-                            .attributeName("PendingTasks")
+                    .poll(new FunctionPollConfig<Map<String, Object>, Long>(WRITE_PENDING)
+                            .callable(mutationStage)
+                            .onSuccess(BatchedJmxAttributePoller.attribute("PendingTasks", Long.class))
                             .onException(Functions.constant((Long)null))
                             .enabled(retrieveUsageMetrics))
-                    .pollAttribute(new JmxAttributePollConfig<Long>(WRITE_COMPLETED)
-                            .objectName(mutationStageMBean)
-                            .attributeName("CompletedTasks")
+                    .poll(new FunctionPollConfig<Map<String, Object>, Long>(WRITE_COMPLETED)
+                            .callable(mutationStage)
+                            .onSuccess(BatchedJmxAttributePoller.attribute("CompletedTasks", Long.class))
                             .onException(Functions.constant((Long)null))
                             .enabled(retrieveUsageMetrics))
+                    .poll(new FunctionPollConfig<Integer, Integer>(BatchedJmxAttributePoller.JMX_ROUND_TRIPS_PER_MINUTE)
+                            .callable(poller.roundTripsPerMinute()))
                     .build();
-            
-            jmxMxBeanFeed = JavaAppUtils.connectMXBeanSensors(this);
+
+            jmxFeed = JmxFeed.builder()
+                    .entity(this)
+                    .period(60, TimeUnit.SECONDS)
+                    .helper(jmxHelper)
+                    .pollOperation(new JmxOperationPollConfig<String>(DATACENTER_NAME)
+                            .objectName(snitchMBean)
+                            .operationName("getDatacenter")
+                            .operationParams(ImmutableList.of(getBroadcastAddress()))
+                            .onException(Functions.<String>constant(null))
+                            .suppressDuplicates(true))
+                    .pollOperation(new JmxOperationPollConfig<String>(RACK_NAME)
+                            .objectName(snitchMBean)
+                            .operationName("getRack")
+                            .operationParams(ImmutableList.of(getBroadcastAddress()))
+                            .onException(Functions.<String>constant(null))
+                            .suppressDuplicates(true))
+                    .build();
+
+            if (JavaAppUtils.isEntityMxBeanStatsEnabled(this)) {
+                jmxMxBeanFeed = JavaAppUtils.getMxBeanSensorsBuilder(this).helper(jmxHelper).build();
+            }
         }
         
         if (Boolean.TRUE.equals(getConfig(USE_THRIFT_MONITORING))) {
@@ -573,6 +590,7 @@ public class CassandraNodeImpl extends SoftwareProcessImpl implements CassandraN
         
         disconnectServiceUpIsRunning();
         if (jmxFeed != null) jmxFeed.stop();
+        if (jmxAttributeFeed != null) jmxAttributeFeed.stop();
         if (jmxMxBeanFeed != null) jmxMxBeanFeed.stop();
         if (jmxHelper != null) jmxHelper.terminate();
         if (functionFeed != null) functionFeed.stop();
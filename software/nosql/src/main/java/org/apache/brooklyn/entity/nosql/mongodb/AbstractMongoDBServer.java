@@ -19,11 +19,13 @@
 package org.apache.brooklyn.entity.nosql.mongodb;
 
 import org.apache.brooklyn.api.entity.Entity;
+import org.apache.brooklyn.api.sensor.AttributeSensor;
 import org.apache.brooklyn.config.ConfigKey;
 import org.apache.brooklyn.core.config.ConfigKeys;
 import org.apache.brooklyn.core.sensor.AttributeSensorAndConfigKey;
 import org.apache.brooklyn.core.sensor.BasicAttributeSensorAndConfigKey;
 import org.apache.brooklyn.core.sensor.PortAttributeSensorAndConfigKey;
+import org.apache.brooklyn.core.sensor.Sensors;
 import org.apache.brooklyn.entity.software.base.SoftwareProcess;
 import org.apache.brooklyn.util.core.ResourcePredicates;
 import org.apache.brooklyn.util.core.flags.SetFromFlag;
@@ -63,4 +65,10 @@ public interface AbstractMongoDBServer extends SoftwareProcess, Entity, MongoDBA
     PortAttributeSensorAndConfigKey PORT =
             new PortAttributeSensorAndConfigKey("mongodb.server.port", "Server port", "27017+");
 
+    AttributeSensor<Integer> CLIENT_CONNECTIONS = Sensors.newIntegerSensor(
+            "mongodb.client.connections", "Number of clients (each with its own connection pool) held open to this server by the management node");
+
+    AttributeSensor<Long> CLIENT_COMMAND_LATENCY = Sensors.newLongSensor(
+            "mongodb.client.command.latency", "Time taken by the last command run on this server by the management node (ms)");
+
 }
\ No newline at end of file
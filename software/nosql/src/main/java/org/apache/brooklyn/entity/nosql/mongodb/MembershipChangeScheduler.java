@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.entity.nosql.mongodb;
+
+import java.util.concurrent.Callable;
+
+import org.apache.brooklyn.api.entity.Entity;
+import org.apache.brooklyn.api.mgmt.Task;
+import org.apache.brooklyn.api.sensor.AttributeSensor;
+import org.apache.brooklyn.core.entity.Entities;
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.core.task.ScheduledTask;
+import org.apache.brooklyn.util.core.task.Tasks;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the pending membership changes of an entity (e.g. the additions and removals of the members of a
+ * replica set) as tasks of that entity, in the management context's execution manager, rather than on a
+ * thread of its own.
+ * <p>
+ * At most one run is in progress or scheduled at a time, so changes are applied one pass after another
+ * (a pass should apply everything pending, e.g. in one reconfiguration). A pass which leaves changes to
+ * retry is followed by another after an exponentially increasing delay, up to the maximum; {@link #runSoon()},
+ * when more changes are queued, resets the delay. Once stopped (e.g. as the entity stops and its members are
+ * removed) no more passes run, until it is started again. Giving up on changes that cannot be applied is left
+ * to the pass itself.
+ */
+public class MembershipChangeScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MembershipChangeScheduler.class);
+
+    public static final Duration DEFAULT_INITIAL_DELAY = Duration.seconds(3);
+
+    private final Entity entity;
+    private final String displayName;
+    private final Callable<Boolean> pass;
+    private final AttributeSensor<Integer> retriesSensor;
+    private final Duration initialDelay;
+    private final Duration maxDelay;
+
+    private Task<?> scheduled;
+    private boolean running;
+    private boolean runAgain;
+    private boolean stopped;
+    private Duration delay;
+    private int retries;
+
+    /**
+     * @param pass applies the pending changes, returning true if any are left to retry
+     * @param retriesSensor if not null, set on the entity to the number of passes which left changes to retry
+     */
+    public MembershipChangeScheduler(Entity entity, String displayName, Callable<Boolean> pass, AttributeSensor<Integer> retriesSensor,
+            Duration initialDelay, Duration maxDelay) {
+        this.entity = entity;
+        this.displayName = displayName;
+        this.pass = pass;
+        this.retriesSensor = retriesSensor;
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    /** Allows passes to run again after {@link #stop()}; to be called when the entity is (re)started. */
+    public synchronized void start() {
+        stopped = false;
+        delay = null;
+    }
+
+    /**
+     * Runs a pass as soon as any in progress has finished; to be called when changes are queued.
+     * Does nothing once {@link #stop() stopped}, until {@link #start() started} again.
+     */
+    public synchronized void runSoon() {
+        delay = null;
+        schedule(Duration.ZERO);
+    }
+
+    /** Cancels any scheduled pass; a pass in progress completes, but is not followed by another. */
+    public synchronized void stop() {
+        stopped = true;
+        if (scheduled != null) {
+            scheduled.cancel(false);
+            scheduled = null;
+        }
+    }
+
+    private synchronized void schedule(Duration wait) {
+        if (stopped) return;
+        if (running) {
+            runAgain = true;
+            return;
+        }
+        if (scheduled != null && !scheduled.isDone()) {
+            // a pass not yet started, after a delay; only brought forward
+            if (wait.isLongerThan(Duration.ZERO)) return;
+            scheduled.cancel(false);
+        }
+        Callable<Task<?>> taskFactory = new Callable<Task<?>>() {
+            @Override
+            public Task<?> call() {
+                return Tasks.builder().displayName(displayName).dynamic(false).body(new Runnable() {
+                    @Override
+                    public void run() {
+                        runPass();
+                    }
+                }).build();
+            }
+        };
+        scheduled = Entities.submit(entity, new ScheduledTask(MutableMap.of("displayName", displayName,
+                "delay", wait, "maxIterations", 1), taskFactory));
+    }
+
+    private void runPass() {
+        synchronized (this) {
+            // a pass which was cancelled as it started may still get here
+            if (stopped) return;
+            if (running) {
+                runAgain = true;
+                return;
+            }
+            running = true;
+            runAgain = false;
+        }
+        boolean retry;
+        try {
+            retry = pass.call();
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            LOG.warn("Problem applying membership changes of "+entity+" ("+displayName+"); will retry", e);
+            retry = true;
+        }
+        synchronized (this) {
+            running = false;
+            scheduled = null;
+            if (runAgain) {
+                delay = null;
+                schedule(Duration.ZERO);
+            } else if (retry) {
+                delay = (delay == null) ? initialDelay : Duration.millis(delay.toMilliseconds() * 2);
+                if (delay.isLongerThan(maxDelay)) delay = maxDelay;
+                retries++;
+                if (retriesSensor != null) entity.sensors().set(retriesSensor, retries);
+                if (LOG.isDebugEnabled()) LOG.debug("Retrying membership changes of {} ({}) in {}", new Object[] {entity, displayName, delay});
+                schedule(delay);
+            } else {
+                delay = null;
+            }
+        }
+    }
+}
@@ -19,9 +19,18 @@
 package org.apache.brooklyn.entity.nosql.mongodb;
 
 import java.net.UnknownHostException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.brooklyn.api.entity.Entity;
 import org.apache.brooklyn.core.location.access.BrooklynAccessUtils;
+import org.apache.brooklyn.util.exceptions.Exceptions;
 import org.apache.brooklyn.util.repeat.Repeater;
 import org.apache.brooklyn.util.time.Duration;
 import org.bson.BSONObject;
@@ -29,9 +38,20 @@ import org.bson.BasicBSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Objects;
 import com.google.common.base.Optional;
+import com.google.common.base.Stopwatch;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.net.HostAndPort;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.mongodb.BasicDBObject;
 import com.mongodb.CommandResult;
 import com.mongodb.DB;
@@ -40,16 +60,58 @@ import com.mongodb.MongoClient;
 import com.mongodb.MongoClientOptions;
 import com.mongodb.MongoCredential;
 import com.mongodb.MongoException;
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoTimeoutException;
 import com.mongodb.ServerAddress;
 
 /**
  * Manages connections to standalone MongoDB servers.
+ * <p>
+ * The {@link MongoClient}s are shared by all instances for the same server and credentials, and closed
+ * once idle for {@link #CLIENT_IDLE_TIMEOUT}, rather than opened (with its handshakes) for every command.
+ * A client whose connection fails is discarded, so that the next command reconnects. A client evicted or
+ * discarded while commands on other threads are still using it is closed when the last of them finishes.
  *
  * @see <a href="http://docs.mongodb.org/manual/reference/command/">MongoDB database command documentation</a>
  */
 public class MongoDBClientSupport {
 
     private static final Logger LOG = LoggerFactory.getLogger(MongoDBClientSupport.class);
+
+    public static final Duration CLIENT_IDLE_TIMEOUT = Duration.FIVE_MINUTES;
+
+    private static final Cache<ClientKey, SharedClient> CLIENTS = CacheBuilder.newBuilder()
+            .maximumSize(1000)
+            .expireAfterAccess(CLIENT_IDLE_TIMEOUT.toMilliseconds(), TimeUnit.MILLISECONDS)
+            .removalListener(new RemovalListener<ClientKey, SharedClient>() {
+                @Override
+                public void onRemoval(RemovalNotification<ClientKey, SharedClient> notification) {
+                    LOG.debug("Retiring MongoDB client for {} ({})", notification.getKey(), notification.getCause());
+                    notification.getValue().retire();
+                }
+            })
+            .build();
+
+    /**
+     * The cache only expires idle clients when it is next used, so clean it up periodically,
+     * in case no further commands are run (e.g. once all MongoDB entities are stopped).
+     */
+    private static final ScheduledExecutorService CLIENTS_CLEANER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("brooklyn-mongodb-client-cleaner").build());
+
+    static {
+        CLIENTS_CLEANER.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    CLIENTS.cleanUp();
+                } catch (Exception e) {
+                    LOG.warn("Problem cleaning up idle MongoDB clients (continuing)", e);
+                }
+            }
+        }, 1, 1, TimeUnit.MINUTES);
+    }
+
     private ServerAddress address;
 
     private boolean usesAuthentication;
@@ -57,18 +119,42 @@ public class MongoDBClientSupport {
     private String password;
     private String authenticationDatabase;
 
-    private MongoClient client() {
-        return baseClient(connectionOptions);
+    /** The server, if known, on which to publish {@link AbstractMongoDBServer#CLIENT_CONNECTIONS} etc. */
+    private Entity entity;
+
+    /** As {@link #acquireClient(boolean)}, for commands; callers must {@link SharedClient#release() release} it. */
+    private SharedClient client() {
+        return acquireClient(false);
     }
 
-    private MongoClient fastClient() {
-        MongoClientOptions fastConnectionOptions = MongoClientOptions.builder()
-                .connectTimeout(1000 * 10)
-                .maxWaitTime(1000 * 10)
-                .serverSelectionTimeout(1000 * 10)
-                .build();
+    /** As {@link #acquireClient(boolean)}, for pings; callers must {@link SharedClient#release() release} it. */
+    private SharedClient fastClient() {
+        return acquireClient(true);
+    }
 
-        return baseClient(fastConnectionOptions);
+    /**
+     * Returns the shared client, counted as in use (so it is not closed) until released.
+     */
+    private SharedClient acquireClient(final boolean fast) {
+        try {
+            while (true) {
+                SharedClient result = CLIENTS.get(clientKey(fast), new Callable<SharedClient>() {
+                    @Override
+                    public SharedClient call() {
+                        LOG.debug("Opening MongoDB client for {}", clientKey(fast));
+                        return new SharedClient(baseClient(fast ? fastConnectionOptions : connectionOptions));
+                    }
+                });
+                // retired between the lookup and now, so get (or open) its replacement
+                if (result.acquire()) return result;
+            }
+        } catch (ExecutionException e) {
+            throw Exceptions.propagate(e.getCause());
+        } catch (UncheckedExecutionException e) {
+            throw Exceptions.propagate(e.getCause());
+        } finally {
+            publishConnectionCount();
+        }
     }
 
     private MongoClient baseClient(MongoClientOptions connectionOptions) {
@@ -80,11 +166,121 @@ public class MongoDBClientSupport {
         }
     }
 
+    private ClientKey clientKey(boolean fast) {
+        return new ClientKey(address, fast, username, password, authenticationDatabase);
+    }
+
+    /**
+     * Discards the given client if its connection has failed, so that the next command gets a new one;
+     * it is closed once other users of it (on other threads) have released it.
+     */
+    private void discardIfDisconnected(boolean fast, SharedClient client, Exception e) {
+        if (e instanceof MongoSocketException || e instanceof MongoTimeoutException || e instanceof IllegalStateException) {
+            if (CLIENTS.asMap().remove(clientKey(fast), client)) {
+                LOG.debug("Discarded MongoDB client for {}, after {}", address, e.toString());
+                publishConnectionCount();
+            }
+        }
+    }
+
+    private void publishConnectionCount() {
+        if (entity == null) return;
+        int count = 0;
+        for (ClientKey key : CLIENTS.asMap().keySet()) {
+            if (key.address.equals(address)) count++;
+        }
+        if (!Objects.equal(entity.sensors().get(AbstractMongoDBServer.CLIENT_CONNECTIONS), count)) {
+            entity.sensors().set(AbstractMongoDBServer.CLIENT_CONNECTIONS, count);
+        }
+    }
+
+    private void publishLatency(Stopwatch stopwatch) {
+        if (entity == null) return;
+        entity.sensors().set(AbstractMongoDBServer.CLIENT_COMMAND_LATENCY, stopwatch.elapsed(TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * A cached {@link MongoClient}, with a count of the commands using it. Once retired (evicted or discarded
+     * from the cache) it is closed when that count drops to zero, and cannot be acquired again.
+     */
+    private static class SharedClient {
+        private final MongoClient client;
+        private int users;
+        private boolean retired;
+
+        SharedClient(MongoClient client) {
+            this.client = client;
+        }
+
+        MongoClient get() {
+            return client;
+        }
+
+        synchronized boolean acquire() {
+            if (retired) return false;
+            users++;
+            return true;
+        }
+
+        synchronized void release() {
+            users--;
+            if (retired && users == 0) client.close();
+        }
+
+        synchronized void retire() {
+            if (retired) return;
+            retired = true;
+            if (users == 0) client.close();
+        }
+    }
+
+    /** Identifies a shared client: the server, the options used and the credentials. */
+    private static class ClientKey {
+        private final ServerAddress address;
+        private final boolean fast;
+        private final String username;
+        private final String password;
+        private final String authenticationDatabase;
+
+        ClientKey(ServerAddress address, boolean fast, String username, String password, String authenticationDatabase) {
+            this.address = address;
+            this.fast = fast;
+            this.username = username;
+            this.password = password;
+            this.authenticationDatabase = authenticationDatabase;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ClientKey)) return false;
+            ClientKey o = (ClientKey) obj;
+            return address.equals(o.address) && fast == o.fast && Objects.equal(username, o.username)
+                    && Objects.equal(password, o.password) && Objects.equal(authenticationDatabase, o.authenticationDatabase);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(address, fast, username, password, authenticationDatabase);
+        }
+
+        @Override
+        public String toString() {
+            // excludes the password
+            return address + (fast ? " (fast)" : "") + (username != null ? " as " + username + "@" + authenticationDatabase : "");
+        }
+    }
+
     // Set client to automatically reconnect to servers.
     private static final MongoClientOptions connectionOptions = MongoClientOptions.builder()
             .socketKeepAlive(true)
             .build();
 
+    private static final MongoClientOptions fastConnectionOptions = MongoClientOptions.builder()
+            .connectTimeout(1000 * 10)
+            .maxWaitTime(1000 * 10)
+            .serverSelectionTimeout(1000 * 10)
+            .build();
+
     private static final BasicBSONObject EMPTY_RESPONSE = new BasicBSONObject();
 
     public MongoDBClientSupport(ServerAddress standalone) {
@@ -107,20 +303,23 @@ public class MongoDBClientSupport {
     public static MongoDBClientSupport forServer(AbstractMongoDBServer standalone) throws UnknownHostException {
         HostAndPort hostAndPort = BrooklynAccessUtils.getBrooklynAccessibleAddress(standalone, standalone.getAttribute(MongoDBServer.PORT));
         ServerAddress address = new ServerAddress(hostAndPort.getHost(), hostAndPort.getPort());
+        MongoDBClientSupport result;
         if (MongoDBAuthenticationUtils.usesAuthentication(standalone)) {
-            return new MongoDBClientSupport(address, standalone.sensors().get(MongoDBAuthenticationMixins.ROOT_USERNAME),
+            result = new MongoDBClientSupport(address, standalone.sensors().get(MongoDBAuthenticationMixins.ROOT_USERNAME),
                     standalone.sensors().get(MongoDBAuthenticationMixins.ROOT_PASSWORD), standalone.sensors().get(MongoDBAuthenticationMixins.AUTHENTICATION_DATABASE));
         } else {
-            return new MongoDBClientSupport(address);
+            result = new MongoDBClientSupport(address);
         }
+        result.entity = standalone;
+        return result;
     }
 
     private ServerAddress getServerAddress() {
-        MongoClient client = client();
+        SharedClient client = client();
         try {
-            return client.getServerAddressList().get(0);
+            return client.get().getServerAddressList().get(0);
         } finally {
-            client.close();
+            client.release();
         }
     }
 
@@ -133,47 +332,50 @@ public class MongoDBClientSupport {
         return runDBCommand(database, new BasicDBObject(command, Boolean.TRUE));
     }
 
-    private Optional<CommandResult> runDBCommand(String database, final DBObject command) {
-        MongoClient client = client();
-        try {
-            final DB db = client.getDB(database);
-            final CommandResult[] status = new CommandResult[1];
-
-            // The mongoDB client can occasionally fail to connect. Try up to 5 times to run the command
-            boolean commandResult = Repeater.create().backoff(Duration.ONE_SECOND, 1.5, null).limitIterationsTo(5)
-                    .until(new Callable<Boolean>() {
-                        @Override
-                        public Boolean call() throws Exception {
-                            try {
-                                status[0] = db.command(command);
-                                return true;
-                            } catch (Exception e) {
-                                LOG.warn("Command " + command + " on " + address.getHost() + " failed", e);
-                                return false;
-                            }
+    private Optional<CommandResult> runDBCommand(final String database, final DBObject command) {
+        final CommandResult[] status = new CommandResult[1];
+
+        // The mongoDB client can occasionally fail to connect. Try up to 5 times to run the command
+        boolean commandResult = Repeater.create().backoff(Duration.ONE_SECOND, 1.5, null).limitIterationsTo(5)
+                .until(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        SharedClient client = client();
+                        try {
+                            Stopwatch stopwatch = Stopwatch.createStarted();
+                            status[0] = client.get().getDB(database).command(command);
+                            publishLatency(stopwatch);
+                            return true;
+                        } catch (Exception e) {
+                            LOG.warn("Command " + command + " on " + address.getHost() + " failed", e);
+                            discardIfDisconnected(false, client, e);
+                            return false;
+                        } finally {
+                            client.release();
                         }
-            }).run();
+                    }
+        }).run();
 
-            if (!commandResult) {
-                return Optional.absent();
-            }
+        if (!commandResult) {
+            return Optional.absent();
+        }
 
-            if (!status[0].ok()) {
-                LOG.debug("Unexpected result of {} on {}: {}",
-                        new Object[] { command, getServerAddress(), status[0].getErrorMessage() });
-            }
-            return Optional.of(status[0]);
-        } finally {
-            client.close();
+        if (!status[0].ok()) {
+            LOG.debug("Unexpected result of {} on {}: {}",
+                    new Object[] { command, address, status[0].getErrorMessage() });
         }
+        return Optional.of(status[0]);
     }
     
     public long getShardCount() {
-        MongoClient client = client();
+        SharedClient client = client();
         try {
-            return client.getDB("config").getCollection("shards").getCount();
+            return client.get().getDB("config").getCollection("shards").getCount();
+        } catch (RuntimeException e) {
+            discardIfDisconnected(false, client, e);
+            throw e;
         } finally {
-            client.close();
+            client.release();
         }
     }
 
@@ -185,19 +387,44 @@ public class MongoDBClientSupport {
             return EMPTY_RESPONSE;
         }
     }
+
+    /**
+     * As {@link #getServerStatus()}, but without the given sections of the document (e.g. {@code metrics},
+     * {@code locks}), which on a busy server make up most of its size.
+     *
+     * @see <a href="http://docs.mongodb.org/manual/reference/command/serverStatus/">serverStatus documentation</a>
+     */
+    public BasicBSONObject getServerStatus(Iterable<String> excludedSections) {
+        BasicDBObject command = new BasicDBObject("serverStatus", 1);
+        for (String section : excludedSections) {
+            command.append(section, 0);
+        }
+        Optional<CommandResult> result = runDBCommand("admin", command);
+        if (result.isPresent() && result.get().ok()) {
+            return result.get();
+        } else {
+            return EMPTY_RESPONSE;
+        }
+    }
     
     public boolean ping() {
-        MongoClient client = fastClient();
+        SharedClient client = fastClient();
         DBObject command = new BasicDBObject("ping", "1");
-        final DB db = client.getDB("admin");
 
         try {
+            DB db = client.get().getDB("admin");
+            Stopwatch stopwatch = Stopwatch.createStarted();
             CommandResult status = db.command(command);
+            publishLatency(stopwatch);
             return status.ok();
         } catch (MongoException e) {
             LOG.warn("Pinging server {} failed with {}", address.getHost(), e);
+            discardIfDisconnected(true, client, e);
+        } catch (IllegalStateException e) {
+            LOG.warn("Pinging server {} failed with {}", address.getHost(), e);
+            discardIfDisconnected(true, client, e);
         } finally {
-            client.close();
+            client.release();
         }
         return false;
     }
@@ -222,14 +449,15 @@ public class MongoDBClientSupport {
      * Java equivalent of calling rs.conf() in the console.
      */
     private BSONObject getReplicaSetConfig() {
-        MongoClient client = client();
+        SharedClient client = client();
         try {
-            return client.getDB("local").getCollection("system.replset").findOne();
+            return client.get().getDB("local").getCollection("system.replset").findOne();
         } catch (MongoException e) {
-            LOG.error("Failed to get replica set config on "+client, e);
+            LOG.error("Failed to get replica set config on "+address, e);
+            discardIfDisconnected(false, client, e);
             return null;
         } finally {
-            client.close();
+            client.release();
         }
     }
 
@@ -256,49 +484,113 @@ public class MongoDBClientSupport {
      * Reconfigures the replica set that this client is the primary member of to include a new member.
      * <p/>
      * Note that this can cause long downtime (typically 10-20s, even up to a minute).
+     * The member is added without a vote; see {@link #grantReplicaSetVotes()}.
      *
      * @param secondary New member of the set.
      * @param id The id for the new set member. Must be unique within the set.
      * @return True if successful
      */
     public boolean addMemberToReplicaSet(MongoDBServer secondary, Integer id) {
+        return updateReplicaSetMembers(ImmutableMap.of(secondary, id), ImmutableList.<MongoDBServer>of());
+    }
+
+    /**
+     * Reconfigures the replica set that this client is the primary member of to
+     * remove the given server.
+     * @param server The server to remove
+     * @return True if successful
+     */
+    public boolean removeMemberFromReplicaSet(MongoDBServer server) {
+        return updateReplicaSetMembers(ImmutableMap.<MongoDBServer, Integer>of(), ImmutableList.of(server));
+    }
+
+    /**
+     * Reconfigures the replica set that this client is the primary member of to include the given new
+     * members and not the given servers, in a single <code>replSetReconfig</code> (and so a single round
+     * of elections, rather than one per member).
+     * <p/>
+     * The new members are added without votes, as described in {@link ReplicaSetConfig#members(Map)};
+     * see {@link #grantReplicaSetVotes()}.
+     *
+     * @param additions New members of the set, with their ids; the ids must be unique within the set.
+     * @param removals The servers to remove.
+     * @return True if successful; if not, none of the changes are made.
+     */
+    public boolean updateReplicaSetMembers(Map<MongoDBServer, Integer> additions, Collection<MongoDBServer> removals) {
         // We need to:
         // - get the existing configuration
         // - update its version
-        // - add the new member to its list of members
+        // - remove the old members from, and add the new members to, its list of members
         // - run replSetReconfig with the new configuration.
         BSONObject existingConfig = getReplicaSetConfig();
         if (existingConfig == null) {
-            LOG.warn("Couldn't load existing config for replica set from {}. Server {} not added.",
-                    getServerAddress(), secondary);
+            LOG.warn("Couldn't load existing config for replica set from {}. Servers {} not added and {} not removed.",
+                    new Object[] {address, additions.keySet(), removals});
             return false;
         }
 
-        BasicBSONObject newConfig = ReplicaSetConfig.fromExistingConfig(existingConfig)
-                .primary(getServerHostAndPort())
-                .member(secondary, id)
-                .build();
+        Map<HostAndPort, Integer> idsByAddress = Maps.newLinkedHashMap();
+        for (Map.Entry<MongoDBServer, Integer> entry : additions.entrySet()) {
+            idsByAddress.put(getMemberAddress(entry.getKey()), entry.getValue());
+        }
+        List<HostAndPort> removedAddresses = Lists.newArrayList();
+        for (MongoDBServer server : removals) {
+            removedAddresses.add(getMemberAddress(server));
+        }
+
+        BasicBSONObject newConfig;
+        try {
+            newConfig = ReplicaSetConfig.fromExistingConfig(existingConfig)
+                    .primary(getServerHostAndPort())
+                    .remove(removedAddresses)
+                    .members(idsByAddress)
+                    .build();
+        } catch (IllegalStateException e) {
+            LOG.warn("Cannot reconfigure replica set at {}: {}", address, e.getMessage());
+            return false;
+        }
         return reconfigureReplicaSet(newConfig);
     }
 
     /**
-     * Reconfigures the replica set that this client is the primary member of to
-     * remove the given server.
-     * @param server The server to remove
-     * @return True if successful
+     * Gives votes to the members of the replica set that this client is the primary member of which do not
+     * have them, until the set has as many voters as it should (see {@link ReplicaSetConfig#nextVoter()}).
+     * Each vote is given by its own <code>replSetReconfig</code>, as MongoDB allows at most one voting member
+     * to be added by a reconfiguration.
+     *
+     * @return True if the set has all the voters it should; false if a reconfiguration failed, leaving the
+     *         remaining votes to be given by a later call.
      */
-    public boolean removeMemberFromReplicaSet(MongoDBServer server) {
-        BSONObject existingConfig = getReplicaSetConfig();
-        if (existingConfig == null) {
-            LOG.warn("Couldn't load existing config for replica set from {}. Server {} not removed.",
-                    getServerAddress(), server);
-            return false;
+    public boolean grantReplicaSetVotes() {
+        while (true) {
+            BSONObject existingConfig = getReplicaSetConfig();
+            if (existingConfig == null) {
+                LOG.warn("Couldn't load existing config for replica set from {}. Votes not given.", address);
+                return false;
+            }
+            ReplicaSetConfig config = ReplicaSetConfig.fromExistingConfig(existingConfig);
+            Optional<HostAndPort> voter = config.nextVoter();
+            if (!voter.isPresent()) {
+                return true;
+            }
+            BasicBSONObject newConfig;
+            try {
+                newConfig = config.grantVote(voter.get()).build();
+            } catch (IllegalStateException e) {
+                LOG.warn("Cannot reconfigure replica set at {}: {}", address, e.getMessage());
+                return false;
+            }
+            if (!reconfigureReplicaSet(newConfig)) {
+                LOG.debug("Could not give vote to {} in replica set at {}", voter.get(), address);
+                return false;
+            }
+            LOG.debug("Gave vote to {} in replica set at {}", voter.get(), address);
         }
-        BasicBSONObject newConfig = ReplicaSetConfig.fromExistingConfig(existingConfig)
-                .primary(getServerHostAndPort())
-                .remove(server)
-                .build();
-        return reconfigureReplicaSet(newConfig);
+    }
+
+    /** @see ReplicaSetConfig#member(MongoDBServer, Integer) */
+    private static HostAndPort getMemberAddress(MongoDBServer server) {
+        return BrooklynAccessUtils.getBrooklynAccessibleAddress(server, server.getAttribute(MongoDBServer.PORT));
     }
 
     /**
@@ -30,6 +30,7 @@ import org.apache.brooklyn.entity.database.DatastoreMixins.HasDatastoreUrl;
 import org.apache.brooklyn.entity.group.Cluster;
 import org.apache.brooklyn.entity.group.DynamicCluster;
 import org.apache.brooklyn.util.core.flags.SetFromFlag;
+import org.apache.brooklyn.util.time.Duration;
 
 import com.google.common.reflect.TypeToken;
 
@@ -55,12 +56,29 @@ public interface MongoDBReplicaSet extends DynamicCluster, MongoDBAuthentication
 
     ConfigKey<Integer> INITIAL_SIZE = ConfigKeys.newConfigKeyWithDefault(Cluster.INITIAL_SIZE, 3);
 
+    @SetFromFlag("membershipChangeTimeout")
+    ConfigKey<Duration> MEMBERSHIP_CHANGE_TIMEOUT = ConfigKeys.newConfigKey(Duration.class,
+            "mongodb.replicaSet.membership.timeout", "How long to keep retrying the addition or removal of a member before giving up", 
+            Duration.minutes(20));
+
+    @SetFromFlag("membershipRetryMaxDelay")
+    ConfigKey<Duration> MEMBERSHIP_RETRY_MAX_DELAY = ConfigKeys.newConfigKey(Duration.class,
+            "mongodb.replicaSet.membership.retry.maxDelay", "Longest delay between retries of pending member additions and removals "
+                + "(the delay doubles from 3 seconds)", 
+            Duration.ONE_MINUTE);
+
     AttributeSensor<MongoDBServer> PRIMARY_ENTITY = Sensors.newSensor(
             MongoDBServer.class, "mongodb.replicaSet.primary.entity", "The entity acting as primary");
 
     @SuppressWarnings("serial")
     AttributeSensor<List<String>> REPLICA_SET_ENDPOINTS = Sensors.newSensor(new TypeToken<List<String>>() {}, 
         "mongodb.replicaSet.endpoints", "Endpoints active for this replica set");
+
+    AttributeSensor<Integer> MEMBERSHIP_CHANGES_PENDING = Sensors.newIntegerSensor(
+            "mongodb.replicaSet.membership.pending", "Number of members waiting to be added to or removed from the replica set");
+
+    AttributeSensor<Integer> MEMBERSHIP_CHANGE_RETRIES = Sensors.newIntegerSensor(
+            "mongodb.replicaSet.membership.retries", "Number of times pending member additions and removals have been retried");
     
 
     /**
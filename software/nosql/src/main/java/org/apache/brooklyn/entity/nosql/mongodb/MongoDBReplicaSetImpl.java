@@ -22,12 +22,14 @@ import static com.google.common.base.Preconditions.checkArgument;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -50,15 +52,21 @@ import org.apache.brooklyn.entity.group.DynamicClusterImpl;
 import org.apache.brooklyn.util.collections.MutableList;
 import org.apache.brooklyn.util.collections.MutableSet;
 import org.apache.brooklyn.util.text.Strings;
+import org.apache.brooklyn.util.time.Duration;
+import org.apache.brooklyn.util.time.Time;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 /**
  * Implementation of {@link MongoDBReplicaSet}.
@@ -92,14 +100,20 @@ public class MongoDBReplicaSetImpl extends DynamicClusterImpl implements MongoDB
     public MongoDBReplicaSetImpl() {
     }
 
+    // Members waiting to be added to or removed from the set, with how long they have been waiting.
+    private final Map<MongoDBServer, Stopwatch> pendingAdditions = Collections.synchronizedMap(new LinkedHashMap<MongoDBServer, Stopwatch>());
+    private final Map<MongoDBServer, Stopwatch> pendingRemovals = Collections.synchronizedMap(new LinkedHashMap<MongoDBServer, Stopwatch>());
+    // Whether members have been added or removed since the set last had all the voters it should.
+    private final AtomicBoolean votesPending = new AtomicBoolean(false);
+
     /**
      * Manages member addition and removal.
      *
-     * It's important that this is a single thread: the concurrent addition and removal
+     * It's important that this is done by one pass at a time: the concurrent addition and removal
      * of members from the set would almost certainly have unintended side effects,
      * like reconfigurations using outdated ReplicaSetConfig instances.
      */
-    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private MembershipChangeScheduler membershipChanges;
 
     /** true iff input is a non-null MongoDBServer with attribute REPLICA_SET_MEMBER_STATUS PRIMARY. */
     static final Predicate<Entity> IS_PRIMARY = new Predicate<Entity>() {
@@ -233,7 +247,9 @@ public class MongoDBReplicaSetImpl extends DynamicClusterImpl implements MongoDB
             } else {
                 if (LOG.isDebugEnabled())
                     LOG.debug("Scheduling addition of member to {}: {}", getName(), server);
-                addSecondaryWhenPrimaryIsNonNull(server);
+                pendingAdditions.put(server, Stopwatch.createStarted());
+                publishPendingMembershipChanges();
+                getMembershipChanges().runSoon();
             }
         } catch (Exception e) {
             ServiceStateLogic.ServiceNotUpLogic.updateNotUpIndicator(server, "Failed to update replicaset", e);
@@ -241,56 +257,10 @@ public class MongoDBReplicaSetImpl extends DynamicClusterImpl implements MongoDB
     }
 
     /**
-     * Adds a server as a secondary in the replica set.
-     * <p/>
-     * If {@link #getPrimary} returns non-null submit the secondary to the primary's
-     * {@link MongoDBClientSupport}. Otherwise, reschedule the task to run again in three
-     * seconds time (in the hope that next time the primary will be available).
-     */
-    private void addSecondaryWhenPrimaryIsNonNull(final MongoDBServer secondary) {
-        // TODO Don't use executor, use ExecutionManager
-        executor.submit(new Runnable() {
-            @Override
-            public void run() {
-                // SERVICE_UP is not guaranteed when additional members are added to the set.
-                Boolean isAvailable = secondary.sensors().get(MongoDBServer.SERVICE_UP);
-                MongoDBServer primary = getPrimary();
-                boolean reschedule;
-                if (Boolean.TRUE.equals(isAvailable) && primary != null) {
-                    boolean added = primary.addMemberToReplicaSet(secondary, nextMemberId.incrementAndGet());
-                    if (added) {
-                        LOG.info("{} added to replica set {}", secondary, getName());
-                        reschedule = false;
-                    } else {
-                        if (LOG.isDebugEnabled()) {
-                            LOG.debug("{} could not be added to replica set via {}; rescheduling", secondary, getName());
-                        }
-                        reschedule = true;
-                    }
-                } else {
-                    if (LOG.isTraceEnabled()) {
-                        LOG.trace("Rescheduling addition of member {} to replica set {}: service_up={}, primary={}",
-                            new Object[] {secondary, getName(), isAvailable, primary});
-                    }
-                    reschedule = true;
-                }
-                
-                if (reschedule) {
-                    // TODO Could limit number of retries
-                    executor.schedule(this, 3, TimeUnit.SECONDS);
-                }
-            }
-        });
-    }
-
-    /**
-     * Removes a server from the replica set.
-     * <p/>
-     * Submits a task that waits for the member to be down and for the replica set to have a primary
-     * member, then reconfigures the set to remove the member, to {@link #executor}. If either of the
-     * two conditions are not met then the task reschedules itself.
+     * Schedules the removal of a server from the replica set.
      *
      * @param member The server to be removed from the replica set.
+     * @see #applyMembershipChanges()
      */
     private void serverRemoved(final MongoDBServer member) {
         try {
@@ -299,49 +269,158 @@ public class MongoDBReplicaSetImpl extends DynamicClusterImpl implements MongoDB
             // FIXME is there a chance of race here?
             if (member.equals(sensors().get(PRIMARY_ENTITY)))
                 sensors().set(PRIMARY_ENTITY, null);
-            executor.submit(new Runnable() {
-                @Override
-                public void run() {
-                    // Wait until the server has been stopped before reconfiguring the set. Quoth the MongoDB doc:
-                    // for best results always shut down the mongod instance before removing it from a replica set.
-                    Boolean isAvailable = member.sensors().get(MongoDBServer.SERVICE_UP);
-                    // Wait for the replica set to elect a new primary if the set is reconfiguring itself.
-                    MongoDBServer primary = getPrimary();
-                    boolean reschedule;
-
-                    if (primary != null && !isAvailable) {
-                        boolean removed = primary.removeMemberFromReplicaSet(member);
-                        if (removed) {
-                            LOG.info("Removed {} from replica set {}", member, getName());
-                            reschedule = false;
-                        } else {
-                            if (LOG.isDebugEnabled()) {
-                                LOG.debug("{} could not be removed from replica set via {}; rescheduling", member, getName());
-                            }
-                            reschedule = true;
-                        }
+            pendingAdditions.remove(member);
+            pendingRemovals.put(member, Stopwatch.createStarted());
+            publishPendingMembershipChanges();
+            getMembershipChanges().runSoon();
+        } catch (Exception e) {
+            ServiceStateLogic.ServiceNotUpLogic.updateNotUpIndicator(member, "Failed to update replicaset", e);
+        }
+    }
 
-                    } else {
-                        if (LOG.isTraceEnabled()) {
-                            LOG.trace("Rescheduling removal of member {} from replica set {}: service_up={}, primary={}",
-                                    new Object[]{member, getName(), isAvailable, primary});
+    private synchronized MembershipChangeScheduler getMembershipChanges() {
+        if (membershipChanges == null) {
+            membershipChanges = new MembershipChangeScheduler(this, "Update members of replica set", new Callable<Boolean>() {
+                        @Override
+                        public Boolean call() {
+                            return applyMembershipChanges();
                         }
-                        reschedule = true;
-                    }
+                    }, MEMBERSHIP_CHANGE_RETRIES, MembershipChangeScheduler.DEFAULT_INITIAL_DELAY, config().get(MEMBERSHIP_RETRY_MAX_DELAY));
+        }
+        return membershipChanges;
+    }
 
-                    if (reschedule) {
-                        // TODO Could limit number of retries
-                        executor.schedule(this, 3, TimeUnit.SECONDS);
-                    }
+    /**
+     * Applies the pending removals and additions of members which are ready, via the primary.
+     * <p/>
+     * A member is removed once it is down and the set has a primary, and a secondary is added once it is up and
+     * the set has a primary; all those ready are applied by a single reconfiguration or, if that fails, one
+     * reconfiguration each, so that one failing member does not hold back the others. Changes not yet possible
+     * (or which fail) are left pending, to be retried, until {@link #MEMBERSHIP_CHANGE_TIMEOUT}.
+     * <p/>
+     * New members are added without votes; the primary then gives votes one reconfiguration at a time
+     * (see {@link MongoDBServer#grantReplicaSetVotes()}), to keep an odd number of voters.
+     *
+     * @return true if any changes (or votes) are left pending
+     */
+    private boolean applyMembershipChanges() {
+        // Wait for the replica set to elect a new primary if the set is reconfiguring itself.
+        MongoDBServer primary = getPrimary();
+
+        List<MongoDBServer> removals = Lists.newArrayList();
+        for (MongoDBServer member : snapshot(pendingRemovals)) {
+            // Wait until the server has been stopped before reconfiguring the set. Quoth the MongoDB doc:
+            // for best results always shut down the mongod instance before removing it from a replica set.
+            Boolean isAvailable = member.sensors().get(MongoDBServer.SERVICE_UP);
+            if (primary != null && !Boolean.TRUE.equals(isAvailable)) {
+                removals.add(member);
+            } else if (LOG.isTraceEnabled()) {
+                LOG.trace("Deferring removal of member {} from replica set {}: service_up={}, primary={}",
+                        new Object[]{member, getName(), isAvailable, primary});
+            }
+        }
+
+        List<MongoDBServer> additions = Lists.newArrayList();
+        for (MongoDBServer secondary : snapshot(pendingAdditions)) {
+            // SERVICE_UP is not guaranteed when additional members are added to the set.
+            Boolean isAvailable = secondary.sensors().get(MongoDBServer.SERVICE_UP);
+            if (Boolean.TRUE.equals(isAvailable) && primary != null) {
+                additions.add(secondary);
+            } else if (LOG.isTraceEnabled()) {
+                LOG.trace("Deferring addition of member {} to replica set {}: service_up={}, primary={}",
+                    new Object[] {secondary, getName(), isAvailable, primary});
+            }
+        }
+
+        if (!removals.isEmpty() || !additions.isEmpty()) {
+            // All in one reconfiguration of the set, rather than one (and one election) per member
+            Map<MongoDBServer, Integer> idsByAddition = Maps.newLinkedHashMap();
+            for (MongoDBServer secondary : additions) {
+                idsByAddition.put(secondary, nextMemberId.incrementAndGet());
+            }
+            boolean updated = primary.updateReplicaSetMembers(idsByAddition, removals);
+            if (updated) {
+                if (!removals.isEmpty()) LOG.info("Removed {} from replica set {}", removals, getName());
+                if (!additions.isEmpty()) LOG.info("{} added to replica set {}", additions, getName());
+                pendingRemovals.keySet().removeAll(removals);
+                pendingAdditions.keySet().removeAll(additions);
+                votesPending.set(true);
+            } else if (removals.size() + additions.size() > 1) {
+                // One bad member fails the whole reconfiguration; so apply the changes one at a time,
+                // leaving only those which fail pending.
+                LOG.debug("{} could not be added to, and {} removed from, replica set {} together; applying them one at a time",
+                        new Object[] {additions, removals, getName()});
+                applyMembershipChangesSeparately(primary, idsByAddition, removals);
+            } else if (LOG.isDebugEnabled()) {
+                LOG.debug("{} could not be added to, and {} removed from, replica set {}; will retry", 
+                        new Object[] {additions, removals, getName()});
+            }
+        }
+
+        if (votesPending.get() && primary != null) {
+            if (primary.grantReplicaSetVotes()) {
+                votesPending.set(false);
+            } else if (LOG.isDebugEnabled()) {
+                LOG.debug("Votes could not all be given in replica set {}; will retry", getName());
+            }
+        }
+
+        Duration timeout = config().get(MEMBERSHIP_CHANGE_TIMEOUT);
+        expirePendingChanges(pendingRemovals, "removal", timeout);
+        expirePendingChanges(pendingAdditions, "addition", timeout);
+        publishPendingMembershipChanges();
+        return !pendingRemovals.isEmpty() || !pendingAdditions.isEmpty() || votesPending.get();
+    }
+
+    private void applyMembershipChangesSeparately(MongoDBServer primary, Map<MongoDBServer, Integer> idsByAddition,
+            List<MongoDBServer> removals) {
+        for (MongoDBServer member : removals) {
+            if (primary.updateReplicaSetMembers(ImmutableMap.<MongoDBServer, Integer>of(), ImmutableList.of(member))) {
+                LOG.info("Removed {} from replica set {}", member, getName());
+                pendingRemovals.remove(member);
+                votesPending.set(true);
+            } else if (LOG.isDebugEnabled()) {
+                LOG.debug("{} could not be removed from replica set {}; will retry", member, getName());
+            }
+        }
+        for (Map.Entry<MongoDBServer, Integer> entry : idsByAddition.entrySet()) {
+            MongoDBServer secondary = entry.getKey();
+            if (primary.updateReplicaSetMembers(ImmutableMap.of(secondary, entry.getValue()), ImmutableList.<MongoDBServer>of())) {
+                LOG.info("{} added to replica set {}", secondary, getName());
+                pendingAdditions.remove(secondary);
+                votesPending.set(true);
+            } else if (LOG.isDebugEnabled()) {
+                LOG.debug("{} could not be added to replica set {}; will retry", secondary, getName());
+            }
+        }
+    }
+
+    private void expirePendingChanges(Map<MongoDBServer, Stopwatch> pending, String change, Duration timeout) {
+        synchronized (pending) {
+            for (Iterator<Map.Entry<MongoDBServer, Stopwatch>> iter = pending.entrySet().iterator(); iter.hasNext();) {
+                Map.Entry<MongoDBServer, Stopwatch> entry = iter.next();
+                if (entry.getValue().elapsed(TimeUnit.MILLISECONDS) > timeout.toMilliseconds()) {
+                    LOG.warn("Timeout after {} waiting for {} of member {} in replica set {}; aborting", 
+                            new Object[] {Time.makeTimeStringRounded(entry.getValue()), change, entry.getKey(), getName()});
+                    iter.remove();
                 }
-            });
-        } catch (Exception e) {
-            ServiceStateLogic.ServiceNotUpLogic.updateNotUpIndicator(member, "Failed to update replicaset", e);
+            }
         }
     }
 
+    private static List<MongoDBServer> snapshot(Map<MongoDBServer, Stopwatch> pending) {
+        synchronized (pending) {
+            return ImmutableList.copyOf(pending.keySet());
+        }
+    }
+
+    private void publishPendingMembershipChanges() {
+        sensors().set(MEMBERSHIP_CHANGES_PENDING, pendingAdditions.size() + pendingRemovals.size());
+    }
+
     @Override
     public void start(Collection<? extends Location> locations) {
+        getMembershipChanges().start();
         // Promises that all the cluster's members have SERVICE_UP true on returning.
         super.start(locations);
         policy = policies().add(PolicySpec.create(MemberTrackingPolicy.class)
@@ -436,9 +515,8 @@ public class MongoDBReplicaSetImpl extends DynamicClusterImpl implements MongoDB
         // Do we want to remove the members from the replica set?
         //  - if the set is being stopped forever it's irrelevant
         //  - if the set might be restarted I think it just inconveniences us
-        // Terminate the executor immediately.
-        // TODO Note that after this the executor will not run if the set is restarted.
-        executor.shutdownNow();
+        // Cancel any pending changes; they are scheduled again if the set is restarted.
+        getMembershipChanges().stop();
         super.stop();
         sensors().set(Startable.SERVICE_UP, false);
     }
@@ -446,7 +524,7 @@ public class MongoDBReplicaSetImpl extends DynamicClusterImpl implements MongoDB
     @Override
     public void onManagementStopped() {
         super.onManagementStopped();
-        executor.shutdownNow();
+        getMembershipChanges().stop();
     }
     
     public static class MemberTrackingPolicy extends AbstractMembershipTrackingPolicy {
@@ -18,6 +18,9 @@
  */
 package org.apache.brooklyn.entity.nosql.mongodb;
 
+import java.util.Collection;
+import java.util.Map;
+
 import org.bson.BasicBSONObject;
 import org.apache.brooklyn.api.catalog.Catalog;
 import org.apache.brooklyn.api.entity.ImplementedBy;
@@ -151,4 +154,25 @@ public interface MongoDBServer extends AbstractMongoDBServer {
      */
     boolean removeMemberFromReplicaSet(MongoDBServer server);
 
+    /**
+     * Reconfigures the replica set that the server the method is invoked on is the primary member of
+     * to include the given new members and to remove the given servers, all in one reconfiguration.
+     *
+     * @param additions New members of the set, with their ids. The ids must be unique within the set; their
+     *                  validity is not checked.
+     * @param removals The servers to remove.
+     * @return True if the reconfiguration is successful. False if the server this is called on is not the primary
+     *         member of the replica set.
+     */
+    boolean updateReplicaSetMembers(Map<MongoDBServer, Integer> additions, Collection<MongoDBServer> removals);
+
+    /**
+     * Gives votes, one reconfiguration at a time, to the members of the replica set that the server the method
+     * is invoked on is the primary member of which were added without them, up to the set's number of voters.
+     *
+     * @return True if the set has all the voters it should. False if a reconfiguration fails, or if the server
+     *         this is called on is not the primary member of the replica set.
+     */
+    boolean grantReplicaSetVotes();
+
 }
@@ -19,22 +19,25 @@
 package org.apache.brooklyn.entity.nosql.mongodb;
 
 import java.net.UnknownHostException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
-import org.apache.brooklyn.api.sensor.SensorEvent;
-import org.apache.brooklyn.api.sensor.SensorEventListener;
 import org.apache.brooklyn.core.config.render.RendererHints;
 import org.apache.brooklyn.core.location.access.BrooklynAccessUtils;
 import org.apache.brooklyn.entity.software.base.SoftwareProcessImpl;
 import org.apache.brooklyn.feed.function.FunctionFeed;
 import org.apache.brooklyn.feed.function.FunctionPollConfig;
+import org.apache.brooklyn.util.exceptions.Exceptions;
 import org.bson.BasicBSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Functions;
 import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
 import com.google.common.net.HostAndPort;
 
 public class MongoDBServerImpl extends SoftwareProcessImpl implements MongoDBServer {
@@ -45,8 +48,15 @@ public class MongoDBServerImpl extends SoftwareProcessImpl implements MongoDBSer
         RendererHints.register(HTTP_INTERFACE_URL, RendererHints.namedActionWithUrl());
     }
 
+    /**
+     * Sections of the <code>serverStatus</code> document not used by {@link #pollStatus()}; only uptime, opcounters,
+     * network and repl are.
+     */
+    protected static final List<String> SERVER_STATUS_EXCLUDED_SECTIONS = ImmutableList.of(
+            "asserts", "backgroundFlushing", "connections", "cursors", "dur", "extra_info", "globalLock", "locks",
+            "mem", "metrics", "opcountersRepl", "recordStats", "security", "storageEngine", "tcmalloc", "wiredTiger");
+
     private FunctionFeed serviceStats;
-    private FunctionFeed replicaSetStats;
     private MongoDBClientSupport client;
 
     public MongoDBServerImpl() {
@@ -79,6 +89,7 @@ public class MongoDBServerImpl extends SoftwareProcessImpl implements MongoDBSer
                 return;
             }
     
+            // One poll per server for everything published from its status, whether or not a replica set member
             serviceStats = FunctionFeed.builder()
                     .entity(this)
                     .poll(new FunctionPollConfig<Object, BasicBSONObject>(STATUS_BSON)
@@ -86,77 +97,74 @@ public class MongoDBServerImpl extends SoftwareProcessImpl implements MongoDBSer
                             .callable(new Callable<BasicBSONObject>() {
                                 @Override
                                 public BasicBSONObject call() throws Exception {
-                                    return MongoDBServerImpl.this.sensors().get(SERVICE_UP)
-                                        ? client.getServerStatus()
-                                        : null;
+                                    return pollStatus();
                                 }
                             })
                             .onException(Functions.<BasicBSONObject>constant(null)))
                     .build();
-    
-            if (isReplicaSetMember()) {
-                replicaSetStats = FunctionFeed.builder()
-                        .entity(this)
-                        .poll(new FunctionPollConfig<Object, ReplicaSetMemberStatus>(REPLICA_SET_MEMBER_STATUS)
-                                .period(2, TimeUnit.SECONDS)
-                                .callable(new Callable<ReplicaSetMemberStatus>() {
-                                    /**
-                                     * Calls {@link MongoDBClientSupport#getReplicaSetStatus} and
-                                     * extracts <code>myState</code> from the response.
-                                     * @return
-                                     *      The appropriate {@link org.apache.brooklyn.entity.nosql.mongodb.ReplicaSetMemberStatus}
-                                     *      if <code>myState</code> was non-null, {@link ReplicaSetMemberStatus#UNKNOWN} otherwise.
-                                     */
-                                    @Override
-                                    public ReplicaSetMemberStatus call() {
-                                        BasicBSONObject serverStatus = client.getReplicaSetStatus();
-                                        int state = serverStatus.getInt("myState", -1);
-                                        return ReplicaSetMemberStatus.fromCode(state);
-                                    }
-                                })
-                                .onException(Functions.constant(ReplicaSetMemberStatus.UNKNOWN))
-                                .suppressDuplicates(true))
-                        .build();
-            } else {
+
+            if (!isReplicaSetMember()) {
                 sensors().set(IS_PRIMARY_FOR_REPLICA_SET, false);
                 sensors().set(IS_SECONDARY_FOR_REPLICA_SET, false);
             }
         } else {
             LOG.info("Not monitoring "+this+" to retrieve state via client API");
         }
+    }
+
+    /**
+     * Runs <code>serverStatus</code> (without the {@link #SERVER_STATUS_EXCLUDED_SECTIONS unused sections}) and, for 
+     * a replica set member, <code>replSetGetStatus</code>, on the shared client of this server, and publishes the
+     * sensors derived from them.
+     * 
+     * @return the (partial) server status, for {@link #STATUS_BSON}; null if the service is not up
+     */
+    protected BasicBSONObject pollStatus() {
+        if (isReplicaSetMember()) {
+            ReplicaSetMemberStatus memberStatus;
+            try {
+                // extracts myState from the response; UNKNOWN if it was null
+                memberStatus = ReplicaSetMemberStatus.fromCode(client.getReplicaSetStatus().getInt("myState", -1));
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                memberStatus = ReplicaSetMemberStatus.UNKNOWN;
+            }
+            if (memberStatus != sensors().get(REPLICA_SET_MEMBER_STATUS)) {
+                sensors().set(REPLICA_SET_MEMBER_STATUS, memberStatus);
+            }
+        }
+
+        if (!Boolean.TRUE.equals(sensors().get(SERVICE_UP))) {
+            return null;
+        }
+        BasicBSONObject map = client.getServerStatus(SERVER_STATUS_EXCLUDED_SECTIONS);
+        if (!map.isEmpty()) {
+            sensors().set(UPTIME_SECONDS, map.getDouble("uptime", 0));
+
+            // Operations
+            BasicBSONObject opcounters = (BasicBSONObject) map.get("opcounters");
+            sensors().set(OPCOUNTERS_INSERTS, opcounters.getLong("insert", 0));
+            sensors().set(OPCOUNTERS_QUERIES, opcounters.getLong("query", 0));
+            sensors().set(OPCOUNTERS_UPDATES, opcounters.getLong("update", 0));
+            sensors().set(OPCOUNTERS_DELETES, opcounters.getLong("delete", 0));
+            sensors().set(OPCOUNTERS_GETMORE, opcounters.getLong("getmore", 0));
+            sensors().set(OPCOUNTERS_COMMAND, opcounters.getLong("command", 0));
 
-        // Take interesting details from STATUS.
-        subscriptions().subscribe(this, STATUS_BSON, new SensorEventListener<BasicBSONObject>() {
-                @Override public void onEvent(SensorEvent<BasicBSONObject> event) {
-                    BasicBSONObject map = event.getValue();
-                    if (map != null && !map.isEmpty()) {
-                        sensors().set(UPTIME_SECONDS, map.getDouble("uptime", 0));
-
-                        // Operations
-                        BasicBSONObject opcounters = (BasicBSONObject) map.get("opcounters");
-                        sensors().set(OPCOUNTERS_INSERTS, opcounters.getLong("insert", 0));
-                        sensors().set(OPCOUNTERS_QUERIES, opcounters.getLong("query", 0));
-                        sensors().set(OPCOUNTERS_UPDATES, opcounters.getLong("update", 0));
-                        sensors().set(OPCOUNTERS_DELETES, opcounters.getLong("delete", 0));
-                        sensors().set(OPCOUNTERS_GETMORE, opcounters.getLong("getmore", 0));
-                        sensors().set(OPCOUNTERS_COMMAND, opcounters.getLong("command", 0));
-
-                        // Network stats
-                        BasicBSONObject network = (BasicBSONObject) map.get("network");
-                        sensors().set(NETWORK_BYTES_IN, network.getLong("bytesIn", 0));
-                        sensors().set(NETWORK_BYTES_OUT, network.getLong("bytesOut", 0));
-                        sensors().set(NETWORK_NUM_REQUESTS, network.getLong("numRequests", 0));
-
-                        // Replica set stats
-                        BasicBSONObject repl = (BasicBSONObject) map.get("repl");
-                        if (isReplicaSetMember() && repl != null) {
-                            sensors().set(IS_PRIMARY_FOR_REPLICA_SET, repl.getBoolean("ismaster"));
-                            sensors().set(IS_SECONDARY_FOR_REPLICA_SET, repl.getBoolean("secondary"));
-                            sensors().set(REPLICA_SET_PRIMARY_ENDPOINT, repl.getString("primary"));
-                        }
-                    }
-                }
-        });
+            // Network stats
+            BasicBSONObject network = (BasicBSONObject) map.get("network");
+            sensors().set(NETWORK_BYTES_IN, network.getLong("bytesIn", 0));
+            sensors().set(NETWORK_BYTES_OUT, network.getLong("bytesOut", 0));
+            sensors().set(NETWORK_NUM_REQUESTS, network.getLong("numRequests", 0));
+
+            // Replica set stats
+            BasicBSONObject repl = (BasicBSONObject) map.get("repl");
+            if (isReplicaSetMember() && repl != null) {
+                sensors().set(IS_PRIMARY_FOR_REPLICA_SET, repl.getBoolean("ismaster"));
+                sensors().set(IS_SECONDARY_FOR_REPLICA_SET, repl.getBoolean("secondary"));
+                sensors().set(REPLICA_SET_PRIMARY_ENDPOINT, repl.getString("primary"));
+            }
+        }
+        return map;
     }
 
     @Override
@@ -164,7 +172,6 @@ public class MongoDBServerImpl extends SoftwareProcessImpl implements MongoDBSer
         super.disconnectSensors();
         disconnectServiceUpIsRunning();
         if (serviceStats != null) serviceStats.stop();
-        if (replicaSetStats != null) replicaSetStats.stop();
     }
 
     protected boolean clientAccessEnabled() {
@@ -188,9 +195,9 @@ public class MongoDBServerImpl extends SoftwareProcessImpl implements MongoDBSer
 
     @Override
     public boolean addMemberToReplicaSet(MongoDBServer secondary, Integer id) {
-        // TODO The attributes IS_PRIMARY_FOR_REPLICA_SET and REPLICA_SET_MEMBER_STATUS can be out-of-sync.
-        // The former is obtained by an enricher that listens to STATUS_BSON (set by client.getServerStatus()).
-        // The latter is set by a different feed doing client.getReplicaSetStatus().getInt("myState").
+        // TODO The attributes IS_PRIMARY_FOR_REPLICA_SET and REPLICA_SET_MEMBER_STATUS can be briefly out-of-sync.
+        // Both are set by pollStatus, but the former from serverStatus and the latter from a separate
+        // replSetGetStatus (its "myState"), so a change of primary can come between them.
         // The ReplicaSet uses REPLICA_SET_MEMBER_STATUS to determine which node to call.
         // 
         // Relying on caller to respect the `false` result, to retry.
@@ -216,6 +223,32 @@ public class MongoDBServerImpl extends SoftwareProcessImpl implements MongoDBSer
         return client.removeMemberFromReplicaSet(server);
     }
 
+    @Override
+    public boolean updateReplicaSetMembers(Map<MongoDBServer, Integer> additions, Collection<MongoDBServer> removals) {
+        if (!sensors().get(IS_PRIMARY_FOR_REPLICA_SET)) {
+            LOG.warn("Attempted to add {} to and remove {} from replica set at server that is not primary: {}", 
+                    new Object[] {additions.keySet(), removals, this});
+            return false;
+        }
+        if (!clientAccessEnabled()) {
+            throw new IllegalStateException("client-access disabled for "+this+"; cannot add "+additions+" to and remove "
+                    +removals+" from replica set");
+        }
+        return client.updateReplicaSetMembers(additions, removals);
+    }
+
+    @Override
+    public boolean grantReplicaSetVotes() {
+        if (!sensors().get(IS_PRIMARY_FOR_REPLICA_SET)) {
+            LOG.warn("Attempted to give votes in replica set at server that is not primary: {}", this);
+            return false;
+        }
+        if (!clientAccessEnabled()) {
+            throw new IllegalStateException("client-access disabled for "+this+"; cannot give votes in replica set");
+        }
+        return client.grantReplicaSetVotes();
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
@@ -22,6 +22,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.Iterator;
+import java.util.Map;
 
 import org.apache.brooklyn.core.location.access.BrooklynAccessUtils;
 import org.bson.BSONObject;
@@ -62,6 +63,7 @@ public class ReplicaSetConfig {
 
     private String name;
     private Integer version;
+    private boolean assignVotes = true;
     BasicBSONList members;
 
     public ReplicaSetConfig(String name) {
@@ -84,7 +86,9 @@ public class ReplicaSetConfig {
     /**
      * Creates a configuration from an existing configuration.
      * <p/>
-     * Automatically increments the replica set's version number.
+     * Automatically increments the replica set's version number. Existing members keep their votes when the
+     * configuration is {@link #build() built}: MongoDB allows at most one voting member to be added or removed
+     * by a reconfiguration, so votes are changed only by {@link #grantVote(HostAndPort)}.
      */
     public static ReplicaSetConfig fromExistingConfig(BSONObject config) {
         checkNotNull(config);
@@ -96,7 +100,9 @@ public class ReplicaSetConfig {
         Integer version = (Integer) config.get("version");
         BasicBSONList members = (BasicBSONList) config.get("members");
 
-        return new ReplicaSetConfig(name, members).version(++version);
+        ReplicaSetConfig result = new ReplicaSetConfig(name, members).version(++version);
+        result.assignVotes = false;
+        return result;
     }
 
     /**
@@ -152,6 +158,69 @@ public class ReplicaSetConfig {
         return this;
     }
 
+    /**
+     * Adds the given members (with their ids) to the replica set config, so that they are all added by a single
+     * <code>replSetReconfig</code>. Doesn't attempt to check that the ids are free.
+     * <p/>
+     * The new members are added without votes and with priority 0, as MongoDB rejects a reconfiguration that
+     * adds more than one voting member; they are then given votes one reconfiguration at a time, with
+     * {@link #nextVoter()} and {@link #grantVote(HostAndPort)}.
+     *
+     * @throws IllegalStateException if the set would exceed its maximum size; no members are then added
+     */
+    public ReplicaSetConfig members(Map<HostAndPort, Integer> idsByAddress) {
+        if (members.size() + idsByAddress.size() > MAXIMUM_REPLICA_SET_SIZE) {
+            throw new IllegalStateException(String.format(
+                    "Replica set %s would exceed maximum size of %s with addition of members at %s",
+                    name, MAXIMUM_REPLICA_SET_SIZE, idsByAddress.keySet()));
+        }
+        for (Map.Entry<HostAndPort, Integer> entry : idsByAddress.entrySet()) {
+            member(entry.getKey(), entry.getValue());
+            BasicBSONObject member = (BasicBSONObject) members.get(members.size() - 1);
+            member.put("votes", 0);
+            member.put("priority", 0);
+        }
+        return this;
+    }
+
+    /**
+     * Gives a vote (and the default priority) to the member with the given address, which must not
+     * take the set past {@link #MAXIMUM_VOTING_MEMBERS}.
+     *
+     * @throws IllegalStateException if there is no such member, or the set already has the maximum number of voters
+     */
+    public ReplicaSetConfig grantVote(HostAndPort address) {
+        if (countVotingMembers() >= MAXIMUM_VOTING_MEMBERS) {
+            throw new IllegalStateException(String.format(
+                    "Replica set %s already has maximum of %s voting members; cannot give vote to %s",
+                    name, MAXIMUM_VOTING_MEMBERS, address));
+        }
+        BasicBSONObject member = findMember(address);
+        if (member == null) {
+            throw new IllegalStateException(String.format("No member at %s in replica set %s", address, name));
+        }
+        member.put("votes", 1);
+        member.removeField("priority");
+        return this;
+    }
+
+    /**
+     * @return The first member without a vote, if the set has fewer voters than it should: an odd number,
+     *         up to {@link #MAXIMUM_VOTING_MEMBERS}. Votes given in turn to each such member (one reconfiguration
+     *         each) leave the set with as many voters as {@link #build()} gives a new set.
+     */
+    public Optional<HostAndPort> nextVoter() {
+        if (countVotingMembers() >= targetVotingMembers(members.size())) {
+            return Optional.absent();
+        }
+        for (Object member : members) {
+            if (member instanceof BasicBSONObject && !isVotingMember((BasicBSONObject) member)) {
+                return Optional.of(HostAndPort.fromString(((BasicBSONObject) member).getString("host")));
+            }
+        }
+        return Optional.absent();
+    }
+
     /** Removes the first entity using {@link MongoDBServer#HOSTNAME} and {@link MongoDBServer#PORT}. */
     public ReplicaSetConfig remove(MongoDBServer server) {
         HostAndPort hap = BrooklynAccessUtils.getBrooklynAccessibleAddress(server, server.getAttribute(MongoDBServer.PORT));
@@ -163,6 +232,14 @@ public class ReplicaSetConfig {
         return remove(address.getHost(), address.getPort());
     }
 
+    /** Removes the first entity with host and port matching each of the given addresses. */
+    public ReplicaSetConfig remove(Iterable<HostAndPort> addresses) {
+        for (HostAndPort address : addresses) {
+            remove(address);
+        }
+        return this;
+    }
+
     /**
      * Removes the first entity with the given hostname and port from the list of members
      */
@@ -186,7 +263,9 @@ public class ReplicaSetConfig {
      * @return A {@link BasicBSONObject} representing the configuration that is suitable for a MongoDB server.
      */
     public BasicBSONObject build() {
-        setVotingMembers();
+        if (assignVotes) {
+            setVotingMembers();
+        }
         BasicBSONObject config = new BasicBSONObject();
         config.put("_id", name);
         config.put("version", version);
@@ -233,8 +312,7 @@ public class ReplicaSetConfig {
                 : "";
 
         // Ensure an odd number of voters
-        int setSize = this.members.size();
-        int nonPrimaryVotingMembers = Math.min(setSize % 2 == 0 ? setSize - 1 : setSize, MAXIMUM_VOTING_MEMBERS);
+        int nonPrimaryVotingMembers = targetVotingMembers(this.members.size());
         if (primary.isPresent()) {
             if (LOG.isTraceEnabled())
                 LOG.trace("Reserving vote for primary: " + expectedPrimary);
@@ -249,15 +327,18 @@ public class ReplicaSetConfig {
                 // is this member noted as the primary?
                 if (this.primary.isPresent() && expectedPrimary.equals(host)) {
                     bsonObject.put("votes", 1);
+                    bsonObject.removeField("priority");
                     seenPrimary = true;
                     if (LOG.isDebugEnabled())
                         LOG.debug("Voting member (primary) of set {}: {}", name, host);
                 } else if (nonPrimaryVotingMembers-- > 0) {
                     bsonObject.put("votes", 1);
+                    bsonObject.removeField("priority");
                     if (LOG.isDebugEnabled())
                         LOG.debug("Voting member of set {}: {}", name, host);
                 } else {
                     bsonObject.put("votes", 0);
+                    bsonObject.put("priority", 0);
                     if (LOG.isDebugEnabled())
                         LOG.debug("Non-voting member of set {}: {}", name, host);
                 }
@@ -274,4 +355,34 @@ public class ReplicaSetConfig {
         }
     }
 
+    /** The number of voters a set of the given size should have: odd, and at most {@link #MAXIMUM_VOTING_MEMBERS}. */
+    private static int targetVotingMembers(int setSize) {
+        return Math.min(setSize % 2 == 0 ? setSize - 1 : setSize, MAXIMUM_VOTING_MEMBERS);
+    }
+
+    /** Members without a <code>votes</code> field have the default of one vote. */
+    private static boolean isVotingMember(BasicBSONObject member) {
+        return !member.containsField("votes") || member.getInt("votes") > 0;
+    }
+
+    private int countVotingMembers() {
+        int count = 0;
+        for (Object member : members) {
+            if (member instanceof BasicBSONObject && isVotingMember((BasicBSONObject) member)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private BasicBSONObject findMember(HostAndPort address) {
+        String host = String.format("%s:%s", address.getHost(), address.getPort());
+        for (Object member : members) {
+            if (member instanceof BasicBSONObject && host.equals(((BasicBSONObject) member).getString("host"))) {
+                return (BasicBSONObject) member;
+            }
+        }
+        return null;
+    }
+
 }
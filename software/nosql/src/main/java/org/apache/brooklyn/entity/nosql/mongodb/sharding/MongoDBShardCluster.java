@@ -18,10 +18,46 @@
  */
 package org.apache.brooklyn.entity.nosql.mongodb.sharding;
 
+import java.util.Map;
+
 import org.apache.brooklyn.api.entity.ImplementedBy;
+import org.apache.brooklyn.api.sensor.AttributeSensor;
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.config.ConfigKeys;
+import org.apache.brooklyn.core.sensor.Sensors;
 import org.apache.brooklyn.entity.group.DynamicCluster;
+import org.apache.brooklyn.util.core.flags.SetFromFlag;
+import org.apache.brooklyn.util.time.Duration;
+
+import com.google.common.reflect.TypeToken;
 
 @ImplementedBy(MongoDBShardClusterImpl.class)
 public interface MongoDBShardCluster extends DynamicCluster {
 
+    @SetFromFlag("shardAdditionTimeout")
+    ConfigKey<Duration> SHARD_ADDITION_TIMEOUT = ConfigKeys.newConfigKey(Duration.class,
+            "mongodb.shardCluster.shardAddition.timeout", "How long to keep retrying the addition of a shard to the routers before giving up", 
+            Duration.minutes(20));
+
+    @SetFromFlag("shardAdditionRetryMaxDelay")
+    ConfigKey<Duration> SHARD_ADDITION_RETRY_MAX_DELAY = ConfigKeys.newConfigKey(Duration.class,
+            "mongodb.shardCluster.shardAddition.retry.maxDelay", "Longest delay between retries of pending shard additions "
+                + "(the delay doubles from 3 seconds)", 
+            Duration.ONE_MINUTE);
+
+    AttributeSensor<Integer> SHARDS_PENDING = Sensors.newIntegerSensor(
+            "mongodb.shardCluster.shards.pending", "Number of shards waiting to be added to the routers");
+
+    AttributeSensor<Integer> SHARD_ADDITION_RETRIES = Sensors.newIntegerSensor(
+            "mongodb.shardCluster.shardAddition.retries", "Number of times pending shard additions have been retried");
+
+    /**
+     * For each shard added, by replica set name, milliseconds from when it was queued until its primary was known
+     * ({@code primaryKnown}) and a router was running ({@code routerKnown}), how long the successful {@code addShard}
+     * command took ({@code addShardCommand}) and until it was added ({@code total}); and the number of {@code attempts}.
+     */
+    @SuppressWarnings("serial")
+    AttributeSensor<Map<String, Map<String, Long>>> SHARD_ADDITION_TIMES = Sensors.newSensor(
+            new TypeToken<Map<String, Map<String, Long>>>() {},
+            "mongodb.shardCluster.shardAddition.times", "Breakdown of the time taken to add each shard to the routers, in milliseconds");
 }
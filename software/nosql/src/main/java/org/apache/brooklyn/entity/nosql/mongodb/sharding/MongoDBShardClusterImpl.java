@@ -20,22 +20,30 @@ package org.apache.brooklyn.entity.nosql.mongodb.sharding;
 
 import java.net.UnknownHostException;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.brooklyn.api.entity.Entity;
 import org.apache.brooklyn.api.entity.EntitySpec;
 import org.apache.brooklyn.api.location.Location;
+import org.apache.brooklyn.api.mgmt.Task;
 import org.apache.brooklyn.api.sensor.SensorEvent;
 import org.apache.brooklyn.api.sensor.SensorEventListener;
+import org.apache.brooklyn.core.entity.Entities;
 import org.apache.brooklyn.core.entity.trait.Startable;
 import org.apache.brooklyn.entity.group.DynamicClusterImpl;
+import org.apache.brooklyn.entity.nosql.mongodb.MembershipChangeScheduler;
 import org.apache.brooklyn.entity.nosql.mongodb.MongoDBClientSupport;
 import org.apache.brooklyn.entity.nosql.mongodb.MongoDBReplicaSet;
 import org.apache.brooklyn.entity.nosql.mongodb.MongoDBServer;
+import org.apache.brooklyn.util.core.task.Tasks;
 import org.apache.brooklyn.util.exceptions.Exceptions;
 import org.apache.brooklyn.util.time.Duration;
 import org.apache.brooklyn.util.time.Time;
@@ -43,6 +51,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 public class MongoDBShardClusterImpl extends DynamicClusterImpl implements MongoDBShardCluster {
@@ -55,13 +66,20 @@ public class MongoDBShardClusterImpl extends DynamicClusterImpl implements Mongo
     // TODO: Need to use attributes for this in order to support brooklyn restart 
     private Set<Entity> addingMembers = Sets.newConcurrentHashSet();
 
+    // Shards waiting to be added to the routers, with the progress of their addition.
+    private final Map<Entity, ShardAddition> pendingShards = Collections.synchronizedMap(new LinkedHashMap<Entity, ShardAddition>());
+
+    // Clients of the running routers, by router id, reused by every pass.
+    private final ConcurrentMap<String, MongoDBClientSupport> routerClients = Maps.newConcurrentMap();
+
+    // Published as SHARD_ADDITION_TIMES.
+    private final Map<String, Map<String, Long>> shardAdditionTimes = Collections.synchronizedMap(new LinkedHashMap<String, Map<String, Long>>());
+
     /**
-     * For shard addition and removal.
+     * For shard addition.
      * Used for retrying.
-     * 
-     * TODO Should use ExecutionManager.
      */
-    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private MembershipChangeScheduler shardAdditions;
 
     @Override
     protected EntitySpec<?> getMemberSpec() {
@@ -74,12 +92,21 @@ public class MongoDBShardClusterImpl extends DynamicClusterImpl implements Mongo
 
     @Override
     public void start(Collection<? extends Location> locations) {
+        getShardAdditions().start();
         subscriptions().subscribeToMembers(this, Startable.SERVICE_UP, new SensorEventListener<Boolean>() {
             @Override
             public void onEvent(SensorEvent<Boolean> event) {
                 addShards();
             }
         });
+        // Shards are added as soon as their primary is known, rather than at the next retry
+        subscriptions().subscribeToMembers(this, MongoDBReplicaSet.PRIMARY_ENTITY, new SensorEventListener<MongoDBServer>() {
+            @Override
+            public void onEvent(SensorEvent<MongoDBServer> event) {
+                if (event.getValue() != null)
+                    addShards();
+            }
+        });
 
         super.start(locations);
         
@@ -91,94 +118,196 @@ public class MongoDBShardClusterImpl extends DynamicClusterImpl implements Mongo
                     addShards();
             }
         });
+        subscriptions().subscribeToMembers(routers, MongoDBRouter.RUNNING, new SensorEventListener<Boolean>() {
+            @Override
+            public void onEvent(SensorEvent<Boolean> event) {
+                if (Boolean.TRUE.equals(event.getValue())) {
+                    addShards();
+                } else {
+                    routerClients.remove(event.getSource().getId());
+                }
+            }
+        });
     }
 
     @Override
     public void stop() {
-        // TODO Note that after this the executor will not run if the set is restarted.
-        executor.shutdownNow();
+        // Cancel any pending additions; they are scheduled again if the cluster is restarted.
+        getShardAdditions().stop();
         super.stop();
     }
     
     @Override
     public void onManagementStopped() {
         super.onManagementStopped();
-        executor.shutdownNow();
+        getShardAdditions().stop();
     }
 
-    protected void addShards() {
-        MongoDBRouter router = getParent().getAttribute(MongoDBShardedDeployment.ROUTER_CLUSTER).getAttribute(MongoDBRouterCluster.ANY_RUNNING_ROUTER);
-        if (router == null) {
-            if (LOG.isTraceEnabled()) LOG.trace("Not adding shards because no running router in {}", this);
-            return;
+    private synchronized MembershipChangeScheduler getShardAdditions() {
+        if (shardAdditions == null) {
+            shardAdditions = new MembershipChangeScheduler(this, "Add shards to routers", new Callable<Boolean>() {
+                        @Override
+                        public Boolean call() {
+                            return addPendingShards();
+                        }
+                    }, SHARD_ADDITION_RETRIES, MembershipChangeScheduler.DEFAULT_INITIAL_DELAY, config().get(SHARD_ADDITION_RETRY_MAX_DELAY));
         }
-        
+        return shardAdditions;
+    }
+
+    /**
+     * Queues the members which are up, or whose primary is known, to be added as shards, and runs a pass over
+     * the pending shards, e.g. as a primary or a router has become known.
+     */
+    protected void addShards() {
         for (Entity member : this.getMembers()) {
-            if (member.getAttribute(Startable.SERVICE_UP) && !addingMembers.contains(member)) {
+            boolean ready = Boolean.TRUE.equals(member.getAttribute(Startable.SERVICE_UP))
+                    || member.getAttribute(MongoDBReplicaSet.PRIMARY_ENTITY) != null;
+            if (ready && addingMembers.add(member)) {
                 LOG.info("{} adding shard {}", new Object[] {MongoDBShardClusterImpl.this, member});
-                addingMembers.add(member);
                 addShardAsync(member);
             }
         }
+        if (!pendingShards.isEmpty()) {
+            getShardAdditions().runSoon();
+        }
     }
     
     protected void addShardAsync(final Entity replicaSet) {
-        final Duration timeout = Duration.minutes(20);
-        final Stopwatch stopwatch = Stopwatch.createStarted();
-        final AtomicInteger attempts = new AtomicInteger();
-        
-        // TODO Don't use executor, use ExecutionManager; but following pattern in MongoDBReplicaSetImpl for now.
-        executor.submit(new Runnable() {
-            @Override
-            public void run() {
-                boolean reschedule;
-                MongoDBRouter router = getParent().getAttribute(MongoDBShardedDeployment.ROUTER_CLUSTER).getAttribute(MongoDBRouterCluster.ANY_RUNNING_ROUTER);
-                if (router == null) {
-                    LOG.debug("Rescheduling adding shard {} because no running router for cluster {}", replicaSet, this);
-                    reschedule = true;
-                } else {
-                    MongoDBClientSupport client;
-                    try {
-                        client = MongoDBClientSupport.forServer(router);
-                    } catch (UnknownHostException e) {
-                        throw Exceptions.propagate(e);
-                    }
+        pendingShards.put(replicaSet, new ShardAddition());
+        sensors().set(SHARDS_PENDING, pendingShards.size());
+        getShardAdditions().runSoon();
+    }
 
-                    try {
-                        MongoDBServer primary = replicaSet.getAttribute(MongoDBReplicaSet.PRIMARY_ENTITY);
-                        if (primary != null) {
-                            String addr = String.format("%s:%d", primary.getAttribute(MongoDBServer.SUBNET_HOSTNAME), primary.getAttribute(MongoDBServer.PORT));
-                            String replicaSetURL = ((MongoDBReplicaSet) replicaSet).getName() + "/" + addr;
-                            boolean added = client.addShardToRouter(replicaSetURL);
-                            if (added) {
-                                LOG.info("{} added shard {} via {}", new Object[]{MongoDBShardClusterImpl.this, replicaSetURL, router});
-                                addedMembers.add(replicaSet);
-                                reschedule = false;
-                            } else {
-                                LOG.debug("Rescheduling addition of shard {} because add failed via router {}", replicaSetURL, router);
-                                reschedule = true;
-                            }
-                        } else {
-                            LOG.debug("Rescheduling addition of shard {} because primary is null", replicaSet);
-                            reschedule = true;
-                        }
-                    } catch (Exception e) {
-                        LOG.error("Failed to add shard to router {}:  ", router,  e);
-                        throw Exceptions.propagate(e);
-                    }
+    /**
+     * Adds the pending shards whose primary is known to the routers, concurrently, spread over the running routers.
+     * Shards which cannot be added yet are left pending, to be retried, until {@link #SHARD_ADDITION_TIMEOUT}.
+     *
+     * @return true if any shards are left pending
+     */
+    private boolean addPendingShards() {
+        List<MongoDBRouter> routers = getRunningRouters();
+        if (routers.isEmpty()) {
+            LOG.debug("Deferring adding shards {} because no running router for cluster {}", pendingShards.keySet(), this);
+        }
+
+        Map<Entity, ShardAddition> shards;
+        synchronized (pendingShards) {
+            shards = ImmutableMap.copyOf(pendingShards);
+        }
+        Map<Entity, Task<Boolean>> additions = Maps.newLinkedHashMap();
+        int next = 0;
+        for (Map.Entry<Entity, ShardAddition> entry : shards.entrySet()) {
+            MongoDBReplicaSet replicaSet = (MongoDBReplicaSet) entry.getKey();
+            ShardAddition addition = entry.getValue();
+            MongoDBServer primary = replicaSet.getAttribute(MongoDBReplicaSet.PRIMARY_ENTITY);
+            if (primary != null && addition.primaryKnown == null) addition.primaryKnown = addition.elapsed();
+            if (!routers.isEmpty() && addition.routerKnown == null) addition.routerKnown = addition.elapsed();
+
+            if (primary == null) {
+                LOG.debug("Deferring addition of shard {} because primary is null", replicaSet);
+            } else if (!routers.isEmpty()) {
+                MongoDBRouter router = routers.get(next++ % routers.size());
+                additions.put(replicaSet, Entities.submit(this, newAddShardTask(replicaSet, primary, router, addition)));
+            }
+        }
+        for (Map.Entry<Entity, Task<Boolean>> entry : additions.entrySet()) {
+            try {
+                if (entry.getValue().get()) {
+                    addedMembers.add(entry.getKey());
+                    pendingShards.remove(entry.getKey());
                 }
-                
-                if (reschedule) {
-                    int numAttempts = attempts.incrementAndGet();
-                    if (numAttempts > 1 && timeout.toMilliseconds() > stopwatch.elapsed(TimeUnit.MILLISECONDS)) {
-                        executor.schedule(this, 3, TimeUnit.SECONDS);
-                    } else {
-                        LOG.warn("Timeout after {} attempts ({}) adding shard {}; aborting", 
-                                new Object[] {numAttempts, Time.makeTimeStringRounded(stopwatch), replicaSet});
-                        addingMembers.remove(replicaSet);
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                LOG.error("Failed to add shard "+entry.getKey()+" to routers of "+this+"; will retry", e);
+            }
+        }
+
+        Duration timeout = config().get(SHARD_ADDITION_TIMEOUT);
+        synchronized (pendingShards) {
+            for (Iterator<Map.Entry<Entity, ShardAddition>> iter = pendingShards.entrySet().iterator(); iter.hasNext();) {
+                Map.Entry<Entity, ShardAddition> entry = iter.next();
+                if (entry.getValue().elapsed() > timeout.toMilliseconds()) {
+                    LOG.warn("Timeout after {} adding shard {}; aborting", Time.makeTimeStringRounded(entry.getValue().stopwatch), entry.getKey());
+                    // may be tried again, on its next change of service-up
+                    addingMembers.remove(entry.getKey());
+                    iter.remove();
+                }
+            }
+            sensors().set(SHARDS_PENDING, pendingShards.size());
+            return !pendingShards.isEmpty();
+        }
+    }
+
+    private Task<Boolean> newAddShardTask(final MongoDBReplicaSet replicaSet, final MongoDBServer primary, final MongoDBRouter router,
+            final ShardAddition addition) {
+        return Tasks.<Boolean>builder().displayName("Add shard "+replicaSet.getName()).dynamic(false).body(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                String addr = String.format("%s:%d", primary.getAttribute(MongoDBServer.SUBNET_HOSTNAME), primary.getAttribute(MongoDBServer.PORT));
+                String replicaSetURL = replicaSet.getName() + "/" + addr;
+                addition.attempts++;
+                Stopwatch command = Stopwatch.createStarted();
+                boolean added = getRouterClient(router).addShardToRouter(replicaSetURL);
+                if (added) {
+                    Map<String, Long> times = addition.times(command.elapsed(TimeUnit.MILLISECONDS));
+                    shardAdditionTimes.put(replicaSet.getName(), times);
+                    synchronized (shardAdditionTimes) {
+                        sensors().set(SHARD_ADDITION_TIMES, ImmutableMap.copyOf(shardAdditionTimes));
                     }
+                    LOG.info("{} added shard {} via {}; times (ms) {}", new Object[]{MongoDBShardClusterImpl.this, replicaSetURL, router, times});
+                } else {
+                    LOG.debug("Deferring addition of shard {} because add failed via router {}", replicaSetURL, router);
                 }
+                return added;
             }
-        });
+        }).build();
+    }
+
+    /** @return the client of the given router, created on first use */
+    private MongoDBClientSupport getRouterClient(MongoDBRouter router) throws UnknownHostException {
+        MongoDBClientSupport client = routerClients.get(router.getId());
+        if (client == null) {
+            client = MongoDBClientSupport.forServer(router);
+            MongoDBClientSupport existing = routerClients.putIfAbsent(router.getId(), client);
+            if (existing != null) client = existing;
+        }
+        return client;
+    }
+
+    /** @return the running routers of the deployment, or failing that {@link MongoDBRouterCluster#ANY_RUNNING_ROUTER} if set */
+    private List<MongoDBRouter> getRunningRouters() {
+        MongoDBRouterCluster routerCluster = getParent().getAttribute(MongoDBShardedDeployment.ROUTER_CLUSTER);
+        List<MongoDBRouter> result = Lists.newArrayList();
+        for (MongoDBRouter router : routerCluster.getRouters()) {
+            if (Boolean.TRUE.equals(router.getAttribute(MongoDBRouter.RUNNING))) result.add(router);
+        }
+        if (result.isEmpty()) {
+            MongoDBRouter router = routerCluster.getAttribute(MongoDBRouterCluster.ANY_RUNNING_ROUTER);
+            if (router != null) result.add(router);
+        }
+        return result;
+    }
+
+    /** Progress of the addition of a shard, for {@link #SHARD_ADDITION_TIMES}; times are in milliseconds since it was queued. */
+    private static class ShardAddition {
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        volatile Long primaryKnown;
+        volatile Long routerKnown;
+        volatile int attempts;
+
+        long elapsed() {
+            return stopwatch.elapsed(TimeUnit.MILLISECONDS);
+        }
+
+        Map<String, Long> times(long addShardCommand) {
+            return ImmutableMap.<String, Long>builder()
+                    .put("primaryKnown", primaryKnown)
+                    .put("routerKnown", routerKnown)
+                    .put("addShardCommand", addShardCommand)
+                    .put("total", elapsed())
+                    .put("attempts", (long) attempts)
+                    .build();
+        }
     }
 }
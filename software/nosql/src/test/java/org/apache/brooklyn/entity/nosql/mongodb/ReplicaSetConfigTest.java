@@ -19,12 +19,15 @@
 package org.apache.brooklyn.entity.nosql.mongodb;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotEquals;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Nullable;
 
@@ -35,11 +38,14 @@ import org.bson.types.BasicBSONList;
 import org.testng.annotations.Test;
 
 import com.google.common.base.Function;
+import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.net.HostAndPort;
 
 public class ReplicaSetConfigTest {
@@ -183,6 +189,116 @@ public class ReplicaSetConfigTest {
         assertEquals(members.size(), 2);
     }
 
+    @Test
+    public void testAddAndRemoveMembersInOneConfig() {
+        BasicBSONObject config = makeSetWithNMembers(3);
+        Map<HostAndPort, Integer> additions = Maps.newLinkedHashMap();
+        for (int i = 3; i < 7; i++) {
+            additions.put(HostAndPort.fromParts("host-"+i, i), i);
+        }
+
+        BasicBSONObject updated = ReplicaSetConfig.fromExistingConfig(config)
+                .remove(ImmutableList.of(HostAndPort.fromParts("host-0", 0)))
+                .members(additions)
+                .build();
+
+        assertEquals(updated.get("version"), 2);
+        BasicBSONList members = (BasicBSONList) updated.get("members");
+        assertEquals(members.size(), 6);
+        assertEquals(BSONObject.class.cast(members.get(0)).get("host"), "host-1:1");
+        assertEquals(BSONObject.class.cast(members.get(5)).get("host"), "host-6:6");
+        // votes are not moved by the reconfiguration, but given one at a time afterwards
+        assertEquals(votingMembersOfSet(updated).size(), 2);
+        assertEquals(nonVotingMembersOfSet(updated).size(), 4);
+    }
+
+    @Test
+    public void testMembersAreAddedWithoutVotesOrPriority() {
+        BasicBSONObject config = makeSetWithNMembers(3);
+        BasicBSONObject updated = ReplicaSetConfig.fromExistingConfig(config)
+                .members(ImmutableMap.of(HostAndPort.fromParts("host-3", 3), 3, HostAndPort.fromParts("host-4", 4), 4))
+                .build();
+
+        BasicBSONList members = (BasicBSONList) updated.get("members");
+        for (int i = 3; i < 5; i++) {
+            BasicBSONObject member = BasicBSONObject.class.cast(members.get(i));
+            assertEquals(member.getInt("votes"), 0);
+            assertEquals(member.getInt("priority"), 0);
+        }
+    }
+
+    @Test
+    public void testExistingMembersKeepVotesWhenManyAdded() {
+        BasicBSONObject config = makeSetWithNMembers(3);
+        Map<HostAndPort, Integer> additions = Maps.newLinkedHashMap();
+        for (int i = 3; i < 11; i++) {
+            additions.put(HostAndPort.fromParts("host-"+i, i), i);
+        }
+
+        BasicBSONObject updated = ReplicaSetConfig.fromExistingConfig(config)
+                .members(additions)
+                .build();
+
+        Collection<HostAndPort> voters = votingMembersOfSet(updated);
+        assertEquals(voters.size(), 3);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(voters.contains(HostAndPort.fromParts("host-"+i, i)), "voters="+voters);
+        }
+        assertEquals(nonVotingMembersOfSet(updated).size(), 8);
+    }
+
+    @Test
+    public void testVotesGivenOneAtATimeUpToMaximum() {
+        BasicBSONObject config = makeSetWithNMembers(3);
+        Map<HostAndPort, Integer> additions = Maps.newLinkedHashMap();
+        for (int i = 3; i < 11; i++) {
+            additions.put(HostAndPort.fromParts("host-"+i, i), i);
+        }
+        config = ReplicaSetConfig.fromExistingConfig(config).members(additions).build();
+
+        for (int votes = 4; votes <= ReplicaSetConfig.MAXIMUM_VOTING_MEMBERS; votes++) {
+            ReplicaSetConfig next = ReplicaSetConfig.fromExistingConfig(config);
+            Optional<HostAndPort> voter = next.nextVoter();
+            assertEquals(voter, Optional.of(HostAndPort.fromParts("host-"+(votes-1), votes-1)));
+            config = next.grantVote(voter.get()).build();
+            assertEquals(votingMembersOfSet(config).size(), votes);
+        }
+        assertFalse(ReplicaSetConfig.fromExistingConfig(config).nextVoter().isPresent());
+        assertEquals(nonVotingMembersOfSet(config).size(), 11 - ReplicaSetConfig.MAXIMUM_VOTING_MEMBERS);
+    }
+
+    @Test
+    public void testGrantedVoteRestoresDefaultPriority() {
+        BasicBSONObject config = ReplicaSetConfig.fromExistingConfig(makeSetWithNMembers(1))
+                .members(ImmutableMap.of(HostAndPort.fromParts("host-1", 1), 1, HostAndPort.fromParts("host-2", 2), 2))
+                .build();
+        config = ReplicaSetConfig.fromExistingConfig(config).grantVote(HostAndPort.fromParts("host-1", 1)).build();
+
+        BasicBSONObject member = BasicBSONObject.class.cast(((BasicBSONList) config.get("members")).get(1));
+        assertEquals(member.getInt("votes"), 1);
+        assertFalse(member.containsField("priority"));
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testGrantingVoteBeyondMaximumRejected() {
+        BasicBSONObject config = makeSetWithNMembers(ReplicaSetConfig.MAXIMUM_REPLICA_SET_SIZE);
+        HostAndPort nonVoter = nonVotingMembersOfSet(config).iterator().next();
+        ReplicaSetConfig.fromExistingConfig(config).grantVote(nonVoter);
+    }
+
+    @Test
+    public void testAddingTooManyMembersAddsNone() {
+        BasicBSONObject config = makeSetWithNMembers(ReplicaSetConfig.MAXIMUM_REPLICA_SET_SIZE - 1);
+        ReplicaSetConfig updated = ReplicaSetConfig.fromExistingConfig(config);
+        try {
+            updated.members(ImmutableMap.of(HostAndPort.fromParts("foo", 1), 100, HostAndPort.fromParts("bar", 2), 101));
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(((BasicBSONList) updated.build().get("members")).size(), ReplicaSetConfig.MAXIMUM_REPLICA_SET_SIZE - 1);
+    }
+
     @Test
     public void testSetOfFourMembersHasThreeVoters() {
         BasicBSONObject config = makeSetWithNMembers(4);
@@ -195,9 +311,13 @@ public class ReplicaSetConfigTest {
         BasicBSONObject config = makeSetWithNMembers(4);
         HostAndPort toRemove = votingMembersOfSet(config).iterator().next();
 
-        BasicBSONObject updated = ReplicaSetConfig.fromExistingConfig(config)
+        BasicBSONObject removed = ReplicaSetConfig.fromExistingConfig(config)
                 .remove(toRemove)
                 .build();
+        assertEquals(votingMembersOfSet(removed).size(), 2);
+
+        ReplicaSetConfig next = ReplicaSetConfig.fromExistingConfig(removed);
+        BasicBSONObject updated = next.grantVote(next.nextVoter().get()).build();
 
         assertEquals(votingMembersOfSet(updated).size(), 3);
         assertTrue(nonVotingMembersOfSet(updated).isEmpty());
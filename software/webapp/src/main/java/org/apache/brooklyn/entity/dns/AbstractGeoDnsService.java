@@ -31,6 +31,7 @@ import org.apache.brooklyn.core.entity.trait.Startable;
 import org.apache.brooklyn.core.location.geo.HostGeoInfo;
 import org.apache.brooklyn.core.sensor.Sensors;
 import org.apache.brooklyn.util.core.flags.SetFromFlag;
+import org.apache.brooklyn.util.time.Duration;
 
 import com.google.common.reflect.TypeToken;
 
@@ -53,6 +54,15 @@ public interface AbstractGeoDnsService extends Entity {
     ConfigKey<Boolean> FILTER_FOR_RUNNING = ConfigKeys.newBooleanConfigKey(
             "geodns.filterForRunning", "Whether to only track targets whose status is \"RUNNING\"", true);
 
+    @SetFromFlag("geoResolutionThreads")
+    ConfigKey<Integer> GEO_RESOLUTION_THREADS = ConfigKeys.newIntegerConfigKey(
+            "geodns.geoResolution.threads", "Maximum number of new or changed targets whose geography is looked up concurrently", 8);
+
+    @SetFromFlag("geoInfoCacheTtl")
+    ConfigKey<Duration> GEO_INFO_CACHE_TTL = ConfigKeys.newConfigKey(Duration.class,
+            "geodns.geoInfoCache.ttl", "How long the geography looked up for a hostname/ip is cached; "
+            + "targets whose entry has expired are looked up again when the targets are next refreshed", Duration.ONE_HOUR);
+
     AttributeSensor<Lifecycle> SERVICE_STATE_ACTUAL = Attributes.SERVICE_STATE_ACTUAL;
     AttributeSensor<Boolean> SERVICE_UP = Startable.SERVICE_UP;
     AttributeSensor<String> HOSTNAME = Attributes.HOSTNAME;
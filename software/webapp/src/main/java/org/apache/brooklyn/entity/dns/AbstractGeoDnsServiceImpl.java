@@ -25,16 +25,21 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
 import java.net.UnknownHostException;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.brooklyn.api.entity.Entity;
 import org.apache.brooklyn.api.entity.Group;
+import org.apache.brooklyn.api.mgmt.Task;
 import org.apache.brooklyn.api.policy.PolicySpec;
 import org.apache.brooklyn.api.sensor.Sensor;
 import org.apache.brooklyn.core.entity.AbstractEntity;
@@ -48,6 +53,9 @@ import org.apache.brooklyn.entity.group.DynamicGroup;
 import org.apache.brooklyn.entity.webapp.WebAppService;
 import org.apache.brooklyn.util.collections.MutableSet;
 import org.apache.brooklyn.util.core.flags.SetFromFlag;
+import org.apache.brooklyn.util.core.task.DynamicTasks;
+import org.apache.brooklyn.util.core.task.TaskBuilder;
+import org.apache.brooklyn.util.core.task.Tasks;
 import org.apache.brooklyn.util.exceptions.Exceptions;
 import org.apache.brooklyn.util.net.Networking;
 import org.apache.brooklyn.util.time.Duration;
@@ -55,8 +63,15 @@ import org.apache.brooklyn.util.time.Time;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 public abstract class AbstractGeoDnsServiceImpl extends AbstractEntity implements AbstractGeoDnsService {
@@ -81,6 +96,13 @@ public abstract class AbstractGeoDnsServiceImpl extends AbstractEntity implement
     // logging.
     transient protected Set<Entity> entitiesWithoutGeoInfo = new HashSet<Entity>();
 
+    // The sensors and locations (see resolutionKey) of each target as of when it was added, so that a refresh only 
+    // resolves targets which are new or whose hostname/address has changed.
+    transient protected Map<Entity, List<Object>> targetResolutionKeys = Collections.synchronizedMap(new HashMap<Entity, List<Object>>());
+
+    // Geography looked up for each hostname/ip (absent if none could be inferred); see GEO_INFO_CACHE_TTL.
+    transient private Cache<List<String>, Optional<HostGeoInfo>> geoInfoCache;
+
     public AbstractGeoDnsServiceImpl() {
         super();
     }
@@ -204,10 +226,24 @@ public abstract class AbstractGeoDnsServiceImpl extends AbstractEntity implement
             boolean changed = false;
             boolean filterForRunning = Boolean.TRUE.equals(config().get(FILTER_FOR_RUNNING));
             Set<Entity> previousOnes = MutableSet.copyOf(targetHosts.keySet());
+            List<Entity> toResolve = Lists.newArrayList();
             for (Entity e: pool) {
                 if (!filterForRunning || Lifecycle.RUNNING.equals(e.sensors().get(Attributes.SERVICE_STATE_ACTUAL))) {
                     previousOnes.remove(e);
-                    changed |= addTargetHost(e);
+                    // targets already added are only resolved again if their hostname/address has changed, 
+                    // or if the geography looked up for them has expired from the cache
+                    if (!targetHosts.containsKey(e) || !resolutionKey(e).equals(targetResolutionKeys.get(e)) 
+                            || isGeoInfoExpired(e)) {
+                        toResolve.add(e);
+                    }
+                }
+            }
+            prefetchHostGeoInfo(toResolve);
+            for (Entity e: toResolve) {
+                List<Object> key = resolutionKey(e);
+                changed |= addTargetHost(e);
+                if (targetHosts.containsKey(e)) {
+                    targetResolutionKeys.put(e, key);
                 }
             }
             // anything left in previousOnes is no longer applicable
@@ -254,7 +290,7 @@ public abstract class AbstractGeoDnsServiceImpl extends AbstractEntity implement
             // prefer the geo from the entity (or location parent), but fall back to inferring
             // e.g. if it supplies a URL
             HostGeoInfo geo = HostGeoInfo.fromEntity(entity);
-            if (geo==null) geo = inferHostGeoInfo(hostname, ip);
+            if (geo==null) geo = getHostGeoInfo(hostname, ip);
 
             if (Networking.isPrivateSubnet(addr) && ip!=null && !Networking.isPrivateSubnet(ip)) {
                 // fix for #1216
@@ -293,8 +329,10 @@ public abstract class AbstractGeoDnsServiceImpl extends AbstractEntity implement
                 geo = HostGeoInfo.create(addr, geo.displayName, geo.latitude, geo.longitude);
             }
 
-            // If we already knew about it, and it hasn't changed, then nothing to do
-            if (oldGeo != null && geo.getAddress().equals(oldGeo.getAddress())) {
+            // If we already knew about it, and it hasn't changed (including its geography, which may have been 
+            // looked up again), then nothing to do
+            if (oldGeo != null && geo.getAddress().equals(oldGeo.getAddress()) && Objects.equal(geo.displayName, oldGeo.displayName)
+                    && geo.latitude == oldGeo.latitude && geo.longitude == oldGeo.longitude) {
                 return false;
             }
 
@@ -312,6 +350,7 @@ public abstract class AbstractGeoDnsServiceImpl extends AbstractEntity implement
 
     /** remove if host removed */
     protected boolean removeTargetHost(Entity e, boolean doUpdate) {
+        targetResolutionKeys.remove(e);
         if (targetHosts.remove(e) != null) {
             log.info("GeoDns removing reference to {}", e);
             if (doUpdate) update();
@@ -338,6 +377,95 @@ public abstract class AbstractGeoDnsServiceImpl extends AbstractEntity implement
         sensors().set(TARGETS, entityIdToAddress);
     }
 
+    /**
+     * @return what {@link #addTargetHost(Entity)} depends on of the given entity, other than the geography looked 
+     *         up for its hostname/ip (which is cached for {@link #GEO_INFO_CACHE_TTL})
+     */
+    protected List<Object> resolutionKey(Entity entity) {
+        return Arrays.<Object>asList(entity.getAttribute(Attributes.HOSTNAME), entity.getAttribute(Attributes.ADDRESS), 
+                entity.getAttribute(Attributes.MAIN_URI), ImmutableList.copyOf(entity.getLocations()));
+    }
+
+    /**
+     * Looks up the geography of the given entities' hostnames/ips as parallel tasks (at most 
+     * {@link #GEO_RESOLUTION_THREADS} at a time), so that {@link #addTargetHost(Entity)} then finds it cached, rather 
+     * than each doing its DNS and geo lookups in turn. Failures are ignored here, and reported when the entity is added.
+     */
+    protected void prefetchHostGeoInfo(Collection<Entity> entities) {
+        // a single entity is simply resolved when added
+        if (entities.size() < 2) return;
+
+        List<Task<?>> lookups = Lists.newArrayList();
+        for (final Entity entity : entities) {
+            final List<String> key = geoInfoCacheKey(entity);
+            if (key == null || getGeoInfoCache().getIfPresent(key) != null) continue;
+
+            lookups.add(Tasks.builder().displayName("Look up geography of "+entity).body(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (HostGeoInfo.fromEntity(entity) == null) getHostGeoInfo(key.get(0), key.get(1));
+                    } catch (Exception e) {
+                        Exceptions.propagateIfFatal(e);
+                        if (log.isTraceEnabled()) log.trace("GeoDns failed to prefetch GeoInfo for "+entity+" ("+e+")");
+                    }
+                }
+            }).build());
+        }
+        if (lookups.isEmpty()) return;
+        if (log.isDebugEnabled()) log.debug("GeoDns {} looking up geography of {} targets", this, lookups.size());
+
+        int parallelism = Math.max(1, getConfig(GEO_RESOLUTION_THREADS));
+        for (List<Task<?>> batch : Iterables.partition(lookups, parallelism)) {
+            TaskBuilder<Void> tb = Tasks.<Void>builder().parallel(true).displayName("Look up geography ("+batch.size()+")");
+            for (Task<?> lookup : batch) {
+                tb.add(lookup);
+            }
+            DynamicTasks.queueIfPossible(tb.build()).orSubmitAsync(this).asTask().getUnchecked();
+        }
+    }
+
+    /**
+     * @return whether the geography of the given (already added) target was looked up, rather than supplied by its 
+     *         locations, and has since expired from the cache; i.e. whether it is due to be looked up again
+     */
+    protected boolean isGeoInfoExpired(Entity entity) {
+        List<String> key = geoInfoCacheKey(entity);
+        return key != null && getGeoInfoCache().getIfPresent(key) == null && HostGeoInfo.fromEntity(entity) == null;
+    }
+
+    /** @return the hostname and ip that the geography of the given entity is looked up (and cached) by, or null if neither is known */
+    private List<String> geoInfoCacheKey(Entity entity) {
+        String ip = inferIp(entity);
+        String hostname = entity.getAttribute(Attributes.HOSTNAME);
+        URI url = entity.getAttribute(Attributes.MAIN_URI);
+        if (hostname == null && url != null) hostname = url.getHost();
+        if (hostname == null && ip == null) return null;
+        return Arrays.asList(hostname, ip);
+    }
+
+    /** As {@link #inferHostGeoInfo(String, String)}, but cached for {@link #GEO_INFO_CACHE_TTL}; failures are not cached. */
+    protected HostGeoInfo getHostGeoInfo(String hostname, String ip) throws UnknownHostException {
+        List<String> key = Arrays.asList(hostname, ip);
+        Optional<HostGeoInfo> cached = getGeoInfoCache().getIfPresent(key);
+        if (cached == null) {
+            cached = Optional.fromNullable(inferHostGeoInfo(hostname, ip));
+            getGeoInfoCache().put(key, cached);
+        }
+        return cached.orNull();
+    }
+
+    private synchronized Cache<List<String>, Optional<HostGeoInfo>> getGeoInfoCache() {
+        if (geoInfoCache == null) {
+            Duration ttl = getConfig(GEO_INFO_CACHE_TTL);
+            geoInfoCache = CacheBuilder.newBuilder()
+                    .maximumSize(10000)
+                    .expireAfterWrite(ttl.toMilliseconds(), TimeUnit.MILLISECONDS)
+                    .build();
+        }
+        return geoInfoCache;
+    }
+
     protected String inferHostname(Entity entity) {
         String hostname = entity.getAttribute(Attributes.HOSTNAME);
         URI url = entity.getAttribute(Attributes.MAIN_URI);
@@ -27,9 +27,11 @@ import org.apache.brooklyn.config.ConfigKey;
 import org.apache.brooklyn.core.config.ConfigKeys;
 import org.apache.brooklyn.core.entity.Attributes;
 import org.apache.brooklyn.core.sensor.BasicAttributeSensorAndConfigKey;
+import org.apache.brooklyn.core.sensor.Sensors;
 import org.apache.brooklyn.entity.group.Cluster;
 import org.apache.brooklyn.entity.software.base.SoftwareProcess;
 import org.apache.brooklyn.util.core.flags.SetFromFlag;
+import org.apache.brooklyn.util.time.Duration;
 
 /**
  * Represents a controller mechanism for a {@link Cluster}.
@@ -50,6 +52,29 @@ public interface AbstractController extends SoftwareProcess, LoadBalancer {
     ConfigKey<String> SERVICE_UP_URL_PATH = ConfigKeys.newStringConfigKey(
             "controller.config.serviceUpUrlPath", "The path that will be appended to the root URL to determine SERVICE_UP", "");
 
+    @SetFromFlag("updateMinInterval")
+    ConfigKey<Duration> UPDATE_MIN_INTERVAL = ConfigKeys.newConfigKey(Duration.class,
+            "controller.update.minInterval", 
+            "Quiet period to wait after a server pool membership change before reconfiguring and reloading, "
+                + "so that a burst of changes is applied as a single update; zero (the default) updates on every change", 
+            Duration.ZERO);
+
+    @SetFromFlag("updateMaxDelay")
+    ConfigKey<Duration> UPDATE_MAX_DELAY = ConfigKeys.newConfigKey(Duration.class,
+            "controller.update.maxDelay", 
+            "Maximum time a server pool membership change will be held back waiting for a quiet period; "
+                + "only applies if 'controller.update.minInterval' is non-zero", 
+            Duration.TEN_SECONDS);
+
+    AttributeSensor<Integer> SERVER_POOL_PENDING_DELTAS = Sensors.newIntegerSensor(
+            "proxy.serverpool.pendingDeltas", "Number of server pool membership changes not yet applied to the configuration");
+
+    AttributeSensor<Integer> SERVER_POOL_UPDATE_BATCH_SIZE = Sensors.newIntegerSensor(
+            "proxy.serverpool.update.batchSize", "Number of server pool membership changes applied by the most recent update");
+
+    AttributeSensor<Duration> RECONFIGURE_LATENCY = Sensors.newSensor(Duration.class,
+            "proxy.reconfigure.latency", "Time taken by the most recent reconfigure and reload");
+
     AttributeSensor<URI> MAIN_URI_MAPPED_SUBNET = Attributes.MAIN_URI_MAPPED_SUBNET;
     AttributeSensor<URI> MAIN_URI_MAPPED_PUBLIC = Attributes.MAIN_URI_MAPPED_PUBLIC;
 
@@ -24,8 +24,14 @@ import static org.apache.brooklyn.util.JavaGroovyEquivalents.groovyTruth;
 
 import java.net.URI;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.brooklyn.api.entity.Entity;
 import org.apache.brooklyn.api.entity.Group;
@@ -36,7 +42,6 @@ import org.apache.brooklyn.api.sensor.AttributeSensor;
 import org.apache.brooklyn.core.annotation.EffectorParam;
 import org.apache.brooklyn.core.entity.Attributes;
 import org.apache.brooklyn.core.entity.Entities;
-import org.apache.brooklyn.core.entity.EntityInternal;
 import org.apache.brooklyn.core.entity.lifecycle.Lifecycle;
 import org.apache.brooklyn.core.entity.lifecycle.ServiceStateLogic;
 import org.apache.brooklyn.core.entity.trait.Startable;
@@ -51,12 +56,16 @@ import org.apache.brooklyn.util.core.task.Tasks;
 import org.apache.brooklyn.util.exceptions.Exceptions;
 import org.apache.brooklyn.util.guava.Maybe;
 import org.apache.brooklyn.util.text.Strings;
+import org.apache.brooklyn.util.time.Duration;
+import org.apache.brooklyn.util.time.Time;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Function;
 import com.google.common.base.Objects;
 import com.google.common.base.Optional;
 import com.google.common.base.Predicates;
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
@@ -69,11 +78,10 @@ import com.google.common.net.HostAndPort;
  */
 public abstract class AbstractControllerImpl extends SoftwareProcessImpl implements AbstractController {
     
-    // TODO Should review synchronization model. Currently, all changes to the serverPoolTargets
-    // (and checking for potential changes) is done while synchronized on serverPoolAddresses. That means it 
-    // will also call update/reload while holding the lock. This is "conservative", but means
-    // sub-classes need to be extremely careful about any additional synchronization and of
-    // their implementations of update/reconfigureService/reload.
+    // Synchronization model: the server pool targets are held in an immutable, versioned ServerPoolSnapshot 
+    // which membership events replace with compare-and-set. Updates (reconfigureService then reload) are 
+    // serialized on updateMutex, and always render the latest snapshot; each change is then applied in-line, 
+    // or with UPDATE_MIN_INTERVAL set, by a queued update coalescing the changes (see onServerPoolDelta).
     
     private static final Logger LOG = LoggerFactory.getLogger(AbstractControllerImpl.class);
 
@@ -81,13 +89,91 @@ public abstract class AbstractControllerImpl extends SoftwareProcessImpl impleme
     protected volatile boolean updateNeeded = true;
 
     protected AbstractMembershipTrackingPolicy serverPoolMemberTrackerPolicy;
-    // final because this is the synch target
+    /** @deprecated since 1.1.0; no longer used, see {@link #getServerPoolSnapshot()} */
+    @Deprecated
     final protected Set<String> serverPoolAddresses = Sets.newLinkedHashSet();
+
+    private final AtomicReference<ServerPoolSnapshot> serverPoolSnapshot = new AtomicReference<ServerPoolSnapshot>();
+    private final Object updateMutex = new Object();
+    private final Object updateNeededMutex = new Object();
+
+    // membership changes not yet applied by an update; see UPDATE_MIN_INTERVAL for coalescing them
+    private final AtomicInteger pendingDeltas = new AtomicInteger();
+    private final AtomicBoolean coalescedUpdateQueued = new AtomicBoolean();
+    private volatile long firstPendingDeltaTime;
+    private volatile long lastPendingDeltaTime;
     
     @Override
     public void init() {
         super.init();
         sensors().set(SERVER_POOL_TARGETS, ImmutableMap.<Entity, String>of());
+        sensors().set(SERVER_POOL_PENDING_DELTAS, 0);
+    }
+
+    /**
+     * An immutable version of the server pool targets (member to address, where the address may be null).
+     * A new snapshot, with an incremented version, is published for every change.
+     */
+    protected static class ServerPoolSnapshot {
+        private final long version;
+        private final Map<Entity, String> targets;
+
+        ServerPoolSnapshot(long version, Map<Entity, String> targets) {
+            this.version = version;
+            this.targets = Collections.unmodifiableMap(MutableMap.copyOf(targets));
+        }
+        
+        public long getVersion() {
+            return version;
+        }
+        
+        public Map<Entity, String> getTargets() {
+            return targets;
+        }
+        
+        @Override
+        public String toString() {
+            return "ServerPoolSnapshot[version="+version+"; targets="+targets+"]";
+        }
+    }
+
+    /** The latest server pool targets; on first use after rebind, initialised from {@link #SERVER_POOL_TARGETS} */
+    protected ServerPoolSnapshot getServerPoolSnapshot() {
+        ServerPoolSnapshot result = serverPoolSnapshot.get();
+        if (result == null) {
+            Map<Entity, String> targets = getAttribute(SERVER_POOL_TARGETS);
+            serverPoolSnapshot.compareAndSet(null, new ServerPoolSnapshot(0, targets == null ? ImmutableMap.<Entity, String>of() : targets));
+            result = serverPoolSnapshot.get();
+        }
+        return result;
+    }
+
+    /**
+     * Publishes the given targets as the next version of the server pool, unless they are unchanged 
+     * from the latest version. Never blocks on an in-flight update.
+     * 
+     * @return the snapshot published, or null if the targets were unchanged
+     */
+    protected ServerPoolSnapshot publishServerPoolTargets(Function<Map<Entity, String>, Map<Entity, String>> change) {
+        ServerPoolSnapshot published;
+        while (true) {
+            ServerPoolSnapshot current = getServerPoolSnapshot();
+            Map<Entity, String> newTargets = change.apply(current.getTargets());
+            if (newTargets.equals(current.getTargets())) {
+                return null;
+            }
+            published = new ServerPoolSnapshot(current.getVersion() + 1, newTargets);
+            if (serverPoolSnapshot.compareAndSet(current, published)) break;
+        }
+        
+        // Set the sensor to the latest snapshot; re-set if a concurrent publish may have been overwritten by us
+        ServerPoolSnapshot latest;
+        do {
+            latest = serverPoolSnapshot.get();
+            sensors().set(SERVER_POOL_TARGETS, MutableMap.copyOf(latest.getTargets()));
+        } while (serverPoolSnapshot.get() != latest);
+        
+        return published;
     }
     
     protected void addServerPoolMemberTrackingPolicy() {
@@ -125,24 +211,30 @@ public abstract class AbstractControllerImpl extends SoftwareProcessImpl impleme
 
         LOG.info("Added policy {} to {}", serverPoolMemberTrackerPolicy, this);
         
-        synchronized (serverPoolAddresses) {
-            // Initialize ourselves immediately with the latest set of members; don't wait for
-            // listener notifications because then will be out-of-date for short period (causing 
-            // problems for rebind)
-            // if invoked on start, we'll have isActive=false at this point so other policies wont' run anyway,
-            // but synch in case invoked at other times; and note if !isActive during start means we miss some after this,
-            // we will update again on postStart after setting isActive=true
-            Map<Entity,String> serverPoolTargets = Maps.newLinkedHashMap();
-            for (Entity member : serverPool.getMembers()) {
-                if (belongsInServerPool(member)) {
-                    if (LOG.isTraceEnabled()) LOG.trace("Done {} checkEntity {}", this, member);
-                    String address = getAddressOfEntity(member);
-                    serverPoolTargets.put(member, address);
-                }
+        // Initialize ourselves immediately with the latest set of members; don't wait for
+        // listener notifications because then will be out-of-date for short period (causing 
+        // problems for rebind)
+        // if invoked on start, we'll have isActive=false at this point so other policies wont' run anyway;
+        // and note if !isActive during start means we miss some after this,
+        // we will update again on postStart after setting isActive=true
+        final Map<Entity,String> serverPoolTargets = Maps.newLinkedHashMap();
+        for (Entity member : serverPool.getMembers()) {
+            if (belongsInServerPool(member)) {
+                if (LOG.isTraceEnabled()) LOG.trace("Done {} checkEntity {}", this, member);
+                String address = getAddressOfEntity(member);
+                serverPoolTargets.put(member, address);
             }
+        }
 
-            LOG.info("Resetting {}, server pool targets {}", new Object[] {this, serverPoolTargets});
-            sensors().set(SERVER_POOL_TARGETS, serverPoolTargets);
+        LOG.info("Resetting {}, server pool targets {}", new Object[] {this, serverPoolTargets});
+        ServerPoolSnapshot published = publishServerPoolTargets(new Function<Map<Entity, String>, Map<Entity, String>>() {
+            @Override public Map<Entity, String> apply(Map<Entity, String> input) {
+                return serverPoolTargets;
+            }
+        });
+        if (published == null) {
+            // unchanged, but (re)set the sensor in case it was not yet populated
+            sensors().set(SERVER_POOL_TARGETS, MutableMap.copyOf(getServerPoolSnapshot().getTargets()));
         }
     }
     
@@ -179,7 +271,7 @@ public abstract class AbstractControllerImpl extends SoftwareProcessImpl impleme
     
     @Override
     public Set<String> getServerPoolAddresses() {
-        return ImmutableSet.copyOf(Iterables.filter(getAttribute(SERVER_POOL_TARGETS).values(), Predicates.notNull()));
+        return ImmutableSet.copyOf(Iterables.filter(getServerPoolSnapshot().getTargets().values(), Predicates.notNull()));
     }
 
     /**
@@ -397,9 +489,17 @@ public abstract class AbstractControllerImpl extends SoftwareProcessImpl impleme
      * The caller will subsequently call reload to apply the new configuration.
      */
     protected abstract void reconfigureService();
+
+    /**
+     * Whether the changes made by the preceding {@link #reconfigureService()} require a {@link #reload()}
+     * to take effect. Defaults to true; implementations that can apply some changes in-place may override this.
+     */
+    protected boolean isReloadRequired() {
+        return true;
+    }
     
     public void updateNeeded() {
-        synchronized (serverPoolAddresses) {
+        synchronized (updateNeededMutex) {
             if (updateNeeded) return;
             updateNeeded = true;
             LOG.debug("queueing an update-needed task for "+this+"; update will occur shortly");
@@ -425,24 +525,100 @@ public abstract class AbstractControllerImpl extends SoftwareProcessImpl impleme
         }
     }
     
+    /**
+     * Reconfigures the service, and reloads it if required. {@link #RECONFIGURE_LATENCY} is recorded for every
+     * reconfigure: once the reload completes, if there is one.
+     *
+     * @return The task completing the reload, or null if there is none.
+     */
     public Task<?> updateAsync() {
-        synchronized (serverPoolAddresses) {
+        synchronized (updateMutex) {
             Task<?> result = null;
             if (!isActive()) {
                 updateNeeded = true;
             } else {
+                // cleared before rendering, so any change published from here on queues another update
                 updateNeeded = false;
-                LOG.debug("Updating {} in response to changes", this);
-                LOG.info("Updating {}, server pool targets {}", new Object[] {this, getAttribute(SERVER_POOL_TARGETS)});
+                int batchSize = pendingDeltas.getAndSet(0);
+                sensors().set(SERVER_POOL_PENDING_DELTAS, 0);
+                ServerPoolSnapshot snapshot = getServerPoolSnapshot();
+                LOG.debug("Updating {} in response to {} change(s)", this, batchSize);
+                LOG.info("Updating {}, server pool targets version {}: {}", new Object[] {this, snapshot.getVersion(), snapshot.getTargets()});
+                final Stopwatch stopwatch = Stopwatch.createStarted();
                 reconfigureService();
-                LOG.debug("Reloading {} in response to changes", this);
-                // reload should happen synchronously
-                result = invoke(RELOAD);
+                if (isReloadRequired()) {
+                    LOG.debug("Reloading {} in response to changes", this);
+                    // reload should happen synchronously
+                    final Task<?> reload = invoke(RELOAD);
+                    result = Entities.submit(this, Tasks.<Object>builder().displayName("reload").body(new Callable<Object>() {
+                        @Override
+                        public Object call() throws Exception {
+                            Object reloaded = reload.get();
+                            recordReconfigureLatency(stopwatch);
+                            return reloaded;
+                        }
+                    }).build());
+                } else {
+                    LOG.debug("Not reloading {}; changes were applied without requiring a reload", this);
+                    recordReconfigureLatency(stopwatch);
+                }
+                sensors().set(SERVER_POOL_UPDATE_BATCH_SIZE, batchSize);
             }
             return result;
         }
     }
 
+    private void recordReconfigureLatency(Stopwatch stopwatch) {
+        sensors().set(RECONFIGURE_LATENCY, Duration.millis(stopwatch.elapsed(TimeUnit.MILLISECONDS)));
+    }
+
+    /**
+     * Called after each change to {@link #SERVER_POOL_TARGETS}. Unless {@link #UPDATE_MIN_INTERVAL} is set,
+     * the service is reconfigured in-line, as each change is made (without waiting for the reload); otherwise
+     * a single update is queued to apply all changes seen until the server pool has been quiet for that
+     * interval (or {@link #UPDATE_MAX_DELAY} has passed).
+     */
+    protected void onServerPoolDelta() {
+        long now = System.currentTimeMillis();
+        if (pendingDeltas.getAndIncrement() == 0) firstPendingDeltaTime = now;
+        lastPendingDeltaTime = now;
+        sensors().set(SERVER_POOL_PENDING_DELTAS, pendingDeltas.get());
+
+        Duration minInterval = getConfig(UPDATE_MIN_INTERVAL);
+        if (minInterval == null || minInterval.toMilliseconds() <= 0) {
+            updateAsync();
+            return;
+        }
+        if (!coalescedUpdateQueued.compareAndSet(false, true)) {
+            if (LOG.isTraceEnabled()) LOG.trace("Update already queued for {}; coalescing change", this);
+            return;
+        }
+        
+        final long minIntervalMillis = minInterval.toMilliseconds();
+        Duration maxDelay = getConfig(UPDATE_MAX_DELAY);
+        final long maxDelayMillis = (maxDelay == null) ? Long.MAX_VALUE : Math.max(maxDelay.toMilliseconds(), minIntervalMillis);
+        LOG.debug("queueing a coalesced update task for "+this+"; update will occur once changes are quiet for "+minInterval);
+        Entities.submit(this, Tasks.builder().displayName("update-coalesced").body(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        long due = Math.min(lastPendingDeltaTime + minIntervalMillis, firstPendingDeltaTime + maxDelayMillis);
+                        long remaining = due - System.currentTimeMillis();
+                        if (remaining <= 0) break;
+                        Time.sleep(remaining);
+                    }
+                } finally {
+                    // clear before updating, so changes arriving during the update queue another one
+                    coalescedUpdateQueued.set(false);
+                }
+                if (pendingDeltas.get() > 0) {
+                    AbstractControllerImpl.this.update();
+                }
+            } 
+        }).build());
+    }
+
     @Override
     public void changeServerPool(String groupId) {
         Group newGroup = (Group) getManagementContext().getEntityManager().getEntity(groupId);
@@ -457,17 +633,30 @@ public abstract class AbstractControllerImpl extends SoftwareProcessImpl impleme
         updateNeeded();
     }
 
+    /**
+     * Re-checks whether each member of the server pool (and each current target) belongs in this controller's
+     * targets, e.g. after its share of a sharded {@link LoadBalancerCluster} changed; only the members whose
+     * membership changed are added or removed, and an update queued.
+     */
+    protected void reevaluateServerPoolMembership() {
+        Group serverPool = getServerPool();
+        if (serverPool == null) return;
+        Set<Entity> members = Sets.newLinkedHashSet(serverPool.getMembers());
+        members.addAll(getServerPoolSnapshot().getTargets().keySet());
+        for (Entity member : members) {
+            onServerPoolMemberChanged(member);
+        }
+    }
+
     protected void onServerPoolMemberChanged(Entity member) {
-        synchronized (serverPoolAddresses) {
-            if (LOG.isTraceEnabled()) LOG.trace("For {}, considering membership of {} which is in locations {}", 
-                new Object[] {this, member, member.getLocations()});
-            if (belongsInServerPool(member)) {
-                addServerPoolMember(member);
-            } else {
-                removeServerPoolMember(member);
-            }
-            if (LOG.isTraceEnabled()) LOG.trace("Done {} checkEntity {}", this, member);
+        if (LOG.isTraceEnabled()) LOG.trace("For {}, considering membership of {} which is in locations {}", 
+            new Object[] {this, member, member.getLocations()});
+        if (belongsInServerPool(member)) {
+            addServerPoolMember(member);
+        } else {
+            removeServerPoolMember(member);
         }
+        if (LOG.isTraceEnabled()) LOG.trace("Done {} checkEntity {}", this, member);
     }
     
     protected boolean belongsInServerPool(Entity member) {
@@ -479,53 +668,81 @@ public abstract class AbstractControllerImpl extends SoftwareProcessImpl impleme
             if (LOG.isTraceEnabled()) LOG.trace("Members of {}, checking {}, eliminating because not member", this, member);
             return false;
         }
+        if (!isInShard(member)) {
+            if (LOG.isTraceEnabled()) LOG.trace("Members of {}, checking {}, eliminating because in another controller's shard", this, member);
+            return false;
+        }
         if (LOG.isTraceEnabled()) LOG.trace("Members of {}, checking {}, approving", this, member);
         return true;
     }
+
+    /**
+     * Whether this controller targets the given member: always, unless it is in a {@link LoadBalancerCluster}
+     * with sharding enabled, in which case only if the cluster's {@link LoadBalancerCluster#SHARD_RING ring}
+     * assigns the member to it (or the ring is not yet published).
+     */
+    protected boolean isInShard(Entity member) {
+        Entity parent = getParent();
+        if (!(parent instanceof LoadBalancerCluster) || !Boolean.TRUE.equals(parent.getConfig(LoadBalancerCluster.SHARDING_ENABLED))) {
+            return true;
+        }
+        ConsistentHashRing ring = parent.getAttribute(LoadBalancerCluster.SHARD_RING);
+        if (ring == null || ring.isEmpty()) return true;
+        return ring.getOwners(member.getId(), parent.getConfig(LoadBalancerCluster.SHARDING_REPLICAS)).contains(getId());
+    }
     
-    protected void addServerPoolMember(Entity member) {
-        synchronized (serverPoolAddresses) {
-            String oldAddress = getAttribute(SERVER_POOL_TARGETS).get(member);
-            String newAddress = getAddressOfEntity(member);
-            if (Objects.equal(newAddress, oldAddress)) {
-                if (LOG.isTraceEnabled())
-                    if (LOG.isTraceEnabled()) LOG.trace("Ignoring unchanged address {}", oldAddress);
-                return;
-            } else if (newAddress == null) {
-                LOG.info("Removing from {}, member {} with old address {}, because inferred address is now null", new Object[] {this, member, oldAddress});
+    protected void addServerPoolMember(final Entity member) {
+        String oldAddress = getServerPoolSnapshot().getTargets().get(member);
+        final String newAddress = getAddressOfEntity(member);
+        if (Objects.equal(newAddress, oldAddress)) {
+            if (LOG.isTraceEnabled()) LOG.trace("Ignoring unchanged address {}", oldAddress);
+            return;
+        } else if (newAddress == null) {
+            LOG.info("Removing from {}, member {} with old address {}, because inferred address is now null", new Object[] {this, member, oldAddress});
+        } else {
+            if (oldAddress != null) {
+                LOG.info("Replacing in {}, member {} with old address {}, new address {}", new Object[] {this, member, oldAddress, newAddress});
             } else {
-                if (oldAddress != null) {
-                    LOG.info("Replacing in {}, member {} with old address {}, new address {}", new Object[] {this, member, oldAddress, newAddress});
-                } else {
-                    LOG.info("Adding to {}, new member {} with address {}", new Object[] {this, member, newAddress});
-                }
+                LOG.info("Adding to {}, new member {} with address {}", new Object[] {this, member, newAddress});
             }
+        }
 
-            if (Objects.equal(oldAddress, newAddress)) {
-                if (LOG.isTraceEnabled()) LOG.trace("For {}, ignoring change in member {} because address still {}", new Object[] {this, member, newAddress});
-                return;
+        ServerPoolSnapshot published = publishServerPoolTargets(new Function<Map<Entity, String>, Map<Entity, String>>() {
+            @Override public Map<Entity, String> apply(Map<Entity, String> input) {
+                Map<Entity, String> result = MutableMap.copyOf(input);
+                result.put(member, newAddress);
+                return result;
             }
-
-            // TODO this does it synchronously; an async method leaning on `updateNeeded` and `update` might
-            // be more appropriate, especially when this is used in a listener
-            MapAttribute.put(this, SERVER_POOL_TARGETS, member, newAddress);
-            updateAsync();
+        });
+        if (published == null) {
+            if (LOG.isTraceEnabled()) LOG.trace("For {}, ignoring change in member {} because address still {}", new Object[] {this, member, newAddress});
+            return;
         }
+
+        onServerPoolDelta();
     }
     
-    protected void removeServerPoolMember(Entity member) {
-        synchronized (serverPoolAddresses) {
-            if (!getAttribute(SERVER_POOL_TARGETS).containsKey(member)) {
-                if (LOG.isTraceEnabled()) LOG.trace("For {}, not removing as don't have member {}", new Object[] {this, member});
-                return;
-            }
+    protected void removeServerPoolMember(final Entity member) {
+        if (!getServerPoolSnapshot().getTargets().containsKey(member)) {
+            if (LOG.isTraceEnabled()) LOG.trace("For {}, not removing as don't have member {}", new Object[] {this, member});
+            return;
+        }
 
-            String address = MapAttribute.remove(this, SERVER_POOL_TARGETS, member);
+        ServerPoolSnapshot published = publishServerPoolTargets(new Function<Map<Entity, String>, Map<Entity, String>>() {
+            @Override public Map<Entity, String> apply(Map<Entity, String> input) {
+                Map<Entity, String> result = MutableMap.copyOf(input);
+                result.remove(member);
+                return result;
+            }
+        });
+        if (published == null) {
+            if (LOG.isTraceEnabled()) LOG.trace("For {}, not removing as member {} concurrently removed", new Object[] {this, member});
+            return;
+        }
 
-            LOG.info("Removing from {}, member {} with address {}", new Object[] {this, member, address});
+        LOG.info("Removing from {}, member {} (server pool version {})", new Object[] {this, member, published.getVersion()});
 
-            updateAsync();
-        }
+        onServerPoolDelta();
     }
     
     protected String getAddressOfEntity(Entity member) {
@@ -550,23 +767,4 @@ public abstract class AbstractControllerImpl extends SoftwareProcessImpl impleme
             return null;
         }
     }
-
-    // Utilities for modifying an AttributeSensor of type map
-    static class MapAttribute {
-        public static <K, V> V put(Entity entity, AttributeSensor<Map<K,V>> attribute, K key, V value) {
-            Map<K, V> oldMap = entity.getAttribute(attribute);
-            Map<K, V> newMap = MutableMap.copyOf(oldMap);
-            V oldVal = newMap.put(key, value);
-            ((EntityInternal)entity).sensors().set(attribute, newMap);
-            return oldVal;
-        }
-        
-        public static <K, V> V remove(Entity entity, AttributeSensor<Map<K,V>> attribute, K key) {
-            Map<K, V> oldMap = entity.getAttribute(attribute);
-            Map<K, V> newMap = MutableMap.copyOf(oldMap);
-            V oldVal = newMap.remove(key);
-            ((EntityInternal)entity).sensors().set(attribute, newMap);
-            return oldVal;
-        }
-    }
 }
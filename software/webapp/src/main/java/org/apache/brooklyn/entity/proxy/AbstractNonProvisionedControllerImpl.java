@@ -38,8 +38,8 @@ import org.apache.brooklyn.core.entity.lifecycle.ServiceStateLogic;
 import org.apache.brooklyn.core.entity.trait.Startable;
 import org.apache.brooklyn.core.feed.ConfigToAttributes;
 import org.apache.brooklyn.entity.group.AbstractMembershipTrackingPolicy;
-import org.apache.brooklyn.entity.proxy.AbstractControllerImpl.MapAttribute;
 import org.apache.brooklyn.entity.proxy.AbstractControllerImpl.ServerPoolMemberTrackerPolicy;
+import org.apache.brooklyn.util.collections.MutableMap;
 import org.apache.brooklyn.util.core.task.Tasks;
 import org.apache.brooklyn.util.exceptions.Exceptions;
 import org.slf4j.Logger;
@@ -375,7 +375,9 @@ public abstract class AbstractNonProvisionedControllerImpl extends AbstractEntit
 
             // TODO this does it synchronously; an async method leaning on `updateNeeded` and `update` might
             // be more appropriate, especially when this is used in a listener
-            MapAttribute.put(this, SERVER_POOL_TARGETS, member, newAddress);
+            Map<Entity, String> targets = MutableMap.copyOf(getAttribute(SERVER_POOL_TARGETS));
+            targets.put(member, newAddress);
+            sensors().set(SERVER_POOL_TARGETS, targets);
             updateAsync();
         }
     }
@@ -387,7 +389,9 @@ public abstract class AbstractNonProvisionedControllerImpl extends AbstractEntit
                 return;
             }
 
-            String address = MapAttribute.remove(this, SERVER_POOL_TARGETS, member);
+            Map<Entity, String> targets = MutableMap.copyOf(getAttribute(SERVER_POOL_TARGETS));
+            String address = targets.remove(member);
+            sensors().set(SERVER_POOL_TARGETS, targets);
 
             LOG.info("Removing from {}, member {} with address {}", new Object[] {this, member, address});
 
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.entity.proxy;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+
+/**
+ * An immutable consistent-hash ring, assigning keys (such as the ids of the members of a server pool)
+ * to nodes (such as the ids of the load balancers in a {@link LoadBalancerCluster}).
+ * <p>
+ * Each node is placed on the ring at a number of pseudo-random points (its virtual nodes), and a key
+ * is owned by the node at the first point clockwise from the key's hash. Adding or removing a node
+ * therefore only moves the keys next to that node's points, on average 1/n of them, rather than
+ * reassigning almost all keys as {@code hash % n} would.
+ */
+public class ConsistentHashRing implements Serializable {
+
+    private static final long serialVersionUID = -2486311738409145206L;
+
+    public static final int DEFAULT_VIRTUAL_NODES = 100;
+
+    private final Set<String> nodes;
+    private final int virtualNodes;
+    private final TreeMap<Integer, String> ring = new TreeMap<Integer, String>();
+
+    public ConsistentHashRing(Collection<String> nodes) {
+        this(nodes, DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ConsistentHashRing(Collection<String> nodes, int virtualNodes) {
+        checkArgument(virtualNodes > 0, "virtualNodes must be positive, but was %s", virtualNodes);
+        this.nodes = ImmutableSortedSet.copyOf(nodes);
+        this.virtualNodes = virtualNodes;
+        for (String node : this.nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                int point = hash(node + "#" + i);
+                // on a collision, the lowest node wins regardless of insertion order
+                String existing = ring.get(point);
+                if (existing == null || node.compareTo(existing) < 0) {
+                    ring.put(point, node);
+                }
+            }
+        }
+    }
+
+    public Set<String> getNodes() {
+        return nodes;
+    }
+
+    public int getVirtualNodes() {
+        return virtualNodes;
+    }
+
+    public boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    /** @return the node owning the given key, or null if the ring has no nodes */
+    public String getOwner(String key) {
+        if (ring.isEmpty()) return null;
+        Map.Entry<Integer, String> entry = ring.ceilingEntry(hash(key));
+        return (entry != null) ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * @return the distinct nodes owning the given key when it is replicated to {@code replicas} nodes:
+     *         its owner, then the next distinct nodes clockwise; fewer if the ring has fewer nodes
+     */
+    public Set<String> getOwners(String key, int replicas) {
+        if (ring.isEmpty() || replicas <= 0) return ImmutableSet.of();
+        if (replicas == 1) return ImmutableSet.of(getOwner(key));
+        int wanted = Math.min(replicas, nodes.size());
+        Set<String> result = Sets.newLinkedHashSet();
+        int hash = hash(key);
+        SortedMap<Integer, String> tail = ring.tailMap(hash);
+        for (Iterator<String> it = tail.values().iterator(); it.hasNext() && result.size() < wanted; ) {
+            result.add(it.next());
+        }
+        for (Iterator<String> it = ring.headMap(hash).values().iterator(); it.hasNext() && result.size() < wanted; ) {
+            result.add(it.next());
+        }
+        return ImmutableSet.copyOf(result);
+    }
+
+    private static int hash(String value) {
+        return Hashing.murmur3_32().hashString(value, Charsets.UTF_8).asInt();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ConsistentHashRing)) return false;
+        ConsistentHashRing other = (ConsistentHashRing) obj;
+        return virtualNodes == other.virtualNodes && nodes.equals(other.nodes);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * nodes.hashCode() + virtualNodes;
+    }
+
+    @Override
+    public String toString() {
+        return "ConsistentHashRing[nodes="+nodes+"; virtualNodes="+virtualNodes+"]";
+    }
+}
@@ -19,7 +19,12 @@
 package org.apache.brooklyn.entity.proxy;
 
 import org.apache.brooklyn.api.entity.ImplementedBy;
+import org.apache.brooklyn.api.sensor.AttributeSensor;
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.config.ConfigKeys;
+import org.apache.brooklyn.core.sensor.Sensors;
 import org.apache.brooklyn.entity.group.DynamicCluster;
+import org.apache.brooklyn.util.core.flags.SetFromFlag;
 
 /**
  * A cluster of load balancers, where configuring the cluster (through the LoadBalancer interface)
@@ -29,9 +34,38 @@ import org.apache.brooklyn.entity.group.DynamicCluster;
  * inherited by the children of the load balancer cluster. It is through that mechanism that
  * configuration changes on the cluster will be applied to all child load balancers (i.e. by
  * them all sharing the same serverPool and urlMappings etc).
+ * <p>
+ * If {@link #SHARDING_ENABLED sharding} is enabled, each load balancer instead targets only its
+ * share of the server pool, assigned by a {@link ConsistentHashRing} of the load balancers
+ * (published as {@link #SHARD_RING}); when load balancers are added or removed, only those whose
+ * share changed are reconfigured.
  *  
  * @author aled
  */
 @ImplementedBy(LoadBalancerClusterImpl.class)
 public interface LoadBalancerCluster extends DynamicCluster, LoadBalancer {
+
+    @SetFromFlag("shardingEnabled")
+    ConfigKey<Boolean> SHARDING_ENABLED = ConfigKeys.newBooleanConfigKey(
+            "loadbalancercluster.sharding.enabled",
+            "Whether each load balancer targets only its consistent-hash share of the server pool, rather than all of it",
+            false);
+
+    @SetFromFlag("shardingVirtualNodes")
+    ConfigKey<Integer> SHARDING_VIRTUAL_NODES = ConfigKeys.newIntegerConfigKey(
+            "loadbalancercluster.sharding.virtualNodes",
+            "Number of points on the hash ring per load balancer; more points spread the server pool more evenly",
+            ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+
+    @SetFromFlag("shardingReplicas")
+    ConfigKey<Integer> SHARDING_REPLICAS = ConfigKeys.newIntegerConfigKey(
+            "loadbalancercluster.sharding.replicas",
+            "Number of load balancers targeting each member of the server pool, when sharding",
+            1);
+
+    AttributeSensor<ConsistentHashRing> SHARD_RING = Sensors.newSensor(ConsistentHashRing.class,
+            "loadbalancercluster.sharding.ring", "Hash ring of the load balancers, assigning each its share of the server pool");
+
+    AttributeSensor<Integer> SHARD_REBALANCED_COUNT = Sensors.newIntegerSensor(
+            "loadbalancercluster.sharding.rebalanced", "Number of load balancers whose share changed on the most recent change of the ring");
 }
@@ -19,10 +19,20 @@
 package org.apache.brooklyn.entity.proxy;
 
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.brooklyn.api.entity.Entity;
 import org.apache.brooklyn.api.entity.Group;
+import org.apache.brooklyn.api.sensor.SensorEvent;
+import org.apache.brooklyn.api.sensor.SensorEventListener;
+import org.apache.brooklyn.core.entity.Entities;
 import org.apache.brooklyn.entity.group.DynamicClusterImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
 
 /**
  * A cluster of load balancers, where configuring the cluster (through the LoadBalancer interface)
@@ -32,11 +42,16 @@ import org.apache.brooklyn.entity.group.DynamicClusterImpl;
  * inherited by the children of the load balancer cluster. It is through that mechanism that
  * configuration changes on the cluster will be applied to all child load balancers (i.e. by
  * them all sharing the same serverPool and urlMappings etc).
+ * <p>
+ * When sharding, the load balancers consult the {@link #SHARD_RING} published here to decide which
+ * members of the server pool they target (see {@link AbstractControllerImpl#isInShard(Entity)}).
  *  
  * @author aled
  */
 public class LoadBalancerClusterImpl extends DynamicClusterImpl implements LoadBalancerCluster {
 
+    private static final Logger LOG = LoggerFactory.getLogger(LoadBalancerClusterImpl.class);
+
     // TODO I suspect there are races with reconfiguring the load-balancers while
     // the cluster is growing: there is no synchronization around the calls to reload
     // and the resize, so presumably there's a race where a newly added load-balancer 
@@ -46,6 +61,74 @@ public class LoadBalancerClusterImpl extends DynamicClusterImpl implements LoadB
         super();
     }
 
+    @Override
+    public void init() {
+        super.init();
+        initSubscriptions();
+    }
+
+    @Override
+    public void rebind() {
+        super.rebind();
+        initSubscriptions();
+    }
+
+    private void initSubscriptions() {
+        if (!Boolean.TRUE.equals(getConfig(SHARDING_ENABLED))) return;
+        SensorEventListener<Entity> membersChanged = new SensorEventListener<Entity>() {
+            @Override
+            public void onEvent(SensorEvent<Entity> event) {
+                rebalanceShards();
+            }
+        };
+        subscriptions().subscribe(this, MEMBER_ADDED, membersChanged);
+        subscriptions().subscribe(this, MEMBER_REMOVED, membersChanged);
+    }
+
+    /**
+     * Publishes the hash ring of the current load balancers, then has those whose share of the server pool
+     * changed recompute their targets; the others are left untouched, so are not reconfigured or reloaded.
+     */
+    protected synchronized void rebalanceShards() {
+        Set<String> controllerIds = Sets.newLinkedHashSet();
+        for (Entity member : getMembers()) {
+            if (member instanceof LoadBalancer) controllerIds.add(member.getId());
+        }
+        ConsistentHashRing oldRing = getAttribute(SHARD_RING);
+        ConsistentHashRing newRing = new ConsistentHashRing(controllerIds, getConfig(SHARDING_VIRTUAL_NODES));
+        if (Objects.equal(oldRing, newRing)) return;
+
+        Group serverPool = getConfig(SERVER_POOL);
+        int replicas = getConfig(SHARDING_REPLICAS);
+        Set<String> changed = Sets.newLinkedHashSet();
+        if (oldRing == null || oldRing.isEmpty()) {
+            // previously each load balancer targeted the whole server pool
+            changed.addAll(controllerIds);
+        } else if (serverPool != null) {
+            for (Entity server : serverPool.getMembers()) {
+                Set<String> oldOwners = oldRing.getOwners(server.getId(), replicas);
+                Set<String> newOwners = newRing.getOwners(server.getId(), replicas);
+                changed.addAll(Sets.symmetricDifference(oldOwners, newOwners));
+            }
+        }
+        changed.retainAll(controllerIds);
+
+        sensors().set(SHARD_RING, newRing);
+        sensors().set(SHARD_REBALANCED_COUNT, changed.size());
+        LOG.debug("Rebalanced shards of {} across {} load balancer(s); reconfiguring {}", new Object[] {this, controllerIds.size(), changed});
+
+        for (Entity member : ImmutableSet.copyOf(getMembers())) {
+            if (!changed.contains(member.getId())) continue;
+            Entity controller = Entities.deproxy(member);
+            if (controller instanceof AbstractControllerImpl) {
+                // re-filters its targets from its own server pool, queueing an update only if they changed
+                ((AbstractControllerImpl)controller).reevaluateServerPoolMembership();
+            } else {
+                LOG.debug("Not rebalancing {} in {}: does not shard its server pool", member, this);
+            }
+        }
+    }
+
     /* NOTE The following methods come from {@link LoadBalancer} but are probably safe to ignore */
     
     @Override
@@ -82,6 +165,8 @@ public class LoadBalancerClusterImpl extends DynamicClusterImpl implements LoadB
             throw new IllegalArgumentException("Group '"+groupId+"' not found");
         }
         
+        // inherited by load balancers added later
+        config().set(SERVER_POOL, newGroup);
         for (Entity member : getMembers()) {
             if (member instanceof LoadBalancer) {
                 ((LoadBalancer)member).changeServerPool(groupId);
@@ -34,6 +34,9 @@ import org.apache.brooklyn.entity.proxy.AbstractController;
 import org.apache.brooklyn.entity.proxy.ProxySslConfig;
 import org.apache.brooklyn.entity.software.base.SoftwareProcess;
 import org.apache.brooklyn.util.core.flags.SetFromFlag;
+import org.apache.brooklyn.util.time.Duration;
+
+import com.google.common.reflect.TypeToken;
 
 import java.util.Map;
 
@@ -120,9 +123,80 @@ public interface NginxController extends AbstractController, HasShortName {
             "The server.conf generator class", 
             new NginxDefaultConfigGenerator());
 
+    @SetFromFlag("streamingConfig")
+    ConfigKey<Boolean> STREAMING_CONFIG = ConfigKeys.newBooleanConfigKey(
+            "nginx.config.streaming", 
+            "Whether to stream the server.conf from the generator into a local temporary file, from which it is "
+                + "hashed and copied to the server, rather than generating it in memory first "
+                + "(requires a NginxStreamingConfigFileGenerator, such as the default)", 
+            false);
+
     @SetFromFlag("configTemplate")
     ConfigKey<String> SERVER_CONF_TEMPLATE_URL = NginxTemplateConfigGenerator.SERVER_CONF_TEMPLATE_URL;
 
+    @SetFromFlag("upstreamDeltaMode")
+    ConfigKey<Boolean> UPSTREAM_DELTA_MODE = ConfigKeys.newBooleanConfigKey(
+            "nginx.upstream.deltaMode", 
+            "Whether to keep the servers of each upstream block in a separate include file, so that a change of "
+                + "members only pushes the changed upstream files rather than the whole server.conf "
+                + "(only supported by the default config generator)", 
+            false);
+
+    @SetFromFlag("upstreamApiUrl")
+    ConfigKey<String> UPSTREAM_API_URL = ConfigKeys.newStringConfigKey(
+            "nginx.upstream.apiUrl", 
+            "Base URL of a runtime upstream API (e.g. a Lua dynamic-upstream endpoint) used in delta mode; "
+                + "changed upstreams are applied with 'PUT <url>/<upstream>' and a body listing one server address per line "
+                + "(followed by ' weight=<n>' when weighting), "
+                + "so that nginx does not need to be reloaded");
+
+    @SetFromFlag("upstreamWeighting")
+    ConfigKey<Boolean> UPSTREAM_WEIGHTING = ConfigKeys.newBooleanConfigKey(
+            "nginx.upstream.weighting", 
+            "Whether to weight the servers of each upstream block by their observed time per request "
+                + "(from webapp.reqs.processingTime.fraction.windowed and webapp.reqs.perSec.windowed), "
+                + "so that slow or overloaded servers get less traffic", 
+            false);
+
+    @SetFromFlag("upstreamWeightingPeriod")
+    ConfigKey<Duration> UPSTREAM_WEIGHTING_PERIOD = ConfigKeys.newConfigKey(Duration.class,
+            "nginx.upstream.weighting.period", 
+            "How often the upstream weights are recomputed from the server pool's metrics, when weighting", 
+            Duration.THIRTY_SECONDS);
+
+    @SetFromFlag("upstreamWeightMax")
+    ConfigKey<Integer> UPSTREAM_WEIGHT_MAX = ConfigKeys.newIntegerConfigKey(
+            "nginx.upstream.weighting.maxWeight", 
+            "Weight of the fastest servers (and of servers not yet reporting metrics), when weighting; others get proportionally less, down to 1", 
+            10);
+
+    @SetFromFlag("upstreamWeightHysteresis")
+    ConfigKey<Double> UPSTREAM_WEIGHT_HYSTERESIS = ConfigKeys.newConfigKey(Double.class,
+            "nginx.upstream.weighting.hysteresis", 
+            "Fraction by which a server's weight must shift before the new weight is applied, when weighting", 
+            0.25);
+
+    @SetFromFlag("sslKeyInstallParallelism")
+    ConfigKey<Integer> SSL_KEY_INSTALL_PARALLELISM = ConfigKeys.newIntegerConfigKey(
+            "nginx.ssl.installParallelism",
+            "Maximum number of SSL certificates and keys to fetch concurrently when installing them on the server; "
+                + "changed files are then uploaded together in a single transfer",
+            4);
+
+    @SetFromFlag("sslKeyRotationCheckPeriod")
+    ConfigKey<Duration> SSL_KEY_ROTATION_CHECK_PERIOD = ConfigKeys.newConfigKey(Duration.class,
+            "nginx.ssl.rotationCheckPeriod",
+            "How often the SSL certificates and keys are re-fetched, to pick up rotated files served from the same URLs; "
+                + "if they have changed, they are installed and nginx reloaded. Set to zero to disable the check",
+            Duration.FIVE_MINUTES);
+
+    @SetFromFlag("pipelinedReload")
+    ConfigKey<Boolean> PIPELINED_RELOAD = ConfigKeys.newBooleanConfigKey(
+            "nginx.reload.pipelined", 
+            "Whether to reload with a single command over the machine's pooled ssh connection, which also moves the "
+                + "newly copied server.conf into place, rather than running separate status-check and reload scripts", 
+            false);
+
     @SetFromFlag("staticContentArchive")
     ConfigKey<String> STATIC_CONTENT_ARCHIVE_URL = ConfigKeys.newStringConfigKey(
             "nginx.config.staticContentArchiveUrl", "The URL of an archive file of static content (To be copied to the server)");
@@ -149,10 +223,20 @@ public interface NginxController extends AbstractController, HasShortName {
 
     Iterable<UrlMapping> getUrlMappings();
 
+    /** The {@link #getUrlMappings() url mappings}, indexed by domain and kept up to date as they change. */
+    UrlMappingIndex getUrlMappingIndex();
+
     boolean appendSslConfig(String id, StringBuilder out, String prefix, ProxySslConfig ssl, boolean sslBlock, boolean certificateBlock);
 
     AttributeSensor<Boolean> NGINX_URL_ANSWERS_NICELY = Sensors.newBooleanSensor("nginx.url.answers.nicely");
     AttributeSensor<String> PID_FILE = Sensors.newStringSensor("nginx.pid.file", "PID file");
+    AttributeSensor<Long> RELOADS_APPLIED = Sensors.newLongSensor("nginx.reloads.applied", 
+            "Number of reloads of nginx, to apply a changed configuration");
+    AttributeSensor<Long> RELOADS_SKIPPED = Sensors.newLongSensor("nginx.reloads.skipped", 
+            "Number of reconfigurations where the push and reload were skipped, because the configuration was unchanged or applied at runtime");
+    @SuppressWarnings("serial")
+    AttributeSensor<Map<String, Integer>> UPSTREAM_WEIGHTS = Sensors.newSensor(new TypeToken<Map<String, Integer>>() {},
+            "nginx.upstream.weights", "Weight of each server address in the upstream blocks, when weighting");
 
     interface NginxControllerInternal {
         public void doExtraConfigurationDuringStart();
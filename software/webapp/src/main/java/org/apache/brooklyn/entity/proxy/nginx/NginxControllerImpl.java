@@ -18,21 +18,37 @@
  */
 package org.apache.brooklyn.entity.proxy.nginx;
 
+import static java.lang.String.format;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URI;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.apache.brooklyn.api.entity.Entity;
 import org.apache.brooklyn.api.entity.Group;
 import org.apache.brooklyn.api.mgmt.SubscriptionHandle;
+import org.apache.brooklyn.api.mgmt.Task;
 import org.apache.brooklyn.api.policy.PolicySpec;
+import org.apache.brooklyn.api.sensor.AttributeSensor;
 import org.apache.brooklyn.api.sensor.SensorEvent;
 import org.apache.brooklyn.api.sensor.SensorEventListener;
 import org.apache.brooklyn.core.annotation.Effector;
 import org.apache.brooklyn.core.entity.Attributes;
+import org.apache.brooklyn.core.entity.Entities;
 import org.apache.brooklyn.core.entity.lifecycle.Lifecycle;
 import org.apache.brooklyn.core.entity.lifecycle.ServiceStateLogic.ServiceNotUpLogic;
 import org.apache.brooklyn.core.feed.ConfigToAttributes;
@@ -44,22 +60,40 @@ import org.apache.brooklyn.entity.proxy.nginx.NginxController.NginxControllerInt
 import org.apache.brooklyn.feed.http.HttpFeed;
 import org.apache.brooklyn.feed.http.HttpPollConfig;
 import org.apache.brooklyn.feed.http.HttpValueFunctions;
+import org.apache.brooklyn.util.collections.MutableMap;
 import org.apache.brooklyn.util.core.ResourceUtils;
 import org.apache.brooklyn.util.core.file.ArchiveUtils;
+import org.apache.brooklyn.util.core.task.DynamicTasks;
+import org.apache.brooklyn.util.core.task.ScheduledTask;
+import org.apache.brooklyn.util.core.task.TaskBuilder;
+import org.apache.brooklyn.util.core.task.Tasks;
+import org.apache.brooklyn.util.exceptions.Exceptions;
 import org.apache.brooklyn.util.http.HttpTool;
 import org.apache.brooklyn.util.http.HttpToolResponse;
 import org.apache.brooklyn.util.guava.Functionals;
 import org.apache.brooklyn.util.stream.Streams;
 import org.apache.brooklyn.util.text.Strings;
+import org.apache.brooklyn.util.time.Duration;
+import org.apache.http.client.HttpClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Function;
+import com.google.common.base.Joiner;
+import com.google.common.base.Objects;
 import com.google.common.base.Predicates;
 import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
-import com.google.common.collect.Sets;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
 
 /**
  * Implementation of the {@link NginxController} entity.
@@ -69,10 +103,28 @@ public class NginxControllerImpl extends AbstractControllerImpl implements Nginx
     private static final Logger LOG = LoggerFactory.getLogger(NginxControllerImpl.class);
 
     private volatile HttpFeed httpFeed;
-    private final Set<String> installedKeysCache = Sets.newLinkedHashSet();
+    // sha256 of the contents of each SSL certificate and key file installed, by destination path
+    private final Map<String, String> installedKeyDigests = Maps.newConcurrentMap();
+    // the ssl files last fetched (sources by destination), and the digest of their contents
+    private volatile Map<String, String> fetchedKeySources;
+    private volatile String fetchedKeysDigest;
+    private transient Task<?> sslKeyRotationChecker;
     protected UrlMappingsMemberTrackerPolicy urlMappingsMemberTrackerPolicy;
     protected SubscriptionHandle targetAddressesHandler;
 
+    // digests of the config (server.conf and ssl keys) last successfully applied to nginx, and last pushed but not yet reloaded
+    private volatile String appliedConfigDigest;
+    private volatile String pushedConfigDigest;
+    // upstream servers last pushed in upstream delta mode; guarded by synchronized reconfigureUpstreams
+    private final Map<String, Set<String>> appliedUpstreams = Maps.newLinkedHashMap();
+    private volatile boolean reloadRequired = true;
+    private transient Task<?> upstreamWeigher;
+    private transient UrlMappingIndex urlMappingIndex;
+    private final Object urlMappingIndexMutex = new Object();
+    // client for the runtime upstream API, shared by all updates; closed when the controller stops
+    private transient HttpClient upstreamApiClient;
+    private final Object upstreamApiClientMutex = new Object();
+
     @Override
     public void reload() {
         NginxSshDriver driver = (NginxSshDriver)getDriver();
@@ -81,7 +133,15 @@ public class NginxControllerImpl extends AbstractControllerImpl implements Nginx
             throw new IllegalStateException("Cannot reload (no driver instance; stopped? (state="+state+")");
         }
 
-        driver.reload();
+        try {
+            driver.reload();
+        } catch (RuntimeException e) {
+            // don't trust what nginx is running; next reconfigure pushes everything again
+            resetAppliedConfig();
+            throw e;
+        }
+        markPushedConfigApplied();
+        incrementCounter(RELOADS_APPLIED);
     }
 
     @Override
@@ -153,6 +213,9 @@ public class NginxControllerImpl extends AbstractControllerImpl implements Nginx
             // Listen to the targets of each url-mapping changing
             targetAddressesHandler = subscriptions().subscribeToMembers(urlMappings, UrlMapping.TARGET_ADDRESSES, new SensorEventListener<Collection<String>>() {
                     @Override public void onEvent(SensorEvent<Collection<String>> event) {
+                        if (event.getSource() instanceof UrlMapping) {
+                            onUrlMappingChanged((UrlMapping) event.getSource());
+                        }
                         updateNeeded();
                     }
                 });
@@ -161,6 +224,99 @@ public class NginxControllerImpl extends AbstractControllerImpl implements Nginx
             urlMappingsMemberTrackerPolicy = policies().add(PolicySpec.create(UrlMappingsMemberTrackerPolicy.class)
                     .configure("group", urlMappings));
         }
+
+        if (Boolean.TRUE.equals(getConfig(UPSTREAM_WEIGHTING))) {
+            startUpstreamWeighting();
+        }
+        startSslKeyRotationCheck();
+    }
+
+    protected synchronized void startUpstreamWeighting() {
+        if (upstreamWeigher != null) return;
+        Callable<Task<?>> weighTaskFactory = new Callable<Task<?>>() {
+            @Override
+            public Task<?> call() {
+                return Tasks.builder().displayName("Update upstream weights").dynamic(false).body(new Runnable() {
+                    @Override
+                    public void run() {
+                        updateUpstreamWeights();
+                    }
+                }).build();
+            }
+        };
+        upstreamWeigher = Entities.submit(this, new ScheduledTask(MutableMap.of("displayName", "Upstream weighting", 
+                "period", getConfig(UPSTREAM_WEIGHTING_PERIOD)), weighTaskFactory));
+    }
+
+    protected synchronized void startSslKeyRotationCheck() {
+        Duration period = getConfig(SSL_KEY_ROTATION_CHECK_PERIOD);
+        if (sslKeyRotationChecker != null || period == null || period.toMilliseconds() <= 0) return;
+        Callable<Task<?>> checkTaskFactory = new Callable<Task<?>>() {
+            @Override
+            public Task<?> call() {
+                return Tasks.builder().displayName("Check SSL key rotation").dynamic(false).body(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            checkSslKeyRotation();
+                        } catch (Exception e) {
+                            // keep checking; the files may be served again by the next check
+                            Exceptions.propagateIfFatal(e);
+                            LOG.warn("Failed to check SSL keys of "+NginxControllerImpl.this+" for rotation: "+Exceptions.collapseText(e));
+                        }
+                    }
+                }).build();
+            }
+        };
+        sslKeyRotationChecker = Entities.submit(this, new ScheduledTask(MutableMap.of("displayName", "SSL key rotation check", 
+                "delay", period, "period", period), checkTaskFactory));
+    }
+
+    protected synchronized void stopSslKeyRotationCheck() {
+        if (sslKeyRotationChecker != null) {
+            sslKeyRotationChecker.cancel(true);
+            sslKeyRotationChecker = null;
+        }
+    }
+
+    protected synchronized void stopUpstreamWeighting() {
+        if (upstreamWeigher != null) {
+            upstreamWeigher.cancel(true);
+            upstreamWeigher = null;
+        }
+    }
+
+    /**
+     * Recomputes the {@link #UPSTREAM_WEIGHTS} of the server pool targets from their metrics (see {@link UpstreamWeighting}),
+     * queueing an update through the usual (possibly coalesced) path if any weight used in the config has changed.
+     */
+    protected void updateUpstreamWeights() {
+        if (!isActive()) return;
+        Map<String, Double> secondsPerRequest = Maps.newLinkedHashMap();
+        for (Map.Entry<Entity, String> target : getServerPoolSnapshot().getTargets().entrySet()) {
+            if (target.getValue() != null) {
+                secondsPerRequest.put(target.getValue(), UpstreamWeighting.getSecondsPerRequest(target.getKey()));
+            }
+        }
+        Map<String, Integer> previous = getAttribute(UPSTREAM_WEIGHTS);
+        int maxWeight = getConfig(UPSTREAM_WEIGHT_MAX);
+        Map<String, Integer> weights = UpstreamWeighting.computeWeights(secondsPerRequest, previous, maxWeight, getConfig(UPSTREAM_WEIGHT_HYSTERESIS));
+        if (weights.equals(previous)) return;
+        sensors().set(UPSTREAM_WEIGHTS, weights);
+
+        // addresses not previously weighted were rendered with the maximum weight
+        boolean changed = false;
+        for (Map.Entry<String, Integer> entry : weights.entrySet()) {
+            Integer old = (previous != null) ? previous.get(entry.getKey()) : null;
+            if (entry.getValue() != (old != null ? old : maxWeight)) {
+                changed = true;
+                break;
+            }
+        }
+        if (changed) {
+            LOG.debug("Upstream weights of {} changed to {}", this, weights);
+            onServerPoolDelta();
+        }
     }
 
     protected void removeUrlMappingsMemberTrackerPolicy() {
@@ -173,6 +329,10 @@ public class NginxControllerImpl extends AbstractControllerImpl implements Nginx
             subscriptions().unsubscribe(urlMappings, targetAddressesHandler);
             targetAddressesHandler = null;
         }
+        // no longer tracking changes, so rebuild the index on next use
+        synchronized (urlMappingIndexMutex) {
+            urlMappingIndex = null;
+        }
     }
     
     public static class UrlMappingsMemberTrackerPolicy extends AbstractMembershipTrackingPolicy {
@@ -180,7 +340,32 @@ public class NginxControllerImpl extends AbstractControllerImpl implements Nginx
         protected void onEntityEvent(EventType type, Entity entity) {
             defaultHighlightAction(type, entity);
             // relies on policy-rebind injecting the implementation rather than the dynamic-proxy
-            ((NginxControllerImpl)super.entity).updateNeeded();
+            NginxControllerImpl nginx = (NginxControllerImpl)super.entity;
+            if (type == EventType.ENTITY_REMOVED) {
+                nginx.onUrlMappingRemoved(entity);
+            } else if (entity instanceof UrlMapping) {
+                nginx.onUrlMappingChanged((UrlMapping) entity);
+            }
+            nginx.updateNeeded();
+        }
+    }
+
+    /** Re-indexes the given mapping, unless it is no longer a member (e.g. a late event from one just removed). */
+    protected void onUrlMappingChanged(UrlMapping mapping) {
+        synchronized (urlMappingIndexMutex) {
+            if (urlMappingIndex == null) return;
+            Group urlMappings = getConfig(URL_MAPPINGS);
+            if (urlMappings == null || !urlMappings.hasMember(mapping)) {
+                if (LOG.isTraceEnabled()) LOG.trace("Not indexing {} in {}; no longer a url mapping", mapping, this);
+                return;
+            }
+            urlMappingIndex.put(mapping);
+        }
+    }
+
+    protected void onUrlMappingRemoved(Entity mapping) {
+        synchronized (urlMappingIndexMutex) {
+            if (urlMappingIndex != null) urlMappingIndex.remove(mapping.getId());
         }
     }
 
@@ -200,6 +385,9 @@ public class NginxControllerImpl extends AbstractControllerImpl implements Nginx
     @Override
     protected void disconnectSensors() {
         if (httpFeed != null) httpFeed.stop();
+        stopUpstreamWeighting();
+        stopSslKeyRotationCheck();
+        closeUpstreamApiClient();
         disconnectServiceUpIsRunning();
         super.disconnectSensors();
     }
@@ -217,7 +405,12 @@ public class NginxControllerImpl extends AbstractControllerImpl implements Nginx
     @Override
     public void doExtraConfigurationDuringStart() {
         computePortsAndUrls();
+        // (re)starting may be on a fresh machine, so push the complete config; nginx is then launched with it
+        resetAppliedConfig();
         reconfigureService();
+        // no reload follows, so any config staged for one must be written now
+        ((NginxSshDriver) getDriver()).writeStagedServerConf();
+        markPushedConfigApplied();
         // reconnect sensors if ports have changed
         connectSensors();
     }
@@ -245,55 +438,471 @@ public class NginxControllerImpl extends AbstractControllerImpl implements Nginx
 
     @Override
     public void reconfigureService() {
-        String cfg = getConfigFile();
-        if (cfg == null) return;
+        // reset on every path, so a reconfigure that aborts or fails never leaves the previous value for the update
+        boolean reload = false;
+        try {
+            reload = reconfigureServiceIfChanged();
+        } finally {
+            reloadRequired = reload;
+        }
+    }
+
+    /** @return whether the changes pushed require a reload */
+    private boolean reconfigureServiceIfChanged() {
+        // when streaming, cfg is null: the config is rendered once, into a local temporary file, to digest and copy
+        boolean streaming = isStreamingConfig();
+        String cfg = null;
+        if (streaming) {
+            if (getDriver() == null) {
+                LOG.debug("No driver for {}, so not reconfiguring (is entity stopping? state={})",
+                        this, getAttribute(NginxController.SERVICE_STATE_ACTUAL));
+                return false;
+            }
+        } else {
+            cfg = getConfigFile();
+            if (cfg == null) return false;
+        }
 
         if (LOG.isDebugEnabled()) LOG.debug("Reconfiguring {}, targetting {} and {}", new Object[] {this, getServerPoolAddresses(), getUrlMappings()});
-        if (LOG.isTraceEnabled()) LOG.trace("Reconfiguring {}, config file:\n{}", this, cfg);
+        if (LOG.isTraceEnabled() && cfg != null) LOG.trace("Reconfiguring {}, config file:\n{}", this, cfg);
 
         NginxSshDriver driver = (NginxSshDriver) getDriver();
         if (!driver.isCustomizationCompleted()) {
             if (LOG.isDebugEnabled()) LOG.debug("Reconfiguring {}, but driver's customization not yet complete so aborting", this);
+            return false;
+        }
+
+        // keys are installed first, so that a rotated certificate or key (same URL, new contents) changes the digest
+        String sslKeysDigest = installSslKeys(getSslConfigsById());
+
+        File renderedCfg = streaming ? renderServerConf(driver) : null;
+        String digest;
+        boolean reload;
+        try {
+            digest = streaming ? getConfigDigest(renderedCfg, sslKeysDigest) : getConfigDigest(cfg, sslKeysDigest);
+            boolean configChanged = !digest.equals(appliedConfigDigest);
+            if (isUpstreamDeltaMode()) {
+                reload = reconfigureUpstreams(driver, cfg, renderedCfg, configChanged);
+            } else if (configChanged) {
+                copyServerConf(driver, cfg, renderedCfg);
+                reload = true;
+            } else {
+                if (LOG.isDebugEnabled()) LOG.debug("Not pushing config to {}; unchanged since last applied (digest {})", this, digest);
+                reload = false;
+            }
+        } finally {
+            if (renderedCfg != null) renderedCfg.delete();
+        }
+
+        if (reload) {
+            pushedConfigDigest = digest;
+        } else {
+            appliedConfigDigest = digest;
+            incrementCounter(RELOADS_SKIPPED);
+        }
+        return reload;
+    }
+
+    /**
+     * Digest of the given {@code server.conf} contents and of the SSL keys installed alongside it,
+     * used to skip pushing and reloading a configuration identical to the one nginx is already running.
+     */
+    protected String getConfigDigest(String cfg, String sslKeysDigest) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putString(cfg, Charsets.UTF_8);
+        return hasher.putString(sslKeysDigest, Charsets.UTF_8).hash().toString();
+    }
+
+    /** As {@link #getConfigDigest(String, String)}, for a config rendered to the given file */
+    protected String getConfigDigest(File cfg, String sslKeysDigest) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        try {
+            Files.asByteSource(cfg).copyTo(Funnels.asOutputStream(hasher));
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+        return hasher.putString(sslKeysDigest, Charsets.UTF_8).hash().toString();
+    }
+
+    /**
+     * Renders the {@code server.conf} with the streaming generator into a new local temporary file, rather than
+     * into memory; the caller deletes it.
+     */
+    private File renderServerConf(NginxSshDriver driver) {
+        File result = null;
+        try {
+            result = File.createTempFile("nginx-server-"+getId(), ".conf");
+            Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(result), Charsets.UTF_8));
+            try {
+                getStreamingConfigGenerator().generateConfigFile(driver, this, out);
+            } finally {
+                out.close();
+            }
+            return result;
+        } catch (IOException e) {
+            if (result != null) result.delete();
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    protected void markPushedConfigApplied() {
+        String digest = pushedConfigDigest;
+        if (digest != null) {
+            appliedConfigDigest = digest;
+            pushedConfigDigest = null;
+        }
+    }
+
+    protected synchronized void resetAppliedConfig() {
+        appliedConfigDigest = null;
+        pushedConfigDigest = null;
+        appliedUpstreams.clear();
+        installedKeyDigests.clear();
+        fetchedKeySources = null;
+        fetchedKeysDigest = null;
+    }
+
+    private synchronized void incrementCounter(AttributeSensor<Long> sensor) {
+        Long count = getAttribute(sensor);
+        sensors().set(sensor, (count == null ? 0L : count) + 1);
+    }
+
+    @Override
+    protected boolean isReloadRequired() {
+        return reloadRequired;
+    }
+
+    protected boolean isStreamingConfig() {
+        if (!Boolean.TRUE.equals(getConfig(STREAMING_CONFIG))) return false;
+        if (!(getConfig(SERVER_CONF_GENERATOR) instanceof NginxStreamingConfigFileGenerator)) {
+            LOG.warn("Streaming not supported by config generator {} of {}; generating config in memory", getConfig(SERVER_CONF_GENERATOR), this);
+            return false;
+        }
+        return true;
+    }
+
+    private NginxStreamingConfigFileGenerator getStreamingConfigGenerator() {
+        return (NginxStreamingConfigFileGenerator) getConfig(SERVER_CONF_GENERATOR);
+    }
+
+    /**
+     * Copies the {@code server.conf} to the server, from {@code cfg} or, if that is null (when streaming), from
+     * the file it was {@link #renderServerConf(NginxSshDriver) rendered} to. A rendered file is copied alongside
+     * the live config and moved into place, so a failed copy does not leave nginx with a truncated config.
+     * <p>
+     * With {@link #PIPELINED_RELOAD}, the config is instead staged with the driver, and copied by the reload
+     * which follows, to be moved into place in the same command as the HUP.
+     */
+    protected void copyServerConf(NginxSshDriver driver, String cfg, File renderedCfg) {
+        String destination = driver.getRunDir()+"/conf/server.conf";
+        if (cfg != null) {
+            if (driver.stageServerConf(cfg)) return;
+            driver.getMachine().copyTo(Streams.newInputStreamWithContents(cfg), destination);
             return;
         }
 
-        driver.getMachine().copyTo(Streams.newInputStreamWithContents(cfg), driver.getRunDir()+"/conf/server.conf");
+        String tmpDestination = destination+"."+Strings.makeRandomId(8)+".tmp";
+        int result = driver.getMachine().copyTo(renderedCfg, tmpDestination);
+        if (result == 0) {
+            result = driver.getMachine().execCommands("install server.conf", ImmutableList.of(format("mv -f %s %s", tmpDestination, destination)));
+        }
+        if (result != 0) {
+            driver.getMachine().execCommands("remove partial server.conf", ImmutableList.of(format("rm -f %s", tmpDestination)));
+            throw new IllegalStateException("Invalid result "+result+" while copying server.conf to "+this);
+        }
+    }
 
-        installSslKeys("global", getSslConfig());
+    protected boolean isUpstreamDeltaMode() {
+        if (!Boolean.TRUE.equals(getConfig(UPSTREAM_DELTA_MODE))) return false;
+        if (!(getConfig(SERVER_CONF_GENERATOR) instanceof NginxDefaultConfigGenerator)) {
+            LOG.warn("Upstream delta mode not supported by config generator {} of {}; pushing full config", getConfig(SERVER_CONF_GENERATOR), this);
+            return false;
+        }
+        return true;
+    }
 
-        for (UrlMapping mapping : getUrlMappings()) {
-            //cache ensures only the first is installed, which is what is assumed below
-            installSslKeys(mapping.getDomain(), mapping.getConfig(UrlMapping.SSL_CONFIG));
+    /**
+     * Pushes the {@code server.conf} only if it has changed since last applied, and the upstream include files only 
+     * for upstreams whose servers have changed. Where just the servers changed, attempts to apply them through the 
+     * {@link #UPSTREAM_API_URL runtime upstream API}. The {@code cfg} is null if it was streamed to {@code renderedCfg}.
+     * 
+     * @return whether nginx must be reloaded to pick up the changes
+     */
+    protected synchronized boolean reconfigureUpstreams(NginxSshDriver driver, String cfg, File renderedCfg, boolean configChanged) {
+        NginxDefaultConfigGenerator generator = (NginxDefaultConfigGenerator) getConfig(SERVER_CONF_GENERATOR);
+        Map<String, Set<String>> upstreams = generator.getUpstreams(this);
+
+        Map<String, Set<String>> changedUpstreams = Maps.newLinkedHashMap();
+        for (Map.Entry<String, Set<String>> entry : upstreams.entrySet()) {
+            if (configChanged || !Objects.equal(entry.getValue(), appliedUpstreams.get(entry.getKey()))) {
+                changedUpstreams.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (LOG.isDebugEnabled()) LOG.debug("Reconfiguring {} in upstream delta mode: config changed {}, changed upstreams {}", 
+                new Object[] {this, configChanged, changedUpstreams.keySet()});
+
+        if (configChanged) {
+            driver.getMachine().execCommands("create upstreams directory", 
+                    ImmutableList.of(format("mkdir -p %s/conf/upstreams", driver.getRunDir())));
+        }
+        for (Map.Entry<String, Set<String>> entry : changedUpstreams.entrySet()) {
+            driver.getMachine().copyTo(Streams.newInputStreamWithContents(generator.generateUpstreamServers(entry.getValue())), 
+                    driver.getRunDir()+"/conf/"+NginxDefaultConfigGenerator.getUpstreamIncludePath(entry.getKey()));
+        }
+        if (configChanged) {
+            copyServerConf(driver, cfg, renderedCfg);
+        }
+
+        boolean result;
+        if (configChanged) {
+            result = true;
+        } else if (changedUpstreams.isEmpty()) {
+            result = false;
+        } else {
+            result = !applyUpstreamsAtRuntime(changedUpstreams);
+        }
+
+        appliedUpstreams.clear();
+        appliedUpstreams.putAll(upstreams);
+        return result;
+    }
+
+    /**
+     * Applies the given upstream servers through the {@link #UPSTREAM_API_URL runtime upstream API}, if configured.
+     * 
+     * @return true if all were applied; false if nginx must be reloaded instead
+     */
+    protected boolean applyUpstreamsAtRuntime(Map<String, Set<String>> upstreams) {
+        String apiUrl = getConfig(UPSTREAM_API_URL);
+        if (Strings.isBlank(apiUrl)) return false;
+
+        HttpClient client = getUpstreamApiClient();
+        for (Map.Entry<String, Set<String>> entry : upstreams.entrySet()) {
+            URI uri = URI.create(Strings.removeFromEnd(apiUrl, "/")+"/"+entry.getKey());
+            try {
+                HttpToolResponse response = HttpTool.httpPut(client, uri, ImmutableMap.of("Content-Type", "text/plain"), 
+                        Joiner.on("\n").join(entry.getValue()).getBytes(Charsets.UTF_8));
+                int code = response.getResponseCode();
+                if (code < 200 || code >= 300) {
+                    LOG.warn("Failed to update upstream {} of {} at {} (response code {}); will reload instead", 
+                            new Object[] {entry.getKey(), this, uri, code});
+                    return false;
+                }
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                LOG.warn("Failed to update upstream "+entry.getKey()+" of "+this+" at "+uri+"; will reload instead", e);
+                return false;
+            }
+        }
+        if (LOG.isDebugEnabled()) LOG.debug("Applied upstreams {} of {} at runtime, without reload", upstreams.keySet(), this);
+        return true;
+    }
+
+    protected HttpClient getUpstreamApiClient() {
+        synchronized (upstreamApiClientMutex) {
+            if (upstreamApiClient == null) {
+                upstreamApiClient = HttpTool.httpClientBuilder().trustAll().build();
+            }
+            return upstreamApiClient;
+        }
+    }
+
+    protected void closeUpstreamApiClient() {
+        HttpClient client;
+        synchronized (upstreamApiClientMutex) {
+            client = upstreamApiClient;
+            upstreamApiClient = null;
+        }
+        if (client != null) {
+            try {
+                client.getConnectionManager().shutdown();
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                LOG.debug("Error closing upstream API client of "+this+" (continuing)", e);
+            }
         }
     }
 
     /**
      * Installs SSL keys named as {@code id.crt} and {@code id.key} where nginx can find them.
      * <p>
-     * Currently skips re-installs (does not support changing)
+     * Only re-installs if the contents of the certificate or key have changed.
      */
     public void installSslKeys(String id, ProxySslConfig ssl) {
         if (ssl == null) return;
+        installSslKeys(Collections.singletonMap(id, ssl));
+    }
 
-        if (installedKeysCache.contains(id)) return;
+    /**
+     * The SSL configs to install, keyed by the id their files are named after: the global config
+     * and then the first config for each url-mapping domain (which is what the config generator assumes).
+     */
+    protected Map<String, ProxySslConfig> getSslConfigsById() {
+        Map<String, ProxySslConfig> result = Maps.newLinkedHashMap();
+        if (getSslConfig() != null) result.put("global", getSslConfig());
+        for (UrlMapping mapping : getUrlMappings()) {
+            ProxySslConfig ssl = mapping.getConfig(UrlMapping.SSL_CONFIG);
+            if (ssl != null && !result.containsKey(mapping.getDomain())) result.put(mapping.getDomain(), ssl);
+        }
+        return result;
+    }
 
+    /**
+     * Installs the SSL keys for each of the given configs, as per {@link #installSslKeys(String, ProxySslConfig)}.
+     * <p>
+     * The certificates and keys are fetched concurrently (up to {@link #SSL_KEY_INSTALL_PARALLELISM} at a time),
+     * and those whose contents differ from what was last installed are uploaded together in a single transfer.
+     * They are only fetched again when the SSL config changes, or when {@link #checkSslKeyRotation()} finds
+     * that their contents have changed.
+     *
+     * @return a digest of the destination and contents of every file, to include in the config digest
+     */
+    protected String installSslKeys(Map<String, ProxySslConfig> sslConfigs) {
         NginxSshDriver driver = (NginxSshDriver) getDriver();
+        Map<String, String> sourcesByDestination = getSslKeySources(driver, sslConfigs);
+        if (sourcesByDestination.isEmpty()) return "";
 
-        if (!Strings.isEmpty(ssl.getCertificateSourceUrl())) {
-            String certificateDestination = Strings.isEmpty(ssl.getCertificateDestination()) ? driver.getRunDir() + "/conf/" + id + ".crt" : ssl.getCertificateDestination();
-            driver.getMachine().copyTo(ImmutableMap.of("permissions", "0600"),
-                    ResourceUtils.create(this).getResourceFromUrl(ssl.getCertificateSourceUrl()),
-                    certificateDestination);
+        if (sourcesByDestination.equals(fetchedKeySources) && fetchedKeysDigest != null) {
+            if (LOG.isTraceEnabled()) LOG.trace("Not fetching SSL keys for {}; unchanged since last fetched", this);
+            return fetchedKeysDigest;
+        }
+
+        Map<String, byte[]> contents = fetchSslKeys(sourcesByDestination);
+
+        Map<String, byte[]> changed = Maps.newLinkedHashMap();
+        Map<String, String> changedDigests = Maps.newLinkedHashMap();
+        for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+            String digest = Hashing.sha256().hashBytes(entry.getValue()).toString();
+            if (!digest.equals(installedKeyDigests.get(entry.getKey()))) {
+                changed.put(entry.getKey(), entry.getValue());
+                changedDigests.put(entry.getKey(), digest);
+            }
+        }
+
+        if (!changed.isEmpty()) {
+            if (LOG.isDebugEnabled()) LOG.debug("Installing SSL keys on {}: {}", this, changed.keySet());
+            uploadSslKeys(driver, changed);
+            installedKeyDigests.putAll(changedDigests);
+        }
+        String result = digestSslKeys(contents);
+        fetchedKeySources = ImmutableMap.copyOf(sourcesByDestination);
+        fetchedKeysDigest = result;
+        return result;
+    }
+
+    /**
+     * Re-fetches the SSL certificates and keys, run every {@link #SSL_KEY_ROTATION_CHECK_PERIOD}. If their contents
+     * differ from those last installed (e.g. rotated files served from the same URLs), an update is requested,
+     * which installs them and reloads nginx.
+     *
+     * @return whether an update was requested
+     */
+    protected boolean checkSslKeyRotation() {
+        Map<String, String> sourcesByDestination = getSslKeySources((NginxSshDriver) getDriver(), getSslConfigsById());
+        if (sourcesByDestination.isEmpty()) return false;
+
+        String digest = digestSslKeys(fetchSslKeys(sourcesByDestination));
+        if (digest.equals(fetchedKeysDigest)) {
+            if (LOG.isTraceEnabled()) LOG.trace("SSL keys of {} unchanged", this);
+            return false;
+        }
+        LOG.info("SSL certificates or keys of {} have changed; updating", this);
+        // so that the update fetches and installs them
+        fetchedKeysDigest = null;
+        updateNeeded();
+        return true;
+    }
+
+    /** The source URL of each SSL certificate and key to install, by destination path */
+    private Map<String, String> getSslKeySources(NginxSshDriver driver, Map<String, ProxySslConfig> sslConfigs) {
+        Map<String, String> sourcesByDestination = Maps.newLinkedHashMap();
+        for (Map.Entry<String, ProxySslConfig> entry : sslConfigs.entrySet()) {
+            String id = entry.getKey();
+            ProxySslConfig ssl = entry.getValue();
+            if (!Strings.isEmpty(ssl.getCertificateSourceUrl())) {
+                String certificateDestination = Strings.isEmpty(ssl.getCertificateDestination()) ? driver.getRunDir() + "/conf/" + id + ".crt" : ssl.getCertificateDestination();
+                sourcesByDestination.put(certificateDestination, ssl.getCertificateSourceUrl());
+            }
+            if (!Strings.isEmpty(ssl.getKeySourceUrl())) {
+                String keyDestination = Strings.isEmpty(ssl.getKeyDestination()) ? driver.getRunDir() + "/conf/" + id + ".key" : ssl.getKeyDestination();
+                sourcesByDestination.put(keyDestination, ssl.getKeySourceUrl());
+            }
         }
+        return sourcesByDestination;
+    }
+
+    /** Digest of the destination and contents of every file */
+    private static String digestSslKeys(Map<String, byte[]> contentsByDestination) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        for (Map.Entry<String, byte[]> entry : contentsByDestination.entrySet()) {
+            String digest = Hashing.sha256().hashBytes(entry.getValue()).toString();
+            hasher.putString(entry.getKey(), Charsets.UTF_8).putChar('\n').putString(digest, Charsets.UTF_8).putChar('\n');
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Fetches the files with a pool of at most {@link #SSL_KEY_INSTALL_PARALLELISM} parallel tasks, each fetching
+     * the next file not yet taken as soon as it has finished the last.
+     */
+    private Map<String, byte[]> fetchSslKeys(Map<String, String> sourcesByDestination) {
+        Integer configuredParallelism = getConfig(SSL_KEY_INSTALL_PARALLELISM);
+        int parallelism = Math.min(sourcesByDestination.size(), Math.max(1, configuredParallelism == null ? 1 : configuredParallelism));
+        final Queue<Map.Entry<String, String>> pending = new ConcurrentLinkedQueue<Map.Entry<String, String>>(sourcesByDestination.entrySet());
+        final Map<String, byte[]> fetched = Maps.newConcurrentMap();
+        TaskBuilder<Void> tb = Tasks.<Void>builder().parallel(true)
+                .displayName("Fetch SSL keys ("+sourcesByDestination.size()+", "+parallelism+" at a time)");
+        for (int i = 0; i < parallelism; i++) {
+            tb.add(Tasks.<Void>builder().displayName("Fetch SSL keys "+(i+1)+" of "+parallelism).body(new Callable<Void>() {
+                @Override public Void call() throws IOException {
+                    for (Map.Entry<String, String> entry = pending.poll(); entry != null; entry = pending.poll()) {
+                        InputStream in = ResourceUtils.create(NginxControllerImpl.this).getResourceFromUrl(entry.getValue());
+                        try {
+                            fetched.put(entry.getKey(), ByteStreams.toByteArray(in));
+                        } finally {
+                            Streams.closeQuietly(in);
+                        }
+                    }
+                    return null;
+                }}).build());
+        }
+        DynamicTasks.queueIfPossible(tb.build()).orSubmitAsync(this).asTask().getUnchecked();
+
+        Map<String, byte[]> result = Maps.newLinkedHashMap();
+        for (String destination : sourcesByDestination.keySet()) {
+            result.put(destination, fetched.get(destination));
+        }
+        return result;
+    }
 
-        if (!Strings.isEmpty(ssl.getKeySourceUrl())) {
-            String keyDestination = Strings.isEmpty(ssl.getKeyDestination()) ? driver.getRunDir() + "/conf/" + id + ".key" : ssl.getKeyDestination();
+    /**
+     * Uploads the given files with permissions 0600. Several files are bundled into one script, which
+     * decodes each of them into place, so that only a single transfer and a single command are needed.
+     */
+    protected void uploadSslKeys(NginxSshDriver driver, Map<String, byte[]> contentsByDestination) {
+        if (contentsByDestination.size() == 1) {
+            Map.Entry<String, byte[]> entry = Iterables.getOnlyElement(contentsByDestination.entrySet());
             driver.getMachine().copyTo(ImmutableMap.of("permissions", "0600"),
-                    ResourceUtils.create(this).getResourceFromUrl(ssl.getKeySourceUrl()),
-                    keyDestination);
+                    new ByteArrayInputStream(entry.getValue()), entry.getKey());
+            return;
         }
 
-        installedKeysCache.add(id);
+        StringBuilder script = new StringBuilder("set -e\numask 077\n");
+        for (Map.Entry<String, byte[]> entry : contentsByDestination.entrySet()) {
+            script.append(format("base64 --decode > %s <<'EOF_SSL_KEY'\n", entry.getKey()))
+                    .append(BaseEncoding.base64().withSeparator("\n", 76).encode(entry.getValue()))
+                    .append("\nEOF_SSL_KEY\n")
+                    .append(format("chmod 600 %s\n", entry.getKey()));
+        }
+        // the script contains the keys, so is not passed as a command (which would be logged)
+        String scriptFile = driver.getRunDir() + "/conf/.install-ssl-keys.sh";
+        driver.getMachine().copyTo(ImmutableMap.of("permissions", "0600"),
+                new ByteArrayInputStream(script.toString().getBytes(Charsets.UTF_8)), scriptFile);
+        int result = driver.getMachine().execCommands("install ssl keys", ImmutableList.of(
+                format("bash %s ; RESULT=$? ; rm -f %s ; exit $RESULT", scriptFile, scriptFile)));
+        if (result != 0) {
+            throw new IllegalStateException("Failed to install SSL keys on "+this+" (exit code "+result+")");
+        }
     }
 
     @Override
@@ -320,6 +929,17 @@ public class NginxControllerImpl extends AbstractControllerImpl implements Nginx
         }
     }
 
+    @Override
+    public UrlMappingIndex getUrlMappingIndex() {
+        // built on first use; thereafter maintained from the url-mapping events (see connectSensors)
+        synchronized (urlMappingIndexMutex) {
+            if (urlMappingIndex == null) {
+                urlMappingIndex = UrlMappingIndex.of(getUrlMappings());
+            }
+            return urlMappingIndex;
+        }
+    }
+
     @Override
     public String getShortName() {
         return "Nginx";
@@ -20,20 +20,33 @@ package org.apache.brooklyn.entity.proxy.nginx;
 
 import static java.lang.String.format;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.brooklyn.entity.proxy.ProxySslConfig;
+import org.apache.brooklyn.util.exceptions.Exceptions;
 import org.apache.brooklyn.util.text.Strings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.LinkedHashMultimap;
-import com.google.common.collect.Multimap;
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 /**
  * Generates the {@code server.conf} configuration file using sensors on an {@link NginxController}.
+ * <p>
+ * Supports streaming: each block is written out as soon as it is generated, so the complete file
+ * need not be held in memory.
  */
-public class NginxDefaultConfigGenerator implements NginxConfigFileGenerator {
+public class NginxDefaultConfigGenerator implements NginxStreamingConfigFileGenerator {
 
     private static final Logger LOG = LoggerFactory.getLogger(NginxDefaultConfigGenerator.class);
 
@@ -41,6 +54,17 @@ public class NginxDefaultConfigGenerator implements NginxConfigFileGenerator {
 
     @Override
     public String generateConfigFile(NginxDriver driver, NginxController nginx) {
+        StringWriter out = new StringWriter();
+        try {
+            generateConfigFile(driver, nginx, out);
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+        return out.toString();
+    }
+
+    @Override
+    public void generateConfigFile(NginxDriver driver, NginxController nginx, Writer out) throws IOException {
         StringBuilder config = new StringBuilder();
         config.append("\n");
         config.append(format("pid %s;\n", driver.getPidFile()));
@@ -58,24 +82,19 @@ public class NginxDefaultConfigGenerator implements NginxConfigFileGenerator {
 
         // If no servers, then defaults to returning 404
         // TODO Give nicer page back
-        if (nginx.getDomain()!=null || nginx.getServerPoolAddresses() == null || nginx.getServerPoolAddresses().isEmpty()) {
+        Set<String> poolAddresses = nginx.getServerPoolAddresses();
+        if (nginx.getDomain()!=null || poolAddresses == null || poolAddresses.isEmpty()) {
             config.append("  server {\n");
             config.append(getCodeForServerConfig());
             config.append("    listen "+nginx.getPort()+";\n");
             config.append(getCodeFor404());
             config.append("  }\n");
         }
+        flush(config, out);
 
         // For basic round-robin across the server-pool
-        if (nginx.getServerPoolAddresses() != null && nginx.getServerPoolAddresses().size() > 0) {
-            config.append(format("  upstream "+nginx.getId()+" {\n"));
-            if (nginx.isSticky()){
-                config.append("    sticky;\n");
-            }
-            for (String address : nginx.getServerPoolAddresses()) {
-                config.append("    server "+address+";\n");
-            }
-            config.append("  }\n");
+        if (poolAddresses != null && poolAddresses.size() > 0) {
+            appendUpstream(config, nginx, nginx.getId(), poolAddresses);
             config.append("  server {\n");
             config.append(getCodeForServerConfig());
             if (globalSslConfig != null) {
@@ -88,106 +107,189 @@ public class NginxDefaultConfigGenerator implements NginxConfigFileGenerator {
             config.append("      proxy_pass "+(globalSslConfig != null && globalSslConfig.getTargetIsSsl() ? "https" : "http")+"://"+nginx.getId()+";\n");
             config.append("    }\n");
             config.append("  }\n");
+            flush(config, out);
         }
 
         // For mapping by URL
-        Iterable<UrlMapping> mappings = nginx.getUrlMappings();
-        Multimap<String, UrlMapping> mappingsByDomain = LinkedHashMultimap.create();
-        for (UrlMapping mapping : mappings) {
-            Collection<String> addrs = mapping.getAttribute(UrlMapping.TARGET_ADDRESSES);
-            if (addrs != null && addrs.size() > 0) {
-                mappingsByDomain.put(mapping.getDomain(), mapping);
-            }
+        UrlMappingIndex index = getUrlMappingIndex(nginx);
+        for (UrlMappingIndex.Route route : index.getRoutes()) {
+            appendUpstream(config, nginx, route.getUniqueLabel(), route.getTargetAddresses());
+            flush(config, out);
         }
 
-        for (UrlMapping um : mappings) {
-            Collection<String> addrs = um.getAttribute(UrlMapping.TARGET_ADDRESSES);
-            if (addrs != null && addrs.size() > 0) {
-                config.append(format("  upstream "+um.getUniqueLabel()+" {\n"));
-                if (nginx.isSticky()){
-                    config.append("    sticky;\n");
-                }
-                for (String address: addrs) {
-                    config.append("    server "+address+";\n");
+        // server blocks are only re-rendered for domains whose mappings changed
+        final Integer port = nginx.getPort();
+        final ProxySslConfig globalSsl = globalSslConfig;
+        List<Object> renderContext = Arrays.<Object>asList(getClass(), port, globalSsl);
+        for (final String domain : index.getDomains()) {
+            config.append(index.getServerBlock(domain, renderContext, new Function<List<UrlMappingIndex.Route>, String>() {
+                @Override
+                public String apply(List<UrlMappingIndex.Route> routes) {
+                    StringBuilder block = new StringBuilder();
+                    appendServerBlock(block, port, domain, routes, globalSsl);
+                    return block.toString();
                 }
-                config.append("  }\n");
-            }
+            }));
+            flush(config, out);
         }
 
-        for (String domain : mappingsByDomain.keySet()) {
-            config.append("  server {\n");
-            config.append(getCodeForServerConfig());
-            config.append("    listen "+nginx.getPort()+";\n");
-            config.append("    server_name "+domain+";\n");
-            boolean hasRoot = false;
-
-            // set up SSL
-            ProxySslConfig localSslConfig = null;
-            for (UrlMapping mappingInDomain : mappingsByDomain.get(domain)) {
-                ProxySslConfig sslConfig = mappingInDomain.getConfig(UrlMapping.SSL_CONFIG);
-                if (sslConfig!=null) {
-                    verifyConfig(sslConfig);
-                    if (localSslConfig!=null) {
-                        if (localSslConfig.equals(sslConfig)) {
-                            //ignore identical config specified on multiple mappings
-                        } else {
-                            LOG.warn("{} mapping {} provides SSL config for {} when a different config had already been provided by another mapping, ignoring this one",
-                                    new Object[] {this, mappingInDomain, domain});
-                        }
-                    } else if (globalSslConfig!=null) {
-                        if (globalSslConfig.equals(sslConfig)) {
-                            //ignore identical config specified on multiple mappings
-                        } else {
-                            LOG.warn("{} mapping {} provides SSL config for {} when a different config had been provided at root nginx scope, ignoring this one",
-                                    new Object[] {this, mappingInDomain, domain});
-                        }
+        config.append("}\n");
+        flush(config, out);
+    }
+
+    /** Appends the {@code server} block of the given domain, routing to the upstream block of each of its mappings */
+    protected void appendServerBlock(StringBuilder config, Integer port, String domain, List<UrlMappingIndex.Route> routes, ProxySslConfig globalSsl) {
+        config.append("  server {\n");
+        config.append(getCodeForServerConfig());
+        config.append("    listen "+port+";\n");
+        config.append("    server_name "+domain+";\n");
+        boolean hasRoot = false;
+
+        // set up SSL
+        ProxySslConfig localSslConfig = null;
+        for (UrlMappingIndex.Route mappingInDomain : routes) {
+            ProxySslConfig sslConfig = mappingInDomain.getSslConfig();
+            if (sslConfig!=null) {
+                verifyConfig(sslConfig);
+                if (localSslConfig!=null) {
+                    if (localSslConfig.equals(sslConfig)) {
+                        //ignore identical config specified on multiple mappings
                     } else {
-                        //new config, is okay
-                        localSslConfig = sslConfig;
+                        LOG.warn("{} mapping {} provides SSL config for {} when a different config had already been provided by another mapping, ignoring this one",
+                                new Object[] {this, mappingInDomain, domain});
                     }
+                } else if (globalSsl!=null) {
+                    if (globalSsl.equals(sslConfig)) {
+                        //ignore identical config specified on multiple mappings
+                    } else {
+                        LOG.warn("{} mapping {} provides SSL config for {} when a different config had been provided at root nginx scope, ignoring this one",
+                                new Object[] {this, mappingInDomain, domain});
+                    }
+                } else {
+                    //new config, is okay
+                    localSslConfig = sslConfig;
                 }
             }
-            if (localSslConfig != null) {
-                appendSslConfig(domain, config, "    ", localSslConfig, true, true);
-                appendCodeForProxySSLConfig(domain, config, "    ", localSslConfig);
-            }
+        }
+        if (localSslConfig != null) {
+            appendSslConfig(domain, config, "    ", localSslConfig, true, true);
+            appendCodeForProxySSLConfig(domain, config, "    ", localSslConfig);
+        }
 
-            for (UrlMapping mappingInDomain : mappingsByDomain.get(domain)) {
-                // TODO Currently only supports "~" for regex. Could add support for other options,
-                // such as "~*", "^~", literals, etc.
-                boolean isRoot = mappingInDomain.getPath()==null || mappingInDomain.getPath().length()==0 || mappingInDomain.getPath().equals("/");
-                if (isRoot && hasRoot) {
-                    LOG.warn(""+this+" mapping "+mappingInDomain+" provides a duplicate / proxy, ignoring");
-                } else {
-                    hasRoot |= isRoot;
-                    String location = isRoot ? "/" : "~ " + mappingInDomain.getPath();
-                    config.append("    location "+location+" {\n");
-                    Collection<UrlRewriteRule> rewrites = mappingInDomain.getConfig(UrlMapping.REWRITES);
-                    if (rewrites != null && rewrites.size() > 0) {
-                        for (UrlRewriteRule rule: rewrites) {
-                            config.append("      rewrite \"^"+rule.getFrom()+"$\" \""+rule.getTo()+"\"");
-                            if (rule.isBreak()) config.append(" break");
-                            config.append(" ;\n");
-                        }
+        for (UrlMappingIndex.Route mappingInDomain : routes) {
+            // TODO Currently only supports "~" for regex. Could add support for other options,
+            // such as "~*", "^~", literals, etc.
+            boolean isRoot = mappingInDomain.getPath()==null || mappingInDomain.getPath().length()==0 || mappingInDomain.getPath().equals("/");
+            if (isRoot && hasRoot) {
+                LOG.warn(""+this+" mapping "+mappingInDomain+" provides a duplicate / proxy, ignoring");
+            } else {
+                hasRoot |= isRoot;
+                String location = isRoot ? "/" : "~ " + mappingInDomain.getPath();
+                config.append("    location "+location+" {\n");
+                Collection<UrlRewriteRule> rewrites = mappingInDomain.getRewrites();
+                if (rewrites != null && rewrites.size() > 0) {
+                    for (UrlRewriteRule rule: rewrites) {
+                        config.append("      rewrite \"^"+rule.getFrom()+"$\" \""+rule.getTo()+"\"");
+                        if (rule.isBreak()) config.append(" break");
+                        config.append(" ;\n");
                     }
-                    config.append("      proxy_pass "+
-                        (localSslConfig != null && localSslConfig.getTargetIsSsl() ? "https" :
-                         (localSslConfig == null && globalSslConfig != null && globalSslConfig.getTargetIsSsl()) ? "https" :
-                         "http")+
-                        "://"+mappingInDomain.getUniqueLabel()+" ;\n");
-                    config.append("    }\n");
                 }
+                config.append("      proxy_pass "+
+                    (localSslConfig != null && localSslConfig.getTargetIsSsl() ? "https" :
+                     (localSslConfig == null && globalSsl != null && globalSsl.getTargetIsSsl()) ? "https" :
+                     "http")+
+                    "://"+mappingInDomain.getUniqueLabel()+" ;\n");
+                config.append("    }\n");
             }
-            if (!hasRoot) {
-                //provide a root block giving 404 if there isn't one for this server
-                config.append("    location / { \n"+getCodeFor404()+"    }\n");
-            }
-            config.append("  }\n");
         }
+        if (!hasRoot) {
+            //provide a root block giving 404 if there isn't one for this server
+            config.append("    location / { \n"+getCodeFor404()+"    }\n");
+        }
+        config.append("  }\n");
+    }
 
-        config.append("}\n");
+    /** The controller's {@link UrlMappingIndex}, or if it does not maintain one, an index of its current mappings */
+    protected UrlMappingIndex getUrlMappingIndex(NginxController nginx) {
+        UrlMappingIndex result = nginx.getUrlMappingIndex();
+        return (result != null) ? result : UrlMappingIndex.of(nginx.getUrlMappings());
+    }
+
+    /** Writes out (and clears) the block generated so far */
+    protected void flush(StringBuilder config, Writer out) throws IOException {
+        out.append(config);
+        config.setLength(0);
+    }
+
+    /**
+     * Returns the servers of each upstream block (keyed by upstream name) that {@link #generateConfigFile(NginxDriver, NginxController)}
+     * will generate, in the same order, as returned by {@link #getServerEntries(NginxController, Collection)}.
+     */
+    public Map<String, Set<String>> getUpstreams(NginxController nginx) {
+        Map<String, Set<String>> result = Maps.newLinkedHashMap();
+        Set<String> poolAddresses = nginx.getServerPoolAddresses();
+        if (poolAddresses != null && poolAddresses.size() > 0) {
+            result.put(nginx.getId(), ImmutableSet.copyOf(getServerEntries(nginx, poolAddresses)));
+        }
+        for (UrlMappingIndex.Route route : getUrlMappingIndex(nginx).getRoutes()) {
+            result.put(route.getUniqueLabel(), ImmutableSet.copyOf(getServerEntries(nginx, route.getTargetAddresses())));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the server entries of an upstream block targeting the given addresses: each address, followed by 
+     * its weight from {@link NginxController#UPSTREAM_WEIGHTS} if {@link NginxController#UPSTREAM_WEIGHTING} is enabled 
+     * (addresses not yet weighted get the maximum weight).
+     */
+    public Collection<String> getServerEntries(NginxController nginx, Collection<String> addresses) {
+        if (!Boolean.TRUE.equals(nginx.getConfig(NginxController.UPSTREAM_WEIGHTING))) {
+            return addresses;
+        }
+        Map<String, Integer> weights = nginx.getAttribute(NginxController.UPSTREAM_WEIGHTS);
+        Integer maxWeight = nginx.getConfig(NginxController.UPSTREAM_WEIGHT_MAX);
+        List<String> result = Lists.newArrayListWithCapacity(addresses.size());
+        for (String address : addresses) {
+            Integer weight = (weights != null) ? weights.get(address) : null;
+            if (weight == null) weight = maxWeight;
+            result.add((weight != null) ? address+" weight="+weight : address);
+        }
+        return result;
+    }
+
+    /**
+     * Generates the contents of the file included by the named upstream block when 
+     * {@link NginxController#UPSTREAM_DELTA_MODE} is enabled, from its server entries 
+     * (as returned by {@link #getUpstreams(NginxController)}).
+     */
+    public String generateUpstreamServers(Collection<String> addresses) {
+        StringBuilder servers = new StringBuilder();
+        appendUpstreamServers(servers, addresses);
+        return servers.toString();
+    }
+
+    /** Path (relative to the {@code conf} directory) of the file listing the servers of the named upstream block */
+    public static String getUpstreamIncludePath(String name) {
+        return "upstreams/"+name+".conf";
+    }
+
+    protected void appendUpstream(StringBuilder config, NginxController nginx, String name, Collection<String> addresses) {
+        config.append("  upstream "+name+" {\n");
+        if (nginx.isSticky()){
+            config.append("    sticky;\n");
+        }
+        if (Boolean.TRUE.equals(nginx.getConfig(NginxController.UPSTREAM_DELTA_MODE))) {
+            config.append("    include "+getUpstreamIncludePath(name)+";\n");
+        } else {
+            appendUpstreamServers(config, getServerEntries(nginx, addresses));
+        }
+        config.append("  }\n");
+    }
 
-        return config.toString();
+    protected void appendUpstreamServers(StringBuilder config, Collection<String> addresses) {
+        for (String address : addresses) {
+            config.append("    server "+address+";\n");
+        }
     }
 
     protected String getCodeForServerConfig() {
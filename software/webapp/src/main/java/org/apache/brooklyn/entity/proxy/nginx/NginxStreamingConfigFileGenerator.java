@@ -0,0 +1,37 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.entity.proxy.nginx;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A {@link NginxConfigFileGenerator} that can write the {@code server.conf} incrementally, without
+ * building the complete contents in memory.
+ * <p>
+ * Used when {@link NginxController#STREAMING_CONFIG} is enabled.
+ */
+public interface NginxStreamingConfigFileGenerator extends NginxConfigFileGenerator {
+
+    /**
+     * Writes the contents of the {@code server.conf} file to the given writer, which is not closed.
+     */
+    void generateConfigFile(NginxDriver driver, NginxController entity, Writer out) throws IOException;
+
+}
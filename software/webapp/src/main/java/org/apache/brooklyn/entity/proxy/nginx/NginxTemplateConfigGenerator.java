@@ -18,25 +18,50 @@
  */
 package org.apache.brooklyn.entity.proxy.nginx;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.brooklyn.api.entity.Entity;
 import org.apache.brooklyn.config.ConfigKey;
 import org.apache.brooklyn.core.config.ConfigKeys;
+import org.apache.brooklyn.core.entity.EntityInternal;
+import org.apache.brooklyn.core.sensor.Sensors;
 import org.apache.brooklyn.entity.proxy.ProxySslConfig;
 import org.apache.brooklyn.util.collections.MutableMap;
 import org.apache.brooklyn.util.core.ResourceUtils;
-import org.apache.brooklyn.util.core.text.TemplateProcessor;
+import org.apache.brooklyn.util.exceptions.Exceptions;
 import org.apache.brooklyn.util.text.Strings;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Multimap;
 
+import freemarker.template.Configuration;
+import freemarker.template.DefaultObjectWrapperBuilder;
+import freemarker.template.ObjectWrapper;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateHashModel;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+
 /**
  * Processes a FreeMarker template to generate the {@code server.conf} configuration file for an 
  * {@link NginxController}.
  * <p>
  * Note this must be explicitly enabled via {@link NginxController#SERVER_CONF_GENERATOR}.
+ * <p>
+ * The compiled template is cached (per entity and URL, for a short period) so that frequent updates do not 
+ * re-fetch and re-parse the template each time. The template can refer to {@code entity}, {@code driver}, 
+ * {@code location}, {@code mgmt}, {@code config['key']} and {@code attribute['sensor']} (of the entity), 
+ * as well as {@code ssl}, {@code urlMappings} and {@code domainMappings}.
  */
 public class NginxTemplateConfigGenerator implements NginxConfigFileGenerator {
 
@@ -45,13 +70,20 @@ public class NginxTemplateConfigGenerator implements NginxConfigFileGenerator {
                 + "Only applies if 'nginx.config.generator' specifies a generator which uses a template.", 
                 "classpath://org/apache/brooklyn/entity/proxy/nginx/server.conf");
 
+    // static as generator instances are config values, shared between entities and persisted
+    private static final Cache<String, Template> TEMPLATES = CacheBuilder.newBuilder()
+            .maximumSize(1000)
+            .expireAfterWrite(1, TimeUnit.MINUTES)
+            .build();
+
+    // thread-safe once configured, as are the templates it compiles
+    private static final Configuration FREEMARKER = newFreemarkerConfiguration();
+
     public NginxTemplateConfigGenerator() { }
 
     @Override
     public String generateConfigFile(NginxDriver driver, NginxController nginx) {
-        // Check template URL exists
         String templateUrl = driver.getEntity().getConfig(NginxController.SERVER_CONF_TEMPLATE_URL);
-        ResourceUtils.create(this).checkUrlExists(templateUrl);
 
         // Check SSL configuration
         ProxySslConfig ssl = driver.getEntity().getConfig(NginxController.SSL_CONFIG);
@@ -74,9 +106,102 @@ public class NginxTemplateConfigGenerator implements NginxConfigFileGenerator {
                 .put("domainMappings", mappingsByDomain)
                 .build();
 
-        // Get template contents and process
-        String contents = ResourceUtils.create(driver.getEntity()).getResourceAsString(templateUrl);
-        return TemplateProcessor.processTemplateContents("nginx config "+templateUrl, contents, driver, substitutions);
+        // Get the compiled template and process
+        Template template = getTemplate(driver, templateUrl);
+        StringWriter out = new StringWriter();
+        try {
+            template.process(new NginxTemplateModel(driver, substitutions), out);
+        } catch (TemplateException | IOException e) {
+            throw Exceptions.propagateAnnotated("Error processing template nginx config "+templateUrl, e);
+        }
+        return out.toString();
+    }
+
+    protected Template getTemplate(final NginxDriver driver, final String templateUrl) {
+        try {
+            return TEMPLATES.get(driver.getEntity().getId()+" "+templateUrl, new Callable<Template>() {
+                @Override
+                public Template call() throws IOException {
+                    return loadTemplate(driver, templateUrl);
+                }
+            });
+        } catch (ExecutionException e) {
+            throw Exceptions.propagate(e.getCause());
+        }
+    }
+
+    /** Fetches and compiles the template, bypassing the cache */
+    protected Template loadTemplate(NginxDriver driver, String templateUrl) throws IOException {
+        String contents = getTemplateContents(driver, templateUrl);
+        return new Template("nginx config "+templateUrl, new StringReader(contents), FREEMARKER);
+    }
+
+    protected String getTemplateContents(NginxDriver driver, String templateUrl) {
+        // Check template URL exists
+        ResourceUtils.create(this).checkUrlExists(templateUrl);
+        return ResourceUtils.create(driver.getEntity()).getResourceAsString(templateUrl);
+    }
+
+    private static Configuration newFreemarkerConfiguration() {
+        Configuration result = new Configuration(Configuration.VERSION_2_3_22);
+        result.setTagSyntax(Configuration.AUTO_DETECT_TAG_SYNTAX);
+        result.setObjectWrapper(new DefaultObjectWrapperBuilder(Configuration.VERSION_2_3_22).build());
+        return result;
+    }
+
+    /**
+     * The substitutions for a template: the given values, then the entity, driver, location and management
+     * context, then the entity's config and attributes by name.
+     */
+    private static class NginxTemplateModel implements TemplateHashModel {
+        private final NginxDriver driver;
+        private final Map<String, Object> substitutions;
+
+        NginxTemplateModel(NginxDriver driver, Map<String, Object> substitutions) {
+            this.driver = driver;
+            this.substitutions = substitutions;
+        }
+
+        @Override
+        public TemplateModel get(String key) throws TemplateModelException {
+            ObjectWrapper wrapper = FREEMARKER.getObjectWrapper();
+            final Entity entity = driver.getEntity();
+            if (substitutions.containsKey(key)) {
+                return wrapper.wrap(substitutions.get(key));
+            } else if ("entity".equals(key)) {
+                return wrapper.wrap(entity);
+            } else if ("driver".equals(key)) {
+                return wrapper.wrap(driver);
+            } else if ("location".equals(key)) {
+                return wrapper.wrap(driver.getLocation());
+            } else if ("mgmt".equals(key)) {
+                return wrapper.wrap(((EntityInternal) entity).getManagementContext());
+            } else if ("config".equals(key)) {
+                return new TemplateHashModel() {
+                    @Override public TemplateModel get(String name) throws TemplateModelException {
+                        return FREEMARKER.getObjectWrapper().wrap(entity.getConfig(ConfigKeys.newConfigKey(Object.class, name)));
+                    }
+                    @Override public boolean isEmpty() {
+                        return false;
+                    }
+                };
+            } else if ("attribute".equals(key)) {
+                return new TemplateHashModel() {
+                    @Override public TemplateModel get(String name) throws TemplateModelException {
+                        return FREEMARKER.getObjectWrapper().wrap(entity.getAttribute(Sensors.newSensor(Object.class, name)));
+                    }
+                    @Override public boolean isEmpty() {
+                        return false;
+                    }
+                };
+            }
+            return null;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return false;
+        }
     }
 
 }
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.entity.proxy.nginx;
+
+import java.util.Map;
+
+import org.apache.brooklyn.api.entity.Entity;
+import org.apache.brooklyn.entity.webapp.WebAppServiceMetrics;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Derives the {@code weight} of each server of an upstream block from the web app metrics of the
+ * members of the server pool, for {@link NginxController#UPSTREAM_WEIGHTING}.
+ * <p>
+ * A member's mean time per request is its {@link WebAppServiceMetrics#PROCESSING_TIME_FRACTION_IN_WINDOW
+ * processing time fraction} divided by its {@link WebAppServiceMetrics#REQUESTS_PER_SECOND_IN_WINDOW
+ * request rate}, so a slow or overloaded member (busy for longer per request) gets a lower weight than
+ * the fastest member, which gets the maximum weight. Members not yet reporting traffic also get the
+ * maximum weight, so that new members are not starved of requests.
+ * <p>
+ * Weights are only changed when they shift significantly (by the hysteresis fraction, and at least 1),
+ * so that noise in the metrics does not cause a stream of reloads.
+ */
+public class UpstreamWeighting {
+
+    private UpstreamWeighting() {}
+
+    /**
+     * @return the mean seconds spent per request by the given member over the metrics window, or null if
+     *         it is not reporting traffic
+     */
+    public static Double getSecondsPerRequest(Entity member) {
+        Double fraction = member.getAttribute(WebAppServiceMetrics.PROCESSING_TIME_FRACTION_IN_WINDOW);
+        Double rate = member.getAttribute(WebAppServiceMetrics.REQUESTS_PER_SECOND_IN_WINDOW);
+        if (fraction == null || rate == null || rate <= 0 || fraction < 0) return null;
+        return fraction / rate;
+    }
+
+    /**
+     * @param secondsPerRequest by address; values may be null for members not reporting traffic
+     * @param previous the weights last published, by address
+     * @return the weight of every address, between 1 and {@code maxWeight}; the previous weight is kept
+     *         where the new one differs by less than {@code hysteresis} of it
+     */
+    public static Map<String, Integer> computeWeights(Map<String, Double> secondsPerRequest, Map<String, Integer> previous,
+            int maxWeight, double hysteresis) {
+        double fastest = Double.MAX_VALUE;
+        for (Double value : secondsPerRequest.values()) {
+            if (value != null && value > 0) fastest = Math.min(fastest, value);
+        }
+
+        Map<String, Integer> result = Maps.newLinkedHashMap();
+        for (Map.Entry<String, Double> entry : secondsPerRequest.entrySet()) {
+            Double value = entry.getValue();
+            int weight = (value == null || value <= 0 || fastest == Double.MAX_VALUE)
+                    ? maxWeight
+                    : (int) Math.max(1, Math.min(maxWeight, Math.round(maxWeight * fastest / value)));
+            Integer old = (previous != null) ? previous.get(entry.getKey()) : null;
+            if (old != null && Math.abs(weight - old) < Math.max(1, hysteresis * old)) {
+                weight = old;
+            }
+            result.put(entry.getKey(), weight);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.entity.proxy.nginx;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.brooklyn.entity.proxy.ProxySslConfig;
+
+import com.google.common.base.Function;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * An index of the {@link UrlMapping}s of a controller by domain, holding a snapshot of what the config
+ * generator needs from each mapping (its path, rewrites, SSL config and target addresses), so that
+ * rendering does not query every mapping entity on every update.
+ * <p>
+ * The index is maintained incrementally, from mappings being added and removed and from their
+ * {@link UrlMapping#TARGET_ADDRESSES} changing. It also caches the rendered {@code server} block of each
+ * domain, which is discarded only when a mapping of that domain changes; so a change to one mapping
+ * re-renders just its own domain's block, however many other mappings there are.
+ * <p>
+ * Other config of a mapping (such as its rewrites) is expected to be set before it is managed, as
+ * documented on {@link UrlMapping#addRewrite(UrlRewriteRule)}; it is only re-read when the mapping's
+ * target addresses change.
+ */
+public class UrlMappingIndex {
+
+    /** What the config generator uses of a {@link UrlMapping}, as of when it was last indexed. */
+    public static class Route {
+        private final String mappingId;
+        private final String uniqueLabel;
+        private final String domain;
+        private final String path;
+        private final Collection<String> targetAddresses;
+        private final ProxySslConfig sslConfig;
+        private final Collection<UrlRewriteRule> rewrites;
+
+        public Route(UrlMapping mapping) {
+            this.mappingId = mapping.getId();
+            this.uniqueLabel = mapping.getUniqueLabel();
+            this.domain = mapping.getDomain();
+            this.path = mapping.getPath();
+            Collection<String> addresses = mapping.getAttribute(UrlMapping.TARGET_ADDRESSES);
+            this.targetAddresses = (addresses == null) ? ImmutableList.<String>of() : ImmutableList.copyOf(addresses);
+            this.sslConfig = mapping.getConfig(UrlMapping.SSL_CONFIG);
+            Collection<UrlRewriteRule> rewriteRules = mapping.getConfig(UrlMapping.REWRITES);
+            this.rewrites = (rewriteRules == null) ? ImmutableList.<UrlRewriteRule>of() : ImmutableList.copyOf(rewriteRules);
+        }
+
+        public String getMappingId() {
+            return mappingId;
+        }
+
+        public String getUniqueLabel() {
+            return uniqueLabel;
+        }
+
+        public String getDomain() {
+            return domain;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public Collection<String> getTargetAddresses() {
+            return targetAddresses;
+        }
+
+        public boolean hasTargets() {
+            return !targetAddresses.isEmpty();
+        }
+
+        public ProxySslConfig getSslConfig() {
+            return sslConfig;
+        }
+
+        public Collection<UrlRewriteRule> getRewrites() {
+            return rewrites;
+        }
+
+        @Override
+        public String toString() {
+            return "Route["+uniqueLabel+": "+domain+(path != null ? " "+path : "")+" -> "+targetAddresses+"]";
+        }
+    }
+
+    private final Map<String, Route> routesByMappingId = Maps.newLinkedHashMap();
+    private final Map<String, Map<String, Route>> routesByDomain = Maps.newLinkedHashMap();
+    private final Map<String, String> renderedServerBlocks = Maps.newHashMap();
+    private Object renderContext;
+
+    /** @return an index of the given mappings, e.g. for a controller that does not maintain one */
+    public static UrlMappingIndex of(Iterable<UrlMapping> mappings) {
+        UrlMappingIndex result = new UrlMappingIndex();
+        for (UrlMapping mapping : mappings) {
+            result.put(mapping);
+        }
+        return result;
+    }
+
+    /** Adds or re-indexes the given mapping. */
+    public synchronized void put(UrlMapping mapping) {
+        Route route = new Route(mapping);
+        Route old = routesByMappingId.put(route.getMappingId(), route);
+        if (old != null && !Objects.equal(old.getDomain(), route.getDomain())) {
+            removeFromDomain(old);
+        }
+        Map<String, Route> domainRoutes = routesByDomain.get(route.getDomain());
+        if (domainRoutes == null) {
+            domainRoutes = Maps.newLinkedHashMap();
+            routesByDomain.put(route.getDomain(), domainRoutes);
+        }
+        domainRoutes.put(route.getMappingId(), route);
+        renderedServerBlocks.remove(route.getDomain());
+    }
+
+    /** Removes the mapping with the given id, if indexed. */
+    public synchronized void remove(String mappingId) {
+        Route old = routesByMappingId.remove(mappingId);
+        if (old != null) removeFromDomain(old);
+    }
+
+    private void removeFromDomain(Route route) {
+        Map<String, Route> domainRoutes = routesByDomain.get(route.getDomain());
+        if (domainRoutes != null) {
+            domainRoutes.remove(route.getMappingId());
+            if (domainRoutes.isEmpty()) routesByDomain.remove(route.getDomain());
+        }
+        renderedServerBlocks.remove(route.getDomain());
+    }
+
+    public synchronized int size() {
+        return routesByMappingId.size();
+    }
+
+    /** @return the routes which have target addresses, in the order their mappings were first indexed */
+    public synchronized List<Route> getRoutes() {
+        List<Route> result = Lists.newArrayListWithCapacity(routesByMappingId.size());
+        for (Route route : routesByMappingId.values()) {
+            if (route.hasTargets()) result.add(route);
+        }
+        return result;
+    }
+
+    /** @return the domains with at least one route which has target addresses */
+    public synchronized List<String> getDomains() {
+        List<String> result = Lists.newArrayListWithCapacity(routesByDomain.size());
+        for (Map.Entry<String, Map<String, Route>> entry : routesByDomain.entrySet()) {
+            for (Route route : entry.getValue().values()) {
+                if (route.hasTargets()) {
+                    result.add(entry.getKey());
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** @return the routes of the given domain which have target addresses */
+    public synchronized List<Route> getRoutes(String domain) {
+        Map<String, Route> domainRoutes = routesByDomain.get(domain);
+        if (domainRoutes == null) return ImmutableList.of();
+        List<Route> result = Lists.newArrayListWithCapacity(domainRoutes.size());
+        for (Route route : domainRoutes.values()) {
+            if (route.hasTargets()) result.add(route);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the {@code server} block of the given domain, from the cache if none of its mappings has changed
+     * since it was rendered, otherwise rendered from its routes (with target addresses) by the given function.
+     * 
+     * @param context everything else the rendering depends on (e.g. the generator, port and global SSL config);
+     *        if it differs from that of the cached blocks, they are all discarded
+     */
+    public synchronized String getServerBlock(String domain, Object context, Function<List<Route>, String> renderer) {
+        if (!Objects.equal(context, renderContext)) {
+            renderedServerBlocks.clear();
+            renderContext = context;
+        }
+        String result = renderedServerBlocks.get(domain);
+        if (result == null) {
+            result = renderer.apply(getRoutes(domain));
+            if (routesByDomain.containsKey(domain)) renderedServerBlocks.put(domain, result);
+        }
+        return result;
+    }
+}
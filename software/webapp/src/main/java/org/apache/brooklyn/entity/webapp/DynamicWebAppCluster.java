@@ -21,9 +21,13 @@ package org.apache.brooklyn.entity.webapp;
 import org.apache.brooklyn.api.catalog.Catalog;
 import org.apache.brooklyn.api.entity.ImplementedBy;
 import org.apache.brooklyn.api.sensor.AttributeSensor;
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.config.ConfigKeys;
 import org.apache.brooklyn.core.config.render.RendererHints;
+import org.apache.brooklyn.core.sensor.Sensors;
 import org.apache.brooklyn.core.sensor.BasicAttributeSensor;
 import org.apache.brooklyn.entity.group.DynamicCluster;
+import org.apache.brooklyn.util.core.flags.SetFromFlag;
 import org.apache.brooklyn.util.time.Duration;
 
 /**
@@ -40,6 +44,53 @@ import org.apache.brooklyn.util.time.Duration;
 public interface DynamicWebAppCluster extends DynamicCluster, WebAppService, JavaWebAppService,
         JavaWebAppService.CanDeployAndUndeploy, JavaWebAppService.CanRedeployAll {
 
+    @SetFromFlag("aggregationPublishPeriod")
+    public static final ConfigKey<Duration> AGGREGATION_PUBLISH_PERIOD = ConfigKeys.newConfigKey(Duration.class,
+            "dynamicwebappcluster.aggregation.publishPeriod",
+            "How often the cluster-wide totals and averages of the members' metrics are published; "
+                + "if zero, they are published on every change",
+            Duration.ONE_SECOND);
+
+    @SetFromFlag("serviceUpWaitTimeout")
+    public static final ConfigKey<Duration> SERVICE_UP_WAIT_TIMEOUT = ConfigKeys.newConfigKey(Duration.class,
+            "dynamicwebappcluster.deploy.serviceUpWaitTimeout",
+            "Maximum time that deploy, undeploy and redeployAll wait for each member to report service up before acting on it; "
+                + "a member not up in time fails the operation",
+            Duration.minutes(30));
+
+    @SetFromFlag("deployBatchSize")
+    public static final ConfigKey<Integer> DEPLOY_BATCH_SIZE = ConfigKeys.newIntegerConfigKey(
+            "dynamicwebappcluster.deploy.batchSize",
+            "If set, deploy and redeployAll roll through the members this many at a time, waiting for each batch "
+                + "to be healthy before starting the next; if unset, all members are deployed to at once");
+
+    @SetFromFlag("deployMaxParallel")
+    public static final ConfigKey<Integer> DEPLOY_MAX_PARALLEL = ConfigKeys.newIntegerConfigKey(
+            "dynamicwebappcluster.deploy.maxParallel",
+            "Maximum number of members deployed to (and so downloading the artifact) at once; if unset, the whole batch");
+
+    @SetFromFlag("deployHealthGateTimeout")
+    public static final ConfigKey<Duration> DEPLOY_HEALTH_GATE_TIMEOUT = ConfigKeys.newConfigKey(Duration.class,
+            "dynamicwebappcluster.deploy.healthGateTimeout",
+            "In a rolling deploy, maximum time for the members of a batch to serve the deployed contexts before the deploy is aborted",
+            Duration.FIVE_MINUTES);
+
+    @SetFromFlag("deployPeerDistribution")
+    public static final ConfigKey<Boolean> DEPLOY_PEER_DISTRIBUTION = ConfigKeys.newBooleanConfigKey(
+            "dynamicwebappcluster.deploy.peerDistribution",
+            "Whether deploy and redeployAll first distribute each artifact between the members' machines in a tree fan-out, "
+                + "with only the first few fetching it from its source; requires members to reach each other with ssh/scp",
+            false);
+
+    @SetFromFlag("deployPeerSeeds")
+    public static final ConfigKey<Integer> DEPLOY_PEER_SEEDS = ConfigKeys.newIntegerConfigKey(
+            "dynamicwebappcluster.deploy.peerSeeds",
+            "With peer distribution, the number of members which fetch each artifact from its source",
+            1);
+
+    public static final AttributeSensor<Double> DEPLOY_PROGRESS = Sensors.newDoubleSensor(
+            "webapp.deploy.progress", "Fraction (0 to 1) of members done by the current or last deploy or redeployAll");
+
     public static final AttributeSensor<Double> REQUEST_COUNT_PER_NODE = new BasicAttributeSensor<Double>(
             Double.class, "webapp.reqs.total.perNode", "Cluster entity request average");
 
@@ -20,35 +20,53 @@ package org.apache.brooklyn.entity.webapp;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.net.URI;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.apache.brooklyn.api.entity.Entity;
+import org.apache.brooklyn.api.mgmt.SubscriptionHandle;
 import org.apache.brooklyn.api.mgmt.Task;
 import org.apache.brooklyn.api.mgmt.TaskAdaptable;
 import org.apache.brooklyn.api.sensor.AttributeSensor;
+import org.apache.brooklyn.api.sensor.EnricherSpec;
+import org.apache.brooklyn.api.sensor.SensorEvent;
+import org.apache.brooklyn.api.sensor.SensorEventListener;
 import org.apache.brooklyn.core.effector.Effectors;
 import org.apache.brooklyn.core.entity.Attributes;
 import org.apache.brooklyn.core.entity.Entities;
-import org.apache.brooklyn.enricher.stock.Enrichers;
 import org.apache.brooklyn.entity.group.DynamicCluster;
 import org.apache.brooklyn.entity.group.DynamicClusterImpl;
 import org.apache.brooklyn.util.collections.MutableMap;
 import org.apache.brooklyn.util.collections.MutableSet;
 import org.apache.brooklyn.util.core.task.DynamicTasks;
+import org.apache.brooklyn.util.core.task.ScheduledTask;
 import org.apache.brooklyn.util.core.task.TaskBuilder;
 import org.apache.brooklyn.util.core.task.TaskTags;
 import org.apache.brooklyn.util.core.task.Tasks;
 import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.http.HttpTool;
+import org.apache.brooklyn.util.http.HttpToolResponse;
+import org.apache.brooklyn.util.text.Strings;
+import org.apache.brooklyn.util.time.CountdownTimer;
 import org.apache.brooklyn.util.time.Duration;
 import org.apache.brooklyn.util.time.Time;
+import org.apache.http.client.HttpClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.ListenableFuture;
 
 /**
  * DynamicWebAppClusters provide cluster-wide aggregates of entity attributes.  Currently totals and averages:
@@ -63,6 +81,7 @@ public class DynamicWebAppClusterImpl extends DynamicClusterImpl implements Dyna
 
     private static final Logger log = LoggerFactory.getLogger(DynamicWebAppClusterImpl.class);
     private static final FilenameToWebContextMapper FILENAME_TO_WEB_CONTEXT_MAPPER = new FilenameToWebContextMapper();
+    private static final Duration HEALTH_GATE_CHECK_PERIOD = Duration.ONE_SECOND;
     
     /**
      * Instantiate a new DynamicWebAppCluster.  Parameters as per {@link DynamicCluster#DynamicCluster()}
@@ -76,91 +95,199 @@ public class DynamicWebAppClusterImpl extends DynamicClusterImpl implements Dyna
         super.init();
         // Enricher attribute setup.  A way of automatically discovering these (but avoiding
         // averaging things like HTTP port and response codes) would be neat.
-        List<? extends List<? extends AttributeSensor<? extends Number>>> summingEnricherSetup = ImmutableList.of(
-                ImmutableList.of(REQUEST_COUNT, REQUEST_COUNT),
-                ImmutableList.of(ERROR_COUNT, ERROR_COUNT),
-                ImmutableList.of(REQUESTS_PER_SECOND_LAST, REQUESTS_PER_SECOND_LAST),
-                ImmutableList.of(REQUESTS_PER_SECOND_IN_WINDOW, REQUESTS_PER_SECOND_IN_WINDOW),
-                ImmutableList.of(TOTAL_PROCESSING_TIME, TOTAL_PROCESSING_TIME),
-                ImmutableList.of(PROCESSING_TIME_FRACTION_IN_WINDOW, PROCESSING_TIME_FRACTION_IN_WINDOW)
-        );
+        Map<AttributeSensor<? extends Number>, AttributeSensor<? extends Number>> sums = ImmutableMap.<AttributeSensor<? extends Number>, AttributeSensor<? extends Number>>builder()
+                .put(REQUEST_COUNT, REQUEST_COUNT)
+                .put(ERROR_COUNT, ERROR_COUNT)
+                .put(REQUESTS_PER_SECOND_LAST, REQUESTS_PER_SECOND_LAST)
+                .put(REQUESTS_PER_SECOND_IN_WINDOW, REQUESTS_PER_SECOND_IN_WINDOW)
+                .put(TOTAL_PROCESSING_TIME, TOTAL_PROCESSING_TIME)
+                .put(PROCESSING_TIME_FRACTION_IN_WINDOW, PROCESSING_TIME_FRACTION_IN_WINDOW)
+                .build();
         
-        List<? extends List<? extends AttributeSensor<? extends Number>>> averagingEnricherSetup = ImmutableList.of(
-                ImmutableList.of(REQUEST_COUNT, REQUEST_COUNT_PER_NODE),
-                ImmutableList.of(ERROR_COUNT, ERROR_COUNT_PER_NODE),
-                ImmutableList.of(REQUESTS_PER_SECOND_LAST, REQUESTS_PER_SECOND_LAST_PER_NODE),
-                ImmutableList.of(REQUESTS_PER_SECOND_IN_WINDOW, REQUESTS_PER_SECOND_IN_WINDOW_PER_NODE),
-                ImmutableList.of(TOTAL_PROCESSING_TIME, TOTAL_PROCESSING_TIME_PER_NODE),
-                ImmutableList.of(PROCESSING_TIME_FRACTION_IN_WINDOW, PROCESSING_TIME_FRACTION_IN_WINDOW_PER_NODE)
-        );
+        Map<AttributeSensor<? extends Number>, AttributeSensor<? extends Number>> averages = ImmutableMap.<AttributeSensor<? extends Number>, AttributeSensor<? extends Number>>builder()
+                .put(REQUEST_COUNT, REQUEST_COUNT_PER_NODE)
+                .put(ERROR_COUNT, ERROR_COUNT_PER_NODE)
+                .put(REQUESTS_PER_SECOND_LAST, REQUESTS_PER_SECOND_LAST_PER_NODE)
+                .put(REQUESTS_PER_SECOND_IN_WINDOW, REQUESTS_PER_SECOND_IN_WINDOW_PER_NODE)
+                .put(TOTAL_PROCESSING_TIME, TOTAL_PROCESSING_TIME_PER_NODE)
+                .put(PROCESSING_TIME_FRACTION_IN_WINDOW, PROCESSING_TIME_FRACTION_IN_WINDOW_PER_NODE)
+                .build();
         
-        for (List<? extends AttributeSensor<? extends Number>> es : summingEnricherSetup) {
-            AttributeSensor<? extends Number> t = es.get(0);
-            AttributeSensor<? extends Number> total = es.get(1);
-            enrichers().add(Enrichers.builder()
-                    .aggregating(t)
-                    .publishing(total)
-                    .fromMembers()
-                    .computingSum()
-                    .build());
+        // one enricher keeping running totals, rather than one per sensor recomputing over all members per event
+        enrichers().add(EnricherSpec.create(IncrementalMemberAggregator.class)
+                .configure(IncrementalMemberAggregator.SUMS, sums)
+                .configure(IncrementalMemberAggregator.AVERAGES, averages)
+                .configure(IncrementalMemberAggregator.PUBLISH_PERIOD, getConfig(AGGREGATION_PUBLISH_PERIOD)));
+
+        // percentiles can't be summed or averaged, so merge the members' histograms instead
+        enrichers().add(EnricherSpec.create(LatencyHistogramAggregator.class));
+    }
+    
+    /**
+     * Runs the given task (often an invocation on the target) once the target reports service up,
+     * as a task with the given name; see {@link DeferredUntilServiceUp}.
+     */
+    <T> ListenableFuture<T> whenServiceUp(Entity target, TaskAdaptable<T> task, String name) {
+        DeferredUntilServiceUp<T> result = deferUntilServiceUp(target, task, name);
+        result.begin();
+        return result;
+    }
+
+    <T> DeferredUntilServiceUp<T> deferUntilServiceUp(Entity target, TaskAdaptable<T> task, String name) {
+        return new DeferredUntilServiceUp<T>(target, task, name, getConfig(SERVICE_UP_WAIT_TIMEOUT));
+    }
+
+    /** Thrown when a target goes away before its task is run; callers carry on without it. */
+    static class TargetGoneException extends IllegalStateException {
+        private static final long serialVersionUID = 3402357466186545476L;
+
+        TargetGoneException(String message) {
+            super(message);
         }
-        
-        for (List<? extends AttributeSensor<? extends Number>> es : averagingEnricherSetup) {
-            @SuppressWarnings("unchecked")
-            AttributeSensor<Number> t = (AttributeSensor<Number>) es.get(0);
-            @SuppressWarnings("unchecked")
-            AttributeSensor<Double> average = (AttributeSensor<Double>) es.get(1);
-            enrichers().add(Enrichers.builder()
-                    .aggregating(t)
-                    .publishing(average)
-                    .fromMembers()
-                    .computingAverage()
-                    .defaultValueForUnreportedSensors(0)
-                    .build());
+
+        TargetGoneException(String message, Throwable cause) {
+            super(message, cause);
         }
     }
-    
-    // TODO this will probably be useful elsewhere ... but where to put it?
-    // TODO add support for this in DependentConfiguration (see TODO there)
-    /** Waits for the given target to report service up, then runs the given task
-     * (often an invocation on that entity), with the given name.
-     * If the target goes away, this task marks itself inessential
-     * before failing so as not to cause a parent task to fail. */
-    static <T> Task<T> whenServiceUp(final Entity target, final TaskAdaptable<T> task, String name) {
-        return Tasks.<T>builder().displayName(name).dynamic(true).body(new Callable<T>() {
-            @Override
-            public T call() {
-                try {
-                    while (true) {
-                        if (!Entities.isManaged(target)) {
-                            Tasks.markInessential();
-                            throw new IllegalStateException("Target "+target+" is no longer managed");
+
+    /**
+     * The result of a task to be run once its target reports service up.
+     * <p>
+     * No thread is held while waiting: once {@link #begin() begun}, the task is submitted from the subscription
+     * to the target's {@link Attributes#SERVICE_UP} (or at once, if it is already up). The result fails with a
+     * {@link TargetGoneException} if the target is removed from this cluster first, is unmanaged, or is unmanaged
+     * by the time the task fails; or with an {@link IllegalStateException} if the target is not up within
+     * {@link #SERVICE_UP_WAIT_TIMEOUT}, when a target unmanaged without being removed is also noticed.
+     */
+    protected class DeferredUntilServiceUp<T> extends AbstractFuture<T> {
+        private final Entity target;
+        private final TaskAdaptable<T> task;
+        private final String name;
+        private final Duration timeout;
+        private SubscriptionHandle serviceUpHandle;
+        private SubscriptionHandle memberRemovedHandle;
+        private Task<?> timeoutTask;
+        private Task<?> runner;
+        private boolean settled;
+
+        DeferredUntilServiceUp(Entity target, TaskAdaptable<T> task, String name, Duration timeout) {
+            this.target = target;
+            this.task = task;
+            this.name = name;
+            this.timeout = timeout;
+        }
+
+        void begin() {
+            synchronized (this) {
+                serviceUpHandle = subscriptions().subscribe(target, Attributes.SERVICE_UP, new SensorEventListener<Boolean>() {
+                    @Override public void onEvent(SensorEvent<Boolean> event) {
+                        if (Boolean.TRUE.equals(event.getValue())) runTask();
+                    }
+                });
+                memberRemovedHandle = subscriptions().subscribe(DynamicWebAppClusterImpl.this, MEMBER_REMOVED, new SensorEventListener<Entity>() {
+                    @Override public void onEvent(SensorEvent<Entity> event) {
+                        if (target.equals(event.getValue())) {
+                            fail(new TargetGoneException("Target "+target+" was removed from "+DynamicWebAppClusterImpl.this));
                         }
-                        if (Boolean.TRUE.equals(target.getAttribute(Attributes.SERVICE_UP))) {
-                            Tasks.resetBlockingDetails();
-                            TaskTags.markInessential(task);
-                            DynamicTasks.queue(task);
-                            try {
-                                return task.asTask().getUnchecked();
-                            } catch (Exception e) {
-                                if (Entities.isManaged(target)) {
-                                    throw Exceptions.propagate(e);
-                                } else {
-                                    Tasks.markInessential();
-                                    throw new IllegalStateException("Target "+target+" is no longer managed", e);
+                    }
+                });
+                if (timeout != null && !Duration.PRACTICALLY_FOREVER.equals(timeout)) {
+                    timeoutTask = Entities.submit(DynamicWebAppClusterImpl.this, new ScheduledTask(MutableMap.of(
+                            "displayName", "Timeout of "+name, "delay", timeout, "maxIterations", 1), new Callable<Task<?>>() {
+                        @Override public Task<?> call() {
+                            return Tasks.builder().displayName("Timeout of "+name).body(new Runnable() {
+                                @Override public void run() {
+                                    fail(Entities.isManaged(target)
+                                            ? new IllegalStateException("Target "+target+" not up within "+timeout)
+                                            : new TargetGoneException("Target "+target+" is no longer managed"));
                                 }
-                            }
-                        } else {
-                            Tasks.setBlockingDetails("Waiting on "+target+" to be ready");
+                            }).build();
+                        }
+                    }));
+                }
+            }
+            // (re)check after subscribing, in case the transition happened before the subscription
+            if (!Entities.isManaged(target)) {
+                fail(new TargetGoneException("Target "+target+" is no longer managed"));
+            } else if (Boolean.TRUE.equals(target.getAttribute(Attributes.SERVICE_UP))) {
+                runTask();
+            }
+        }
+
+        private void runTask() {
+            synchronized (this) {
+                if (!settle()) return;
+                runner = Entities.submit(DynamicWebAppClusterImpl.this, Tasks.<Void>builder().displayName(name).dynamic(true).body(new Runnable() {
+                    @Override public void run() {
+                        // its failure is reported through this result, rather than by failing this task
+                        TaskTags.markInessential(task);
+                        DynamicTasks.queue(task);
+                        try {
+                            set(task.asTask().getUnchecked());
+                        } catch (Exception e) {
+                            Exceptions.propagateIfFatal(e);
+                            setException(Entities.isManaged(target) ? e : new TargetGoneException("Target "+target+" is no longer managed", e));
                         }
-                        // TODO replace with subscription?
-                        Time.sleep(Duration.ONE_SECOND);
                     }
-                } finally {
-                    Tasks.resetBlockingDetails();
+                }).build());
+            }
+        }
+
+        private void fail(Exception e) {
+            synchronized (this) {
+                if (!settle()) return;
+            }
+            setException(e);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            synchronized (this) {
+                if (!settle() && runner != null) {
+                    runner.cancel(mayInterruptIfRunning);
+                }
+            }
+            return super.cancel(mayInterruptIfRunning);
+        }
+
+        /** @return whether this call settled the wait, in which case it is no longer subscribed or timed */
+        private boolean settle() {
+            if (settled) return false;
+            settled = true;
+            if (serviceUpHandle != null) subscriptions().unsubscribe(target, serviceUpHandle);
+            if (memberRemovedHandle != null) subscriptions().unsubscribe(DynamicWebAppClusterImpl.this, memberRemovedHandle);
+            if (timeoutTask != null) timeoutTask.cancel(false);
+            return true;
+        }
+    }
+
+    /**
+     * Waits for all the given results, ignoring those whose targets have gone (see {@link TargetGoneException}),
+     * and then throws the first other failure, if any. If interrupted, cancels those not yet done.
+     */
+    protected void awaitAll(Map<Entity, ? extends Future<?>> results) {
+        Throwable failure = null;
+        try {
+            for (Map.Entry<Entity, ? extends Future<?>> entry : results.entrySet()) {
+                try {
+                    entry.getValue().get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof TargetGoneException) {
+                        log.debug("Continuing without {} in {}: {}", new Object[] {entry.getKey(), this, e.getCause().getMessage()});
+                    } else if (failure == null) {
+                        failure = e.getCause();
+                    }
                 }
             }
-        }).build();        
+        } catch (InterruptedException e) {
+            for (Future<?> result : results.values()) {
+                result.cancel(true);
+            }
+            throw Exceptions.propagate(e);
+        }
+        if (failure != null) {
+            throw Exceptions.propagate(failure);
+        }
     }
 
     @Override
@@ -175,12 +302,17 @@ public class DynamicWebAppClusterImpl extends DynamicClusterImpl implements Dyna
         log.debug("Deploying "+targetName+"->"+url+" across cluster "+this+"; WARs now "+getConfig(WARS_BY_CONTEXT));
 
         Iterable<CanDeployAndUndeploy> targets = Iterables.filter(getChildren(), CanDeployAndUndeploy.class);
-        TaskBuilder<Void> tb = Tasks.<Void>builder().parallel(true).displayName("Deploy "+targetName+" to cluster (size "+Iterables.size(targets)+")");
+        Map<Entity, DeferredUntilServiceUp<?>> tasks = Maps.newLinkedHashMap();
         for (Entity target: targets) {
-            tb.add(whenServiceUp(target, Effectors.invocation(target, DEPLOY, MutableMap.of("url", url, "targetName", targetName)),
+            tasks.put(target, deferUntilServiceUp(target, Effectors.invocation(target, DEPLOY, MutableMap.of("url", url, "targetName", targetName)),
                 "Deploy "+targetName+" to "+target+" when ready"));
         }
-        DynamicTasks.queueIfPossible(tb.build()).orSubmitAsync(this).asTask().getUnchecked();
+        List<SshPeerArtifactDistributor> distributors = distributeArtifacts(ImmutableList.of(url), tasks.keySet());
+        try {
+            deployAcrossCluster("Deploy "+targetName+" to cluster (size "+tasks.size()+")", tasks, ImmutableList.of(targetName));
+        } finally {
+            cleanupDistributedArtifacts(distributors, tasks.keySet());
+        }
 
         // Update attribute
         // TODO support for atomic sensor update (should be part of standard tooling; NB there is some work towards this, according to @aledsage)
@@ -202,12 +334,17 @@ public class DynamicWebAppClusterImpl extends DynamicClusterImpl implements Dyna
         log.debug("Undeploying "+targetName+" across cluster "+this+"; WARs now "+getConfig(WARS_BY_CONTEXT));
 
         Iterable<CanDeployAndUndeploy> targets = Iterables.filter(getChildren(), CanDeployAndUndeploy.class);
-        TaskBuilder<Void> tb = Tasks.<Void>builder().parallel(true).displayName("Undeploy "+targetName+" across cluster (size "+Iterables.size(targets)+")");
+        Map<Entity, ListenableFuture<?>> results = Maps.newLinkedHashMap();
         for (Entity target: targets) {
-            tb.add(whenServiceUp(target, Effectors.invocation(target, UNDEPLOY, MutableMap.of("targetName", targetName)),
+            results.put(target, whenServiceUp(target, Effectors.invocation(target, UNDEPLOY, MutableMap.of("targetName", targetName)),
                 "Undeploy "+targetName+" at "+target+" when ready"));
         }
-        DynamicTasks.queueIfPossible(tb.build()).orSubmitAsync(this).asTask().getUnchecked();
+        Tasks.setBlockingDetails("Undeploy "+targetName+" across cluster (size "+results.size()+")");
+        try {
+            awaitAll(results);
+        } finally {
+            Tasks.resetBlockingDetails();
+        }
 
         // Update attribute
         Set<String> deployedWars = MutableSet.copyOf(getAttribute(DEPLOYED_WARS));
@@ -247,15 +384,158 @@ public class DynamicWebAppClusterImpl extends DynamicClusterImpl implements Dyna
         log.debug("Redeplying all WARs across cluster "+this+": "+getConfig(WARS_BY_CONTEXT));
         
         Iterable<CanDeployAndUndeploy> targetEntities = Iterables.filter(getChildren(), CanDeployAndUndeploy.class);
-        TaskBuilder<Void> tb = Tasks.<Void>builder().parallel(true).displayName(redeployPrefix+" across cluster (size "+Iterables.size(targetEntities)+")");
+        Map<Entity, DeferredUntilServiceUp<?>> tasks = Maps.newLinkedHashMap();
         for (Entity targetEntity: targetEntities) {
             TaskBuilder<Void> redeployAllToTarget = Tasks.<Void>builder().displayName(redeployPrefix+" at "+targetEntity+" (after ready check)");
             for (String warContextPath: wars.keySet()) {
                 redeployAllToTarget.add(Effectors.invocation(targetEntity, DEPLOY, MutableMap.of("url", wars.get(warContextPath), "targetName", warContextPath)));
             }
-            tb.add(whenServiceUp(targetEntity, redeployAllToTarget.build(), redeployPrefix+" at "+targetEntity+" when ready"));
+            tasks.put(targetEntity, deferUntilServiceUp(targetEntity, redeployAllToTarget.build(), redeployPrefix+" at "+targetEntity+" when ready"));
+        }
+        List<SshPeerArtifactDistributor> distributors = distributeArtifacts(wars.values(), tasks.keySet());
+        try {
+            deployAcrossCluster(redeployPrefix+" across cluster (size "+tasks.size()+")", tasks, wars.keySet());
+        } finally {
+            cleanupDistributedArtifacts(distributors, tasks.keySet());
         }
-        DynamicTasks.queueIfPossible(tb.build()).orSubmitAsync(this).asTask().getUnchecked();
     }  
 
+    /**
+     * If {@link #DEPLOY_PEER_DISTRIBUTION} is enabled, stages each of the given artifacts on the targets'
+     * machines (see {@link SshPeerArtifactDistributor}), so their deploys need not fetch from the source.
+     * Targets not up yet, or where staging fails, fetch from the source as usual.
+     */
+    protected List<SshPeerArtifactDistributor> distributeArtifacts(Collection<String> urls, Collection<Entity> targets) {
+        if (!Boolean.TRUE.equals(getConfig(DEPLOY_PEER_DISTRIBUTION))) return ImmutableList.of();
+        List<Entity> peers = SshPeerArtifactDistributor.filterTargets(targets);
+        if (peers.size() < 2) return ImmutableList.of();
+
+        Integer seeds = getConfig(DEPLOY_PEER_SEEDS);
+        List<SshPeerArtifactDistributor> result = Lists.newArrayList();
+        for (String url : MutableSet.copyOf(urls)) {
+            SshPeerArtifactDistributor distributor = new SshPeerArtifactDistributor(this, url, (seeds == null || seeds <= 0) ? 1 : seeds);
+            result.add(distributor);
+            Set<Entity> staged = distributor.distribute(peers);
+            log.debug("Distributed {} to {} of {} members of {} in {} peer round(s)", 
+                    new Object[] {url, staged.size(), peers.size(), this, distributor.getRounds()});
+        }
+        return result;
+    }
+
+    protected void cleanupDistributedArtifacts(List<SshPeerArtifactDistributor> distributors, Collection<Entity> targets) {
+        if (distributors.isEmpty()) return;
+        List<Entity> peers = SshPeerArtifactDistributor.filterTargets(targets);
+        for (SshPeerArtifactDistributor distributor : distributors) {
+            distributor.cleanup(peers);
+        }
+    }
+
+    /**
+     * Runs the given per-member tasks across the cluster, each once its member is up, publishing
+     * {@link #DEPLOY_PROGRESS} as members complete. Members which go away meanwhile are skipped.
+     * <p>
+     * By default all members are done at once. If {@link #DEPLOY_BATCH_SIZE} is set this is a rolling deploy:
+     * members are done a batch at a time, with at most {@link #DEPLOY_MAX_PARALLEL} of them in progress at once,
+     * and each member of a batch must be serving the given contexts (see {@link #awaitContextsServed}, within 
+     * {@link #DEPLOY_HEALTH_GATE_TIMEOUT}) before the next batch is started. A failure in any batch aborts the 
+     * remaining batches.
+     */
+    protected void deployAcrossCluster(String displayName, Map<Entity, ? extends DeferredUntilServiceUp<?>> tasks, Collection<String> contexts) {
+        List<Entity> targets = ImmutableList.copyOf(tasks.keySet());
+        Integer configuredBatchSize = getConfig(DEPLOY_BATCH_SIZE);
+        Integer configuredMaxParallel = getConfig(DEPLOY_MAX_PARALLEL);
+        int batchSize = (configuredBatchSize == null || configuredBatchSize <= 0) ? targets.size() : configuredBatchSize;
+        int maxParallel = (configuredMaxParallel == null || configuredMaxParallel <= 0) ? batchSize : Math.min(configuredMaxParallel, batchSize);
+        boolean rolling = batchSize < targets.size();
+
+        sensors().set(DEPLOY_PROGRESS, 0d);
+        if (targets.isEmpty()) {
+            sensors().set(DEPLOY_PROGRESS, 1d);
+            return;
+        }
+
+        List<List<Entity>> batches = Lists.partition(targets, batchSize);
+        int completed = 0;
+        for (int i = 0; i < batches.size(); i++) {
+            List<Entity> batch = batches.get(i);
+            String batchName = rolling ? displayName+", batch "+(i+1)+" of "+batches.size() : displayName;
+            // sequential groups of at most maxParallel members, limiting concurrent transfers
+            for (List<Entity> group : Lists.partition(batch, maxParallel)) {
+                Map<Entity, DeferredUntilServiceUp<?>> results = Maps.newLinkedHashMap();
+                for (Entity target : group) {
+                    DeferredUntilServiceUp<?> result = tasks.get(target);
+                    result.begin();
+                    results.put(target, result);
+                }
+                Tasks.setBlockingDetails(batchName+(group.size() < batch.size() ? " ("+group.size()+" members)" : ""));
+                try {
+                    awaitAll(results);
+                } finally {
+                    Tasks.resetBlockingDetails();
+                }
+            }
+
+            if (rolling) {
+                Duration gateTimeout = getConfig(DEPLOY_HEALTH_GATE_TIMEOUT);
+                for (Entity target : batch) {
+                    // members removed from the cluster meanwhile don't hold up the deploy
+                    awaitContextsServed(target, contexts, gateTimeout);
+                }
+            }
+            completed += batch.size();
+            sensors().set(DEPLOY_PROGRESS, (double) completed / targets.size());
+            if (rolling) log.debug("{}: {} of {} members done", new Object[] {batchName, completed, targets.size()});
+        }
+    }
+
+    /**
+     * Blocks until the target is up, lists each of the given contexts in its {@link #DEPLOYED_WARS}, and (if it 
+     * has a {@link #ROOT_URL}) answers an HTTP request for each of them with neither a 404 nor a server error. 
+     * A hot deploy does not change the target's service up, so that alone would not show the new WAR is served.
+     * Returns early if the target is removed from this cluster or unmanaged.
+     *
+     * @throws IllegalStateException if the contexts are not served within the given timeout
+     */
+    protected void awaitContextsServed(Entity target, Collection<String> contexts, Duration timeout) {
+        HttpClient client = null;
+        try {
+            CountdownTimer timer = timeout.countdownTimer();
+            while (true) {
+                if (!Entities.isManaged(target) || !hasMember(target)) return;
+                String rootUrl = target.getAttribute(ROOT_URL);
+                if (client == null && rootUrl != null) client = HttpTool.httpClientBuilder().trustAll().build();
+                if (Boolean.TRUE.equals(target.getAttribute(Attributes.SERVICE_UP)) && areContextsServed(target, contexts, client)) return;
+                if (timer.isExpired()) {
+                    throw new IllegalStateException("Target "+target+" not serving "+contexts+" within "+timeout);
+                }
+                Duration remaining = timer.getDurationRemaining();
+                Time.sleep(remaining.isShorterThan(HEALTH_GATE_CHECK_PERIOD) ? remaining : HEALTH_GATE_CHECK_PERIOD);
+            }
+        } finally {
+            if (client != null) client.getConnectionManager().shutdown();
+        }
+    }
+
+    private boolean areContextsServed(Entity target, Collection<String> contexts, HttpClient client) {
+        Set<String> deployed = target.getAttribute(DEPLOYED_WARS);
+        String rootUrl = target.getAttribute(ROOT_URL);
+        for (String context : contexts) {
+            if (deployed == null || !deployed.contains(context)) return false;
+            if (rootUrl == null || client == null) continue;
+            URI uri = URI.create(Strings.removeFromEnd(rootUrl, "/")+(context.startsWith("/") ? context : "/"+context));
+            try {
+                HttpToolResponse response = HttpTool.httpGet(client, uri, ImmutableMap.<String, String>of());
+                int code = response.getResponseCode();
+                if (code == 404 || code >= 500) {
+                    if (log.isDebugEnabled()) log.debug("Health gate: {} not yet serving {} (response code {})", new Object[] {target, uri, code});
+                    return false;
+                }
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                if (log.isDebugEnabled()) log.debug("Health gate: {} not yet serving {} ({})", new Object[] {target, uri, e});
+                return false;
+            }
+        }
+        return true;
+    }
 }
@@ -0,0 +1,287 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.entity.webapp;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.apache.brooklyn.api.entity.Entity;
+import org.apache.brooklyn.api.entity.EntityLocal;
+import org.apache.brooklyn.api.entity.Group;
+import org.apache.brooklyn.api.mgmt.Task;
+import org.apache.brooklyn.api.sensor.AttributeSensor;
+import org.apache.brooklyn.api.sensor.SensorEvent;
+import org.apache.brooklyn.api.sensor.SensorEventListener;
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.config.ConfigKeys;
+import org.apache.brooklyn.core.enricher.AbstractEnricher;
+import org.apache.brooklyn.core.entity.Entities;
+import org.apache.brooklyn.entity.group.AbstractGroup;
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.core.task.ScheduledTask;
+import org.apache.brooklyn.util.core.task.Tasks;
+import org.apache.brooklyn.util.time.Duration;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.reflect.TypeToken;
+
+/**
+ * Publishes the sum and the per-member average of numeric sensors across the members of a group, in place of
+ * one aggregating enricher per sensor, each of which recomputes over every member on every member event.
+ * <p>
+ * A running total is kept per source sensor, and a member event applies the difference from that member's
+ * previous value, so the cost of an event does not depend on the size of the group. Changed targets are
+ * published every {@link #PUBLISH_PERIOD}, rather than per event (unless the period is zero).
+ * <p>
+ * As with {@code computingAverage().defaultValueForUnreportedSensors(0)}, averages are over all members,
+ * with members which have not reported a value counting as zero. Sums and averages published to integer
+ * sensors are rounded.
+ */
+public class IncrementalMemberAggregator extends AbstractEnricher {
+
+    @SuppressWarnings("serial")
+    public static final ConfigKey<Map<AttributeSensor<? extends Number>, AttributeSensor<? extends Number>>> SUMS = ConfigKeys.newConfigKey(
+            new TypeToken<Map<AttributeSensor<? extends Number>, AttributeSensor<? extends Number>>>() {},
+            "enricher.incrementalAggregator.sums", "Map of member sensors to the group sensors publishing their sum",
+            ImmutableMap.<AttributeSensor<? extends Number>, AttributeSensor<? extends Number>>of());
+
+    @SuppressWarnings("serial")
+    public static final ConfigKey<Map<AttributeSensor<? extends Number>, AttributeSensor<? extends Number>>> AVERAGES = ConfigKeys.newConfigKey(
+            new TypeToken<Map<AttributeSensor<? extends Number>, AttributeSensor<? extends Number>>>() {},
+            "enricher.incrementalAggregator.averages", "Map of member sensors to the group sensors publishing their average per member",
+            ImmutableMap.<AttributeSensor<? extends Number>, AttributeSensor<? extends Number>>of());
+
+    public static final ConfigKey<Duration> PUBLISH_PERIOD = ConfigKeys.newConfigKey(Duration.class,
+            "enricher.incrementalAggregator.publishPeriod",
+            "How often changed aggregates are published; if zero, they are published on every member event",
+            Duration.ONE_SECOND);
+
+    private final Map<AttributeSensor<? extends Number>, RunningTotal> totals = Maps.newLinkedHashMap();
+    private final Set<String> members = Sets.newHashSet();
+    private final Set<RunningTotal> changed = Sets.newLinkedHashSet();
+    private Duration publishPeriod;
+    private transient Task<?> publisher;
+
+    @Override
+    public void setEntity(EntityLocal entity) {
+        checkArgument(entity instanceof Group, "entity must be a group, but was %s", entity);
+        super.setEntity(entity);
+        Group group = (Group) entity;
+        publishPeriod = getConfig(PUBLISH_PERIOD);
+
+        for (Map.Entry<AttributeSensor<? extends Number>, AttributeSensor<? extends Number>> entry : getConfig(SUMS).entrySet()) {
+            getRunningTotal(entry.getKey()).sumTarget = entry.getValue();
+        }
+        for (Map.Entry<AttributeSensor<? extends Number>, AttributeSensor<? extends Number>> entry : getConfig(AVERAGES).entrySet()) {
+            getRunningTotal(entry.getKey()).averageTarget = entry.getValue();
+        }
+
+        synchronized (this) {
+            for (Entity member : group.getMembers()) {
+                onMemberAdded(member);
+            }
+            // so that the first publish sets every target
+            changed.addAll(totals.values());
+        }
+        for (final RunningTotal total : totals.values()) {
+            subscriptions().subscribeToMembers(group, total.source, new SensorEventListener<Number>() {
+                @Override
+                public void onEvent(SensorEvent<Number> event) {
+                    onMemberValue(total, event.getSource(), event.getValue());
+                }
+            });
+        }
+        subscriptions().subscribe(entity, AbstractGroup.MEMBER_ADDED, new SensorEventListener<Entity>() {
+            @Override
+            public void onEvent(SensorEvent<Entity> event) {
+                synchronized (IncrementalMemberAggregator.this) {
+                    onMemberAdded(event.getValue());
+                }
+                publishIfUnscheduled();
+            }
+        });
+        subscriptions().subscribe(entity, AbstractGroup.MEMBER_REMOVED, new SensorEventListener<Entity>() {
+            @Override
+            public void onEvent(SensorEvent<Entity> event) {
+                synchronized (IncrementalMemberAggregator.this) {
+                    onMemberRemoved(event.getValue());
+                }
+                publishIfUnscheduled();
+            }
+        });
+        highlightTriggers(totals.keySet(), "members");
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (publisher != null) publisher.cancel(true);
+        super.destroy();
+    }
+
+    private RunningTotal getRunningTotal(AttributeSensor<? extends Number> source) {
+        RunningTotal result = totals.get(source);
+        if (result == null) {
+            result = new RunningTotal(source);
+            totals.put(source, result);
+        }
+        return result;
+    }
+
+    private void onMemberAdded(Entity member) {
+        if (!members.add(member.getId())) return;
+        for (RunningTotal total : totals.values()) {
+            total.update(member.getId(), member.getAttribute(total.source));
+            // the member count changes every average
+            changed.add(total);
+        }
+    }
+
+    private void onMemberRemoved(Entity member) {
+        if (!members.remove(member.getId())) return;
+        for (RunningTotal total : totals.values()) {
+            total.remove(member.getId());
+            changed.add(total);
+        }
+    }
+
+    private void onMemberValue(RunningTotal total, Entity member, Number value) {
+        synchronized (this) {
+            // ignore late events from members already removed
+            if (!members.contains(member.getId())) return;
+            if (!total.update(member.getId(), value)) return;
+            changed.add(total);
+        }
+        publishIfUnscheduled();
+    }
+
+    /**
+     * Publishes now if there is no publish period; otherwise starts the periodic publisher, if not
+     * already running (on the first event, as by then the entity is managed), which first publishes
+     * one period later.
+     */
+    private void publishIfUnscheduled() {
+        if (publishPeriod == null || publishPeriod.toMilliseconds() <= 0) {
+            publish();
+            return;
+        }
+        synchronized (this) {
+            if (publisher != null || isDestroyed()) return;
+            Callable<Task<?>> publishTaskFactory = new Callable<Task<?>>() {
+                @Override
+                public Task<?> call() {
+                    return Tasks.builder().displayName("Publish aggregates").dynamic(false).body(new Runnable() {
+                        @Override
+                        public void run() {
+                            publish();
+                        }
+                    }).build();
+                }
+            };
+            publisher = Entities.submit(entity, new ScheduledTask(MutableMap.of("displayName", "Aggregate publisher", "delay", publishPeriod, "period", publishPeriod),
+                    publishTaskFactory));
+        }
+    }
+
+    /** Publishes the targets of the totals changed since the last publish. */
+    void publish() {
+        Map<AttributeSensor<?>, Object> values = Maps.newLinkedHashMap();
+        synchronized (this) {
+            for (RunningTotal total : changed) {
+                if (total.sumTarget != null) {
+                    values.put(total.sumTarget, toType(total.getSum(), total.sumTarget.getType()));
+                }
+                if (total.averageTarget != null) {
+                    values.put(total.averageTarget, members.isEmpty() ? null : toType(total.getSum() / members.size(), total.averageTarget.getType()));
+                }
+            }
+            changed.clear();
+        }
+        for (Map.Entry<AttributeSensor<?>, Object> entry : values.entrySet()) {
+            @SuppressWarnings("unchecked")
+            AttributeSensor<Object> sensor = (AttributeSensor<Object>) entry.getKey();
+            entity.sensors().set(sensor, entry.getValue());
+        }
+    }
+
+    private static Number toType(double value, Class<?> type) {
+        if (type == Integer.class) return (int) Math.round(value);
+        if (type == Long.class) return Math.round(value);
+        return value;
+    }
+
+    /**
+     * The sum of a sensor across members, maintained from each member's last value.
+     * <p>
+     * Integral values are summed exactly; for fractional ones the rounding error of adding and subtracting is
+     * cleared by recomputing the sum from the member values every {@value #RECOMPUTE_INTERVAL} updates.
+     */
+    static class RunningTotal {
+        static final int RECOMPUTE_INTERVAL = 10000;
+
+        final AttributeSensor<? extends Number> source;
+        AttributeSensor<? extends Number> sumTarget;
+        AttributeSensor<? extends Number> averageTarget;
+        private final Map<String, Double> values = Maps.newHashMap();
+        private double sum;
+        private int updatesSinceRecompute;
+
+        RunningTotal(AttributeSensor<? extends Number> source) {
+            this.source = source;
+        }
+
+        /** @return whether the sum changed */
+        boolean update(String member, Number value) {
+            Double newValue = (value == null) ? null : value.doubleValue();
+            Double oldValue = (newValue == null) ? values.remove(member) : values.put(member, newValue);
+            double delta = (newValue == null ? 0 : newValue) - (oldValue == null ? 0 : oldValue);
+            if (delta == 0) return false;
+            sum += delta;
+            if (++updatesSinceRecompute >= RECOMPUTE_INTERVAL) {
+                recompute();
+            }
+            return true;
+        }
+
+        void remove(String member) {
+            update(member, null);
+        }
+
+        double getSum() {
+            return sum;
+        }
+
+        int getReportedCount() {
+            return values.size();
+        }
+
+        private void recompute() {
+            double result = 0;
+            for (Double value : values.values()) {
+                result += value;
+            }
+            sum = result;
+            updatesSinceRecompute = 0;
+        }
+    }
+}
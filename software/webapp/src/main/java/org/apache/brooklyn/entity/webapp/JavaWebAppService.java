@@ -28,8 +28,10 @@ import org.apache.brooklyn.config.ConfigKey;
 import org.apache.brooklyn.core.annotation.Effector;
 import org.apache.brooklyn.core.annotation.EffectorParam;
 import org.apache.brooklyn.core.config.BasicConfigKey;
+import org.apache.brooklyn.core.config.ConfigKeys;
 import org.apache.brooklyn.core.effector.MethodEffector;
 import org.apache.brooklyn.core.sensor.BasicAttributeSensor;
+import org.apache.brooklyn.core.sensor.Sensors;
 import org.apache.brooklyn.entity.java.UsesJava;
 import org.apache.brooklyn.util.core.flags.SetFromFlag;
 
@@ -49,6 +51,33 @@ public interface JavaWebAppService extends WebAppService, UsesJava {
     public static final ConfigKey<Map<String,String>> WARS_BY_CONTEXT = new BasicConfigKey(
             Map.class, "wars.by.context", "Map of context keys (path in user-facing URL, typically without slashes) to archives (e.g. WARs by URL) to deploy, supporting file: and classpath: prefixes)");
     
+    @SetFromFlag("artifactCacheEnabled")
+    public static final ConfigKey<Boolean> ARTIFACT_CACHE_ENABLED = ConfigKeys.newBooleanConfigKey(
+            "wars.cache.enabled", "Whether to keep deployed archives in a content-addressed cache on the machine, "
+                + "so that deploying the same bytes again does not transfer them again; an archive is hashed as it is copied, "
+                + "and later deploys from the same URL use the machine's copy while the source is unchanged "
+                + "(by file size and modification time, or HTTP ETag or Last-Modified)", false);
+
+    @SetFromFlag("artifactCacheDir")
+    public static final ConfigKey<String> ARTIFACT_CACHE_DIR = ConfigKeys.newStringConfigKey(
+            "wars.cache.dir", "Directory on the machine for the archive cache (shared by all servers on the machine)", 
+            "~/.brooklyn/artifact-cache");
+
+    @SetFromFlag("artifactCacheMaxEntries")
+    public static final ConfigKey<Integer> ARTIFACT_CACHE_MAX_ENTRIES = ConfigKeys.newIntegerConfigKey(
+            "wars.cache.maxEntries", "Maximum number of archives kept in the cache; the least recently added are removed", 20);
+
+    public static final AttributeSensor<Integer> ARTIFACT_CACHE_HITS = Sensors.newIntegerSensor(
+            "webapp.deploy.artifactCache.hits", "Number of deploys which used an archive from the machine's cache, rather than transferring it");
+
+    public static final AttributeSensor<Long> ARTIFACT_CACHE_BYTES_SAVED = Sensors.newLongSensor(
+            "webapp.deploy.artifactCache.bytesSaved", "Bytes not transferred, due to deploys using an archive from the machine's cache");
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public static final AttributeSensor<Set<String>> STAGED_ARTIFACTS = new BasicAttributeSensor(
+            Set.class, "webapp.deploy.stagedArtifacts", "URLs of archives staged on the machine by the cluster "
+                + "(see DynamicWebAppCluster#DEPLOY_PEER_DISTRIBUTION), which the next deploy of each will use");
+
     /** Optional marker interface for entities which support 'deploy' and 'undeploy' */
     public interface CanDeployAndUndeploy extends Entity {
 
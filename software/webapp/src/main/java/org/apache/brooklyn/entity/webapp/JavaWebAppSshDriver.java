@@ -19,7 +19,11 @@
 package org.apache.brooklyn.entity.webapp;
 
 import java.io.File;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.URI;
+import java.net.URL;
+import java.util.List;
 import java.util.Set;
 
 import org.apache.brooklyn.core.entity.Attributes;
@@ -28,12 +32,32 @@ import org.apache.brooklyn.location.ssh.SshMachineLocation;
 import org.apache.brooklyn.util.core.task.DynamicTasks;
 import org.apache.brooklyn.util.core.task.Tasks;
 import org.apache.brooklyn.util.core.task.ssh.SshTasks;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.os.Os;
+import org.apache.brooklyn.util.stream.Streams;
 import org.apache.brooklyn.util.text.Strings;
 
+import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.CountingInputStream;
 
 public abstract class JavaWebAppSshDriver extends JavaSoftwareProcessSshDriver implements JavaWebAppDriver {
 
+    /**
+     * The digest of the artifact last copied from each URL, with the version of the source it was copied from
+     * (see {@link #getArtifactSourceVersion(String)}), so the machine's cache can be checked before fetching.
+     */
+    private static final Cache<String, KnownArtifactDigest> ARTIFACT_DIGESTS = CacheBuilder.newBuilder()
+            .maximumSize(100)
+            .build();
+
+    private static final Object ARTIFACT_CACHE_STATS_LOCK = new Object();
+
     public JavaWebAppSshDriver(JavaWebAppSoftwareProcessImpl entity, SshMachineLocation machine) {
         super(entity, machine);
     }
@@ -156,9 +180,13 @@ public abstract class JavaWebAppSshDriver extends JavaSoftwareProcessSshDriver i
             DynamicTasks.queue(copyTaskMsg, new Runnable() {
                 @Override
                 public void run() {
-                    int result = copyResource(url, tmpDest);
-                    if (result != 0) {
-                        throw new IllegalStateException("Invalid result " + result + " while " + copyTaskMsg);
+                    if (SshPeerArtifactDistributor.isStaged(entity, url) && useStagedArtifact(url, tmpDest)) {
+                        return;
+                    }
+                    if (isArtifactCacheEnabled()) {
+                        copyArtifactUsingCache(url, tmpDest, copyTaskMsg);
+                    } else {
+                        copyArtifact(url, tmpDest, copyTaskMsg);
                     }
                 }
             });
@@ -179,6 +207,203 @@ public abstract class JavaWebAppSshDriver extends JavaSoftwareProcessSshDriver i
         return getFilenameContextMapper().convertDeploymentTargetNameToContext(canonicalTargetName);
     }
     
+    /**
+     * Moves the copy of the artifact staged on this machine by a {@link SshPeerArtifactDistributor}
+     * to the given destination, if it is still there; only called where one was staged.
+     *
+     * @return whether a staged copy was used
+     */
+    protected boolean useStagedArtifact(String url, String dest) {
+        String staged = getStagedArtifactPath(getRunDir(), url);
+        SshPeerArtifactDistributor.setStaged(entity, url, false);
+        int result = getMachine().execCommands("checking for staged artifact", ImmutableList.of(
+                String.format("if [ -f %s ] ; then mv -f %s %s ; else exit 1 ; fi", staged, staged, dest)));
+        if (result == 0) {
+            log.debug("{} using artifact {} staged at {}:{}", new Object[]{entity, url, getHostname(), staged});
+        }
+        return result == 0;
+    }
+
+    protected boolean isArtifactCacheEnabled() {
+        return Boolean.TRUE.equals(entity.getConfig(JavaWebAppService.ARTIFACT_CACHE_ENABLED));
+    }
+
+    protected String getArtifactCacheDir() {
+        return entity.getConfig(JavaWebAppService.ARTIFACT_CACHE_DIR);
+    }
+
+    protected String getCachedArtifactPath(ArtifactDigest digest) {
+        return Os.mergePathsUnix(getArtifactCacheDir(), "sha256-" + digest.sha256);
+    }
+
+    /**
+     * Links (or, if that is not possible, copies) the cached artifact with the given digest to the destination,
+     * if it is in this machine's cache.
+     *
+     * @return whether the cached copy was used
+     */
+    protected boolean useCachedArtifact(ArtifactDigest digest, String dest) {
+        String cached = getCachedArtifactPath(digest);
+        if (!linkCachedArtifact(cached, dest)) {
+            return false;
+        }
+        log.debug("{} using cached artifact {}:{} ({} bytes not transferred)", new Object[]{entity, getHostname(), cached, digest.size});
+        synchronized (ARTIFACT_CACHE_STATS_LOCK) {
+            Integer hits = entity.getAttribute(JavaWebAppService.ARTIFACT_CACHE_HITS);
+            Long saved = entity.getAttribute(JavaWebAppService.ARTIFACT_CACHE_BYTES_SAVED);
+            entity.sensors().set(JavaWebAppService.ARTIFACT_CACHE_HITS, (hits == null ? 0 : hits) + 1);
+            entity.sensors().set(JavaWebAppService.ARTIFACT_CACHE_BYTES_SAVED, (saved == null ? 0L : saved) + digest.size);
+        }
+        return true;
+    }
+
+    /** @return whether the given cached artifact exists on the machine, and was linked or copied to the destination */
+    protected boolean linkCachedArtifact(String cached, String dest) {
+        int result = getMachine().execCommands("checking artifact cache", ImmutableList.of(
+                String.format("if [ -f %s ] ; then ln -f %s %s 2>/dev/null || cp -f %s %s ; else exit 1 ; fi", cached, cached, dest, cached, dest)));
+        return result == 0;
+    }
+
+    /** Adds the given file, with the given digest, to this machine's cache, removing the oldest entries beyond the limit */
+    protected void addToArtifactCache(ArtifactDigest digest, String file) {
+        String dir = getArtifactCacheDir();
+        String cached = getCachedArtifactPath(digest);
+        String tmpCached = cached + "." + Strings.makeRandomId(8) + ".tmp";
+        Integer maxEntries = entity.getConfig(JavaWebAppService.ARTIFACT_CACHE_MAX_ENTRIES);
+        List<String> commands = Lists.newArrayList(
+                String.format("mkdir -p %s", dir),
+                String.format("( ln -f %s %s 2>/dev/null || cp -f %s %s ) && mv -f %s %s", file, tmpCached, file, tmpCached, tmpCached, cached));
+        if (maxEntries != null && maxEntries > 0) {
+            commands.add(String.format("cd %s && ls -t | grep '^sha256-[0-9a-f]*$' | tail -n +%d | xargs rm -f", dir, maxEntries + 1));
+        }
+        int result = getMachine().execCommands("adding artifact to cache", commands);
+        if (result != 0) {
+            // the cache is only an optimisation
+            log.debug("{} failed to add artifact to cache at {}:{} (result {}); continuing", new Object[]{entity, getHostname(), cached, result});
+        }
+    }
+
+    protected void copyArtifact(String url, String dest, String copyTaskMsg) {
+        int result = copyResource(url, dest);
+        if (result != 0) {
+            throw new IllegalStateException("Invalid result " + result + " while " + copyTaskMsg);
+        }
+    }
+
+    /**
+     * Copies the artifact at the given URL to the destination, using this machine's cached copy if it has one.
+     * <p>
+     * The machine's cache is checked first if the artifact's digest is known, from an earlier copy from the same URL
+     * whose source has not changed since (e.g. when a server is restarted or replaced). Otherwise the artifact is
+     * fetched once, and hashed as it is copied, then added to the cache.
+     */
+    protected void copyArtifactUsingCache(String url, String dest, String copyTaskMsg) {
+        String sourceVersion = getArtifactSourceVersion(url);
+        KnownArtifactDigest known = ARTIFACT_DIGESTS.getIfPresent(url);
+        if (known != null && sourceVersion != null && sourceVersion.equals(known.sourceVersion)) {
+            if (useCachedArtifact(known.digest, dest)) {
+                return;
+            }
+        }
+        ArtifactDigest digest = copyAndDigestArtifact(url, dest, copyTaskMsg);
+        if (sourceVersion != null) {
+            ARTIFACT_DIGESTS.put(url, new KnownArtifactDigest(digest, sourceVersion));
+        }
+        addToArtifactCache(digest, dest);
+    }
+
+    /** Copies the artifact at the given URL to the destination, computing its digest from the stream being copied */
+    protected ArtifactDigest copyAndDigestArtifact(String url, String dest, String copyTaskMsg) {
+        InputStream in = resource.getResourceFromUrl(url);
+        try {
+            HashingInputStream hashing = new HashingInputStream(Hashing.sha256(), in);
+            CountingInputStream counting = new CountingInputStream(hashing);
+            int result = copyArtifactStream(counting, dest);
+            if (result != 0) {
+                throw new IllegalStateException("Invalid result " + result + " while " + copyTaskMsg);
+            }
+            return new ArtifactDigest(hashing.hash().toString(), counting.getCount());
+        } finally {
+            Streams.closeQuietly(in);
+        }
+    }
+
+    protected int copyArtifactStream(InputStream in, String dest) {
+        return getMachine().copyTo(in, dest);
+    }
+
+    /**
+     * Identifies the version of the artifact at the given URL without fetching it: the size and modification time
+     * of a file, or the {@code ETag} (or {@code Last-Modified} and {@code Content-Length}) of an HTTP resource.
+     * Classpath resources do not change while the management node runs.
+     *
+     * @return the version, or null if it cannot be determined (in which case a recorded digest is not reused)
+     */
+    protected String getArtifactSourceVersion(String url) {
+        try {
+            if (url.startsWith("classpath:")) {
+                return "classpath";
+            }
+            if (url.startsWith("file:") || url.startsWith("/") || url.startsWith("~")) {
+                File file = url.startsWith("file:") ? new File(URI.create(url)) : new File(Os.tidyPath(url));
+                return file.isFile() ? file.length() + "@" + file.lastModified() : null;
+            }
+            if (url.startsWith("http:") || url.startsWith("https:")) {
+                HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+                try {
+                    connection.setRequestMethod("HEAD");
+                    connection.setConnectTimeout(10*1000);
+                    connection.setReadTimeout(10*1000);
+                    if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                        return null;
+                    }
+                    String etag = connection.getHeaderField("ETag");
+                    if (etag != null) {
+                        return "etag:" + etag;
+                    }
+                    String lastModified = connection.getHeaderField("Last-Modified");
+                    return (lastModified == null) ? null : lastModified + "/" + connection.getContentLengthLong();
+                } finally {
+                    connection.disconnect();
+                }
+            }
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            log.debug("{} could not determine version of artifact {} (not using recorded digest): {}", new Object[]{entity, url, e});
+        }
+        return null;
+    }
+
+    protected static class ArtifactDigest {
+        final String sha256;
+        final long size;
+
+        ArtifactDigest(String sha256, long size) {
+            this.sha256 = sha256;
+            this.size = size;
+        }
+    }
+
+    private static class KnownArtifactDigest {
+        final ArtifactDigest digest;
+        final String sourceVersion;
+
+        KnownArtifactDigest(ArtifactDigest digest, String sourceVersion) {
+            this.digest = digest;
+            this.sourceVersion = sourceVersion;
+        }
+    }
+
+    /** The directory under the run dir where artifacts are staged ahead of a deploy */
+    public static String getStagedArtifactDir(String runDir) {
+        return Os.mergePathsUnix(runDir, "staged-artifacts");
+    }
+
+    /** Where an artifact from the given URL is staged ahead of a deploy, so the deploy need not fetch it */
+    public static String getStagedArtifactPath(String runDir, String url) {
+        return Os.mergePathsUnix(getStagedArtifactDir(runDir), Hashing.sha256().hashString(url, Charsets.UTF_8).toString());
+    }
+
     @Override
     public void undeploy(String targetName) {
         String dest = getDeployDir() + "/" + getFilenameContextMapper().convertDeploymentTargetNameToFilename(targetName);
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.entity.webapp;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A fixed-size histogram of latencies (in milliseconds), in the style of HdrHistogram: values below
+ * {@value #LINEAR_LIMIT} have a bucket each, and above that each power of two is split into
+ * {@value #SUB_BUCKETS} buckets, so any recorded value is reported to within about 3%. Values above
+ * {@link #MAX_VALUE} (some 4.6 hours) are counted in the last bucket.
+ * <p>
+ * Histograms of the same shape can be {@link #add(LatencyHistogram) added} and
+ * {@link #subtract(LatencyHistogram) subtracted}, which is how per-server histograms are merged into
+ * cluster-wide ones. Not thread-safe; values published in sensors are copies which are not changed after.
+ */
+public class LatencyHistogram implements Serializable {
+
+    private static final long serialVersionUID = -3521849312787470133L;
+
+    static final int SUB_BUCKETS = 32;
+    static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+    private static final int LINEAR_LIMIT_BITS = Integer.numberOfTrailingZeros(LINEAR_LIMIT);
+    private static final int MAX_EXPONENT = 23;
+
+    public static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+    private static final int BUCKET_COUNT = LINEAR_LIMIT + (MAX_EXPONENT - LINEAR_LIMIT_BITS + 1) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long totalCount;
+
+    public LatencyHistogram() {
+    }
+
+    public LatencyHistogram(LatencyHistogram other) {
+        add(other);
+    }
+
+    /** Records {@code count} occurrences of the given latency. */
+    public void record(long valueMillis, long count) {
+        checkArgument(count >= 0, "count must not be negative, but was %s", count);
+        if (count == 0) return;
+        counts[indexOf(valueMillis)] += count;
+        totalCount += count;
+    }
+
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+    }
+
+    /** Removes counts previously {@link #add(LatencyHistogram) added} from the other histogram. */
+    public void subtract(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] -= other.counts[i];
+        }
+        totalCount -= other.totalCount;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * @param percentile in the range 0 to 100
+     * @return the latency below which the given percentage of recorded values fall (the middle of
+     *         the bucket holding it), or null if nothing has been recorded
+     */
+    public Double getValueAtPercentile(double percentile) {
+        checkArgument(percentile >= 0 && percentile <= 100, "percentile must be in range 0-100, but was %s", percentile);
+        if (totalCount <= 0) return null;
+        long threshold = Math.max(1, (long) Math.ceil(totalCount * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= threshold) {
+                return lowestValueAt(i) + (bucketWidthAt(i) - 1) / 2.0;
+            }
+        }
+        return lowestValueAt(BUCKET_COUNT - 1) + (bucketWidthAt(BUCKET_COUNT - 1) - 1) / 2.0;
+    }
+
+    static int indexOf(long value) {
+        if (value < LINEAR_LIMIT) return (int) Math.max(0, value);
+        if (value > MAX_VALUE) return BUCKET_COUNT - 1;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - LINEAR_LIMIT_BITS + 1;
+        return LINEAR_LIMIT + (exponent - LINEAR_LIMIT_BITS) * SUB_BUCKETS + (int) ((value >> shift) - SUB_BUCKETS);
+    }
+
+    static long lowestValueAt(int index) {
+        if (index < LINEAR_LIMIT) return index;
+        int octave = (index - LINEAR_LIMIT) / SUB_BUCKETS;
+        int subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + subBucket) << (octave + 1);
+    }
+
+    static long bucketWidthAt(int index) {
+        if (index < LINEAR_LIMIT) return 1;
+        return 1L << ((index - LINEAR_LIMIT) / SUB_BUCKETS + 1);
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram[count="+totalCount+"; p50="+getValueAtPercentile(50)+"; p99="+getValueAtPercentile(99)+"]";
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.entity.webapp;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Map;
+
+import org.apache.brooklyn.api.entity.Entity;
+import org.apache.brooklyn.api.entity.EntityLocal;
+import org.apache.brooklyn.api.entity.Group;
+import org.apache.brooklyn.api.sensor.SensorEvent;
+import org.apache.brooklyn.api.sensor.SensorEventListener;
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.config.ConfigKeys;
+import org.apache.brooklyn.core.enricher.AbstractEnricher;
+import org.apache.brooklyn.entity.group.AbstractGroup;
+import org.apache.brooklyn.util.time.Duration;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Merges the {@link WebAppServiceMetrics#REQUEST_LATENCY_HISTOGRAM latency histograms} of the members of a
+ * group (such as a {@link DynamicWebAppCluster}) into one for the group, publishing it with its percentiles,
+ * so that policies can act on the tail latency across the cluster rather than on averages.
+ * <p>
+ * The merged histogram is kept up to date incrementally: a member's update subtracts its previous histogram
+ * and adds the new one, so the cost of an update does not grow with the size of the group. The percentiles
+ * are published on every update, but the merged histogram (a copy) at most once per
+ * {@link #HISTOGRAM_PUBLISH_PERIOD}.
+ */
+public class LatencyHistogramAggregator extends AbstractEnricher {
+
+    public static final ConfigKey<Duration> HISTOGRAM_PUBLISH_PERIOD = ConfigKeys.newConfigKey(Duration.class,
+            "enricher.latencyHistogram.publishPeriod", "Minimum period between publishing the merged histogram sensor "
+            + "(its percentiles are published on every member update)", Duration.TEN_SECONDS);
+
+    private final LatencyHistogram merged = new LatencyHistogram();
+    private final Map<String, LatencyHistogram> memberHistograms = Maps.newHashMap();
+    private long lastHistogramPublishTime = -1;
+
+    @Override
+    public void setEntity(EntityLocal entity) {
+        checkArgument(entity instanceof Group, "entity must be a group, but was %s", entity);
+        super.setEntity(entity);
+
+        subscriptions().subscribeToMembers((Group) entity, WebAppServiceMetrics.REQUEST_LATENCY_HISTOGRAM, new SensorEventListener<LatencyHistogram>() {
+            @Override
+            public void onEvent(SensorEvent<LatencyHistogram> event) {
+                onMemberHistogram(event.getSource(), event.getValue());
+            }
+        });
+        subscriptions().subscribe(entity, AbstractGroup.MEMBER_REMOVED, new SensorEventListener<Entity>() {
+            @Override
+            public void onEvent(SensorEvent<Entity> event) {
+                onMemberHistogram(event.getValue(), null);
+            }
+        });
+        highlightTriggers(WebAppServiceMetrics.REQUEST_LATENCY_HISTOGRAM, "members");
+    }
+
+    synchronized void onMemberHistogram(Entity member, LatencyHistogram histogram) {
+        LatencyHistogram previous = (histogram != null)
+                ? memberHistograms.put(member.getId(), histogram)
+                : memberHistograms.remove(member.getId());
+        if (previous == histogram) return;
+        if (previous != null) merged.subtract(previous);
+        if (histogram != null) merged.add(histogram);
+        LatencyHistogramEnricher.publishPercentiles(entity, merged);
+
+        long now = System.currentTimeMillis();
+        Duration period = getConfig(HISTOGRAM_PUBLISH_PERIOD);
+        if (lastHistogramPublishTime < 0 || period == null || now - lastHistogramPublishTime >= period.toMilliseconds()) {
+            entity.sensors().set(WebAppServiceMetrics.REQUEST_LATENCY_HISTOGRAM, new LatencyHistogram(merged));
+            lastHistogramPublishTime = now;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.entity.webapp;
+
+import org.apache.brooklyn.api.entity.EntityLocal;
+import org.apache.brooklyn.api.sensor.SensorEvent;
+import org.apache.brooklyn.api.sensor.SensorEventListener;
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.config.ConfigKeys;
+import org.apache.brooklyn.core.enricher.AbstractEnricher;
+import org.apache.brooklyn.util.time.Duration;
+
+/**
+ * Publishes a {@link LatencyHistogram} of a web server's request latencies over a sliding window,
+ * with its 50th, 95th and 99th percentiles.
+ * <p>
+ * Servers only report the cumulative {@link WebAppServiceMetrics#REQUEST_COUNT request count} and
+ * {@link WebAppServiceMetrics#TOTAL_PROCESSING_TIME processing time}, so each poll records the mean latency
+ * of the requests since the previous one, weighted by their number; the percentiles are therefore over those
+ * per-poll means, which still shows tail latency where a plain mean over the window would hide it.
+ * <p>
+ * The window is divided into {@value #SLICES} slices, the oldest being dropped as time moves on, so memory
+ * is fixed (a few kilobytes) however many requests are seen. The histogram of the whole window is kept up to
+ * date as values are recorded and slices dropped, and its percentiles are published on every poll; the
+ * histogram sensor itself (a copy) is only published when a slice rolls over, as it is much larger.
+ */
+public class LatencyHistogramEnricher extends AbstractEnricher {
+
+    public static final ConfigKey<Duration> WINDOW = ConfigKeys.newConfigKey(Duration.class,
+            "enricher.latencyHistogram.window", "Period of time over which the latency percentiles are computed",
+            Duration.ONE_MINUTE);
+
+    static final int SLICES = 6;
+
+    private final LatencyHistogram[] slices = new LatencyHistogram[SLICES];
+    // the sum of the slices
+    private final LatencyHistogram window = new LatencyHistogram();
+    private boolean histogramPublished;
+    private long sliceMillis;
+    private long currentSliceStart;
+    private int currentSlice;
+    private Integer lastRequestCount;
+    private Integer lastProcessingTime;
+
+    public LatencyHistogramEnricher() {
+        for (int i = 0; i < SLICES; i++) {
+            slices[i] = new LatencyHistogram();
+        }
+    }
+
+    @Override
+    public void setEntity(EntityLocal entity) {
+        super.setEntity(entity);
+        sliceMillis = Math.max(1, getConfig(WINDOW).toMilliseconds() / SLICES);
+        currentSliceStart = System.currentTimeMillis();
+
+        // the processing time is polled after the request count, so by then both are for the same poll
+        subscriptions().subscribe(entity, WebAppServiceMetrics.TOTAL_PROCESSING_TIME, new SensorEventListener<Integer>() {
+            @Override
+            public void onEvent(SensorEvent<Integer> event) {
+                onSample(LatencyHistogramEnricher.this.entity.getAttribute(WebAppServiceMetrics.REQUEST_COUNT),
+                        event.getValue(), event.getTimestamp());
+            }
+        });
+        highlightTriggers(WebAppServiceMetrics.TOTAL_PROCESSING_TIME, entity);
+    }
+
+    synchronized void onSample(Integer requestCount, Integer processingTime, long timestamp) {
+        if (requestCount == null || processingTime == null) return;
+        boolean rolledOver = false;
+        if (lastRequestCount != null && lastProcessingTime != null) {
+            long requests = (long) requestCount - lastRequestCount;
+            long time = (long) processingTime - lastProcessingTime;
+            if (requests > 0 && time >= 0) {
+                rolledOver |= advanceTo(timestamp);
+                long latency = Math.round((double) time / requests);
+                slices[currentSlice].record(latency, requests);
+                window.record(latency, requests);
+            }
+            // otherwise no requests, or the counters were reset (e.g. the server restarted)
+        }
+        lastRequestCount = requestCount;
+        lastProcessingTime = processingTime;
+
+        rolledOver |= advanceTo(timestamp);
+        publishPercentiles(entity, window);
+        if (rolledOver || !histogramPublished) {
+            entity.sensors().set(WebAppServiceMetrics.REQUEST_LATENCY_HISTOGRAM, new LatencyHistogram(window));
+            histogramPublished = true;
+        }
+    }
+
+    /** @return whether any slices were dropped */
+    private boolean advanceTo(long timestamp) {
+        long elapsedSlices = (timestamp - currentSliceStart) / sliceMillis;
+        if (elapsedSlices <= 0) return false;
+        for (int i = 0; i < Math.min(elapsedSlices, SLICES); i++) {
+            currentSlice = (currentSlice + 1) % SLICES;
+            window.subtract(slices[currentSlice]);
+            slices[currentSlice].reset();
+        }
+        currentSliceStart += elapsedSlices * sliceMillis;
+        return true;
+    }
+
+    /** Sets the percentile sensors derived from the given histogram. */
+    static void publishPercentiles(EntityLocal entity, LatencyHistogram histogram) {
+        entity.sensors().set(WebAppServiceMetrics.REQUEST_LATENCY_P50, histogram.getValueAtPercentile(50));
+        entity.sensors().set(WebAppServiceMetrics.REQUEST_LATENCY_P95, histogram.getValueAtPercentile(95));
+        entity.sensors().set(WebAppServiceMetrics.REQUEST_LATENCY_P99, histogram.getValueAtPercentile(99));
+    }
+}
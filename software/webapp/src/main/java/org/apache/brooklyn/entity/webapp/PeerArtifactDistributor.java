@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.entity.webapp;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Distributes an artifact to a set of targets in a tree fan-out: the first few targets (the seeds)
+ * fetch it from its source, then in each round every target holding the artifact copies it to one
+ * target which does not, so the number of holders doubles each round and {@code N} targets are
+ * covered in roughly {@code log2(N/seeds)} rounds rather than {@code N} copies from the source.
+ * <p>
+ * The transfers themselves are left to subclasses (see {@link SshPeerArtifactDistributor}), so the
+ * fan-out can be exercised against stand-in targets. Targets for which a transfer fails are left out
+ * of later rounds; callers are expected to fall back to fetching from the source for those.
+ */
+public abstract class PeerArtifactDistributor<T> {
+
+    private static final Logger log = LoggerFactory.getLogger(PeerArtifactDistributor.class);
+
+    private final int seeds;
+    private int rounds;
+
+    public PeerArtifactDistributor(int seeds) {
+        checkArgument(seeds > 0, "seeds must be positive, but was %s", seeds);
+        this.seeds = seeds;
+    }
+
+    /** Copies the artifact from its source to each of the given targets, returning those which succeeded. */
+    protected abstract Set<T> fetchFromSource(List<T> targets);
+
+    /**
+     * Copies the artifact to each recipient from the holder it is mapped to (done concurrently;
+     * each holder appears at most once), returning the recipients which succeeded.
+     */
+    protected abstract Set<T> copyFromPeers(Map<T, T> holdersByRecipient);
+
+    /** @return the targets now holding the artifact */
+    public Set<T> distribute(List<T> targets) {
+        rounds = 0;
+        List<T> pending = Lists.newLinkedList(targets);
+        List<T> seedTargets = ImmutableList.copyOf(pending.subList(0, Math.min(seeds, pending.size())));
+        pending.removeAll(seedTargets);
+
+        Set<T> holders = Sets.newLinkedHashSet(fetchFromSource(seedTargets));
+        while (!pending.isEmpty() && !holders.isEmpty()) {
+            Map<T, T> holdersByRecipient = Maps.newLinkedHashMap();
+            Iterator<T> holderIterator = holders.iterator();
+            while (holderIterator.hasNext() && !pending.isEmpty()) {
+                holdersByRecipient.put(pending.remove(0), holderIterator.next());
+            }
+            Set<T> received = copyFromPeers(holdersByRecipient);
+            rounds++;
+            if (received.size() < holdersByRecipient.size()) {
+                log.debug("Artifact distribution round {}: {} of {} copies failed; those targets will fetch from the source",
+                        new Object[] {rounds, holdersByRecipient.size() - received.size(), holdersByRecipient.size()});
+            }
+            holders.addAll(received);
+        }
+        if (!pending.isEmpty()) {
+            log.debug("Artifact distribution stopped with no holders; {} targets will fetch from the source", pending.size());
+        }
+        return holders;
+    }
+
+    /** @return the number of peer-to-peer rounds used by the last {@link #distribute(List)} */
+    public int getRounds() {
+        return rounds;
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.entity.webapp;
+
+import static java.lang.String.format;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.apache.brooklyn.api.entity.Entity;
+import org.apache.brooklyn.api.mgmt.Task;
+import org.apache.brooklyn.core.entity.Attributes;
+import org.apache.brooklyn.core.location.Locations;
+import org.apache.brooklyn.entity.software.base.SoftwareProcess;
+import org.apache.brooklyn.location.ssh.SshMachineLocation;
+import org.apache.brooklyn.util.collections.MutableSet;
+import org.apache.brooklyn.util.core.ResourceUtils;
+import org.apache.brooklyn.util.core.task.DynamicTasks;
+import org.apache.brooklyn.util.core.task.TaskBuilder;
+import org.apache.brooklyn.util.core.task.TaskTags;
+import org.apache.brooklyn.util.core.task.Tasks;
+import org.apache.brooklyn.util.core.task.ssh.SshTasks;
+import org.apache.brooklyn.util.core.task.system.ProcessTaskWrapper;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.os.Os;
+import org.apache.brooklyn.util.text.Identifiers;
+import org.apache.brooklyn.util.text.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Stages an artifact on the machines of web-app servers with a {@link PeerArtifactDistributor} fan-out,
+ * at {@link JavaWebAppSshDriver#getStagedArtifactPath(String, String)}, where a subsequent deploy of the
+ * same URL picks it up instead of fetching it from the source.
+ * <p>
+ * Seeds fetch the artifact through the management node as a normal deploy would; peers then copy it
+ * directly to each other with {@code scp}, using a temporary key generated on the sending machine and
+ * authorized on the receiving machine only for the duration of the copy (as is done when copying
+ * MySQL dumps between nodes). The management node only coordinates.
+ */
+public class SshPeerArtifactDistributor extends PeerArtifactDistributor<Entity> {
+
+    private static final Logger log = LoggerFactory.getLogger(SshPeerArtifactDistributor.class);
+
+    // Guards updates of JavaWebAppService.STAGED_ARTIFACTS
+    private static final Object stagedArtifactsLock = new Object();
+
+    private final Entity context;
+    private final String url;
+    private final String distributionId = "brooklyn-artifact-" + Identifiers.makeRandomId(8);
+    private final Map<Entity, String> publicKeys = Maps.newConcurrentMap();
+
+    /**
+     * @param context the entity (typically the cluster) on whose behalf the artifact is fetched and tasks are run
+     */
+    public SshPeerArtifactDistributor(Entity context, String url, int seeds) {
+        super(seeds);
+        this.context = context;
+        this.url = url;
+    }
+
+    /** The targets which can take part: those up, with a single SSH machine and a known run dir and subnet address. */
+    public static List<Entity> filterTargets(Iterable<? extends Entity> targets) {
+        return ImmutableList.copyOf(Iterables.filter(targets, new Predicate<Entity>() {
+            @Override public boolean apply(Entity input) {
+                return Boolean.TRUE.equals(input.getAttribute(Attributes.SERVICE_UP))
+                        && Locations.findUniqueSshMachineLocation(input.getLocations()).isPresent()
+                        && Strings.isNonBlank(input.getAttribute(SoftwareProcess.RUN_DIR))
+                        && Strings.isNonBlank(input.getAttribute(Attributes.SUBNET_ADDRESS));
+            }}));
+    }
+
+    @Override
+    protected Set<Entity> fetchFromSource(List<Entity> targets) {
+        Map<Entity, Callable<Void>> jobs = Maps.newLinkedHashMap();
+        for (final Entity target : targets) {
+            jobs.put(target, new Callable<Void>() {
+                @Override public Void call() {
+                    SshMachineLocation machine = getMachine(target);
+                    String staged = getStagedPath(target);
+                    exec(machine, "prepare staging directory", "mkdir -p " + getStagedDir(target));
+                    int result = machine.copyTo(ResourceUtils.create(context).getResourceFromUrl(url), staged);
+                    if (result != 0) {
+                        throw new IllegalStateException("Invalid result " + result + " while copying " + url + " to " + target);
+                    }
+                    setStaged(target, url, true);
+                    return null;
+                }});
+        }
+        return runInParallel("Fetch "+url+" from source to "+targets.size()+" seed(s)", jobs);
+    }
+
+    @Override
+    protected Set<Entity> copyFromPeers(Map<Entity, Entity> holdersByRecipient) {
+        Map<Entity, Callable<Void>> jobs = Maps.newLinkedHashMap();
+        for (Map.Entry<Entity, Entity> entry : holdersByRecipient.entrySet()) {
+            final Entity recipient = entry.getKey();
+            final Entity holder = entry.getValue();
+            jobs.put(recipient, new Callable<Void>() {
+                @Override public Void call() {
+                    copy(holder, recipient);
+                    setStaged(recipient, url, true);
+                    return null;
+                }});
+        }
+        return runInParallel("Copy "+url+" between peers ("+holdersByRecipient.size()+" transfers)", jobs);
+    }
+
+    private void copy(Entity holder, Entity recipient) {
+        SshMachineLocation holderMachine = getMachine(holder);
+        SshMachineLocation recipientMachine = getMachine(recipient);
+        String publicKey = getPublicKey(holder);
+        String recipientStaged = getStagedPath(recipient);
+
+        exec(recipientMachine, "authorize peer key",
+                "mkdir -p " + getStagedDir(recipient),
+                "mkdir -p ~/.ssh && chmod 700 ~/.ssh",
+                format("cat >> ~/.ssh/authorized_keys <<EOF\n%s\nEOF", publicKey));
+        try {
+            exec(holderMachine, "copy artifact to peer", format(
+                    "scp -o 'BatchMode yes' -o 'StrictHostKeyChecking no' -o 'UserKnownHostsFile /dev/null' -i '%s' '%s' '%s@%s:%s'",
+                    getPrivateKeyPath(holder),
+                    getStagedPath(holder),
+                    recipientMachine.getUser(),
+                    recipient.getAttribute(Attributes.SUBNET_ADDRESS),
+                    recipientStaged));
+        } finally {
+            // only this holder's key: others (e.g. of copies in progress to the same machine and user) stay authorized
+            exec(recipientMachine, "remove peer key", format("sed -i'' -e '/ %s$/d' ~/.ssh/authorized_keys", getKeyComment(holder)));
+        }
+    }
+
+    /** Generates the holder's key the first time it sends the artifact; each holder sends at most once per round. */
+    private String getPublicKey(Entity holder) {
+        String result = publicKeys.get(holder);
+        if (result == null) {
+            result = exec(getMachine(holder), "generate key for peer access",
+                    format("ssh-keygen -t rsa -N '' -f '%s' -C %s > /dev/null", getPrivateKeyPath(holder), getKeyComment(holder)),
+                    format("cat '%s.pub'", getPrivateKeyPath(holder))).trim();
+            publicKeys.put(holder, result);
+        }
+        return result;
+    }
+
+    /**
+     * Removes the temporary keys and any staged copies not consumed by a deploy (e.g. where the deploy failed).
+     * Failures are logged and ignored.
+     */
+    public void cleanup(Collection<? extends Entity> targets) {
+        Map<Entity, Callable<Void>> jobs = Maps.newLinkedHashMap();
+        for (final Entity target : targets) {
+            jobs.put(target, new Callable<Void>() {
+                @Override public Void call() {
+                    setStaged(target, url, false);
+                    String keyPath = getPrivateKeyPath(target);
+                    exec(getMachine(target), "remove staged artifact and peer keys",
+                            format("rm -f '%s' '%s' '%s.pub'", getStagedPath(target), keyPath, keyPath));
+                    return null;
+                }});
+        }
+        runInParallel("Clean up staged "+url, jobs);
+    }
+
+    /** @return whether the given artifact has been staged for the target's next deploy of it */
+    public static boolean isStaged(Entity target, String url) {
+        Set<String> staged = target.getAttribute(JavaWebAppService.STAGED_ARTIFACTS);
+        return staged != null && staged.contains(url);
+    }
+
+    /** Records (in {@link JavaWebAppService#STAGED_ARTIFACTS}) whether the given artifact is staged for the target. */
+    public static void setStaged(Entity target, String url, boolean staged) {
+        synchronized (stagedArtifactsLock) {
+            Set<String> urls = MutableSet.copyOf(target.getAttribute(JavaWebAppService.STAGED_ARTIFACTS));
+            if (staged ? urls.add(url) : urls.remove(url)) {
+                target.sensors().set(JavaWebAppService.STAGED_ARTIFACTS, urls);
+            }
+        }
+    }
+
+    private Set<Entity> runInParallel(final String name, Map<Entity, Callable<Void>> jobs) {
+        if (jobs.isEmpty()) return Sets.newLinkedHashSet();
+
+        TaskBuilder<Void> tb = Tasks.<Void>builder().parallel(true).displayName(name);
+        final Map<Entity, Task<Boolean>> tasks = Maps.newLinkedHashMap();
+        for (Map.Entry<Entity, Callable<Void>> entry : jobs.entrySet()) {
+            final Entity target = entry.getKey();
+            final Callable<Void> job = entry.getValue();
+            // failures are reported in the result rather than failing the whole distribution
+            Task<Boolean> task = Tasks.<Boolean>builder().displayName(name+" at "+target).dynamic(true).body(new Callable<Boolean>() {
+                @Override public Boolean call() {
+                    try {
+                        job.call();
+                        return true;
+                    } catch (Exception e) {
+                        Exceptions.propagateIfFatal(e);
+                        log.warn("Failed '"+name+"' at "+target+" (continuing): "+Exceptions.collapseText(e));
+                        return false;
+                    }
+                }}).build();
+            tasks.put(target, task);
+            tb.add(task);
+        }
+        DynamicTasks.queueIfPossible(tb.build()).orSubmitAsync(context).asTask().getUnchecked();
+
+        Set<Entity> result = Sets.newLinkedHashSet();
+        for (Map.Entry<Entity, Task<Boolean>> entry : tasks.entrySet()) {
+            if (Boolean.TRUE.equals(entry.getValue().getUnchecked())) result.add(entry.getKey());
+        }
+        return result;
+    }
+
+    private String exec(SshMachineLocation machine, String summary, String... commands) {
+        ProcessTaskWrapper<String> task = SshTasks.newSshExecTaskFactory(machine, commands)
+                .summary(summary)
+                .requiringZeroAndReturningStdout()
+                .newTask();
+        // the caller handles failures, so don't let them fail the enclosing task
+        TaskTags.markInessential(task);
+        return DynamicTasks.queueIfPossible(task).orSubmitAsync(context).asTask().getUnchecked();
+    }
+
+    private SshMachineLocation getMachine(Entity target) {
+        return Locations.findUniqueSshMachineLocation(target.getLocations()).get();
+    }
+
+    private String getStagedPath(Entity target) {
+        return JavaWebAppSshDriver.getStagedArtifactPath(target.getAttribute(SoftwareProcess.RUN_DIR), url);
+    }
+
+    private String getStagedDir(Entity target) {
+        return JavaWebAppSshDriver.getStagedArtifactDir(target.getAttribute(SoftwareProcess.RUN_DIR));
+    }
+
+    /** Identifies the key of the given holder, unique to this distribution, in {@code authorized_keys}. */
+    private String getKeyComment(Entity holder) {
+        return distributionId + "-" + holder.getId();
+    }
+
+    private String getPrivateKeyPath(Entity target) {
+        return Os.mergePathsUnix(target.getAttribute(SoftwareProcess.RUN_DIR), distributionId + ".id_rsa");
+    }
+}
@@ -70,6 +70,12 @@ public class WebAppServiceMethods implements WebAppServiceConstants {
                     .configure("target", PROCESSING_TIME_FRACTION_IN_WINDOW)
                     .configure("timePeriod", windowPeriod));
         }
+
+        EnricherSpec<LatencyHistogramEnricher> latencyHistogram = EnricherSpec.create(LatencyHistogramEnricher.class);
+        if (windowPeriod!=null) {
+            latencyHistogram.configure(LatencyHistogramEnricher.WINDOW, windowPeriod);
+        }
+        entity.enrichers().add(latencyHistogram);
     }
 
     public static Set<String> getEnabledProtocols(Entity entity) {
@@ -56,6 +56,17 @@ public interface WebAppServiceMetrics {
     public static final AttributeSensor<Double> REQUESTS_PER_SECOND_IN_WINDOW =
             Sensors.newDoubleSensor("webapp.reqs.perSec.windowed", "Reqs/sec (over time window)");
 
+    /** histogram of request latencies over a time window,
+     * easily configured with {@link WebAppServiceMethods#connectWebAppServerPolicies(org.apache.brooklyn.api.entity.Entity, org.apache.brooklyn.util.time.Duration)} */
+    public static final AttributeSensor<LatencyHistogram> REQUEST_LATENCY_HISTOGRAM =
+            Sensors.newSensor(LatencyHistogram.class, "webapp.reqs.latency.histogram", "Histogram of request latencies (over time window; updated less often than the percentiles)");
+    public static final AttributeSensor<Double> REQUEST_LATENCY_P50 =
+            Sensors.newDoubleSensor("webapp.reqs.latency.p50", "Median request latency (millis, over time window)");
+    public static final AttributeSensor<Double> REQUEST_LATENCY_P95 =
+            Sensors.newDoubleSensor("webapp.reqs.latency.p95", "95th percentile request latency (millis, over time window)");
+    public static final AttributeSensor<Double> REQUEST_LATENCY_P99 =
+            Sensors.newDoubleSensor("webapp.reqs.latency.p99", "99th percentile request latency (millis, over time window)");
+
     public static final AttributeSensor<Integer> REQUEST_COUNT = Initializer.REQUEST_COUNT;
 
     // this class is added because the above need static initialization which unfortunately can't be added to an interface.
@@ -71,6 +82,9 @@ public interface WebAppServiceMetrics {
             RendererHints.register(WebAppServiceConstants.BYTES_SENT, RendererHints.displayValue(ByteSizeStrings.metric()));
             RendererHints.register(WebAppServiceConstants.PROCESSING_TIME_FRACTION_LAST, RendererHints.displayValue(MathFunctions.percent(2)));
             RendererHints.register(WebAppServiceConstants.PROCESSING_TIME_FRACTION_IN_WINDOW, RendererHints.displayValue(MathFunctions.percent(2)));
+            RendererHints.register(WebAppServiceConstants.REQUEST_LATENCY_P50, RendererHints.displayValue(Duration.millisToStringRounded()));
+            RendererHints.register(WebAppServiceConstants.REQUEST_LATENCY_P95, RendererHints.displayValue(Duration.millisToStringRounded()));
+            RendererHints.register(WebAppServiceConstants.REQUEST_LATENCY_P99, RendererHints.displayValue(Duration.millisToStringRounded()));
         }
     }
 
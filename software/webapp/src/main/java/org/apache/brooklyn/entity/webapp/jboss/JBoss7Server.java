@@ -32,6 +32,7 @@ import org.apache.brooklyn.entity.webapp.JavaWebAppSoftwareProcess;
 import org.apache.brooklyn.util.core.ResourcePredicates;
 import org.apache.brooklyn.util.core.flags.SetFromFlag;
 import org.apache.brooklyn.util.javalang.JavaClassNames;
+import org.apache.brooklyn.util.time.Duration;
 
 /**
  * @deprecated since 1.0.0; JBoss 7 is EOF
@@ -102,6 +103,20 @@ public interface JBoss7Server extends JavaWebAppSoftwareProcess, HasShortName {
     @SetFromFlag("useHttpMonitoring")
     ConfigKey<Boolean> USE_HTTP_MONITORING = ConfigKeys.newConfigKey("httpMonitoring.enabled", "HTTP(S) monitoring enabled", Boolean.TRUE);
 
+    @SetFromFlag("managementPollPeriod")
+    ConfigKey<Duration> MANAGEMENT_POLL_PERIOD = ConfigKeys.newConfigKey(Duration.class,
+            "webapp.jboss.managementPollPeriod",
+            "Period for polling the management resource, from which all HTTP-monitored sensors are read with one request",
+            Duration.millis(200));
+
+    @SetFromFlag("managementPollMaxPeriod")
+    ConfigKey<Duration> MANAGEMENT_POLL_MAX_PERIOD = ConfigKeys.newConfigKey(Duration.class,
+            "webapp.jboss.managementPollMaxPeriod",
+            "Maximum period the management resource poll backs off to (doubling each time) while its response is unchanged; "
+                + "in between, a status-only request still checks the server every poll period. "
+                + "Set to the poll period to disable backing off",
+            Duration.seconds(2));
+
     AttributeSensor<String> MANAGEMENT_URL =
             Sensors.newStringSensor("webapp.jboss.managementUrl", "URL where management endpoint is available");
 
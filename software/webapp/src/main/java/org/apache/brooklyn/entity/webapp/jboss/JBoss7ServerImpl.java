@@ -18,7 +18,10 @@
  */
 package org.apache.brooklyn.entity.webapp.jboss;
 
+import java.net.URI;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import org.apache.brooklyn.core.config.render.RendererHints;
 import org.apache.brooklyn.core.entity.Attributes;
@@ -26,16 +29,25 @@ import org.apache.brooklyn.core.entity.EntityFunctions;
 import org.apache.brooklyn.core.location.access.BrooklynAccessUtils;
 import org.apache.brooklyn.enricher.stock.Enrichers;
 import org.apache.brooklyn.entity.webapp.JavaWebAppSoftwareProcessImpl;
-import org.apache.brooklyn.feed.http.HttpFeed;
-import org.apache.brooklyn.feed.http.HttpPollConfig;
+import org.apache.brooklyn.feed.function.FunctionFeed;
+import org.apache.brooklyn.feed.function.FunctionPollConfig;
 import org.apache.brooklyn.feed.http.HttpValueFunctions;
+import org.apache.brooklyn.feed.http.JsonFunctions;
 import org.apache.brooklyn.util.guava.Functionals;
+import org.apache.brooklyn.util.http.HttpTool;
+import org.apache.brooklyn.util.http.HttpToolResponse;
+import org.apache.brooklyn.util.time.Duration;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.HttpClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Function;
 import com.google.common.base.Functions;
+import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.net.HostAndPort;
+import com.google.gson.JsonElement;
 
 /**
  * @deprecated since 1.0.0; JBoss 7 is EOF
@@ -45,7 +57,8 @@ public class JBoss7ServerImpl extends JavaWebAppSoftwareProcessImpl implements J
 
     public static final Logger log = LoggerFactory.getLogger(JBoss7ServerImpl.class);
 
-    private volatile HttpFeed httpFeed;
+    private volatile FunctionFeed httpFeed;
+    private volatile ManagementResourcePoll managementPoll;
     
     @Override
     public Class<?> getDriverInterface() {
@@ -77,43 +90,60 @@ public class JBoss7ServerImpl extends JavaWebAppSoftwareProcessImpl implements J
             Map<String, String> includeRuntimeUriVars = ImmutableMap.of("include-runtime","true");
             boolean retrieveUsageMetrics = getConfig(RETRIEVE_USAGE_METRICS);
 
-            httpFeed = HttpFeed.builder()
+            // one request per period (with runtime values, which the status-only sensors don't mind) feeds
+            // every sensor, from a single parse of the response; see ManagementResourcePoll for backing off
+            ManagementResourcePoll poll = new ManagementResourcePoll(
+                    URI.create(managementUri+"?"+HttpTool.encodeUrlParams(includeRuntimeUriVars)), URI.create(managementUri),
+                    getConfig(MANAGEMENT_USER), getConfig(MANAGEMENT_PASSWORD),
+                    getConfig(MANAGEMENT_POLL_PERIOD), getConfig(MANAGEMENT_POLL_MAX_PERIOD));
+            managementPoll = poll;
+            Function<HttpToolResponse, JsonElement> json = new SharedJsonContents();
+
+            httpFeed = FunctionFeed.builder()
                     .entity(this)
-                    .period(200)
-                    .baseUri(managementUri)
-                    .credentials(getConfig(MANAGEMENT_USER), getConfig(MANAGEMENT_PASSWORD))
-                    .poll(new HttpPollConfig<Integer>(MANAGEMENT_STATUS)
+                    .period(getConfig(MANAGEMENT_POLL_PERIOD))
+                    .poll(new FunctionPollConfig<HttpToolResponse, Integer>(MANAGEMENT_STATUS)
+                            .callable(poll)
+                            .checkSuccess(ManagementResourcePoll.IS_HEALTHY)
                             .onSuccess(HttpValueFunctions.responseCode())
                             .suppressDuplicates(true))
-                    .poll(new HttpPollConfig<Boolean>(MANAGEMENT_URL_UP)
+                    .poll(new FunctionPollConfig<HttpToolResponse, Boolean>(MANAGEMENT_URL_UP)
+                            .callable(poll)
+                            .checkSuccess(ManagementResourcePoll.IS_HEALTHY)
                             .onSuccess(HttpValueFunctions.responseCodeEquals(200))
                             .onFailureOrException(Functions.constant(false))
                             .suppressDuplicates(true))
-                    .poll(new HttpPollConfig<Integer>(REQUEST_COUNT)
-                            .vars(includeRuntimeUriVars)
-                            .onSuccess(HttpValueFunctions.jsonContents("requestCount", Integer.class))
+                    .poll(new FunctionPollConfig<HttpToolResponse, Integer>(REQUEST_COUNT)
+                            .callable(poll)
+                            .checkSuccess(ManagementResourcePoll.IS_HEALTHY)
+                            .onSuccess(Functionals.chain(json, JsonFunctions.walk("requestCount"), JsonFunctions.cast(Integer.class)))
                             .onFailureOrException(EntityFunctions.attribute(this, REQUEST_COUNT))
                             .enabled(retrieveUsageMetrics))
-                    .poll(new HttpPollConfig<Integer>(ERROR_COUNT)
-                            .vars(includeRuntimeUriVars)
-                            .onSuccess(HttpValueFunctions.jsonContents("errorCount", Integer.class))
+                    .poll(new FunctionPollConfig<HttpToolResponse, Integer>(ERROR_COUNT)
+                            .callable(poll)
+                            .checkSuccess(ManagementResourcePoll.IS_HEALTHY)
+                            .onSuccess(Functionals.chain(json, JsonFunctions.walk("errorCount"), JsonFunctions.cast(Integer.class)))
                             .enabled(retrieveUsageMetrics))
-                    .poll(new HttpPollConfig<Integer>(TOTAL_PROCESSING_TIME)
-                            .vars(includeRuntimeUriVars)
-                            .onSuccess(HttpValueFunctions.jsonContents("processingTime", Integer.class))
+                    .poll(new FunctionPollConfig<HttpToolResponse, Integer>(TOTAL_PROCESSING_TIME)
+                            .callable(poll)
+                            .checkSuccess(ManagementResourcePoll.IS_HEALTHY)
+                            .onSuccess(Functionals.chain(json, JsonFunctions.walk("processingTime"), JsonFunctions.cast(Integer.class)))
                             .enabled(retrieveUsageMetrics))
-                    .poll(new HttpPollConfig<Integer>(MAX_PROCESSING_TIME)
-                            .vars(includeRuntimeUriVars)
-                            .onSuccess(HttpValueFunctions.jsonContents("maxTime", Integer.class))
+                    .poll(new FunctionPollConfig<HttpToolResponse, Integer>(MAX_PROCESSING_TIME)
+                            .callable(poll)
+                            .checkSuccess(ManagementResourcePoll.IS_HEALTHY)
+                            .onSuccess(Functionals.chain(json, JsonFunctions.walk("maxTime"), JsonFunctions.cast(Integer.class)))
                             .enabled(retrieveUsageMetrics))
-                    .poll(new HttpPollConfig<Long>(BYTES_RECEIVED)
-                            .vars(includeRuntimeUriVars)
+                    .poll(new FunctionPollConfig<HttpToolResponse, Long>(BYTES_RECEIVED)
+                            .callable(poll)
+                            .checkSuccess(ManagementResourcePoll.IS_HEALTHY)
                             // jboss seems to report 0 even if it has received lots of requests; dunno why.
-                            .onSuccess(HttpValueFunctions.jsonContents("bytesReceived", Long.class))
+                            .onSuccess(Functionals.chain(json, JsonFunctions.walk("bytesReceived"), JsonFunctions.cast(Long.class)))
                             .enabled(retrieveUsageMetrics))
-                    .poll(new HttpPollConfig<Long>(BYTES_SENT)
-                            .vars(includeRuntimeUriVars)
-                            .onSuccess(HttpValueFunctions.jsonContents("bytesSent", Long.class))
+                    .poll(new FunctionPollConfig<HttpToolResponse, Long>(BYTES_SENT)
+                            .callable(poll)
+                            .checkSuccess(ManagementResourcePoll.IS_HEALTHY)
+                            .onSuccess(Functionals.chain(json, JsonFunctions.walk("bytesSent"), JsonFunctions.cast(Long.class)))
                             .enabled(retrieveUsageMetrics))
                     .build();
             
@@ -126,6 +156,119 @@ public class JBoss7ServerImpl extends JavaWebAppSoftwareProcessImpl implements J
         connectServiceUpIsRunning();
     }
     
+    /**
+     * Fetches the management resource once for all of the sensors polled from it.
+     * <p>
+     * While the response is unchanged the time between requests doubles, up to the maximum period,
+     * with the last response returned in between; any change or failure returns to the base period.
+     * As the response is also the server's health signal, while backed off a status-only request is still
+     * made every base period, and a failure or a different status code fetches the resource again at once.
+     * An unchanged response is returned as the same object, so its JSON is not parsed again.
+     */
+    static class ManagementResourcePoll implements Callable<HttpToolResponse> {
+        static final Predicate<HttpToolResponse> IS_HEALTHY = new Predicate<HttpToolResponse>() {
+            @Override public boolean apply(HttpToolResponse input) {
+                return input != null && HttpTool.isStatusCodeHealthy(input.getResponseCode());
+            }
+        };
+
+        private final URI uri;
+        private final URI statusUri;
+        private final String user;
+        private final String password;
+        private final long basePeriodMillis;
+        private final long maxPeriodMillis;
+        private HttpClient client;
+        private HttpToolResponse lastResponse;
+        private long periodMillis;
+        private long nextRequestTime;
+        private long nextCheckTime;
+
+        ManagementResourcePoll(URI uri, URI statusUri, String user, String password, Duration basePeriod, Duration maxPeriod) {
+            this.uri = uri;
+            this.statusUri = statusUri;
+            this.user = user;
+            this.password = password;
+            this.basePeriodMillis = basePeriod.toMilliseconds();
+            this.maxPeriodMillis = Math.max(basePeriodMillis, maxPeriod == null ? 0 : maxPeriod.toMilliseconds());
+            this.periodMillis = basePeriodMillis;
+        }
+
+        @Override
+        public synchronized HttpToolResponse call() {
+            long now = System.currentTimeMillis();
+            if (lastResponse != null && now < nextCheckTime) {
+                // already checked this period, for another sensor
+                return lastResponse;
+            }
+            // allow for the feed's own scheduling jitter, so the base period still checks every time
+            nextCheckTime = now + basePeriodMillis / 2;
+            HttpToolResponse response;
+            try {
+                if (lastResponse != null && now < nextRequestTime) {
+                    HttpToolResponse status = HttpTool.httpGet(getClient(), statusUri, ImmutableMap.<String, String>of());
+                    if (status.getResponseCode() == lastResponse.getResponseCode()) {
+                        return lastResponse;
+                    }
+                    periodMillis = basePeriodMillis;
+                }
+                response = HttpTool.httpGet(getClient(), uri, ImmutableMap.<String, String>of());
+            } catch (RuntimeException e) {
+                lastResponse = null;
+                periodMillis = basePeriodMillis;
+                throw e;
+            }
+            boolean unchanged = lastResponse != null && response.getResponseCode() == lastResponse.getResponseCode()
+                    && Arrays.equals(response.getContent(), lastResponse.getContent());
+            if (unchanged) {
+                periodMillis = Math.min(periodMillis * 2, maxPeriodMillis);
+            } else {
+                periodMillis = basePeriodMillis;
+                lastResponse = response;
+            }
+            nextRequestTime = now + periodMillis - basePeriodMillis / 2;
+            return lastResponse;
+        }
+
+        synchronized void close() {
+            if (client != null) {
+                try {
+                    client.getConnectionManager().shutdown();
+                } catch (Exception e) {
+                    log.debug("Error closing management client for "+uri+" (continuing)", e);
+                }
+                client = null;
+            }
+            lastResponse = null;
+        }
+
+        private HttpClient getClient() {
+            if (client == null) {
+                HttpTool.HttpClientBuilder builder = HttpTool.httpClientBuilder().uri(uri);
+                if (user != null) {
+                    builder.credentials(new UsernamePasswordCredentials(user, password));
+                }
+                client = builder.build();
+            }
+            return client;
+        }
+    }
+
+    /** Parses the JSON contents of a response once, however many sensors are read from it. */
+    static class SharedJsonContents implements Function<HttpToolResponse, JsonElement> {
+        private HttpToolResponse lastResponse;
+        private JsonElement lastContents;
+
+        @Override
+        public synchronized JsonElement apply(HttpToolResponse input) {
+            if (input != lastResponse) {
+                lastContents = HttpValueFunctions.jsonContents().apply(input);
+                lastResponse = input;
+            }
+            return lastContents;
+        }
+    }
+
     /**
      * @deprecated since 0.9.0; now a no-op; marked final to force anyone sub-classing + overriding it to update their code.
      */
@@ -145,6 +288,10 @@ public class JBoss7ServerImpl extends JavaWebAppSoftwareProcessImpl implements J
         super.disconnectSensors();
         
         if (httpFeed != null) httpFeed.stop();
+        if (managementPoll != null) {
+            managementPoll.close();
+            managementPoll = null;
+        }
         disconnectServiceUpIsRunning();
     }
     
@@ -18,50 +18,156 @@
  */
 package org.apache.brooklyn.entity.webapp.nginx;
 
-import com.google.common.base.Predicates;
 import org.apache.brooklyn.api.effector.Effector;
 import org.apache.brooklyn.api.entity.Entity;
+import org.apache.brooklyn.api.sensor.AttributeSensor;
 import org.apache.brooklyn.config.ConfigKey;
 import org.apache.brooklyn.core.config.ConfigKeys;
 import org.apache.brooklyn.core.entity.Entities;
 import org.apache.brooklyn.core.entity.trait.Startable;
 import org.apache.brooklyn.core.sensor.Sensors;
 import org.apache.brooklyn.entity.group.AbstractMembershipTrackingPolicy;
-import org.apache.brooklyn.util.guava.Maybe;
+import org.apache.brooklyn.util.core.task.Tasks;
+import org.apache.brooklyn.util.exceptions.Exceptions;
 import org.apache.brooklyn.util.text.Strings;
+import org.apache.brooklyn.util.time.Duration;
+import org.apache.brooklyn.util.time.Time;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Keeps NGINX 'upstream' server addresses in sync with membership and service-up changes on a corresponding service group.
+ * <p>
+ * The address of each member is kept as its events arrive, and changes within {@link #COALESCE_WINDOW} are
+ * applied with a single call to the 'render-targets' effector, which is skipped if the targets are unchanged
+ * (so a scale-out of many members renders once or twice rather than once per member).
+ * <p>
+ * Renders run one at a time, in order: changes arriving while a render is in progress are applied by another 
+ * render once it completes. A failed render is retried up to {@link #RENDER_ATTEMPTS} times in all.
  */
 public class UpstreamSyncPolicy extends AbstractMembershipTrackingPolicy {
 
     public static ConfigKey<Entity> NGINX_NODE = ConfigKeys.newConfigKey(Entity.class, "nginxNode");
     public static ConfigKey<String> GROUP_NAME = ConfigKeys.newStringConfigKey("groupName");
+    public static ConfigKey<Duration> COALESCE_WINDOW = ConfigKeys.newConfigKey(Duration.class, "coalesceWindow",
+            "Time over which changes are collected before the targets are rendered", Duration.millis(500));
+    public static ConfigKey<Integer> RENDER_ATTEMPTS = ConfigKeys.newIntegerConfigKey("renderAttempts",
+            "Number of times the 'render-targets' effector is tried, one coalesce window apart, before giving up until the next change", 3);
+
+    private static final Logger LOG = LoggerFactory.getLogger(UpstreamSyncPolicy.class);
+
+    private static final AttributeSensor<String> HOST_NAME = Sensors.newStringSensor("host.name");
+    private static final AttributeSensor<Object> HTTP_PORT = Sensors.newSensor(Object.class, "http.port");
+
+    /** Addresses of the members which are up, by member id (sorted, so the targets only change with the members) */
+    private final Map<String, String> addresses = new TreeMap<>();
+    /** Set while a render task is queued or running; cleared only once its render has completed */
+    private final AtomicBoolean renderScheduled = new AtomicBoolean();
+    /** Set on each change, and cleared when a render takes the latest addresses */
+    private final AtomicBoolean renderRequested = new AtomicBoolean();
+    private String lastRendered;
+    private boolean subscribedToNginx;
 
     @Override
     protected void onEntityEvent(EventType type, Entity entity) {
         defaultHighlightAction(type, entity);
 
-        Entity nginx = config().get(NGINX_NODE);
-        Boolean nginxIsUp = nginx.sensors().get(Startable.SERVICE_UP);
-        if (!Boolean.TRUE.equals(nginxIsUp))
+        boolean changed;
+        synchronized (this) {
+            String address = (type == EventType.ENTITY_REMOVED) ? null : getAddress(entity);
+            String previous = (address == null) ? addresses.remove(entity.getId()) : addresses.put(entity.getId(), address);
+            changed = !Objects.equals(address, previous) || lastRendered == null;
+        }
+        if (changed) scheduleRender();
+    }
+
+    private static String getAddress(Entity entity) {
+        Boolean serviceUp = entity.sensors().get(Startable.SERVICE_UP);
+        String hostName = entity.sensors().get(HOST_NAME);
+        Object port = entity.sensors().get(HTTP_PORT);
+        if (!Boolean.TRUE.equals(serviceUp) || hostName == null || port == null)
+            return null;
+        return hostName + ":" + port;
+    }
+
+    private void scheduleRender() {
+        renderRequested.set(true);
+        if (!renderScheduled.compareAndSet(false, true))
             return;
+        Duration window = config().get(COALESCE_WINDOW);
+        Entities.submit(getEntity(), Tasks.builder().displayName("Sync upstream " + config().get(GROUP_NAME)).body(() -> {
+            try {
+                if (window != null) Time.sleep(window);
+                renderWithRetries(window);
+            } finally {
+                renderScheduled.set(false);
+            }
+            // pick up changes which arrived while rendering
+            if (renderRequested.get() && isRunning()) scheduleRender();
+        }).build());
+    }
+
+    private void renderWithRetries(Duration window) {
+        Integer configuredAttempts = config().get(RENDER_ATTEMPTS);
+        int attempts = Math.max(1, configuredAttempts == null ? 1 : configuredAttempts);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                render();
+                return;
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                if (attempt >= attempts) {
+                    LOG.warn("Failed to render targets of "+config().get(GROUP_NAME)+" after "+attempts+" attempts; "
+                            + "giving up until the next change", e);
+                    return;
+                }
+                LOG.debug("Failed to render targets of "+config().get(GROUP_NAME)+" (attempt "+attempt+" of "+attempts+"); retrying", e);
+                if (window != null) Time.sleep(window);
+            }
+        }
+    }
 
-        String groupName = config().get(GROUP_NAME);
+    private void render() {
+        // cleared before reading the addresses, so a change from here on requests another render
+        renderRequested.set(false);
+        if (!isRunning())
+            return;
+        Entity nginx = config().get(NGINX_NODE);
+        subscribeToNginx(nginx);
+        // if nginx is not up, the targets are rendered when it is
+        if (!Boolean.TRUE.equals(nginx.sensors().get(Startable.SERVICE_UP)))
+            return;
 
-        List<String> serverAddresses = getEntity().getChildren().stream().map((e) -> {
-            Boolean serviceUp = e.sensors().get(Startable.SERVICE_UP);
-            String hostName = e.sensors().get(Sensors.newStringSensor("host.name"));
-            String port = e.sensors().get(Sensors.newStringSensor("http.port"));
-            if (!Boolean.TRUE.equals(serviceUp) || hostName == null || port == null)
-                return null;
-            return hostName + ":" + port;
-        }).filter(Predicates.notNull()).collect(Collectors.toList());
+        String targets;
+        synchronized (this) {
+            targets = Strings.join(addresses.values(), " ");
+            if (targets.equals(lastRendered))
+                return;
+        }
+        Effector<?> renderTargets = nginx.getEntityType().getEffectorByName("render-targets").get();
+        Entities.invokeEffectorWithArgs(getEntity(), nginx, renderTargets, config().get(GROUP_NAME), targets).getUnchecked();
+        synchronized (this) {
+            lastRendered = targets;
+        }
+    }
 
-        Maybe<Effector<?>> renderTargets = nginx.getEntityType().getEffectorByName("render-targets");
-        Entities.invokeEffectorWithArgs(getEntity(), nginx, renderTargets.get(), groupName, Strings.join(serverAddresses, " "));
+    private synchronized void subscribeToNginx(Entity nginx) {
+        if (subscribedToNginx)
+            return;
+        subscribedToNginx = true;
+        subscriptions().subscribe(nginx, Startable.SERVICE_UP, (event) -> {
+            if (Boolean.TRUE.equals(event.getValue())) {
+                // render again, in case nginx was restarted without the targets
+                synchronized (this) {
+                    lastRendered = null;
+                }
+                scheduleRender();
+            }
+        });
     }
 }
@@ -20,13 +20,21 @@ package org.apache.brooklyn.entity.webapp.tomcat;
 
 import static java.lang.String.format;
 
+import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
+import javax.management.ObjectName;
+
 import org.apache.brooklyn.core.entity.EntityFunctions;
 import org.apache.brooklyn.entity.java.JavaAppUtils;
 import org.apache.brooklyn.entity.webapp.JavaWebAppSoftwareProcessImpl;
-import org.apache.brooklyn.feed.jmx.JmxAttributePollConfig;
+import org.apache.brooklyn.feed.function.FunctionFeed;
+import org.apache.brooklyn.feed.function.FunctionPollConfig;
 import org.apache.brooklyn.feed.jmx.JmxFeed;
+import org.apache.brooklyn.feed.jmx.JmxHelper;
+import org.apache.brooklyn.feed.jmx.batch.BatchedJmxAttributePoller;
+import org.apache.brooklyn.util.guava.Functionals;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,51 +52,63 @@ public class TomcatServerImpl extends JavaWebAppSoftwareProcessImpl implements T
         super();
     }
 
-    private volatile JmxFeed jmxWebFeed;
+    private volatile FunctionFeed jmxWebFeed;
     private volatile JmxFeed jmxAppFeed;
+    private volatile JmxHelper jmxHelper;
 
     @Override
     public void connectSensors() {
         super.connectSensors();
 
         if (getDriver().isJmxEnabled()) {
-            String requestProcessorMbeanName = "Catalina:type=GlobalRequestProcessor,name=\"http-*\"";
+            ObjectName requestProcessorMbeanName = JmxHelper.createObjectName("Catalina:type=GlobalRequestProcessor,name=\"http-*\"");
 
             Integer port = isHttpsEnabled() ? getAttribute(HTTPS_PORT) : getAttribute(HTTP_PORT);
-            String connectorMbeanName = format("Catalina:type=Connector,port=%s", port);
+            ObjectName connectorMbeanName = JmxHelper.createObjectName(format("Catalina:type=Connector,port=%s", port));
             boolean retrieveUsageMetrics = getConfig(RETRIEVE_USAGE_METRICS);
 
-            jmxWebFeed = JmxFeed.builder()
+            // one connection for all JMX feeds, and one request per MBean per period
+            jmxHelper = new JmxHelper(this);
+            BatchedJmxAttributePoller poller = new BatchedJmxAttributePoller(jmxHelper);
+            Callable<Map<String, Object>> connector = poller.attributes(connectorMbeanName, "stateName");
+            Callable<Map<String, Object>> requestProcessor = poller.attributes(requestProcessorMbeanName,
+                    "errorCount", "requestCount", "processingTime");
+
+            jmxWebFeed = FunctionFeed.builder()
                     .entity(this)
                     .period(3000, TimeUnit.MILLISECONDS)
-                    .pollAttribute(new JmxAttributePollConfig<Boolean>(SERVICE_PROCESS_IS_RUNNING)
+                    .poll(new FunctionPollConfig<Map<String, Object>, Boolean>(SERVICE_PROCESS_IS_RUNNING)
                             // TODO Want to use something different from SERVICE_PROCESS_IS_RUNNING,
                             // to indicate this is jmx MBean's reported state (or failure to connect)
-                            .objectName(connectorMbeanName)
-                            .attributeName("stateName")
-                            .onSuccess(Functions.forPredicate(Predicates.<Object>equalTo("STARTED")))
+                            .callable(connector)
+                            .onSuccess(Functionals.chain(BatchedJmxAttributePoller.attribute("stateName", Object.class),
+                                    Functions.forPredicate(Predicates.<Object>equalTo("STARTED"))))
                             .setOnFailureOrException(false)
                             .suppressDuplicates(true))
-                    .pollAttribute(new JmxAttributePollConfig<String>(CONNECTOR_STATUS)
-                            .objectName(connectorMbeanName)
-                            .attributeName("stateName")
+                    .poll(new FunctionPollConfig<Map<String, Object>, String>(CONNECTOR_STATUS)
+                            .callable(connector)
+                            .onSuccess(BatchedJmxAttributePoller.attribute("stateName", String.class))
                             .suppressDuplicates(true))
-                    .pollAttribute(new JmxAttributePollConfig<Integer>(ERROR_COUNT)
-                            .objectName(requestProcessorMbeanName)
-                            .attributeName("errorCount")
+                    .poll(new FunctionPollConfig<Map<String, Object>, Integer>(ERROR_COUNT)
+                            .callable(requestProcessor)
+                            .onSuccess(BatchedJmxAttributePoller.attribute("errorCount", Integer.class))
                             .enabled(retrieveUsageMetrics))
-                    .pollAttribute(new JmxAttributePollConfig<Integer>(REQUEST_COUNT)
-                            .objectName(requestProcessorMbeanName)
-                            .attributeName("requestCount")
+                    .poll(new FunctionPollConfig<Map<String, Object>, Integer>(REQUEST_COUNT)
+                            .callable(requestProcessor)
+                            .onSuccess(BatchedJmxAttributePoller.attribute("requestCount", Integer.class))
                             .enabled(retrieveUsageMetrics)
                             .onFailureOrException(EntityFunctions.attribute(this, REQUEST_COUNT)))
-                    .pollAttribute(new JmxAttributePollConfig<Integer>(TOTAL_PROCESSING_TIME)
-                            .objectName(requestProcessorMbeanName)
-                            .attributeName("processingTime")
+                    .poll(new FunctionPollConfig<Map<String, Object>, Integer>(TOTAL_PROCESSING_TIME)
+                            .callable(requestProcessor)
+                            .onSuccess(BatchedJmxAttributePoller.attribute("processingTime", Integer.class))
                             .enabled(retrieveUsageMetrics))
+                    .poll(new FunctionPollConfig<Integer, Integer>(BatchedJmxAttributePoller.JMX_ROUND_TRIPS_PER_MINUTE)
+                            .callable(poller.roundTripsPerMinute()))
                     .build();
 
-            jmxAppFeed = JavaAppUtils.connectMXBeanSensors(this);
+            if (JavaAppUtils.isEntityMxBeanStatsEnabled(this)) {
+                jmxAppFeed = JavaAppUtils.getMxBeanSensorsBuilder(this).helper(jmxHelper).build();
+            }
         } else {
             // if not using JMX
             LOG.warn("Tomcat running without JMX monitoring; limited visibility of service available");
@@ -102,6 +122,7 @@ public class TomcatServerImpl extends JavaWebAppSoftwareProcessImpl implements T
         if (getDriver() != null && getDriver().isJmxEnabled()) {
            if (jmxWebFeed != null) jmxWebFeed.stop();
            if (jmxAppFeed != null) jmxAppFeed.stop();
+           if (jmxHelper != null) jmxHelper.terminate();
         } else {
             disconnectServiceUpIsRunning();
         }
@@ -18,6 +18,8 @@
  */
 package org.apache.brooklyn.entity.proxy;
 
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertTrue;
 
 import java.net.Inet4Address;
@@ -26,6 +28,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
+import org.apache.brooklyn.api.entity.Entity;
 import org.apache.brooklyn.api.entity.EntitySpec;
 import org.apache.brooklyn.api.location.Location;
 import org.apache.brooklyn.api.location.LocationSpec;
@@ -35,12 +38,16 @@ import org.apache.brooklyn.core.entity.trait.Startable;
 import org.apache.brooklyn.core.location.PortRanges;
 import org.apache.brooklyn.core.test.entity.TestEntity;
 import org.apache.brooklyn.location.ssh.SshMachineLocation;
+import org.apache.brooklyn.test.Asserts;
 import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.time.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testng.annotations.Test;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 
 public class AbstractControllerTest extends AbstractAbstractControllerTest<TrackingAbstractController> {
@@ -118,6 +125,88 @@ public class AbstractControllerTest extends AbstractAbstractControllerTest<Track
         }
     }
 
+    @Test
+    public void testCoalescesMembershipChangesWithinUpdateInterval() throws Exception {
+        controller = app.createAndManageChild(EntitySpec.create(TrackingAbstractController.class)
+                .configure("serverPool", cluster) 
+                .configure("portNumberSensor", WebServerEntity.HTTP_PORT)
+                .configure("domain", "mydomain")
+                .configure(AbstractController.UPDATE_MIN_INTERVAL, Duration.millis(500))
+                .configure(AbstractController.UPDATE_MAX_DELAY, Duration.seconds(30)));
+        controller.start(Arrays.asList(loc));
+
+        cluster.resize(5);
+        for (Entity member : cluster.getMembers()) {
+            member.sensors().set(WebServerEntity.HTTP_PORT, 1234);
+            member.sensors().set(Startable.SERVICE_UP, true);
+        }
+        assertEventuallyAddressesMatchCluster();
+
+        List<Collection<String>> u = Lists.newArrayList(controller.getUpdates());
+        assertEquals(u.size(), 1, "expected single coalesced update, but got "+u);
+        EntityAsserts.assertAttributeEquals(controller, AbstractController.SERVER_POOL_UPDATE_BATCH_SIZE, 5);
+        EntityAsserts.assertAttributeEquals(controller, AbstractController.SERVER_POOL_PENDING_DELTAS, 0);
+    }
+
+    @Test
+    public void testDeltaUpdateAppliedWithoutReload() throws Exception {
+        controller = app.createAndManageChild(EntitySpec.create(TrackingAbstractController.class)
+                .configure("serverPool", cluster) 
+                .configure("portNumberSensor", WebServerEntity.HTTP_PORT)
+                .configure("domain", "mydomain")
+                .configure(TrackingAbstractController.DELTA_MODE, true));
+        controller.start(Arrays.asList(loc));
+        int reloads = controller.getReloadCount();
+
+        cluster.resize(1);
+        Entity child = Iterables.getOnlyElement(cluster.getMembers());
+        child.sensors().set(WebServerEntity.HTTP_PORT, 1234);
+        child.sensors().set(Startable.SERVICE_UP, true);
+        assertEventuallyAddressesMatchCluster();
+
+        String address = Iterables.getOnlyElement(locationsToAddresses(1234, cluster.getMembers()));
+        assertEquals(controller.getDeltas(), ImmutableList.of(ImmutableSet.of("+"+address)));
+        assertEquals(controller.getReloadCount(), reloads);
+        assertNotNull(controller.getAttribute(AbstractController.RECONFIGURE_LATENCY));
+    }
+
+    @Test
+    public void testUnchangedConfigIsNotReloaded() throws Exception {
+        int reloads = controller.getReloadCount();
+        cluster.resize(1);
+        Entity child = Iterables.getOnlyElement(cluster.getMembers());
+        child.sensors().set(WebServerEntity.HTTP_PORT, 1234);
+        child.sensors().set(Startable.SERVICE_UP, true);
+        assertEventuallyAddressesMatchCluster();
+        assertEventuallyReloadCount(reloads + 1);
+
+        controller.update();
+        controller.update();
+        assertEquals(controller.getReloadCount(), reloads + 1);
+
+        // a changed config is reloaded
+        child.sensors().set(WebServerEntity.HTTP_PORT, 1235);
+        assertEventuallyReloadCount(reloads + 2);
+    }
+
+    private void assertEventuallyReloadCount(final int expected) {
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertEquals(controller.getReloadCount(), expected);
+            }});
+    }
+
+    @Test
+    public void testReconfigureLatencyRecordedWhenNoReload() throws Exception {
+        controller.sensors().set(AbstractController.RECONFIGURE_LATENCY, null);
+        int reloads = controller.getReloadCount();
+
+        // the targets are unchanged, so the service is reconfigured but not reloaded
+        controller.update();
+        assertEquals(controller.getReloadCount(), reloads);
+        assertNotNull(controller.getAttribute(AbstractController.RECONFIGURE_LATENCY));
+    }
+
     // Manual visual inspection test. Previously it repeatedly logged:
     //     Unable to construct hostname:port representation for TestEntityImpl{id=jzwSBRQ2} (null:null); skipping in TrackingAbstractControllerImpl{id=tOn4k5BA}
     // every time the service-up was set to true again.
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.entity.proxy;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+public class ConsistentHashRingTest {
+
+    private static List<String> keys(int count) {
+        List<String> result = Lists.newArrayList();
+        for (int i = 0; i < count; i++) {
+            result.add("server"+i);
+        }
+        return result;
+    }
+
+    @Test
+    public void testEmptyRingHasNoOwner() {
+        ConsistentHashRing ring = new ConsistentHashRing(ImmutableList.<String>of());
+        assertNull(ring.getOwner("server0"));
+        assertTrue(ring.getOwners("server0", 2).isEmpty());
+    }
+
+    @Test
+    public void testOwnershipIsIndependentOfNodeOrder() {
+        ConsistentHashRing ring1 = new ConsistentHashRing(ImmutableList.of("a", "b", "c"));
+        ConsistentHashRing ring2 = new ConsistentHashRing(ImmutableList.of("c", "a", "b"));
+        assertEquals(ring1, ring2);
+        for (String key : keys(100)) {
+            assertEquals(ring1.getOwner(key), ring2.getOwner(key));
+        }
+    }
+
+    @Test
+    public void testKeysAreSpreadAcrossNodes() {
+        ConsistentHashRing ring = new ConsistentHashRing(ImmutableList.of("a", "b", "c", "d"));
+        Map<String, Integer> counts = Maps.newHashMap();
+        for (String key : keys(4000)) {
+            String owner = ring.getOwner(key);
+            counts.put(owner, (counts.containsKey(owner) ? counts.get(owner) : 0) + 1);
+        }
+        assertEquals(counts.keySet(), ring.getNodes());
+        for (int count : counts.values()) {
+            assertTrue(count > 500 && count < 1500, "counts="+counts);
+        }
+    }
+
+    @Test
+    public void testAddingNodeOnlyMovesKeysToIt() {
+        ConsistentHashRing before = new ConsistentHashRing(ImmutableList.of("a", "b", "c", "d"));
+        ConsistentHashRing after = new ConsistentHashRing(ImmutableList.of("a", "b", "c", "d", "e"));
+        int moved = 0;
+        for (String key : keys(4000)) {
+            String oldOwner = before.getOwner(key);
+            String newOwner = after.getOwner(key);
+            if (!oldOwner.equals(newOwner)) {
+                assertEquals(newOwner, "e");
+                moved++;
+            }
+        }
+        // on average a fifth of the keys; far fewer than rehashing all of them would move
+        assertTrue(moved > 400 && moved < 1400, "moved="+moved);
+    }
+
+    @Test
+    public void testReplicasAreDistinctAndStartWithOwner() {
+        ConsistentHashRing ring = new ConsistentHashRing(ImmutableList.of("a", "b", "c"));
+        for (String key : keys(100)) {
+            Set<String> owners = ring.getOwners(key, 2);
+            assertEquals(owners.size(), 2);
+            assertEquals(owners.iterator().next(), ring.getOwner(key));
+        }
+        assertEquals(ring.getOwners("server0", 5), ring.getNodes());
+    }
+}
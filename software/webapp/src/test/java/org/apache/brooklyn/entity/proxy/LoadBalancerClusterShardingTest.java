@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.entity.proxy;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+
+import java.net.Inet4Address;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.brooklyn.api.entity.Entity;
+import org.apache.brooklyn.api.entity.EntitySpec;
+import org.apache.brooklyn.api.location.LocationSpec;
+import org.apache.brooklyn.core.entity.trait.Startable;
+import org.apache.brooklyn.core.test.BrooklynAppUnitTestSupport;
+import org.apache.brooklyn.core.test.entity.TestEntity;
+import org.apache.brooklyn.entity.group.DynamicCluster;
+import org.apache.brooklyn.entity.proxy.AbstractAbstractControllerTest.WebServerEntity;
+import org.apache.brooklyn.location.byon.FixedListMachineProvisioningLocation;
+import org.apache.brooklyn.location.ssh.SshMachineLocation;
+import org.apache.brooklyn.test.Asserts;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+public class LoadBalancerClusterShardingTest extends BrooklynAppUnitTestSupport {
+
+    private FixedListMachineProvisioningLocation<?> loc;
+    private DynamicCluster serverPool;
+
+    @BeforeMethod(alwaysRun = true)
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+
+        List<SshMachineLocation> machines = Lists.newArrayList();
+        for (int i = 1; i <= 30; i++) {
+            machines.add(mgmt.getLocationManager().createLocation(LocationSpec.create(SshMachineLocation.class)
+                    .configure("address", Inet4Address.getByName("1.1.1."+i))));
+        }
+        loc = mgmt.getLocationManager().createLocation(LocationSpec.create(FixedListMachineProvisioningLocation.class)
+                .configure("machines", machines));
+
+        serverPool = newServerPool();
+    }
+
+    private DynamicCluster newServerPool() {
+        return app.createAndManageChild(EntitySpec.create(DynamicCluster.class)
+                .configure("initialSize", 0)
+                .configure("memberSpec", EntitySpec.create(TestEntity.class).impl(WebServerEntity.class)));
+    }
+
+    private LoadBalancerCluster newLoadBalancerCluster(int size, int replicas) {
+        LoadBalancerCluster result = app.createAndManageChild(EntitySpec.create(LoadBalancerCluster.class)
+                .configure(LoadBalancerCluster.MEMBER_SPEC, EntitySpec.create(TrackingAbstractController.class)
+                        .configure("portNumberSensor", WebServerEntity.HTTP_PORT)
+                        .configure("domain", "mydomain"))
+                .configure(LoadBalancerCluster.SERVER_POOL, serverPool)
+                .configure(LoadBalancerCluster.SHARDING_ENABLED, true)
+                .configure(LoadBalancerCluster.SHARDING_REPLICAS, replicas)
+                .configure(LoadBalancerCluster.INITIAL_SIZE, size));
+        result.start(ImmutableList.of(loc));
+        return result;
+    }
+
+    private void startServers(DynamicCluster pool, int count) {
+        pool.start(ImmutableList.of(loc));
+        pool.resize(count);
+        for (Entity server : pool.getMembers()) {
+            server.sensors().set(WebServerEntity.HTTP_PORT, 1234);
+            server.sensors().set(Startable.SERVICE_UP, true);
+        }
+    }
+
+    @Test
+    public void testEachServerTargetedOnlyByItsShardOwner() {
+        LoadBalancerCluster lbCluster = newLoadBalancerCluster(2, 1);
+        startServers(serverPool, 10);
+
+        assertEventuallyTargetsMatchRing(lbCluster, serverPool, 1);
+    }
+
+    @Test
+    public void testEachServerTargetedByReplicas() {
+        LoadBalancerCluster lbCluster = newLoadBalancerCluster(3, 2);
+        startServers(serverPool, 10);
+
+        assertEventuallyTargetsMatchRing(lbCluster, serverPool, 2);
+    }
+
+    @Test
+    public void testRebalancesWhenLoadBalancerAdded() {
+        LoadBalancerCluster lbCluster = newLoadBalancerCluster(2, 1);
+        startServers(serverPool, 10);
+        assertEventuallyTargetsMatchRing(lbCluster, serverPool, 1);
+
+        lbCluster.resize(3);
+        assertEventuallyTargetsMatchRing(lbCluster, serverPool, 1);
+    }
+
+    @Test
+    public void testRebalanceKeepsServerPoolChangedThroughCluster() {
+        LoadBalancerCluster lbCluster = newLoadBalancerCluster(2, 1);
+        startServers(serverPool, 4);
+        DynamicCluster serverPool2 = newServerPool();
+        startServers(serverPool2, 6);
+
+        lbCluster.changeServerPool(serverPool2.getId());
+        assertEventuallyTargetsMatchRing(lbCluster, serverPool2, 1);
+
+        // a rebalance re-filters the members of each load balancer's own pool, rather than resetting it
+        lbCluster.resize(3);
+        assertEventuallyTargetsMatchRing(lbCluster, serverPool2, 1);
+        for (Entity member : lbCluster.getMembers()) {
+            assertEquals(member.getConfig(LoadBalancer.SERVER_POOL), serverPool2);
+        }
+    }
+
+    private void assertEventuallyTargetsMatchRing(final LoadBalancerCluster lbCluster, final DynamicCluster pool, final int replicas) {
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                ConsistentHashRing ring = lbCluster.getAttribute(LoadBalancerCluster.SHARD_RING);
+                assertNotNull(ring);
+                Set<String> controllerIds = Sets.newLinkedHashSet();
+                for (Entity member : lbCluster.getMembers()) {
+                    controllerIds.add(member.getId());
+                }
+                assertEquals(ring.getNodes(), controllerIds);
+
+                Map<String, Set<Entity>> expected = Maps.newLinkedHashMap();
+                for (String id : controllerIds) {
+                    expected.put(id, Sets.<Entity>newLinkedHashSet());
+                }
+                for (Entity server : pool.getMembers()) {
+                    Set<String> owners = ring.getOwners(server.getId(), replicas);
+                    assertEquals(owners.size(), Math.min(replicas, controllerIds.size()));
+                    for (String owner : owners) {
+                        expected.get(owner).add(server);
+                    }
+                }
+                for (Entity member : lbCluster.getMembers()) {
+                    Map<Entity, String> targets = member.getAttribute(LoadBalancer.SERVER_POOL_TARGETS);
+                    Set<Entity> actual = (targets == null) ? Sets.<Entity>newLinkedHashSet() : targets.keySet();
+                    assertEquals(actual, expected.get(member.getId()), "targets of "+member);
+                }
+            }});
+    }
+}
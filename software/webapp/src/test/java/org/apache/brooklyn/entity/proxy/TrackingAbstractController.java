@@ -22,9 +22,21 @@ import java.util.Collection;
 import java.util.List;
 
 import org.apache.brooklyn.api.entity.ImplementedBy;
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.config.ConfigKeys;
 import org.apache.brooklyn.entity.proxy.AbstractController;
 
 @ImplementedBy(TrackingAbstractControllerImpl.class)
 public interface TrackingAbstractController extends AbstractController {
+
+    ConfigKey<Boolean> DELTA_MODE = ConfigKeys.newBooleanConfigKey("test.deltaMode",
+            "Whether changed targets are applied as a delta, without a reload", false);
+
     List<Collection<String>> getUpdates();
+
+    /** The targets added ("+address") and removed ("-address") by each update applied as a delta */
+    List<Collection<String>> getDeltas();
+
+    /** The number of reloads; there is none for an update whose targets are unchanged since the last update */
+    int getReloadCount();
 }
@@ -21,23 +21,39 @@ package org.apache.brooklyn.entity.proxy;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.brooklyn.entity.software.base.test.driver.MockSshDriver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 
 public class TrackingAbstractControllerImpl extends AbstractControllerImpl implements TrackingAbstractController {
     
     private static final Logger log = LoggerFactory.getLogger(TrackingAbstractControllerImpl.class);
 
     private final List<Collection<String>> updates = Lists.newCopyOnWriteArrayList();
+    private final List<Collection<String>> deltas = Lists.newCopyOnWriteArrayList();
+    private final AtomicInteger reloads = new AtomicInteger();
+    private volatile Set<String> appliedAddresses;
+    private volatile boolean reloadRequired = true;
     
     @Override
     public List<Collection<String>> getUpdates() {
         return updates;
     }
+
+    @Override
+    public List<Collection<String>> getDeltas() {
+        return deltas;
+    }
+
+    @Override
+    public int getReloadCount() {
+        return reloads.get();
+    }
     
     @Override
     public void connectSensors() {
@@ -49,9 +65,23 @@ public class TrackingAbstractControllerImpl extends AbstractControllerImpl imple
     protected void reconfigureService() {
         Set<String> addresses = getServerPoolAddresses();
         log.info("test controller reconfigure, targets "+addresses);
+        boolean delta = getConfig(DELTA_MODE) && appliedAddresses != null && !addresses.equals(appliedAddresses);
+        if (delta) {
+            Set<String> changes = Sets.newLinkedHashSet();
+            for (String added : Sets.difference(addresses, appliedAddresses)) changes.add("+"+added);
+            for (String removed : Sets.difference(appliedAddresses, addresses)) changes.add("-"+removed);
+            deltas.add(changes);
+        }
         if ((!addresses.isEmpty() && updates.isEmpty()) || (!updates.isEmpty() && addresses != updates.get(updates.size()-1))) {
             updates.add(addresses);
         }
+        reloadRequired = !delta && !addresses.equals(appliedAddresses);
+        appliedAddresses = addresses;
+    }
+
+    @Override
+    protected boolean isReloadRequired() {
+        return reloadRequired;
     }
 
     @Override
@@ -61,6 +91,6 @@ public class TrackingAbstractControllerImpl extends AbstractControllerImpl imple
     
     @Override
     public void reload() {
-        // no-op
+        reloads.incrementAndGet();
     }
 }
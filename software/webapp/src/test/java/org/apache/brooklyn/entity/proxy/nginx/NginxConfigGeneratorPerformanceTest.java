@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.entity.proxy.nginx;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.brooklyn.core.entity.Attributes;
+import org.apache.brooklyn.util.core.ResourceUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import freemarker.template.Template;
+
+/**
+ * Compares render time and allocation of {@link NginxDefaultConfigGenerator} when generating the
+ * {@code server.conf} as a string versus streaming it, and of {@link NginxTemplateConfigGenerator} with
+ * its compiled template cached versus fetched and compiled for each render, for server pools of different sizes.
+ * <p>
+ * Uses dynamic proxies for the controller and driver, so no entities or machines are needed.
+ */
+public class NginxConfigGeneratorPerformanceTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NginxConfigGeneratorPerformanceTest.class);
+
+    private static final int WARMUP_ITERATIONS = 20;
+    private static final int ITERATIONS = 50;
+
+    @DataProvider(name = "poolSizes")
+    public Object[][] poolSizes() {
+        return new Object[][] { {10}, {1000}, {10000} };
+    }
+
+    @Test(groups = {"Integration", "Acceptance"}, dataProvider = "poolSizes")
+    public void testRenderTimeAndAllocation(int poolSize) throws Exception {
+        final NginxDefaultConfigGenerator generator = new NginxDefaultConfigGenerator();
+        final NginxDriver driver = newDriver();
+        final NginxController nginx = newController(poolSize);
+
+        // Both modes must produce the same config
+        StringWriter streamed = new StringWriter();
+        generator.generateConfigFile(driver, nginx, streamed);
+        assertEquals(streamed.toString(), generator.generateConfigFile(driver, nginx));
+
+        measure("string, "+poolSize+" members", new Runnable() {
+            @Override public void run() {
+                generator.generateConfigFile(driver, nginx);
+            }});
+        measure("streamed, "+poolSize+" members", new Runnable() {
+            @Override public void run() {
+                try {
+                    generator.generateConfigFile(driver, nginx, new NullWriter());
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }});
+    }
+
+    @Test(groups = {"Integration", "Acceptance"}, dataProvider = "poolSizes")
+    public void testTemplateRenderTimeAndAllocation(int poolSize) throws Exception {
+        final String contents = ResourceUtils.create(this).getResourceAsString(
+                NginxTemplateConfigGenerator.SERVER_CONF_TEMPLATE_URL.getDefaultValue());
+        final NginxTemplateConfigGenerator cached = new StubTemplateGenerator(contents);
+        final NginxTemplateConfigGenerator uncached = new StubTemplateGenerator(contents) {
+            @Override protected Template getTemplate(NginxDriver driver, String templateUrl) {
+                try {
+                    return loadTemplate(driver, templateUrl);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        final NginxController nginx = newController(poolSize);
+        final NginxDriver driver = newDriver(nginx);
+
+        // Both must produce the same config
+        assertEquals(cached.generateConfigFile(driver, nginx), uncached.generateConfigFile(driver, nginx));
+
+        measure("template cached, "+poolSize+" members", new Runnable() {
+            @Override public void run() {
+                cached.generateConfigFile(driver, nginx);
+            }});
+        measure("template compiled each time, "+poolSize+" members", new Runnable() {
+            @Override public void run() {
+                uncached.generateConfigFile(driver, nginx);
+            }});
+    }
+
+    /** Answers the template contents, as the stand-in entity cannot load resources */
+    private static class StubTemplateGenerator extends NginxTemplateConfigGenerator {
+        private final String contents;
+
+        StubTemplateGenerator(String contents) {
+            this.contents = contents;
+        }
+
+        @Override
+        protected String getTemplateContents(NginxDriver driver, String templateUrl) {
+            return contents;
+        }
+    }
+
+    private void measure(String summary, Runnable job) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            job.run();
+        }
+        long allocatedBefore = getAllocatedBytes();
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        for (int i = 0; i < ITERATIONS; i++) {
+            job.run();
+        }
+        long elapsedMicros = stopwatch.elapsed(TimeUnit.MICROSECONDS);
+        long allocated = getAllocatedBytes() - allocatedBefore;
+        LOG.info("Nginx config render ({}): {} us/op, {} bytes allocated/op",
+                new Object[] {summary, elapsedMicros / ITERATIONS, (allocatedBefore < 0) ? "n/a" : allocated / ITERATIONS});
+    }
+
+    private static long getAllocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static NginxDriver newDriver() {
+        return StubProxies.newProxy(NginxDriver.class, ImmutableMap.<String, Object>of("getPidFile", "/tmp/nginx/logs/nginx.pid"));
+    }
+
+    private static NginxDriver newDriver(NginxController nginx) {
+        return StubProxies.newProxy(NginxDriver.class, ImmutableMap.<String, Object>builder()
+                .put("getEntity", nginx)
+                .put("getPidFile", "/tmp/nginx/logs/nginx.pid")
+                .put("getRunDir", "/tmp/nginx")
+                .put("getAccessLogLocation", "/tmp/nginx/logs/access.log")
+                .put("getErrorLogLocation", "/tmp/nginx/logs/error.log")
+                .build());
+    }
+
+    private static NginxController newController(int poolSize) {
+        ImmutableSet.Builder<String> addresses = ImmutableSet.builder();
+        for (int i = 0; i < poolSize; i++) {
+            addresses.add("10."+((i >> 16) & 0xff)+"."+((i >> 8) & 0xff)+"."+(i & 0xff)+":8080");
+        }
+        final Set<String> serverPoolAddresses = addresses.build();
+        return StubProxies.newProxy(NginxController.class, ImmutableMap.<String, Object>builder()
+                .put("getId", "perfnginx")
+                .put("getServerPoolAddresses", serverPoolAddresses)
+                .put("getUrlMappings", Collections.<UrlMapping>emptyList())
+                .put("getPort", 8000)
+                .put("isSsl", false)
+                .put("isSticky", true)
+                .put("getPortNumberSensor", Attributes.HTTP_PORT)
+                .build());
+    }
+
+    private static class NullWriter extends Writer {
+        @Override public void write(char[] cbuf, int off, int len) { }
+        @Override public Writer append(CharSequence csq) { return this; }
+        @Override public void flush() { }
+        @Override public void close() { }
+    }
+}
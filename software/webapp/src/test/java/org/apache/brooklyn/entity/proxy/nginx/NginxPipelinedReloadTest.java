@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.entity.proxy.nginx;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+
+import org.apache.brooklyn.util.os.Os;
+import org.apache.brooklyn.util.text.Strings;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Runs the commands of a pipelined reload locally, joined as {@code execCommands} joins them,
+ * with a marker file touched in place of the HUP.
+ */
+public class NginxPipelinedReloadTest {
+
+    private static final String RELOAD_COMMAND = "touch reloaded";
+
+    private File runDir;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() throws Exception {
+        runDir = Os.newTempDir(getClass());
+        new File(runDir, "conf").mkdirs();
+        Files.write("old config", new File(runDir, "conf/server.conf"), Charsets.UTF_8);
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() throws Exception {
+        if (runDir != null) Os.deleteRecursively(runDir);
+    }
+
+    @Test
+    public void testMovesConfigIntoPlaceAndReloads() throws Exception {
+        Files.write("new config\n", new File(runDir, "conf/server.conf.abc.tmp"), Charsets.UTF_8);
+
+        int result = runWithLivePid(NginxSshDriver.pipelinedReloadCommands(
+                runDir.getAbsolutePath(), "conf/server.conf.abc.tmp", "nginx.pid", RELOAD_COMMAND));
+
+        assertEquals(result, 0);
+        assertEquals(Files.toString(new File(runDir, "conf/server.conf"), Charsets.UTF_8), "new config\n");
+        assertFalse(new File(runDir, "conf/server.conf.abc.tmp").exists());
+        assertTrue(new File(runDir, "reloaded").exists());
+    }
+
+    @Test
+    public void testReloadsWithoutNewConfig() throws Exception {
+        int result = runWithLivePid(NginxSshDriver.pipelinedReloadCommands(
+                runDir.getAbsolutePath(), null, "nginx.pid", RELOAD_COMMAND));
+
+        assertEquals(result, 0);
+        assertEquals(Files.toString(new File(runDir, "conf/server.conf"), Charsets.UTF_8), "old config");
+        assertTrue(new File(runDir, "reloaded").exists());
+    }
+
+    @Test
+    public void testDoesNotReloadWhenNotRunning() throws Exception {
+        int result = run(NginxSshDriver.pipelinedReloadCommands(
+                runDir.getAbsolutePath(), null, "nginx.pid", RELOAD_COMMAND));
+
+        assertEquals(result, NginxSshDriver.NOT_RUNNING_EXIT_CODE);
+        assertFalse(new File(runDir, "reloaded").exists());
+    }
+
+    /** Runs the commands with the pid file naming the shell running them, so the process is running */
+    private int runWithLivePid(List<String> commands) throws Exception {
+        return run("echo $$ > "+new File(runDir, "nginx.pid").getAbsolutePath()+" ; "+Strings.join(commands, " ; "));
+    }
+
+    private int run(List<String> commands) throws Exception {
+        return run(Strings.join(commands, " ; "));
+    }
+
+    private int run(String command) throws Exception {
+        Process process = new ProcessBuilder("bash", "-c", command).redirectErrorStream(true).start();
+        return process.waitFor();
+    }
+}
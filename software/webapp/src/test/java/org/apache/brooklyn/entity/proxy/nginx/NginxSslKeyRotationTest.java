@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.entity.proxy.nginx;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.brooklyn.api.entity.EntitySpec;
+import org.apache.brooklyn.core.entity.Entities;
+import org.apache.brooklyn.core.test.BrooklynAppUnitTestSupport;
+import org.apache.brooklyn.entity.proxy.ProxySslConfig;
+import org.apache.brooklyn.util.os.Os;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+/**
+ * Tests that rotated SSL certificates and keys (new contents at the same URLs) are found by the rotation check,
+ * with a controller whose uploads and update requests are stand-ins.
+ */
+public class NginxSslKeyRotationTest extends BrooklynAppUnitTestSupport {
+
+    private static final String CERTIFICATE_DESTINATION = "/tmp/nginx/conf/global.crt";
+    private static final String KEY_DESTINATION = "/tmp/nginx/conf/global.key";
+
+    private File certificate;
+    private File key;
+
+    /** Stand-in for the machine, recording what is uploaded, and for the update */
+    public static class StandInNginxControllerImpl extends NginxControllerImpl {
+        final List<String> uploaded = Lists.newCopyOnWriteArrayList();
+        final AtomicInteger updatesRequested = new AtomicInteger();
+
+        @Override
+        protected void uploadSslKeys(NginxSshDriver driver, Map<String, byte[]> contentsByDestination) {
+            uploaded.addAll(contentsByDestination.keySet());
+        }
+
+        @Override
+        public void updateNeeded() {
+            updatesRequested.incrementAndGet();
+        }
+    }
+
+    @BeforeMethod(alwaysRun = true)
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        certificate = Os.newTempFile(getClass(), "crt");
+        key = Os.newTempFile(getClass(), "key");
+        Files.write("certificate 1", certificate, Charsets.UTF_8);
+        Files.write("key 1", key, Charsets.UTF_8);
+    }
+
+    @AfterMethod(alwaysRun = true)
+    @Override
+    public void tearDown() throws Exception {
+        super.tearDown();
+        if (certificate != null) certificate.delete();
+        if (key != null) key.delete();
+    }
+
+    private StandInNginxControllerImpl newController() {
+        ProxySslConfig ssl = ProxySslConfig.builder()
+                .certificateSourceUrl(certificate.toURI().toASCIIString())
+                .keySourceUrl(key.toURI().toASCIIString())
+                .certificateDestination(CERTIFICATE_DESTINATION)
+                .keyDestination(KEY_DESTINATION)
+                .build();
+        NginxController nginx = app.createAndManageChild(EntitySpec.create(NginxController.class)
+                .impl(StandInNginxControllerImpl.class)
+                .configure(NginxController.SSL_CONFIG, ssl));
+        return (StandInNginxControllerImpl) Entities.deproxy(nginx);
+    }
+
+    @Test
+    public void testRotatedKeyIsInstalledByUpdate() throws Exception {
+        StandInNginxControllerImpl nginx = newController();
+        String digest = nginx.installSslKeys(nginx.getSslConfigsById());
+        assertEquals(nginx.uploaded, ImmutableList.of(CERTIFICATE_DESTINATION, KEY_DESTINATION));
+
+        assertFalse(nginx.checkSslKeyRotation());
+        assertEquals(nginx.updatesRequested.get(), 0);
+
+        Files.write("key 2", key, Charsets.UTF_8);
+        assertTrue(nginx.checkSslKeyRotation());
+        assertEquals(nginx.updatesRequested.get(), 1);
+
+        // the update installs only the rotated key, and the changed digest means nginx is reloaded
+        assertNotEquals(nginx.installSslKeys(nginx.getSslConfigsById()), digest);
+        assertEquals(nginx.uploaded, ImmutableList.of(CERTIFICATE_DESTINATION, KEY_DESTINATION, KEY_DESTINATION));
+        assertFalse(nginx.checkSslKeyRotation());
+        assertEquals(nginx.updatesRequested.get(), 1);
+    }
+
+    @Test
+    public void testReconfigureDoesNotFetchUnchangedSslConfigAgain() throws Exception {
+        StandInNginxControllerImpl nginx = newController();
+        String digest = nginx.installSslKeys(nginx.getSslConfigsById());
+
+        // without a rotation check, the keys last fetched are used
+        Files.write("key 2", key, Charsets.UTF_8);
+        assertEquals(nginx.installSslKeys(nginx.getSslConfigsById()), digest);
+        assertEquals(nginx.uploaded.size(), 2);
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.entity.proxy.nginx;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+/**
+ * Dynamic proxies standing in for controllers, drivers and url mappings in tests of the config generators,
+ * so that no entities or machines are needed.
+ */
+public class StubProxies {
+
+    private StubProxies() {}
+
+    /**
+     * @return a proxy answering the named methods (whatever their arguments) with the values in the given map
+     *         at the time of the call, and null for everything else
+     */
+    public static <T> T newProxy(Class<T> type, final Map<String, Object> answers) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, new InvocationHandler() {
+            @Override public Object invoke(Object proxy, Method method, Object[] args) {
+                if (answers.containsKey(method.getName())) return answers.get(method.getName());
+                if (method.getName().equals("toString")) return "proxy:"+answers.get("getId");
+                return null;
+            }}));
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.entity.proxy.nginx;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.Map;
+
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+public class UpstreamWeightingTest {
+
+    @Test
+    public void testSlowerServersGetLowerWeights() {
+        Map<String, Double> secondsPerRequest = ImmutableMap.of("a:80", 0.01, "b:80", 0.02, "c:80", 0.1);
+        Map<String, Integer> weights = UpstreamWeighting.computeWeights(secondsPerRequest, null, 10, 0.25);
+        assertEquals(weights, ImmutableMap.of("a:80", 10, "b:80", 5, "c:80", 1));
+    }
+
+    @Test
+    public void testServersWithoutMetricsGetMaxWeight() {
+        Map<String, Double> secondsPerRequest = MutableMap.of("a:80", 0.01, "b:80", 0.04, "new:80", null);
+        Map<String, Integer> weights = UpstreamWeighting.computeWeights(secondsPerRequest, null, 10, 0.25);
+        assertEquals(weights, ImmutableMap.of("a:80", 10, "b:80", 3, "new:80", 10));
+
+        Map<String, Double> noMetrics = MutableMap.of("a:80", null, "b:80", null);
+        assertEquals(UpstreamWeighting.computeWeights(noMetrics, null, 10, 0.25), ImmutableMap.of("a:80", 10, "b:80", 10));
+    }
+
+    @Test
+    public void testSmallShiftsAreIgnored() {
+        Map<String, Integer> previous = ImmutableMap.of("a:80", 10, "b:80", 8);
+        // b would be 7: within a quarter of 8, so kept
+        Map<String, Integer> weights = UpstreamWeighting.computeWeights(ImmutableMap.of("a:80", 0.01, "b:80", 0.0143), previous, 10, 0.25);
+        assertEquals(weights, previous);
+
+        // b would be 5: a significant shift
+        weights = UpstreamWeighting.computeWeights(ImmutableMap.of("a:80", 0.01, "b:80", 0.02), previous, 10, 0.25);
+        assertEquals(weights, ImmutableMap.of("a:80", 10, "b:80", 5));
+    }
+}
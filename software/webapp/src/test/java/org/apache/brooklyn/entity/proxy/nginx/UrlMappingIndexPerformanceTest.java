@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.entity.proxy.nginx;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Compares the time to regenerate the {@code server.conf} after a change to one url mapping, with many
+ * mappings: re-reading every mapping (as when the controller has no {@link UrlMappingIndex}) versus
+ * re-indexing the changed mapping and re-rendering only its domain's server block.
+ * <p>
+ * Uses {@link StubProxies} for the controller, driver and mappings, so no entities or machines are needed.
+ */
+public class UrlMappingIndexPerformanceTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UrlMappingIndexPerformanceTest.class);
+
+    private static final int MAPPINGS_PER_DOMAIN = 10;
+    private static final int WARMUP_ITERATIONS = 10;
+    private static final int ITERATIONS = 50;
+
+    @DataProvider(name = "mappingCounts")
+    public Object[][] mappingCounts() {
+        return new Object[][] { {1000}, {10000} };
+    }
+
+    @Test(groups = {"Integration", "Acceptance"}, dataProvider = "mappingCounts")
+    public void testRegenerateAfterOneMappingChanges(int mappingCount) throws Exception {
+        NginxDefaultConfigGenerator generator = new NginxDefaultConfigGenerator();
+        NginxDriver driver = StubProxies.newProxy(NginxDriver.class, Collections.<String, Object>singletonMap("getPidFile", "/tmp/nginx/logs/nginx.pid"));
+
+        List<Map<String, Object>> mappingState = Lists.newArrayList();
+        List<UrlMapping> mappings = Lists.newArrayList();
+        for (int i = 0; i < mappingCount; i++) {
+            Map<String, Object> state = Maps.newHashMap();
+            state.put("getId", "mapping"+i);
+            state.put("getUniqueLabel", "mapping"+i);
+            state.put("getDomain", "domain"+(i / MAPPINGS_PER_DOMAIN)+".example.com");
+            state.put("getPath", "/path"+(i % MAPPINGS_PER_DOMAIN));
+            state.put("getAttribute", ImmutableList.of("10.0."+(i >> 8 & 0xff)+"."+(i & 0xff)+":8080"));
+            mappingState.add(state);
+            mappings.add(StubProxies.newProxy(UrlMapping.class, state));
+        }
+
+        UrlMappingIndex index = UrlMappingIndex.of(mappings);
+        NginxController unindexed = newController(mappings, null);
+        NginxController indexed = newController(mappings, index);
+        assertEquals(generator.generateConfigFile(driver, indexed), generator.generateConfigFile(driver, unindexed));
+
+        // the index must render the same config as re-reading the mappings, after its incremental changes
+        long indexedMicros = measure(generator, driver, indexed, index, mappings, mappingState);
+        assertEquals(generator.generateConfigFile(driver, indexed), generator.generateConfigFile(driver, unindexed));
+
+        long unindexedMicros = measure(generator, driver, unindexed, null, mappings, mappingState);
+        LOG.info("Nginx config regenerate after one of {} url mappings changed: unindexed {} us/op, indexed {} us/op",
+                new Object[] {mappingCount, unindexedMicros, indexedMicros});
+    }
+
+    /** @return the mean time to change one mapping's targets and regenerate the config, in microseconds */
+    private long measure(NginxDefaultConfigGenerator generator, NginxDriver driver, NginxController nginx, UrlMappingIndex index,
+            List<UrlMapping> mappings, List<Map<String, Object>> mappingState) {
+        Stopwatch stopwatch = null;
+        for (int i = 0; i < WARMUP_ITERATIONS + ITERATIONS; i++) {
+            if (i == WARMUP_ITERATIONS) stopwatch = Stopwatch.createStarted();
+            int changed = (i * 7919) % mappings.size();
+            mappingState.get(changed).put("getAttribute", ImmutableList.of("10.1.0."+(i % 250)+":8080"));
+            if (index != null) index.put(mappings.get(changed));
+            generator.generateConfigFile(driver, nginx);
+        }
+        return stopwatch.elapsed(TimeUnit.MICROSECONDS) / ITERATIONS;
+    }
+
+    private static NginxController newController(List<UrlMapping> mappings, UrlMappingIndex index) {
+        Map<String, Object> answers = Maps.newHashMap();
+        answers.put("getId", "perfnginx");
+        answers.put("getServerPoolAddresses", ImmutableSet.of());
+        answers.put("getUrlMappings", mappings);
+        answers.put("getUrlMappingIndex", index);
+        answers.put("getPort", 8000);
+        answers.put("isSsl", false);
+        answers.put("isSticky", false);
+        return StubProxies.newProxy(NginxController.class, answers);
+    }
+}
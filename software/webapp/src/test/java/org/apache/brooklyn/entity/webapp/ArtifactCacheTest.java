@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.entity.webapp;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.brooklyn.api.entity.EntitySpec;
+import org.apache.brooklyn.api.location.LocationSpec;
+import org.apache.brooklyn.core.entity.Entities;
+import org.apache.brooklyn.core.test.BrooklynAppUnitTestSupport;
+import org.apache.brooklyn.entity.webapp.tomcat.TomcatServer;
+import org.apache.brooklyn.entity.webapp.tomcat.TomcatServerImpl;
+import org.apache.brooklyn.entity.webapp.tomcat.TomcatSshDriver;
+import org.apache.brooklyn.location.ssh.SshMachineLocation;
+import org.apache.brooklyn.util.core.internal.ssh.RecordingSshTool;
+import org.apache.brooklyn.util.os.Os;
+import org.apache.brooklyn.util.stream.Streams;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+
+/**
+ * Tests the choice between a machine's cached copy of an artifact and a copy from the source, with a driver
+ * whose machine operations are stand-ins, recording what is transferred and what is cached.
+ */
+public class ArtifactCacheTest extends BrooklynAppUnitTestSupport {
+
+    private File artifact;
+    private String url;
+    private SshMachineLocation machine;
+
+    /** Stand-in for the machine's cache and transfers */
+    public static class StandInDriver extends TomcatSshDriver {
+        final Set<String> cached;
+        final List<String> transferred = Lists.newArrayList();
+
+        StandInDriver(TomcatServerImpl entity, SshMachineLocation machine, Set<String> cached) {
+            super(entity, machine);
+            this.cached = cached;
+        }
+
+        @Override
+        protected boolean linkCachedArtifact(String cachedPath, String dest) {
+            return cached.contains(cachedPath);
+        }
+
+        @Override
+        protected int copyArtifactStream(InputStream in, String dest) {
+            transferred.add(Streams.readFullyString(in));
+            return 0;
+        }
+
+        @Override
+        protected void addToArtifactCache(ArtifactDigest digest, String file) {
+            cached.add(getCachedArtifactPath(digest));
+        }
+    }
+
+    @BeforeMethod(alwaysRun = true)
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        artifact = Os.newTempFile(getClass(), "war");
+        Files.write("version 1", artifact, Charsets.UTF_8);
+        url = artifact.toURI().toASCIIString();
+        machine = mgmt.getLocationManager().createLocation(LocationSpec.create(SshMachineLocation.class)
+                .configure("sshToolClass", RecordingSshTool.class.getName())
+                .configure("address", "1.2.3.4"));
+    }
+
+    @AfterMethod(alwaysRun = true)
+    @Override
+    public void tearDown() throws Exception {
+        super.tearDown();
+        if (artifact != null) artifact.delete();
+    }
+
+    private StandInDriver newDriver(Set<String> cached) {
+        TomcatServer server = app.createAndManageChild(EntitySpec.create(TomcatServer.class)
+                .configure(JavaWebAppService.ARTIFACT_CACHE_ENABLED, true));
+        return new StandInDriver((TomcatServerImpl) Entities.deproxy(server), machine, cached);
+    }
+
+    @Test
+    public void testCopiesOnMissThenUsesCacheOnRestart() {
+        StandInDriver driver = newDriver(Sets.<String>newLinkedHashSet());
+
+        driver.copyArtifactUsingCache(url, "/tmp/dest1", "copying");
+        assertEquals(driver.transferred, Lists.newArrayList("version 1"));
+        assertEquals(driver.cached.size(), 1);
+
+        // e.g. after a restart, with the same source: the digest is known, so the machine's cache is used
+        driver.copyArtifactUsingCache(url, "/tmp/dest2", "copying");
+        assertEquals(driver.transferred.size(), 1);
+        assertEquals(driver.getEntity().getAttribute(JavaWebAppService.ARTIFACT_CACHE_HITS), (Integer) 1);
+        assertEquals(driver.getEntity().getAttribute(JavaWebAppService.ARTIFACT_CACHE_BYTES_SAVED), (Long) 9L);
+    }
+
+    @Test
+    public void testReplacementOnSameMachineUsesCache() {
+        Set<String> machineCache = Sets.newLinkedHashSet();
+        StandInDriver first = newDriver(machineCache);
+        first.copyArtifactUsingCache(url, "/tmp/dest1", "copying");
+
+        StandInDriver replacement = newDriver(machineCache);
+        replacement.copyArtifactUsingCache(url, "/tmp/dest2", "copying");
+        assertEquals(replacement.transferred.size(), 0);
+    }
+
+    @Test
+    public void testCopiesWhenNotInMachineCache() {
+        newDriver(Sets.<String>newLinkedHashSet()).copyArtifactUsingCache(url, "/tmp/dest1", "copying");
+
+        // the digest is known, but another machine's cache does not have it
+        StandInDriver other = newDriver(Sets.<String>newLinkedHashSet());
+        other.copyArtifactUsingCache(url, "/tmp/dest2", "copying");
+        assertEquals(other.transferred, Lists.newArrayList("version 1"));
+        assertEquals(other.cached.size(), 1);
+    }
+
+    @Test
+    public void testCopiesWhenSourceChanged() throws Exception {
+        StandInDriver driver = newDriver(Sets.<String>newLinkedHashSet());
+        driver.copyArtifactUsingCache(url, "/tmp/dest1", "copying");
+
+        Files.write("version 2 (changed)", artifact, Charsets.UTF_8);
+        artifact.setLastModified(artifact.lastModified() + 10*1000);
+        driver.copyArtifactUsingCache(url, "/tmp/dest2", "copying");
+
+        assertEquals(driver.transferred, Lists.newArrayList("version 1", "version 2 (changed)"));
+        assertEquals(driver.cached.size(), 2);
+        assertEquals(driver.getEntity().getAttribute(JavaWebAppService.ARTIFACT_CACHE_HITS), null);
+    }
+}
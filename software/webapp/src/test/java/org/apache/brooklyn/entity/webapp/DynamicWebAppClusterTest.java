@@ -19,6 +19,12 @@
 package org.apache.brooklyn.entity.webapp;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.brooklyn.api.entity.Entity;
 import org.apache.brooklyn.api.entity.EntitySpec;
@@ -28,8 +34,11 @@ import org.apache.brooklyn.core.entity.EntityAsserts;
 import org.apache.brooklyn.core.entity.trait.Startable;
 import org.apache.brooklyn.core.location.SimulatedLocation;
 import org.apache.brooklyn.core.test.entity.TestApplication;
+import org.apache.brooklyn.test.Asserts;
 import org.apache.brooklyn.test.entity.TestJavaWebAppEntity;
 import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.core.task.Tasks;
+import org.apache.brooklyn.util.time.Duration;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -37,6 +46,8 @@ import org.testng.annotations.Test;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.Callables;
+import com.google.common.util.concurrent.ListenableFuture;
 
 public class DynamicWebAppClusterTest {
     
@@ -126,4 +137,69 @@ public class DynamicWebAppClusterTest {
         assertEquals(we.getA(), 1);
         assertEquals(we.getB(), 2);
     }
+
+    @Test
+    public void testWhenServiceUpRunsTaskOnceMemberIsUp() throws Exception {
+        DynamicWebAppCluster cluster = app.createAndManageChild(EntitySpec.create(DynamicWebAppCluster.class)
+                .configure("initialSize", 1)
+                .configure(ControlledDynamicWebAppCluster.MEMBER_SPEC, EntitySpec.create(TestJavaWebAppEntity.class)) );
+        app.start(ImmutableList.of(loc));
+
+        Entity member = Iterables.getOnlyElement(cluster.getMembers());
+        member.sensors().set(Startable.SERVICE_UP, false);
+
+        final ListenableFuture<String> result = ((DynamicWebAppClusterImpl) Entities.deproxy(cluster)).whenServiceUp(member,
+                Tasks.<String>builder().displayName("test").body(Callables.returning("done")).build(), "test when ready");
+        Asserts.succeedsContinually(MutableMap.of("timeout", SHORT_WAIT_MS), new Runnable() {
+            @Override public void run() {
+                assertFalse(result.isDone());
+            }});
+
+        member.sensors().set(Startable.SERVICE_UP, true);
+        assertEquals(result.get(10, TimeUnit.SECONDS), "done");
+    }
+
+    @Test
+    public void testWhenServiceUpFailsWhenMemberRemoved() throws Exception {
+        DynamicWebAppCluster cluster = app.createAndManageChild(EntitySpec.create(DynamicWebAppCluster.class)
+                .configure("initialSize", 1)
+                .configure(ControlledDynamicWebAppCluster.MEMBER_SPEC, EntitySpec.create(TestJavaWebAppEntity.class)) );
+        app.start(ImmutableList.of(loc));
+
+        Entity member = Iterables.getOnlyElement(cluster.getMembers());
+        member.sensors().set(Startable.SERVICE_UP, false);
+
+        ListenableFuture<String> result = ((DynamicWebAppClusterImpl) Entities.deproxy(cluster)).whenServiceUp(member,
+                Tasks.<String>builder().displayName("test").body(Callables.returning("done")).build(), "test when ready");
+
+        cluster.resize(0);
+        try {
+            result.get(10, TimeUnit.SECONDS);
+            fail("Expected failure, as member was removed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof DynamicWebAppClusterImpl.TargetGoneException, "cause="+e.getCause());
+            Asserts.expectedFailureContains(e, "was removed from");
+        }
+    }
+
+    @Test
+    public void testWhenServiceUpFailsWhenMemberNotUpInTime() throws Exception {
+        DynamicWebAppCluster cluster = app.createAndManageChild(EntitySpec.create(DynamicWebAppCluster.class)
+                .configure("initialSize", 1)
+                .configure(DynamicWebAppCluster.SERVICE_UP_WAIT_TIMEOUT, Duration.millis(SHORT_WAIT_MS))
+                .configure(ControlledDynamicWebAppCluster.MEMBER_SPEC, EntitySpec.create(TestJavaWebAppEntity.class)) );
+        app.start(ImmutableList.of(loc));
+
+        Entity member = Iterables.getOnlyElement(cluster.getMembers());
+        member.sensors().set(Startable.SERVICE_UP, false);
+
+        ListenableFuture<String> result = ((DynamicWebAppClusterImpl) Entities.deproxy(cluster)).whenServiceUp(member,
+                Tasks.<String>builder().displayName("test").body(Callables.returning("done")).build(), "test when ready");
+        try {
+            result.get(10, TimeUnit.SECONDS);
+            fail("Expected failure, as member is not up");
+        } catch (ExecutionException e) {
+            Asserts.expectedFailureContains(e, "not up within");
+        }
+    }
 }
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.entity.webapp;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.brooklyn.api.entity.EntitySpec;
+import org.apache.brooklyn.api.sensor.AttributeSensor;
+import org.apache.brooklyn.api.sensor.EnricherSpec;
+import org.apache.brooklyn.core.entity.EntityAsserts;
+import org.apache.brooklyn.core.sensor.Sensors;
+import org.apache.brooklyn.core.test.BrooklynAppUnitTestSupport;
+import org.apache.brooklyn.core.test.entity.TestEntity;
+import org.apache.brooklyn.enricher.stock.Enrichers;
+import org.apache.brooklyn.entity.group.BasicGroup;
+import org.apache.brooklyn.util.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Compares the time for a group to aggregate a stream of member events, with the six sums and six
+ * averages a {@link DynamicWebAppCluster} publishes: as one {@link Enrichers#builder() aggregating enricher}
+ * per target sensor (as the cluster used to), versus a single {@link IncrementalMemberAggregator}.
+ * <p>
+ * Each run sets the source sensors of the members of its own group, and is timed until the group's
+ * targets reflect every event.
+ */
+public class IncrementalMemberAggregatorPerformanceTest extends BrooklynAppUnitTestSupport {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IncrementalMemberAggregatorPerformanceTest.class);
+
+    private static final int SOURCE_SENSORS = 6;
+    private static final int EVENTS = 20000;
+
+    private final List<AttributeSensor<Integer>> sources = Lists.newArrayList();
+    private final List<AttributeSensor<Integer>> sums = Lists.newArrayList();
+    private final List<AttributeSensor<Double>> averages = Lists.newArrayList();
+
+    public IncrementalMemberAggregatorPerformanceTest() {
+        for (int i = 0; i < SOURCE_SENSORS; i++) {
+            sources.add(Sensors.newIntegerSensor("test.source"+i));
+            sums.add(Sensors.newIntegerSensor("test.source"+i+".sum"));
+            averages.add(Sensors.newDoubleSensor("test.source"+i+".average"));
+        }
+    }
+
+    @DataProvider(name = "clusterSizes")
+    public Object[][] clusterSizes() {
+        return new Object[][] { {100}, {1000} };
+    }
+
+    @Test(groups = {"Integration", "Acceptance"}, dataProvider = "clusterSizes")
+    public void testTimePerMemberEvent(int members) {
+        // warm up both, then measure
+        runAggregating(members, EVENTS / 10);
+        runIncremental(members, EVENTS / 10);
+
+        long aggregatingNanos = runAggregating(members, EVENTS);
+        long incrementalNanos = runIncremental(members, EVENTS);
+
+        LOG.info("Cluster aggregation, {} members: aggregating enrichers {} ns/event, incremental {} ns/event ({}x)",
+                new Object[] {members, aggregatingNanos / EVENTS, incrementalNanos / EVENTS,
+                        (incrementalNanos > 0) ? aggregatingNanos / incrementalNanos : "n/a"});
+    }
+
+    private long runAggregating(int members, int events) {
+        BasicGroup group = app.createAndManageChild(EntitySpec.create(BasicGroup.class));
+        for (int i = 0; i < SOURCE_SENSORS; i++) {
+            group.enrichers().add(Enrichers.builder()
+                    .aggregating(sources.get(i))
+                    .publishing(sums.get(i))
+                    .fromMembers()
+                    .computingSum()
+                    .build());
+            group.enrichers().add(Enrichers.builder()
+                    .aggregating(sources.get(i))
+                    .publishing(averages.get(i))
+                    .fromMembers()
+                    .computingAverage()
+                    .defaultValueForUnreportedSensors(0)
+                    .build());
+        }
+        return run(group, members, events);
+    }
+
+    private long runIncremental(int members, int events) {
+        BasicGroup group = app.createAndManageChild(EntitySpec.create(BasicGroup.class));
+        Map<AttributeSensor<? extends Number>, AttributeSensor<? extends Number>> sumTargets = Maps.newLinkedHashMap();
+        Map<AttributeSensor<? extends Number>, AttributeSensor<? extends Number>> averageTargets = Maps.newLinkedHashMap();
+        for (int i = 0; i < SOURCE_SENSORS; i++) {
+            sumTargets.put(sources.get(i), sums.get(i));
+            averageTargets.put(sources.get(i), averages.get(i));
+        }
+        // publishing on every event, as the aggregating enrichers do
+        group.enrichers().add(EnricherSpec.create(IncrementalMemberAggregator.class)
+                .configure(IncrementalMemberAggregator.SUMS, sumTargets)
+                .configure(IncrementalMemberAggregator.AVERAGES, averageTargets)
+                .configure(IncrementalMemberAggregator.PUBLISH_PERIOD, Duration.ZERO));
+        return run(group, members, events);
+    }
+
+    /** @return the nanoseconds from the first event until the group's targets reflect them all */
+    private long run(BasicGroup group, int memberCount, int events) {
+        List<TestEntity> members = Lists.newArrayList();
+        for (int i = 0; i < memberCount; i++) {
+            TestEntity member = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+            group.addMember(member);
+            members.add(member);
+        }
+        // the last value of each source sensor of each member, for the expected sums
+        int[][] values = new int[SOURCE_SENSORS][memberCount];
+
+        Random random = new Random(1);
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        for (int i = 0; i < events; i++) {
+            int source = i % SOURCE_SENSORS;
+            int member = random.nextInt(memberCount);
+            int value = random.nextInt(1000);
+            values[source][member] = value;
+            members.get(member).sensors().set(sources.get(source), value);
+        }
+        for (int source = 0; source < SOURCE_SENSORS; source++) {
+            int sum = 0;
+            for (int value : values[source]) {
+                sum += value;
+            }
+            EntityAsserts.assertAttributeEqualsEventually(group, sums.get(source), sum);
+            EntityAsserts.assertAttributeEqualsEventually(group, averages.get(source), (double) sum / memberCount);
+        }
+        return stopwatch.elapsed(TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.entity.webapp;
+
+import org.apache.brooklyn.api.entity.EntitySpec;
+import org.apache.brooklyn.api.sensor.AttributeSensor;
+import org.apache.brooklyn.api.sensor.EnricherSpec;
+import org.apache.brooklyn.core.entity.EntityAsserts;
+import org.apache.brooklyn.core.sensor.Sensors;
+import org.apache.brooklyn.core.test.BrooklynAppUnitTestSupport;
+import org.apache.brooklyn.core.test.entity.TestEntity;
+import org.apache.brooklyn.entity.group.BasicGroup;
+import org.apache.brooklyn.test.Asserts;
+import org.apache.brooklyn.util.time.Duration;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+public class IncrementalMemberAggregatorTest extends BrooklynAppUnitTestSupport {
+
+    private static final AttributeSensor<Integer> REQUESTS = Sensors.newIntegerSensor("test.requests");
+    private static final AttributeSensor<Integer> REQUESTS_SUM = Sensors.newIntegerSensor("test.requests.sum");
+    private static final AttributeSensor<Double> REQUESTS_AVERAGE = Sensors.newDoubleSensor("test.requests.average");
+    private static final AttributeSensor<Double> LOAD = Sensors.newDoubleSensor("test.load");
+    private static final AttributeSensor<Integer> LOAD_SUM = Sensors.newIntegerSensor("test.load.sum");
+    private static final AttributeSensor<Long> LOAD_AVERAGE = Sensors.newLongSensor("test.load.average");
+
+    private BasicGroup group;
+    private TestEntity member1;
+    private TestEntity member2;
+
+    @BeforeMethod(alwaysRun = true)
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        group = app.createAndManageChild(EntitySpec.create(BasicGroup.class));
+        member1 = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        member2 = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+    }
+
+    private IncrementalMemberAggregator addAggregator(Duration publishPeriod) {
+        return group.enrichers().add(EnricherSpec.create(IncrementalMemberAggregator.class)
+                .configure(IncrementalMemberAggregator.SUMS, ImmutableMap.<AttributeSensor<? extends Number>, AttributeSensor<? extends Number>>of(
+                        REQUESTS, REQUESTS_SUM, LOAD, LOAD_SUM))
+                .configure(IncrementalMemberAggregator.AVERAGES, ImmutableMap.<AttributeSensor<? extends Number>, AttributeSensor<? extends Number>>of(
+                        REQUESTS, REQUESTS_AVERAGE, LOAD, LOAD_AVERAGE))
+                .configure(IncrementalMemberAggregator.PUBLISH_PERIOD, publishPeriod));
+    }
+
+    @Test
+    public void testSumsAndAveragesOverAllMembers() {
+        addAggregator(Duration.ZERO);
+        group.addMember(member1);
+        group.addMember(member2);
+
+        member1.sensors().set(REQUESTS, 3);
+        EntityAsserts.assertAttributeEqualsEventually(group, REQUESTS_SUM, 3);
+        // members which have not reported count as zero
+        EntityAsserts.assertAttributeEqualsEventually(group, REQUESTS_AVERAGE, 1.5);
+
+        member2.sensors().set(REQUESTS, 5);
+        member1.sensors().set(REQUESTS, 7);
+        EntityAsserts.assertAttributeEqualsEventually(group, REQUESTS_SUM, 12);
+        EntityAsserts.assertAttributeEqualsEventually(group, REQUESTS_AVERAGE, 6d);
+    }
+
+    @Test
+    public void testIncludesValuesOfExistingMembers() {
+        member1.sensors().set(REQUESTS, 3);
+        member2.sensors().set(REQUESTS, 5);
+        group.addMember(member1);
+        group.addMember(member2);
+
+        addAggregator(Duration.ZERO);
+        TestEntity member3 = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        group.addMember(member3);
+
+        EntityAsserts.assertAttributeEqualsEventually(group, REQUESTS_SUM, 8);
+        EntityAsserts.assertAttributeEqualsEventually(group, REQUESTS_AVERAGE, 8d / 3);
+    }
+
+    @Test
+    public void testRemovedMemberNoLongerCounted() {
+        addAggregator(Duration.ZERO);
+        group.addMember(member1);
+        group.addMember(member2);
+        member1.sensors().set(REQUESTS, 3);
+        member2.sensors().set(REQUESTS, 5);
+        EntityAsserts.assertAttributeEqualsEventually(group, REQUESTS_SUM, 8);
+
+        group.removeMember(member2);
+        EntityAsserts.assertAttributeEqualsEventually(group, REQUESTS_SUM, 3);
+        EntityAsserts.assertAttributeEqualsEventually(group, REQUESTS_AVERAGE, 3d);
+
+        group.removeMember(member1);
+        EntityAsserts.assertAttributeEqualsEventually(group, REQUESTS_SUM, 0);
+        EntityAsserts.assertAttributeEqualsEventually(group, REQUESTS_AVERAGE, null);
+    }
+
+    @Test
+    public void testIgnoresLateEventsFromRemovedMember() {
+        addAggregator(Duration.ZERO);
+        group.addMember(member1);
+        group.addMember(member2);
+        member1.sensors().set(REQUESTS, 3);
+        member2.sensors().set(REQUESTS, 5);
+        EntityAsserts.assertAttributeEqualsEventually(group, REQUESTS_SUM, 8);
+
+        group.removeMember(member2);
+        member2.sensors().set(REQUESTS, 100);
+        EntityAsserts.assertAttributeEqualsEventually(group, REQUESTS_SUM, 3);
+        EntityAsserts.assertAttributeEqualsContinually(group, REQUESTS_SUM, 3);
+        EntityAsserts.assertAttributeEqualsContinually(group, REQUESTS_AVERAGE, 3d);
+
+        // and if added back, it counts from its current value
+        group.addMember(member2);
+        EntityAsserts.assertAttributeEqualsEventually(group, REQUESTS_SUM, 103);
+    }
+
+    @Test
+    public void testRoundsIntegralTargets() {
+        addAggregator(Duration.ZERO);
+        group.addMember(member1);
+        group.addMember(member2);
+
+        member1.sensors().set(LOAD, 1.4);
+        member2.sensors().set(LOAD, 1.7);
+        EntityAsserts.assertAttributeEqualsEventually(group, LOAD_SUM, 3);
+        EntityAsserts.assertAttributeEqualsEventually(group, LOAD_AVERAGE, 2L);
+
+        member2.sensors().set(LOAD, 0.5);
+        EntityAsserts.assertAttributeEqualsEventually(group, LOAD_SUM, 2);
+        EntityAsserts.assertAttributeEqualsEventually(group, LOAD_AVERAGE, 1L);
+    }
+
+    @Test
+    public void testPublishesChangesOnlyOnTick() {
+        IncrementalMemberAggregator aggregator = addAggregator(Duration.ONE_HOUR);
+        group.addMember(member1);
+        group.addMember(member2);
+        member1.sensors().set(REQUESTS, 3);
+
+        // the first tick is a period after the first event
+        EntityAsserts.assertAttributeEqualsContinually(group, REQUESTS_SUM, null);
+
+        assertPublishedEventually(aggregator, REQUESTS_SUM, 3);
+        EntityAsserts.assertAttributeEquals(group, REQUESTS_AVERAGE, 1.5);
+
+        member2.sensors().set(REQUESTS, 5);
+        EntityAsserts.assertAttributeEqualsContinually(group, REQUESTS_SUM, 3);
+        assertPublishedEventually(aggregator, REQUESTS_SUM, 8);
+    }
+
+    /** Publishes until the given value is seen, as the member's event may not have reached the aggregator yet. */
+    private <T> void assertPublishedEventually(final IncrementalMemberAggregator aggregator, final AttributeSensor<T> sensor, final T expected) {
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                aggregator.publish();
+                EntityAsserts.assertAttributeEquals(group, sensor, expected);
+            }});
+    }
+
+    @Test
+    public void testPublishesPeriodically() {
+        addAggregator(Duration.millis(50));
+        group.addMember(member1);
+        group.addMember(member2);
+
+        member1.sensors().set(REQUESTS, 3);
+        EntityAsserts.assertAttributeEqualsEventually(group, REQUESTS_SUM, 3);
+        member2.sensors().set(REQUESTS, 5);
+        EntityAsserts.assertAttributeEqualsEventually(group, REQUESTS_SUM, 8);
+        EntityAsserts.assertAttributeEqualsEventually(group, REQUESTS_AVERAGE, 4d);
+    }
+}
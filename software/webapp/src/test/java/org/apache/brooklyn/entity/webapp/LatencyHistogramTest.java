@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.entity.webapp;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+public class LatencyHistogramTest {
+
+    private static void assertWithinPrecision(Double actual, double expected) {
+        assertTrue(Math.abs(actual - expected) <= Math.max(1, expected / LatencyHistogram.SUB_BUCKETS), "actual="+actual+"; expected="+expected);
+    }
+
+    @Test
+    public void testEmptyHistogramHasNoPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertNull(histogram.getValueAtPercentile(50));
+        assertEquals(histogram.getTotalCount(), 0);
+    }
+
+    @Test
+    public void testPercentilesOfUniformValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10000; i++) {
+            histogram.record(i, 1);
+        }
+        assertEquals(histogram.getTotalCount(), 10000);
+        assertWithinPrecision(histogram.getValueAtPercentile(50), 5000);
+        assertWithinPrecision(histogram.getValueAtPercentile(95), 9500);
+        assertWithinPrecision(histogram.getValueAtPercentile(99), 9900);
+    }
+
+    @Test
+    public void testTailIsNotHiddenByMean() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10, 980);
+        histogram.record(2000, 20);
+        assertEquals(histogram.getValueAtPercentile(50), 10.0);
+        assertEquals(histogram.getValueAtPercentile(95), 10.0);
+        assertWithinPrecision(histogram.getValueAtPercentile(99), 2000);
+    }
+
+    @Test
+    public void testBucketsCoverRangeContiguously() {
+        long expectedLowest = 0;
+        int index = 0;
+        while (expectedLowest <= LatencyHistogram.MAX_VALUE) {
+            assertEquals(LatencyHistogram.lowestValueAt(index), expectedLowest, "index "+index);
+            assertEquals(LatencyHistogram.indexOf(expectedLowest), index);
+            long width = LatencyHistogram.bucketWidthAt(index);
+            assertEquals(LatencyHistogram.indexOf(expectedLowest + width - 1), index);
+            expectedLowest += width;
+            index++;
+        }
+        assertEquals(LatencyHistogram.indexOf(Long.MAX_VALUE), index - 1);
+        assertEquals(LatencyHistogram.indexOf(-5), 0);
+    }
+
+    @Test
+    public void testAddAndSubtract() {
+        LatencyHistogram a = new LatencyHistogram();
+        a.record(5, 100);
+        LatencyHistogram b = new LatencyHistogram();
+        b.record(500, 100);
+
+        LatencyHistogram merged = new LatencyHistogram(a);
+        merged.add(b);
+        assertEquals(merged.getTotalCount(), 200);
+        assertEquals(merged.getValueAtPercentile(25), 5.0);
+        assertWithinPrecision(merged.getValueAtPercentile(75), 500);
+
+        merged.subtract(b);
+        assertEquals(merged.getTotalCount(), 100);
+        assertEquals(merged.getValueAtPercentile(99), 5.0);
+    }
+}
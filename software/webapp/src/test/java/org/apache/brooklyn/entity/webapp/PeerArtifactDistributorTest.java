@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.entity.webapp;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+public class PeerArtifactDistributorTest {
+
+    /** Stand-in for a set of machines, recording which hold the artifact and the transfers made */
+    private static class StandInDistributor extends PeerArtifactDistributor<String> {
+        final Set<String> holding = Sets.newLinkedHashSet();
+        final Set<String> failing;
+        final List<String> fetchedFromSource = Lists.newArrayList();
+        int peerCopies;
+
+        StandInDistributor(int seeds, Set<String> failing) {
+            super(seeds);
+            this.failing = failing;
+        }
+
+        @Override
+        protected Set<String> fetchFromSource(List<String> targets) {
+            fetchedFromSource.addAll(targets);
+            holding.addAll(targets);
+            return Sets.newLinkedHashSet(targets);
+        }
+
+        @Override
+        protected Set<String> copyFromPeers(Map<String, String> holdersByRecipient) {
+            assertEquals(ImmutableSet.copyOf(holdersByRecipient.values()).size(), holdersByRecipient.size(), "holder used twice in a round");
+            Set<String> result = Sets.newLinkedHashSet();
+            for (Map.Entry<String, String> entry : holdersByRecipient.entrySet()) {
+                assertTrue(holding.contains(entry.getValue()), "copy from "+entry.getValue()+" which does not hold the artifact");
+                assertFalse(holding.contains(entry.getKey()), "copy to "+entry.getKey()+" which already holds the artifact");
+                peerCopies++;
+                if (!failing.contains(entry.getKey())) {
+                    holding.add(entry.getKey());
+                    result.add(entry.getKey());
+                }
+            }
+            return result;
+        }
+    }
+
+    private static List<String> targets(int count) {
+        List<String> result = Lists.newArrayList();
+        for (int i = 0; i < count; i++) {
+            result.add("machine"+i);
+        }
+        return result;
+    }
+
+    @Test
+    public void testFanOutReachesAllTargetsInLogRounds() {
+        List<String> targets = targets(500);
+        StandInDistributor distributor = new StandInDistributor(1, ImmutableSet.<String>of());
+
+        Set<String> result = distributor.distribute(targets);
+
+        assertEquals(result, ImmutableSet.copyOf(targets));
+        assertEquals(distributor.fetchedFromSource, ImmutableList.of("machine0"));
+        assertEquals(distributor.peerCopies, 499);
+        // 1, 2, 4, ... 256, 500
+        assertEquals(distributor.getRounds(), 9);
+    }
+
+    @Test
+    public void testSeedsFetchFromSource() {
+        List<String> targets = targets(20);
+        StandInDistributor distributor = new StandInDistributor(4, ImmutableSet.<String>of());
+
+        Set<String> result = distributor.distribute(targets);
+
+        assertEquals(result, ImmutableSet.copyOf(targets));
+        assertEquals(distributor.fetchedFromSource, targets.subList(0, 4));
+        // 4, 8, 16, 20
+        assertEquals(distributor.getRounds(), 3);
+    }
+
+    @Test
+    public void testFailedTargetsAreLeftOut() {
+        List<String> targets = targets(10);
+        StandInDistributor distributor = new StandInDistributor(1, ImmutableSet.of("machine1", "machine5"));
+
+        Set<String> result = distributor.distribute(targets);
+
+        assertEquals(result.size(), 8);
+        assertFalse(result.contains("machine1"));
+        assertFalse(result.contains("machine5"));
+    }
+
+    @Test
+    public void testFewerTargetsThanSeeds() {
+        StandInDistributor distributor = new StandInDistributor(3, ImmutableSet.<String>of());
+
+        Set<String> result = distributor.distribute(targets(2));
+
+        assertEquals(result.size(), 2);
+        assertEquals(distributor.getRounds(), 0);
+    }
+}
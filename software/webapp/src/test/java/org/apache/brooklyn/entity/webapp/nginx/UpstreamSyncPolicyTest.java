@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.entity.webapp.nginx;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.brooklyn.api.effector.Effector;
+import org.apache.brooklyn.api.entity.EntitySpec;
+import org.apache.brooklyn.api.policy.PolicySpec;
+import org.apache.brooklyn.core.effector.EffectorBody;
+import org.apache.brooklyn.core.effector.Effectors;
+import org.apache.brooklyn.core.entity.Attributes;
+import org.apache.brooklyn.core.entity.Entities;
+import org.apache.brooklyn.core.entity.trait.Startable;
+import org.apache.brooklyn.core.test.BrooklynAppUnitTestSupport;
+import org.apache.brooklyn.core.test.entity.TestEntity;
+import org.apache.brooklyn.core.test.entity.TestEntityImpl;
+import org.apache.brooklyn.entity.group.AbstractMembershipTrackingPolicy;
+import org.apache.brooklyn.entity.group.BasicGroup;
+import org.apache.brooklyn.test.Asserts;
+import org.apache.brooklyn.util.core.config.ConfigBag;
+import org.apache.brooklyn.util.text.Strings;
+import org.apache.brooklyn.util.time.Duration;
+import org.apache.brooklyn.util.time.Time;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+
+public class UpstreamSyncPolicyTest extends BrooklynAppUnitTestSupport {
+
+    private TestEntity nginx;
+    private BasicGroup group;
+    private Map<String, String> expectedAddresses;
+
+    @BeforeMethod(alwaysRun = true)
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        nginx = app.createAndManageChild(EntitySpec.create(TestEntity.class).impl(RecordingNginx.class));
+        nginx.sensors().set(Startable.SERVICE_UP, true);
+        group = app.createAndManageChild(EntitySpec.create(BasicGroup.class));
+        expectedAddresses = Maps.newTreeMap();
+    }
+
+    private void addSyncPolicy(int renderAttempts) {
+        app.policies().add(PolicySpec.create(UpstreamSyncPolicy.class)
+                .configure(AbstractMembershipTrackingPolicy.GROUP, group)
+                .configure(UpstreamSyncPolicy.NGINX_NODE, nginx)
+                .configure(UpstreamSyncPolicy.GROUP_NAME, "web")
+                .configure(UpstreamSyncPolicy.COALESCE_WINDOW, Duration.millis(100))
+                .configure(UpstreamSyncPolicy.RENDER_ATTEMPTS, renderAttempts));
+    }
+
+    private void addMembers(int count) {
+        for (int i = 0; i < count; i++) {
+            TestEntity member = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+            member.sensors().set(Attributes.HOSTNAME, "10.0.0."+(expectedAddresses.size()+1));
+            member.sensors().set(Attributes.HTTP_PORT, 8080);
+            member.sensors().set(Startable.SERVICE_UP, true);
+            expectedAddresses.put(member.getId(), member.getAttribute(Attributes.HOSTNAME)+":8080");
+            group.addMember(member);
+        }
+    }
+
+    private RecordingNginx recorder() {
+        return (RecordingNginx) Entities.deproxy(nginx);
+    }
+
+    private void assertEventuallyRendered() {
+        final String expected = Strings.join(expectedAddresses.values(), " ");
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertEquals(Iterables.getLast(recorder().renders, null), expected);
+            }});
+    }
+
+    @Test
+    public void testCoalescesChangesIntoFewRenders() {
+        addSyncPolicy(1);
+        addMembers(20);
+        assertEventuallyRendered();
+
+        List<String> renders = recorder().renders;
+        assertTrue(renders.size() <= 3, "renders="+renders);
+        assertEquals(recorder().maxConcurrentRenders.get(), 1, "renders="+renders);
+    }
+
+    @Test
+    public void testRendersChangesArrivingDuringRender() {
+        recorder().renderDuration = Duration.millis(300);
+        addSyncPolicy(1);
+        addMembers(2);
+        // wait for the render to start, then change the members while it is in progress
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertEquals(recorder().concurrentRenders.get(), 1);
+            }});
+        addMembers(3);
+        assertEventuallyRendered();
+
+        assertEquals(recorder().maxConcurrentRenders.get(), 1, "renders="+recorder().renders);
+    }
+
+    @Test
+    public void testRetriesFailedRender() {
+        recorder().failuresRemaining.set(1);
+        addSyncPolicy(2);
+        addMembers(3);
+        assertEventuallyRendered();
+
+        assertEquals(recorder().failuresRemaining.get(), 0);
+    }
+
+    public static class RecordingNginx extends TestEntityImpl {
+        public static final Effector<Void> RENDER_TARGETS = Effectors.effector(Void.class, "render-targets")
+                .parameter(String.class, "groupName")
+                .parameter(String.class, "targets")
+                .buildAbstract();
+
+        final List<String> renders = new CopyOnWriteArrayList<String>();
+        final AtomicInteger concurrentRenders = new AtomicInteger();
+        final AtomicInteger maxConcurrentRenders = new AtomicInteger();
+        final AtomicInteger failuresRemaining = new AtomicInteger();
+        volatile Duration renderDuration = Duration.millis(20);
+
+        @Override
+        public void init() {
+            super.init();
+            getMutableEntityType().addEffector(RENDER_TARGETS, new EffectorBody<Void>() {
+                @Override
+                public Void call(ConfigBag parameters) {
+                    int concurrent = concurrentRenders.incrementAndGet();
+                    try {
+                        synchronized (maxConcurrentRenders) {
+                            maxConcurrentRenders.set(Math.max(maxConcurrentRenders.get(), concurrent));
+                        }
+                        Time.sleep(renderDuration);
+                        if (failuresRemaining.getAndDecrement() > 0) {
+                            throw new IllegalStateException("Simulated failure rendering targets");
+                        }
+                        failuresRemaining.set(0);
+                        renders.add((String) parameters.getStringKey("targets"));
+                        return null;
+                    } finally {
+                        concurrentRenders.decrementAndGet();
+                    }
+                }
+            });
+        }
+    }
+}